@@ -1,11 +1,14 @@
 package astrometry.test;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import Jama.Matrix;
 import astrometry.DistanceFromParallax;
 import astrometry.DistanceFromParallax.METHOD;
 import astrometry.util.AstrometryUtils;
+import astrometry.util.Mat3;
+import astrometry.util.Vec3;
 import constants.Galactic;
 import constants.Units;
 
@@ -125,7 +128,123 @@ public class TestAstrometryUtils
 		A.print(5, 3);
 		
 		
+		testMat3AgainstMatrix();
+	}
+	
+	/**
+	 * Compares the allocation-free {@link Mat3}/{@link Vec3} forms of the coordinate transformations
+	 * against the same transformations computed directly with JAMA {@link Matrix} objects, for random
+	 * positions and motions.
+	 */
+	private static void testMat3AgainstMatrix() {
+		
+		System.out.println("\nTesting Mat3 forms against JAMA Matrix forms:");
+		
+		// The Mat3 rotation constants must match the Matrix ones exactly
+		checkEqual("rot_G_E", Galactic.r_G_E, Galactic.rot_G_E.toMatrix(), 0.0);
+		checkEqual("rot_E_G", Galactic.r_E_G, Galactic.rot_E_G.toMatrix(), 0.0);
+		checkEqual("rot_E_G * rot_G_E", Galactic.r_E_G.times(Galactic.r_G_E), Galactic.rot_E_G.times(Galactic.rot_G_E).toMatrix(), 1e-15);
+		
+		Random random = new Random(2378452L);
+		Vec3 v = new Vec3();
+		Vec3 vtan = new Vec3();
+		double[] pos = new double[2];
+		double[] posMu = new double[4];
+		
+		double maxPosErr = 0.0, maxMuErr = 0.0, maxVtanErr = 0.0;
+		
+		for(int i=0; i<10000; i++) {
+			
+			double ra = 2.0 * Math.PI * random.nextDouble();
+			double dec = Math.asin(2.0 * random.nextDouble() - 1.0);
+			// Proper motions [radians/yr] and space velocity [km/s]
+			double mu_acosd = random.nextGaussian() * Units.MILLIARCSEC_TO_RADIANS * 100.0;
+			double mu_d = random.nextGaussian() * Units.MILLIARCSEC_TO_RADIANS * 100.0;
+			v.set(100.0 * random.nextGaussian(), 100.0 * random.nextGaussian(), 100.0 * random.nextGaussian());
+			
+			// Matrix form: rotate the unit vector to the Galactic frame and convert back to angles
+			Matrix r_G = Galactic.r_G_E.times(AstrometryUtils.sphericalPolarToCartesian(1.0, ra, dec));
+			Matrix lb = AstrometryUtils.cartesianToSphericalPolar(r_G);
+			double l = lb.get(1, 0);
+			double b = lb.get(2, 0);
+			
+			// Matrix form: build the proper motion vector from the Normal frame basis vectors, rotate it
+			// to the Galactic frame and project onto the sky at the new position
+			Matrix r_N_E = AstrometryUtils.getNormalFrame(ra, dec);
+			Matrix mu_E = r_N_E.transpose().times(new Matrix(new double[][]{{mu_acosd}, {mu_d}, {0.0}}));
+			Matrix mu_G = Galactic.r_G_E.times(mu_E);
+			double mu_lcosb = mu_G.get(1, 0) * Math.cos(l) - mu_G.get(0, 0) * Math.sin(l);
+			double mu_b = mu_G.get(2, 0) / Math.cos(b);
+			
+			// Matrix form: transform the space velocity to the Normal frame, remove the radial
+			// component and transform back
+			Matrix v_N = r_N_E.times(v.toMatrix());
+			v_N.set(2, 0, 0.0);
+			Matrix vtan_E = r_N_E.transpose().times(v_N);
+			
+			// Mat3 forms
+			AstrometryUtils.convertPosition(ra, dec, Galactic.rot_G_E, pos);
+			AstrometryUtils.convertPositionAndProperMotion(ra, dec, mu_acosd, mu_d, Galactic.rot_G_E, posMu);
+			AstrometryUtils.getTangentialVelocityVector(ra, dec, v, vtan);
+			
+			maxPosErr = Math.max(maxPosErr, getSeparation(l, b, pos[0], pos[1]));
+			maxPosErr = Math.max(maxPosErr, getSeparation(l, b, posMu[0], posMu[1]));
+			double muScale = Math.hypot(mu_acosd, mu_d);
+			maxMuErr = Math.max(maxMuErr, Math.abs(mu_lcosb - posMu[2]) / muScale);
+			maxMuErr = Math.max(maxMuErr, Math.abs(mu_b - posMu[3]) / muScale);
+			maxVtanErr = Math.max(maxVtanErr, vtan_E.minus(vtan.toMatrix()).normF());
+		}
 		
+		System.out.println("Max position difference        = "+maxPosErr+" [radians]");
+		System.out.println("Max proper motion difference   = "+maxMuErr+" [relative]");
+		System.out.println("Max tangential velocity diff.  = "+maxVtanErr+" [km/s]");
+		
+		if(maxPosErr > 1e-12 || maxMuErr > 1e-12 || maxVtanErr > 1e-10) {
+			throw new RuntimeException("Mat3 and JAMA Matrix coordinate transformations disagree!");
+		}
+	}
+	
+	/**
+	 * Get the small angular separation of two points; unlike {@link AstrometryUtils#angularSeparation(double, double, double, double)}
+	 * this is accurate for separations much smaller than the square root of the double precision.
+	 * 
+	 * @param ra1
+	 * 	The longitude of the first point [radians]
+	 * @param dec1
+	 * 	The latitude of the first point [radians]
+	 * @param ra2
+	 * 	The longitude of the second point [radians]
+	 * @param dec2
+	 * 	The latitude of the second point [radians]
+	 * @return
+	 * 	The angular separation of the two points [radians]
+	 */
+	private static double getSeparation(double ra1, double dec1, double ra2, double dec2) {
+		return Math.hypot(Math.IEEEremainder(ra1 - ra2, 2.0 * Math.PI) * Math.cos(dec1), dec1 - dec2);
+	}
+	
+	/**
+	 * Check that two matrices are equal to within a tolerance.
+	 * 
+	 * @param name
+	 * 	Name of the quantity, for reporting.
+	 * @param expected
+	 * 	The expected {@link Matrix}.
+	 * @param actual
+	 * 	The actual {@link Matrix}.
+	 * @param tol
+	 * 	The largest permitted absolute difference in any element.
+	 */
+	private static void checkEqual(String name, Matrix expected, Matrix actual, double tol) {
+		for(int i=0; i<expected.getRowDimension(); i++) {
+			for(int j=0; j<expected.getColumnDimension(); j++) {
+				if(Math.abs(expected.get(i, j) - actual.get(i, j)) > tol) {
+					throw new RuntimeException("Element ("+i+","+j+") of "+name+" differs: expected "
+							+ expected.get(i, j)+", found "+actual.get(i, j));
+				}
+			}
+		}
+		System.out.println(name+" matches the JAMA Matrix form");
 	}
 	
 }
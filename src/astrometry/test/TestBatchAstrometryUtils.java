@@ -0,0 +1,115 @@
+package astrometry.test;
+
+import java.util.Random;
+
+import astrometry.util.AstrometryUtils;
+import astrometry.util.BatchAstrometryUtils;
+import astrometry.util.Vec3;
+import constants.Galactic;
+import constants.Units;
+
+/**
+ * Class tests the batch conversion of positions and proper motions, and the batch computation of the tangential
+ * velocity, in {@link BatchAstrometryUtils} against the per-star methods in {@link AstrometryUtils}, for a random
+ * catalogue.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class TestBatchAstrometryUtils {
+
+	/**
+	 * Number of sources in the random catalogue.
+	 */
+	private static final int N = 1000000;
+
+	/**
+	 * Main application entry point.
+	 *
+	 * @param args
+	 * 	The command line arguments (ignored)
+	 */
+	public static void main(String[] args) {
+
+		// Random catalogue, with Gaia-like proper motions [mas/yr] and parallaxes [mas]
+		Random random = new Random(6359275L);
+		double[] ra = new double[N];
+		double[] dec = new double[N];
+		double[] mu_acosd = new double[N];
+		double[] mu_d = new double[N];
+		double[] parallax = new double[N];
+		for(int i=0; i<N; i++) {
+			ra[i] = 2.0 * Math.PI * random.nextDouble();
+			dec[i] = Math.asin(2.0 * random.nextDouble() - 1.0);
+			mu_acosd[i] = 50.0 * random.nextGaussian() * Units.MILLIARCSEC_TO_RADIANS;
+			mu_d[i] = 50.0 * random.nextGaussian() * Units.MILLIARCSEC_TO_RADIANS;
+			parallax[i] = 0.1 + 20.0 * random.nextDouble();
+		}
+
+		double[] l = new double[N];
+		double[] b = new double[N];
+		double[] mu_lcosb = new double[N];
+		double[] mu_b = new double[N];
+		double[] vx = new double[N];
+		double[] vy = new double[N];
+		double[] vz = new double[N];
+
+		BatchAstrometryUtils.convertPositionAndProperMotionEqToGal(ra, dec, mu_acosd, mu_d, l, b, mu_lcosb, mu_b);
+		BatchAstrometryUtils.getTangentialVelocityVector(l, b, mu_lcosb, mu_b, parallax, vx, vy, vz);
+
+		// Compare with the per-star conversion of the same catalogue; the distance is 1000/parallax [pc]
+		double[] lbmu = new double[4];
+		Vec3 vtan = new Vec3();
+		double maxPosErr = 0.0, maxMuErr = 0.0, maxVtanErr = 0.0;
+
+		for(int i=0; i<N; i++) {
+			AstrometryUtils.convertPositionAndProperMotion(ra[i], dec[i], mu_acosd[i], mu_d[i], Galactic.rot_G_E, lbmu);
+			AstrometryUtils.getTangentialVelocityVector(1000.0 / parallax[i], lbmu[0], lbmu[1], lbmu[2], lbmu[3], vtan);
+
+			maxPosErr = Math.max(maxPosErr, Math.abs(Math.IEEEremainder(l[i] - lbmu[0], 2.0 * Math.PI)) * Math.cos(lbmu[1]));
+			maxPosErr = Math.max(maxPosErr, Math.abs(b[i] - lbmu[1]));
+			double muScale = Math.hypot(lbmu[2], lbmu[3]);
+			maxMuErr = Math.max(maxMuErr, Math.abs(mu_lcosb[i] - lbmu[2]) / muScale);
+			maxMuErr = Math.max(maxMuErr, Math.abs(mu_b[i] - lbmu[3]) / muScale);
+			double vtScale = Math.sqrt(vtan.x*vtan.x + vtan.y*vtan.y + vtan.z*vtan.z);
+			double dx = vx[i] - vtan.x, dy = vy[i] - vtan.y, dz = vz[i] - vtan.z;
+			maxVtanErr = Math.max(maxVtanErr, Math.sqrt(dx*dx + dy*dy + dz*dz) / vtScale);
+		}
+
+		System.out.println("Equatorial -> Galactic, "+N+" sources:");
+		System.out.println(" - Max position difference          = "+maxPosErr+" [radians]");
+		System.out.println(" - Max proper motion difference     = "+maxMuErr+" [relative]");
+		System.out.println(" - Max tangential velocity diff.    = "+maxVtanErr+" [relative]");
+
+		if(maxPosErr > 1e-14 || maxMuErr > 1e-10 || maxVtanErr > 1e-10) {
+			throw new RuntimeException("Batch and per-star conversions disagree!");
+		}
+
+		// Convert the Galactic coordinates back to the Equatorial frame
+		double[] ra2 = new double[N];
+		double[] dec2 = new double[N];
+		double[] mu_acosd2 = new double[N];
+		double[] mu_d2 = new double[N];
+		BatchAstrometryUtils.convertPositionAndProperMotionGalToEq(l, b, mu_lcosb, mu_b, ra2, dec2, mu_acosd2, mu_d2);
+
+		maxPosErr = 0.0;
+		maxMuErr = 0.0;
+		for(int i=0; i<N; i++) {
+			AstrometryUtils.convertPositionAndProperMotion(l[i], b[i], mu_lcosb[i], mu_b[i], Galactic.rot_E_G, lbmu);
+
+			maxPosErr = Math.max(maxPosErr, Math.abs(Math.IEEEremainder(ra2[i] - lbmu[0], 2.0 * Math.PI)) * Math.cos(lbmu[1]));
+			maxPosErr = Math.max(maxPosErr, Math.abs(dec2[i] - lbmu[1]));
+			double muScale = Math.hypot(lbmu[2], lbmu[3]);
+			maxMuErr = Math.max(maxMuErr, Math.abs(mu_acosd2[i] - lbmu[2]) / muScale);
+			maxMuErr = Math.max(maxMuErr, Math.abs(mu_d2[i] - lbmu[3]) / muScale);
+		}
+
+		System.out.println("Galactic -> Equatorial, "+N+" sources:");
+		System.out.println(" - Max position difference          = "+maxPosErr+" [radians]");
+		System.out.println(" - Max proper motion difference     = "+maxMuErr+" [relative]");
+
+		if(maxPosErr > 1e-14 || maxMuErr > 1e-10) {
+			throw new RuntimeException("Batch and per-star conversions disagree!");
+		}
+	}
+}
@@ -9,6 +9,11 @@ import constants.Units;
 /**
  * Utilities for astrometry.
  * 
+ * Most of the coordinate transformations have two forms: one that takes and returns JAMA {@link Matrix}
+ * objects, and one that uses the primitive {@link Vec3} and {@link Mat3} types and writes the results to
+ * arrays or vectors supplied by the caller. The latter don't allocate any objects, and should be used in
+ * loops over many stars or integration steps; the {@link Matrix} forms are implemented on top of them.
+ * 
  * @author nrowell
  * @version $Id$
  */
@@ -74,6 +79,20 @@ public final class AstrometryUtils
 		return new Matrix(new double[][]{{x},{y},{z}});
 	}
 	
+	/**
+	 * Allocation-free form of {@link #sphericalPolarToCartesian(double, double, double)}.
+	 * @param r		Radial distance [arbitrary; returned vector has same units]
+	 * @param ra	Right ascension (or Galactic longitude) [radians]
+	 * @param dec   Declination (or Galactic latitude) [radians]
+	 * @param out	On exit, contains x,y,z.
+	 * @return		The output vector.
+	 */
+	public static Vec3 sphericalPolarToCartesian(double r, double ra, double dec, Vec3 out)
+	{
+		double cosDec = Math.cos(dec);
+		return out.set(r*Math.cos(ra)*cosDec, r*Math.sin(ra)*cosDec, r*Math.sin(dec));
+	}
+	
 	/**
 	 * Alternative interface to sphericalPolarToCartesian(double r, double ra, double dec),
 	 * where the r, ra and dec components are stored in a 3x1 or 1x3 Matrix.
@@ -116,6 +135,20 @@ public final class AstrometryUtils
 	 * @return		Matrix (3x1) containing r, ra, dec [radians].
 	 */
 	public static Matrix cartesianToSphericalPolar(double x, double y, double z)
+	{
+		double[] sph = cartesianToSphericalPolar(x, y, z, new double[3]);
+		return new Matrix(new double[][]{{sph[0]},{sph[1]},{sph[2]}});
+	}
+	
+	/**
+	 * Allocation-free form of {@link #cartesianToSphericalPolar(double, double, double)}.
+	 * @param x		X component of vector in cartesian coordinates.
+	 * @param y		Y component of vector in cartesian coordinates.
+	 * @param z		Z component of vector in cartesian coordinates.
+	 * @param out	On exit, the first three elements contain r, ra, dec [radians].
+	 * @return		The output array.
+	 */
+	public static double[] cartesianToSphericalPolar(double x, double y, double z, double[] out)
 	{
 		// Length of vector
 		double r = Math.sqrt(x*x + y*y + z*z);
@@ -129,7 +162,21 @@ public final class AstrometryUtils
 		// Shift ra to 0:2pi range
 		ra = translateToRangeZeroToTwoPi(ra);
 		
-		return new Matrix(new double[][]{{r},{ra},{dec}});
+		out[0] = r;
+		out[1] = ra;
+		out[2] = dec;
+		return out;
+	}
+	
+	/**
+	 * Allocation-free form of {@link #cartesianToSphericalPolar(Matrix)}.
+	 * @param v		The vector in cartesian coordinates.
+	 * @param out	On exit, the first three elements contain r, ra, dec [radians].
+	 * @return		The output array.
+	 */
+	public static double[] cartesianToSphericalPolar(Vec3 v, double[] out)
+	{
+		return cartesianToSphericalPolar(v.x, v.y, v.z, out);
 	}
 	
 	/**
@@ -174,21 +221,38 @@ public final class AstrometryUtils
 	 * @return		The angular coordinates in the desired frame [radians]
 	 */
 	public static double[] convertPosition(double ra, double dec, Matrix A) {
+		return convertPosition(ra, dec, new Mat3(A), new double[2]);
+	}
+	
+	/**
+	 * Allocation-free form of {@link #convertPosition(double, double, Matrix)}.
+	 * 
+	 * @param ra	The angular coordinate around the equator [radians]
+	 * @param dec	The angular coordinate perpendicular to the equator [radians]
+	 * @param A		The rotation matrix that rotates vectors from the frame of the input coordinates
+	 * 				to the desired frame of the output coordinates
+	 * @param out	On exit, the first two elements contain the angular coordinates in the desired frame [radians]
+	 * @return		The output array.
+	 */
+	public static double[] convertPosition(double ra, double dec, Mat3 A, double[] out) {
 
 		// Get unit vector in initial frame pointing along direction to ra,dec
-		Matrix r_E = sphericalPolarToCartesian(1.0, ra, dec);
-		
-		// Rotate this to the Galactic frame
-		Matrix r_G = A.times(r_E);
-		
-		// Get corresponding spherical coordinate representation
-		Matrix r_G_sph = cartesianToSphericalPolar(r_G);
-		
-		// Extract longitude and latitude
-		double longitude = r_G_sph.get(1, 0);
-		double latitude  = r_G_sph.get(2, 0);
-		
-		return new double[]{longitude, latitude};
+		double cosDec = Math.cos(dec);
+		double x = Math.cos(ra)*cosDec;
+		double y = Math.sin(ra)*cosDec;
+		double z = Math.sin(dec);
+		
+		// Rotate this to the desired frame
+		double x_out = A.m00*x + A.m01*y + A.m02*z;
+		double y_out = A.m10*x + A.m11*y + A.m12*z;
+		double z_out = A.m20*x + A.m21*y + A.m22*z;
+		
+		// Get corresponding longitude and latitude
+		double r = Math.sqrt(x_out*x_out + y_out*y_out + z_out*z_out);
+		out[0] = translateToRangeZeroToTwoPi(Math.atan2(y_out, x_out));
+		out[1] = Math.asin(z_out/r);
+		
+		return out;
 	}
 	
 	/**
@@ -200,7 +264,7 @@ public final class AstrometryUtils
 	 */
 	public static double[] convertPositionEqToGal(double ra, double dec)
 	{
-		return convertPosition(ra, dec, Galactic.r_G_E);
+		return convertPosition(ra, dec, Galactic.rot_G_E, new double[2]);
 	}
 
 	/**
@@ -212,7 +276,7 @@ public final class AstrometryUtils
 	 */
 	public static double[] convertPositionGalToEq(double lon, double lat)
 	{
-		return convertPosition(lon, lat, Galactic.r_E_G);
+		return convertPosition(lon, lat, Galactic.rot_E_G, new double[2]);
 	}
 	
 	/**
@@ -229,20 +293,50 @@ public final class AstrometryUtils
 	 * @return		The angular coordinates [radians] and proper motions [radians/yr] in the desired frame
 	 */
 	public static double[] convertPositionAndProperMotion(double ra, double dec, double mu_acosd, double mu_d, Matrix A)
+	{
+		return convertPositionAndProperMotion(ra, dec, mu_acosd, mu_d, new Mat3(A), new double[4]);
+	}
+	
+	/**
+	 * Allocation-free form of {@link #convertPositionAndProperMotion(double, double, double, double, Matrix)}.
+	 * 
+	 * @param ra	The angular coordinate around the equator [radians]
+	 * @param dec	The angular coordinate perpendicular to the equator [radians]
+	 * @param mu_acosd
+	 * 				The angular velocity component parallel to the equator [radians/yr]
+	 * @param mu_d	The angular velocity component perpendicular to the equator [radians/yr]
+	 * @param A		The rotation matrix that rotates vectors from the frame of the input coordinates
+	 * 				to the desired frame of the output coordinates
+	 * @param out	On exit, the first four elements contain the angular coordinates [radians] and proper
+	 * 				motions [radians/yr] in the desired frame
+	 * @return		The output array.
+	 */
+	public static double[] convertPositionAndProperMotion(double ra, double dec, double mu_acosd, double mu_d, Mat3 A, double[] out)
 	{
 		// 0) Transform the angular coordinates to the desired frame
-		double[] pos_out = convertPosition(ra, dec, A);
-		
-		// 1) Convert proper motion to proper motion velocity vector by assuming arbitrary distance.
-		Matrix vt_in = getTangentialVelocityVector(1.0, ra, dec, mu_acosd, mu_d);
+		convertPosition(ra, dec, A, out);
+		double ra_out = out[0];
+		double dec_out = out[1];
+		
+		// 1) Convert proper motion to the proper motion vector on the unit sphere (the units are
+		//    irrelevant as the rotation doesn't change them)
+		double sinRa = Math.sin(ra);
+		double cosRa = Math.cos(ra);
+		double sinDec = Math.sin(dec);
+		double x = -sinRa*mu_acosd - cosRa*sinDec*mu_d;
+		double y =  cosRa*mu_acosd - sinRa*sinDec*mu_d;
+		double z =  Math.cos(dec)*mu_d;
 		
 		// 2) Rotate the proper motion vector to the desired frame
-		Matrix vt_out = A.times(vt_in);
+		double x_out = A.m00*x + A.m01*y + A.m02*z;
+		double y_out = A.m10*x + A.m11*y + A.m12*z;
+		double z_out = A.m20*x + A.m21*y + A.m22*z;
 		
 		// 3) Project onto the sky to get the angular motion
-		double[] mu_out = getProperMotionsFromTangentialVelocity(1.0, pos_out[0], pos_out[1], vt_out);
+		out[2] = y_out * Math.cos(ra_out) - x_out * Math.sin(ra_out);
+		out[3] = z_out / Math.cos(dec_out);
 		
-		return new double[]{pos_out[0], pos_out[1], mu_out[0], mu_out[1]};
+		return out;
 	}
 	
 	/**
@@ -262,7 +356,7 @@ public final class AstrometryUtils
 	public static double[] convertPositionAndProperMotionEqToGal(double ra, double dec, double mu_acosd, double mu_d)
 	{
 		// Transform position via 3D rotation of unit vectors
-		return convertPositionAndProperMotion(ra, dec, mu_acosd, mu_d, Galactic.r_G_E);
+		return convertPositionAndProperMotion(ra, dec, mu_acosd, mu_d, Galactic.rot_G_E, new double[4]);
 		
 //		// Alternative method from the Radoslaw Poleski (2013) paper:
 //		
@@ -313,7 +407,7 @@ public final class AstrometryUtils
 	 */
 	public static double[] convertPositionAndProperMotionGalToEq(double l, double b, double mu_lcosb, double mu_b)
 	{
-		return convertPositionAndProperMotion(l, b, mu_lcosb, mu_b, Galactic.r_E_G);
+		return convertPositionAndProperMotion(l, b, mu_lcosb, mu_b, Galactic.rot_E_G, new double[4]);
 	}
 	
 	/**
@@ -335,19 +429,32 @@ public final class AstrometryUtils
 	 * @return		A 3x1 JAMA Matrix containing components of the proper motion vector [km/s]
 	 */
 	public static Matrix getTangentialVelocityVector(double d, double ra, double dec, double mu_acosd, double mu_d) {
+		return getTangentialVelocityVector(d, ra, dec, mu_acosd, mu_d, new Vec3()).toMatrix();
+	}
+	
+	/**
+	 * Allocation-free form of {@link #getTangentialVelocityVector(double, double, double, double, double)}.
+	 * 
+	 * @param d		Distance [pc]
+	 * @param ra	Right ascension (Equatorial) [radians]
+	 * @param dec	Declination (Equatorial) [radians]
+	 * @param mu_acosd	Angular (proper) motion parallel to equator [radians/yr]
+	 * @param mu_d	Angular (proper) motion perpendicular to equator [radians/yr]
+	 * @param out	On exit, contains the components of the proper motion vector [km/s]
+	 * @return		The output vector.
+	 */
+	public static Vec3 getTangentialVelocityVector(double d, double ra, double dec, double mu_acosd, double mu_d, Vec3 out) {
 		
 		// NOTE that the cos(dec) terms have been incorporated into mu_acosd.
 		// These expressions are derived from e.g. dx/dt where x = cos(ra)cos(dec) etc.
 		double x = -Math.sin(ra)*mu_acosd - Math.cos(ra)*Math.sin(dec)*mu_d;
 		double y =  Math.cos(ra)*mu_acosd - Math.sin(ra)*Math.sin(dec)*mu_d;
 		double z =  Math.cos(dec)*mu_d;
-		Matrix vt = new Matrix(new double[][]{{d*x},{d*y},{d*z}});
+		out.set(d*x, d*y, d*z);
 		
 		// Tangential velocity is currently in units of parsecs per year.
 		// Convert to kilometres per second.
-		vt.timesEquals(Units.PARSECS_PER_YEAR_TO_KILOMETRES_PER_SECOND);
-		
-		return vt;
+		return out.timesEquals(Units.PARSECS_PER_YEAR_TO_KILOMETRES_PER_SECOND);
 	}
 	
 	/**
@@ -365,16 +472,36 @@ public final class AstrometryUtils
 	 * frame as the angular coordinates [km/s]
 	 */
 	public static Matrix getTangentialVelocityVector(double ra, double dec, Matrix v) {
+		Vec3 vtan = new Vec3().set(v);
+		return getTangentialVelocityVector(ra, dec, vtan, vtan).toMatrix();
+	}
+	
+	/**
+	 * Allocation-free form of {@link #getTangentialVelocityVector(double, double, Matrix)}.
+	 * 
+	 * @param ra
+	 * 	Angular coordinate parallel to the equator (e.g. right ascension, longitude etc) [radians]
+	 * @param dec
+	 * 	Angular coordinate perpendicular to the equator (e.g. declination, latitude etc) [radians]
+	 * @param v
+	 * 	The 3D space velocity vector, in the same coordinate frame as the angular coordinates [km/s]
+	 * @param out
+	 * 	On exit, contains the tangential velocity vector, in the same coordinate frame as the angular
+	 * coordinates [km/s]; may be the same as the input vector.
+	 * @return
+	 * 	The output vector.
+	 */
+	public static Vec3 getTangentialVelocityVector(double ra, double dec, Vec3 v, Vec3 out) {
 		
-		// 1) Transform v to the normal frame
-		// 2) Set the line-of-sight velocity to zero
-		// 3) Transform resulting velocity vector back to original frame
-		Matrix r_N_E = getNormalFrame(ra, dec);
-		Matrix v_N = r_N_E.times(v);
-		v_N.set(2, 0, 0.0);
-		Matrix vtan_E = r_N_E.transpose().times(v_N);
+		// Subtract the component of v along the line of sight; this is equivalent to transforming
+		// to the normal frame, setting the line-of-sight velocity to zero and transforming back.
+		double cosDec = Math.cos(dec);
+		double rx = cosDec*Math.cos(ra);
+		double ry = cosDec*Math.sin(ra);
+		double rz = Math.sin(dec);
+		double v_r = rx*v.x + ry*v.y + rz*v.z;
 		
-		return vtan_E;
+		return out.set(v.x - v_r*rx, v.y - v_r*ry, v.z - v_r*rz);
 	}
 	
 	/**
@@ -400,11 +527,43 @@ public final class AstrometryUtils
 	 * 				includes the cos(dec) factor in the motion parallel to the equator) [radians/yr]
 	 */
 	public static double[] getProperMotionsFromTangentialVelocity(double d, double ra, double dec, Matrix vtan) {
+		return getProperMotionsFromTangentialVelocity(d, ra, dec, vtan.get(0, 0), vtan.get(1, 0), vtan.get(2, 0), new double[2]);
+	}
+	
+	/**
+	 * Allocation-free form of {@link #getProperMotionsFromTangentialVelocity(double, double, double, Matrix)}.
+	 * 
+	 * @param d		Distance [pc]
+	 * @param ra	Right ascension of the target position [radians]
+	 * @param dec	Declination of the target position [radians]
+	 * @param vtan	Tangential velocity vector [km/s]
+	 * @param out	On exit, the first two elements contain the angular velocity (proper motion) parallel
+	 * 				and perpendicular to the equator [radians/yr]
+	 * @return		The output array.
+	 */
+	public static double[] getProperMotionsFromTangentialVelocity(double d, double ra, double dec, Vec3 vtan, double[] out) {
+		return getProperMotionsFromTangentialVelocity(d, ra, dec, vtan.x, vtan.y, vtan.z, out);
+	}
+	
+	/**
+	 * Implementation of the conversion from tangential velocity to proper motion.
+	 * 
+	 * @param d		Distance [pc]
+	 * @param ra	Right ascension of the target position [radians]
+	 * @param dec	Declination of the target position [radians]
+	 * @param vx	X component of the tangential velocity vector [km/s]
+	 * @param vy	Y component of the tangential velocity vector [km/s]
+	 * @param vz	Z component of the tangential velocity vector [km/s]
+	 * @param out	On exit, the first two elements contain the proper motions [radians/yr]
+	 * @return		The output array.
+	 */
+	private static double[] getProperMotionsFromTangentialVelocity(double d, double ra, double dec,
+			double vx, double vy, double vz, double[] out) {
 		
-		// Retrieve the components and divide out the distance
-		double x_dot = vtan.get(0, 0) / d;
-		double y_dot = vtan.get(1, 0) / d;
-		double z_dot = vtan.get(2, 0) / d;
+		// Divide out the distance
+		double x_dot = vx / d;
+		double y_dot = vy / d;
+		double z_dot = vz / d;
 		
 		// Convert to parsecs per year
 		x_dot *= Units.KILOMETRES_PER_SECOND_TO_PARSECS_PER_YEAR;
@@ -414,7 +573,9 @@ public final class AstrometryUtils
 		double mu_d = z_dot / Math.cos(dec);
 		double mu_acosd = y_dot * Math.cos(ra) - x_dot * Math.sin(ra);
 		
-		return new double[]{mu_acosd, mu_d};
+		out[0] = mu_acosd;
+		out[1] = mu_d;
+		return out;
 	}
 	
 	/**
@@ -444,23 +605,17 @@ public final class AstrometryUtils
 	 */
 	public static Matrix getNormalFrame(double ra, double dec)
 	{
-		
-		// Transformation from Equatorial -> Normal frame
-		
-		// Basis vectors of Normal frame, expressed in input frame (Equatorial, Galactic, ...)
-		double[] p = new double[]{-Math.sin(ra), Math.cos(ra), 0};
-		double[] q = new double[]{-Math.sin(dec)*Math.cos(ra),-Math.sin(dec)*Math.sin(ra), Math.cos(dec)};
-		double[] r = new double[]{ Math.cos(dec)*Math.cos(ra), Math.cos(dec)*Math.sin(ra), Math.sin(dec)};
-		
-		// Rows consist of the basis vectors of the Normal frame, expressed in the
-		// input frame.
-		double[][] rne = new double[][]{p,q,r};
-		
-		// This Matrix transforms 3x1 column vectors FROM the input frame TO the Normal
-		// frame by right-multiplication.
-		Matrix r_N_E = new Matrix(rne);
-		return r_N_E;
-		
+		double sinRa = Math.sin(ra);
+		double cosRa = Math.cos(ra);
+		double sinDec = Math.sin(dec);
+		double cosDec = Math.cos(dec);
+		
+		// Rows consist of the basis vectors of the Normal frame (p,q,r), expressed in the
+		// input frame (Equatorial, Galactic, ...). This Matrix transforms 3x1 column vectors
+		// FROM the input frame TO the Normal frame by right-multiplication.
+		return new Matrix(new double[][]{{-sinRa,         cosRa,         0},
+		                                 {-sinDec*cosRa, -sinDec*sinRa,  cosDec},
+		                                 { cosDec*cosRa,  cosDec*sinRa,  sinDec}});
 	}
 	
 	/**
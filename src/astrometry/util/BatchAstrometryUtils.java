@@ -0,0 +1,326 @@
+package astrometry.util;
+
+import java.util.stream.IntStream;
+
+import constants.Galactic;
+import constants.Units;
+
+/**
+ * Utilities for transforming the positions and proper motions of whole catalogues of sources between
+ * coordinate frames, and for computing their tangential velocities. The catalogue is stored as primitive column
+ * arrays (one array per quantity) and the results are written to output columns supplied by the caller.
+ *
+ * The computations are equivalent to applying {@link AstrometryUtils#convertPositionAndProperMotion(double, double, double, double, Mat3, double[])}
+ * and {@link AstrometryUtils#getTangentialVelocityVector(double, double, double, double, double, Vec3)} to each
+ * source, but the rows are divided into blocks that are processed in parallel on the common fork-join pool,
+ * and within each block the loop body is straight-line arithmetic on the columns with no object allocation
+ * or method calls other than the trigonometric functions. The rotated position unit vectors are used directly
+ * to obtain the sines and cosines of the output coordinates, which saves several trigonometric function
+ * evaluations per source.
+ *
+ * The two steps are separate so that corrections can be applied to the proper motions in between, e.g.
+ * subtracting the contribution of Galactic rotation before computing the peculiar tangential velocity.
+ *
+ * Parallaxes are in milliarcseconds, as in the Gaia catalogues, so that the distance in parsecs is 1000 divided
+ * by the parallax. Angles and proper motions are in radians and radians/yr, as elsewhere in
+ * {@link AstrometryUtils}; Gaia proper motions in mas/yr must be multiplied by {@link Units#MILLIARCSEC_TO_RADIANS}.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public final class BatchAstrometryUtils {
+
+	/**
+	 * Number of rows in each block of the catalogue processed by a single task.
+	 */
+	private static final int BLOCK_SIZE = 16384;
+
+	/**
+	 * Private constructor to enforce non-instantiability.
+	 */
+	private BatchAstrometryUtils() {
+
+	}
+
+	/**
+	 * Converts positions and proper motions from the Equatorial frame to the Galactic frame.
+	 *
+	 * @param ra
+	 * 	Right ascension (Equatorial) [radians]
+	 * @param dec
+	 * 	Declination (Equatorial) [radians]
+	 * @param mu_acosd
+	 * 	Angular (proper) motion parallel to equator [radians/yr]
+	 * @param mu_d
+	 * 	Angular (proper) motion perpendicular to equator [radians/yr]
+	 * @param l
+	 * 	On exit, contains the Galactic longitude [radians]
+	 * @param b
+	 * 	On exit, contains the Galactic latitude [radians]
+	 * @param mu_lcosb
+	 * 	On exit, contains the proper motion parallel to the Galactic equator [radians/yr]
+	 * @param mu_b
+	 * 	On exit, contains the proper motion perpendicular to the Galactic equator [radians/yr]
+	 */
+	public static void convertPositionAndProperMotionEqToGal(double[] ra, double[] dec, double[] mu_acosd, double[] mu_d,
+			double[] l, double[] b, double[] mu_lcosb, double[] mu_b) {
+		convertPositionAndProperMotion(ra, dec, mu_acosd, mu_d, Galactic.rot_G_E, l, b, mu_lcosb, mu_b);
+	}
+
+	/**
+	 * Converts positions and proper motions from the Galactic frame to the Equatorial frame.
+	 *
+	 * @param l
+	 * 	Galactic longitude [radians]
+	 * @param b
+	 * 	Galactic latitude [radians]
+	 * @param mu_lcosb
+	 * 	Proper motion parallel to the Galactic equator [radians/yr]
+	 * @param mu_b
+	 * 	Proper motion perpendicular to the Galactic equator [radians/yr]
+	 * @param ra
+	 * 	On exit, contains the right ascension [radians]
+	 * @param dec
+	 * 	On exit, contains the declination [radians]
+	 * @param mu_acosd
+	 * 	On exit, contains the proper motion parallel to the equator [radians/yr]
+	 * @param mu_d
+	 * 	On exit, contains the proper motion perpendicular to the equator [radians/yr]
+	 */
+	public static void convertPositionAndProperMotionGalToEq(double[] l, double[] b, double[] mu_lcosb, double[] mu_b,
+			double[] ra, double[] dec, double[] mu_acosd, double[] mu_d) {
+		convertPositionAndProperMotion(l, b, mu_lcosb, mu_b, Galactic.rot_E_G, ra, dec, mu_acosd, mu_d);
+	}
+
+	/**
+	 * General method for converting angular coordinates and proper motions from one frame to another. The
+	 * variable names refer to right ascension and declination only for convenience.
+	 *
+	 * @param ra
+	 * 	The angular coordinate around the equator [radians]
+	 * @param dec
+	 * 	The angular coordinate perpendicular to the equator [radians]
+	 * @param mu_acosd
+	 * 	The angular velocity component parallel to the equator [radians/yr]
+	 * @param mu_d
+	 * 	The angular velocity component perpendicular to the equator [radians/yr]
+	 * @param A
+	 * 	The rotation matrix that rotates vectors from the frame of the input coordinates to the desired frame
+	 * of the output coordinates
+	 * @param ra_out
+	 * 	On exit, contains the angular coordinate around the equator in the desired frame [radians]
+	 * @param dec_out
+	 * 	On exit, contains the angular coordinate perpendicular to the equator in the desired frame [radians]
+	 * @param mu_acosd_out
+	 * 	On exit, contains the angular velocity component parallel to the equator in the desired frame [radians/yr]
+	 * @param mu_d_out
+	 * 	On exit, contains the angular velocity component perpendicular to the equator in the desired frame [radians/yr]
+	 */
+	public static void convertPositionAndProperMotion(final double[] ra, final double[] dec, final double[] mu_acosd,
+			final double[] mu_d, final Mat3 A, final double[] ra_out, final double[] dec_out,
+			final double[] mu_acosd_out, final double[] mu_d_out) {
+
+		final int n = ra.length;
+		checkLength(n, dec, "dec");
+		checkLength(n, mu_acosd, "mu_acosd");
+		checkLength(n, mu_d, "mu_d");
+		checkLength(n, ra_out, "ra_out");
+		checkLength(n, dec_out, "dec_out");
+		checkLength(n, mu_acosd_out, "mu_acosd_out");
+		checkLength(n, mu_d_out, "mu_d_out");
+
+		// Each block writes to its own elements of the output columns
+		IntStream.range(0, getNumberOfBlocks(n)).parallel().forEach(block -> {
+			int from = block * BLOCK_SIZE;
+			int to = Math.min(n, from + BLOCK_SIZE);
+			convertBlock(ra, dec, mu_acosd, mu_d, A, ra_out, dec_out, mu_acosd_out, mu_d_out, from, to);
+		});
+	}
+
+	/**
+	 * Computes the tangential velocity vector of each source from its angular coordinates, proper motion and
+	 * parallax. The vector is in the same frame as the angular coordinates, and the variable names refer to
+	 * right ascension and declination only for convenience.
+	 *
+	 * @param ra
+	 * 	The angular coordinate around the equator [radians]
+	 * @param dec
+	 * 	The angular coordinate perpendicular to the equator [radians]
+	 * @param mu_acosd
+	 * 	The angular velocity component parallel to the equator [radians/yr]
+	 * @param mu_d
+	 * 	The angular velocity component perpendicular to the equator [radians/yr]
+	 * @param parallax
+	 * 	Parallax [mas]
+	 * @param vx
+	 * 	On exit, contains the X component of the tangential velocity vector [km/s]
+	 * @param vy
+	 * 	On exit, contains the Y component of the tangential velocity vector [km/s]
+	 * @param vz
+	 * 	On exit, contains the Z component of the tangential velocity vector [km/s]
+	 */
+	public static void getTangentialVelocityVector(final double[] ra, final double[] dec, final double[] mu_acosd,
+			final double[] mu_d, final double[] parallax, final double[] vx, final double[] vy, final double[] vz) {
+
+		final int n = ra.length;
+		checkLength(n, dec, "dec");
+		checkLength(n, mu_acosd, "mu_acosd");
+		checkLength(n, mu_d, "mu_d");
+		checkLength(n, parallax, "parallax");
+		checkLength(n, vx, "vx");
+		checkLength(n, vy, "vy");
+		checkLength(n, vz, "vz");
+
+		IntStream.range(0, getNumberOfBlocks(n)).parallel().forEach(block -> {
+			int from = block * BLOCK_SIZE;
+			int to = Math.min(n, from + BLOCK_SIZE);
+			velocityBlock(ra, dec, mu_acosd, mu_d, parallax, vx, vy, vz, from, to);
+		});
+	}
+
+	/**
+	 * Convert the positions and proper motions of the rows in the given range.
+	 *
+	 * @param ra
+	 * 	The angular coordinate around the equator [radians]
+	 * @param dec
+	 * 	The angular coordinate perpendicular to the equator [radians]
+	 * @param mu_acosd
+	 * 	The angular velocity component parallel to the equator [radians/yr]
+	 * @param mu_d
+	 * 	The angular velocity component perpendicular to the equator [radians/yr]
+	 * @param A
+	 * 	The rotation matrix.
+	 * @param ra_out
+	 * 	On exit, contains the angular coordinate around the equator in the desired frame [radians]
+	 * @param dec_out
+	 * 	On exit, contains the angular coordinate perpendicular to the equator in the desired frame [radians]
+	 * @param mu_acosd_out
+	 * 	On exit, contains the angular velocity component parallel to the equator in the desired frame [radians/yr]
+	 * @param mu_d_out
+	 * 	On exit, contains the angular velocity component perpendicular to the equator in the desired frame [radians/yr]
+	 * @param from
+	 * 	The first row (inclusive).
+	 * @param to
+	 * 	The last row (exclusive).
+	 */
+	private static void convertBlock(double[] ra, double[] dec, double[] mu_acosd, double[] mu_d, Mat3 A,
+			double[] ra_out, double[] dec_out, double[] mu_acosd_out, double[] mu_d_out, int from, int to) {
+
+		final double a00 = A.m00, a01 = A.m01, a02 = A.m02;
+		final double a10 = A.m10, a11 = A.m11, a12 = A.m12;
+		final double a20 = A.m20, a21 = A.m21, a22 = A.m22;
+
+		for(int i=from; i<to; i++) {
+
+			double sinRa = Math.sin(ra[i]);
+			double cosRa = Math.cos(ra[i]);
+			double sinDec = Math.sin(dec[i]);
+			double cosDec = Math.cos(dec[i]);
+
+			// Unit vector towards the source and proper motion vector in the input frame
+			double x = cosRa*cosDec;
+			double y = sinRa*cosDec;
+			double z = sinDec;
+			double px = -sinRa*mu_acosd[i] - cosRa*sinDec*mu_d[i];
+			double py =  cosRa*mu_acosd[i] - sinRa*sinDec*mu_d[i];
+			double pz =  cosDec*mu_d[i];
+
+			// Rotate to the output frame
+			double X = a00*x + a01*y + a02*z;
+			double Y = a10*x + a11*y + a12*z;
+			double Z = a20*x + a21*y + a22*z;
+			double PX = a00*px + a01*py + a02*pz;
+			double PY = a10*px + a11*py + a12*pz;
+			double PZ = a20*px + a21*py + a22*pz;
+
+			// Sine and cosine of the output angular coordinates, from the rotated unit vector
+			double r = Math.sqrt(X*X + Y*Y + Z*Z);
+			double rho = Math.sqrt(X*X + Y*Y);
+			double cosRaOut = rho > 0.0 ? X / rho : 1.0;
+			double sinRaOut = rho > 0.0 ? Y / rho : 0.0;
+			double cosDecOut = rho / r;
+
+			double raOut = Math.atan2(Y, X);
+			ra_out[i] = raOut < 0.0 ? raOut + 2.0*Math.PI : raOut;
+			dec_out[i] = Math.asin(Z / r);
+
+			// Project the rotated proper motion vector onto the sky
+			mu_acosd_out[i] = PY*cosRaOut - PX*sinRaOut;
+			mu_d_out[i] = PZ / cosDecOut;
+		}
+	}
+
+	/**
+	 * Compute the tangential velocity vectors of the rows in the given range.
+	 *
+	 * @param ra
+	 * 	The angular coordinate around the equator [radians]
+	 * @param dec
+	 * 	The angular coordinate perpendicular to the equator [radians]
+	 * @param mu_acosd
+	 * 	The angular velocity component parallel to the equator [radians/yr]
+	 * @param mu_d
+	 * 	The angular velocity component perpendicular to the equator [radians/yr]
+	 * @param parallax
+	 * 	Parallax [mas]
+	 * @param vx
+	 * 	On exit, contains the X component of the tangential velocity vector [km/s]
+	 * @param vy
+	 * 	On exit, contains the Y component of the tangential velocity vector [km/s]
+	 * @param vz
+	 * 	On exit, contains the Z component of the tangential velocity vector [km/s]
+	 * @param from
+	 * 	The first row (inclusive).
+	 * @param to
+	 * 	The last row (exclusive).
+	 */
+	private static void velocityBlock(double[] ra, double[] dec, double[] mu_acosd, double[] mu_d, double[] parallax,
+			double[] vx, double[] vy, double[] vz, int from, int to) {
+
+		final double k = Units.PARSECS_PER_YEAR_TO_KILOMETRES_PER_SECOND;
+
+		for(int i=from; i<to; i++) {
+
+			double sinRa = Math.sin(ra[i]);
+			double cosRa = Math.cos(ra[i]);
+			double sinDec = Math.sin(dec[i]);
+			double cosDec = Math.cos(dec[i]);
+
+			// Scale the proper motion vector by the distance [pc] and the conversion to [km/s]
+			double dk = k * 1000.0 / parallax[i];
+			vx[i] = dk * (-sinRa*mu_acosd[i] - cosRa*sinDec*mu_d[i]);
+			vy[i] = dk * ( cosRa*mu_acosd[i] - sinRa*sinDec*mu_d[i]);
+			vz[i] = dk * ( cosDec*mu_d[i]);
+		}
+	}
+
+	/**
+	 * Get the number of blocks that a catalogue is divided into.
+	 *
+	 * @param n
+	 * 	The number of rows.
+	 * @return
+	 * 	The number of blocks.
+	 */
+	private static int getNumberOfBlocks(int n) {
+		return (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	}
+
+	/**
+	 * Check that a column has the expected number of rows.
+	 *
+	 * @param n
+	 * 	The expected number of rows.
+	 * @param column
+	 * 	The column.
+	 * @param name
+	 * 	The name of the column, for the error message.
+	 */
+	private static void checkLength(int n, double[] column, String name) {
+		if(column == null || column.length != n) {
+			throw new IllegalArgumentException("Column "+name+" must have "+n+" rows! Found "
+					+ (column == null ? "null" : column.length));
+		}
+	}
+}
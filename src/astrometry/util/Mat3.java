@@ -0,0 +1,138 @@
+package astrometry.util;
+
+import Jama.Matrix;
+
+/**
+ * Immutable 3x3 matrix of primitive doubles, used in place of 3x3 JAMA {@link Matrix} objects for the rotations
+ * between coordinate frames that are applied per star or per integration step. Products with vectors are written
+ * to an output {@link Vec3} supplied by the caller, which may be the same as the input, so that repeated
+ * transformations don't allocate any objects. The elements are final, so instances can be shared freely, e.g.
+ * as the constant rotations in {@link constants.Galactic}.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public final class Mat3 {
+
+	/**
+	 * Elements of the matrix, labelled by row then column.
+	 */
+	public final double m00, m01, m02, m10, m11, m12, m20, m21, m22;
+
+	/**
+	 * Main constructor; the elements are given by row then column.
+	 */
+	public Mat3(double m00, double m01, double m02, double m10, double m11, double m12, double m20, double m21, double m22) {
+		this.m00 = m00;
+		this.m01 = m01;
+		this.m02 = m02;
+		this.m10 = m10;
+		this.m11 = m11;
+		this.m12 = m12;
+		this.m20 = m20;
+		this.m21 = m21;
+		this.m22 = m22;
+	}
+
+	/**
+	 * Constructor from a 3x3 array of elements.
+	 *
+	 * @param a
+	 * 	The elements, indexed by [row][column].
+	 */
+	public Mat3(double[][] a) {
+		this(a[0][0], a[0][1], a[0][2], a[1][0], a[1][1], a[1][2], a[2][0], a[2][1], a[2][2]);
+	}
+
+	/**
+	 * Constructor from a 3x3 {@link Matrix}.
+	 *
+	 * @param m
+	 * 	The {@link Matrix}.
+	 */
+	public Mat3(Matrix m) {
+		this(checkDimensions(m).getArray());
+	}
+
+	/**
+	 * Check that a {@link Matrix} is 3x3.
+	 *
+	 * @param m
+	 * 	The {@link Matrix}.
+	 * @return
+	 * 	The same {@link Matrix}.
+	 */
+	private static Matrix checkDimensions(Matrix m) {
+		if(m.getRowDimension()!=3 || m.getColumnDimension()!=3) {
+			throw new RuntimeException("Matrix must be 3x3!");
+		}
+		return m;
+	}
+
+	/**
+	 * Right multiply the matrix by a vector.
+	 *
+	 * @param v
+	 * 	The input vector.
+	 * @param out
+	 * 	On exit, contains the product; may be the same as the input vector.
+	 * @return
+	 * 	The output vector.
+	 */
+	public Vec3 times(Vec3 v, Vec3 out) {
+		return out.set(m00*v.x + m01*v.y + m02*v.z,
+		               m10*v.x + m11*v.y + m12*v.z,
+		               m20*v.x + m21*v.y + m22*v.z);
+	}
+
+	/**
+	 * Right multiply the transpose of the matrix by a vector; for a rotation matrix this applies the
+	 * inverse rotation.
+	 *
+	 * @param v
+	 * 	The input vector.
+	 * @param out
+	 * 	On exit, contains the product; may be the same as the input vector.
+	 * @return
+	 * 	The output vector.
+	 */
+	public Vec3 transposeTimes(Vec3 v, Vec3 out) {
+		return out.set(m00*v.x + m10*v.y + m20*v.z,
+		               m01*v.x + m11*v.y + m21*v.z,
+		               m02*v.x + m12*v.y + m22*v.z);
+	}
+
+	/**
+	 * Right multiply the matrix by another matrix.
+	 *
+	 * @param b
+	 * 	The other matrix.
+	 * @return
+	 * 	A new matrix containing the product.
+	 */
+	public Mat3 times(Mat3 b) {
+		return new Mat3(m00*b.m00 + m01*b.m10 + m02*b.m20, m00*b.m01 + m01*b.m11 + m02*b.m21, m00*b.m02 + m01*b.m12 + m02*b.m22,
+		                m10*b.m00 + m11*b.m10 + m12*b.m20, m10*b.m01 + m11*b.m11 + m12*b.m21, m10*b.m02 + m11*b.m12 + m12*b.m22,
+		                m20*b.m00 + m21*b.m10 + m22*b.m20, m20*b.m01 + m21*b.m11 + m22*b.m21, m20*b.m02 + m21*b.m12 + m22*b.m22);
+	}
+
+	/**
+	 * Get the transpose of the matrix.
+	 *
+	 * @return
+	 * 	A new matrix containing the transpose.
+	 */
+	public Mat3 transpose() {
+		return new Mat3(m00, m10, m20, m01, m11, m21, m02, m12, m22);
+	}
+
+	/**
+	 * Get the matrix as a new 3x3 {@link Matrix}.
+	 *
+	 * @return
+	 * 	A 3x3 {@link Matrix} containing the elements of the matrix.
+	 */
+	public Matrix toMatrix() {
+		return new Matrix(new double[][]{{m00, m01, m02}, {m10, m11, m12}, {m20, m21, m22}});
+	}
+}
@@ -0,0 +1,145 @@
+package astrometry.util;
+
+import Jama.Matrix;
+
+/**
+ * Mutable 3-vector of primitive doubles, used in place of 3x1 JAMA {@link Matrix} objects in the coordinate
+ * transformations that are applied per star or per integration step, where allocating a new {@link Matrix}
+ * for every intermediate result dominates the cost. Operations either modify the vector in place or write the
+ * result to an output vector supplied by the caller, which may be the same as the input.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public final class Vec3 {
+
+	/**
+	 * The X component.
+	 */
+	public double x;
+
+	/**
+	 * The Y component.
+	 */
+	public double y;
+
+	/**
+	 * The Z component.
+	 */
+	public double z;
+
+	/**
+	 * Default constructor; creates the zero vector.
+	 */
+	public Vec3() {
+
+	}
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param x
+	 * 	The X component.
+	 * @param y
+	 * 	The Y component.
+	 * @param z
+	 * 	The Z component.
+	 */
+	public Vec3(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	/**
+	 * Set the components of the vector.
+	 *
+	 * @param x
+	 * 	The X component.
+	 * @param y
+	 * 	The Y component.
+	 * @param z
+	 * 	The Z component.
+	 * @return
+	 * 	This vector.
+	 */
+	public Vec3 set(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		return this;
+	}
+
+	/**
+	 * Set the components of the vector from a 3x1 or 1x3 {@link Matrix}.
+	 *
+	 * @param m
+	 * 	The {@link Matrix}.
+	 * @return
+	 * 	This vector.
+	 */
+	public Vec3 set(Matrix m) {
+		if(m.getRowDimension()==3 && m.getColumnDimension()==1) {
+			return set(m.get(0, 0), m.get(1, 0), m.get(2, 0));
+		}
+		else if(m.getRowDimension()==1 && m.getColumnDimension()==3) {
+			return set(m.get(0, 0), m.get(0, 1), m.get(0, 2));
+		}
+		throw new RuntimeException("Vector must be 3x1 or 1x3!");
+	}
+
+	/**
+	 * Multiply the vector by a scalar in place.
+	 *
+	 * @param s
+	 * 	The scalar.
+	 * @return
+	 * 	This vector.
+	 */
+	public Vec3 timesEquals(double s) {
+		x *= s;
+		y *= s;
+		z *= s;
+		return this;
+	}
+
+	/**
+	 * Compute the dot product of this vector with another.
+	 *
+	 * @param v
+	 * 	The other vector.
+	 * @return
+	 * 	The dot product.
+	 */
+	public double dot(Vec3 v) {
+		return x*v.x + y*v.y + z*v.z;
+	}
+
+	/**
+	 * Compute the length of the vector.
+	 *
+	 * @return
+	 * 	The length of the vector.
+	 */
+	public double norm() {
+		return Math.sqrt(x*x + y*y + z*z);
+	}
+
+	/**
+	 * Get the vector as a new 3x1 {@link Matrix}.
+	 *
+	 * @return
+	 * 	A 3x1 {@link Matrix} containing the components of the vector.
+	 */
+	public Matrix toMatrix() {
+		return new Matrix(new double[][]{{x},{y},{z}});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "(" + x + ", " + y + ", " + z + ")";
+	}
+}
@@ -1,6 +1,7 @@
 package constants;
 
 import Jama.Matrix;
+import astrometry.util.Mat3;
 
 /**
  * 
@@ -97,6 +98,18 @@ public class Galactic
      * r_E = r_E_G * r_G
      */
     public static final Matrix r_E_G = r_G_E.transpose();
+    
+    /**
+     * {@link Mat3} equivalent of {@link #r_G_E}, for transforming vectors from Equatorial to Galactic
+     * coordinates without allocating any objects.
+     */
+    public static final Mat3 rot_G_E = new Mat3(rge);
+    
+    /**
+     * {@link Mat3} equivalent of {@link #r_E_G}, for transforming vectors from Galactic to Equatorial
+     * coordinates without allocating any objects.
+     */
+    public static final Mat3 rot_E_G = rot_G_E.transpose();
 
 	
     //+++ Disks scaleheight [parsecs] +++//
@@ -21,6 +21,16 @@ public abstract class DensityProfile {
 	 */
 	public abstract double getDensity(double r, double ra, double dec);
 	
+	/**
+	 * Returns a {@link LineOfSightDensity} bound to the given line of sight, for evaluating the density
+	 * at many distances along it without repeating the calculations that depend only on the direction.
+	 * 
+	 * @param ra	Right ascension towards line of sight [radians]
+	 * @param dec	Declination towards line of sight [radians]
+	 * @return		The {@link LineOfSightDensity} along the given line of sight.
+	 */
+	public abstract LineOfSightDensity getLineOfSightDensity(double ra, double dec);
+	
 	/**
 	 * Forces extending classes to override this method and provide a
 	 * meaningful description of themselves.
@@ -1,8 +1,7 @@
 package density;
 
 import constants.Galactic;
-import Jama.Matrix;
-import astrometry.util.AstrometryUtils;
+import astrometry.util.Mat3;
 
 /**
  * Represents populations whose density falls off as an exponential
@@ -27,18 +26,43 @@ public class ExponentialDisk extends DensityProfile {
 	public double getDensity(double r, double ra, double dec) {
 		
 		// Position vector of point in Cartesian coordinates, equatorial frame:
-		Matrix r_E = AstrometryUtils.sphericalPolarToCartesian(r, ra, dec);
+		double cosDec = Math.cos(dec);
+		double x_E = r*Math.cos(ra)*cosDec;
+		double y_E = r*Math.sin(ra)*cosDec;
+		double z_E = r*Math.sin(dec);
 		
-		// Rotate this to Galactic frame.
-		Matrix r_G = Galactic.r_G_E.times(r_E);
-		
-		// The Z component gives the Galactic plane distance.
-		double z = r_G.get(2, 0);
+		// Rotate this to Galactic frame; the Z component gives the Galactic plane distance.
+		Mat3 r_G_E = Galactic.rot_G_E;
+		double z = r_G_E.m20*x_E + r_G_E.m21*y_E + r_G_E.m22*z_E;
 		
 		// Apply exponential density model.
 		return Math.exp(-Math.abs(z)/H);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LineOfSightDensity getLineOfSightDensity(double ra, double dec) {
+		
+		// Galactic Z component of the unit vector along the line of sight; the distance to the
+		// Galactic plane is proportional to the range along the line of sight.
+		double cosDec = Math.cos(dec);
+		Mat3 r_G_E = Galactic.rot_G_E;
+		double z = r_G_E.m20*Math.cos(ra)*cosDec + r_G_E.m21*Math.sin(ra)*cosDec + r_G_E.m22*Math.sin(dec);
+		
+		// Reciprocal of the scalelength of the density along the line of sight [pc^{-1}]
+		final double k = Math.abs(z)/H;
+		
+		return new LineOfSightDensity(ra, dec) {
+			
+			@Override
+			public double getDensity(double r) {
+				return Math.exp(-k*r);
+			}
+		};
+	}
+	
 	/**
 	 * Text description of profile.
 	 */
@@ -0,0 +1,76 @@
+package density;
+
+/**
+ * Represents the density profile of a stellar population along a fixed line of sight, as a function of
+ * the distance only. Instances are obtained from {@link DensityProfile#getLineOfSightDensity(double, double)}
+ * and precompute whatever depends on the direction, so that the density can be evaluated cheaply at many
+ * distances along the line of sight, as in the survey volume integrals.
+ * 
+ * @author nrowell
+ * @version $Id$
+ */
+public abstract class LineOfSightDensity {
+	
+	/**
+	 * Right ascension towards line of sight [radians]
+	 */
+	protected final double ra;
+	
+	/**
+	 * Declination towards line of sight [radians]
+	 */
+	protected final double dec;
+	
+	/**
+	 * Main constructor.
+	 * 
+	 * @param ra	Right ascension towards line of sight [radians]
+	 * @param dec	Declination towards line of sight [radians]
+	 */
+	protected LineOfSightDensity(double ra, double dec) {
+		this.ra = ra;
+		this.dec = dec;
+	}
+	
+	/**
+	 * Returns the stellar density at the given distance along the LOS,
+	 * relative to that at the Sun [pc^{-3}].
+	 * 
+	 * @param r		Range along line of sight [parsecs]
+	 * @return		The density relative to that at the Sun.
+	 */
+	public abstract double getDensity(double r);
+	
+	/**
+	 * Computes the stellar density relative to that at the Sun at each of a set of equally spaced
+	 * distances along the LOS, i.e. at r_0 + i * r_step for i = 0, 1, ..., density.length - 1.
+	 * Subclasses may override this where the density can be computed more efficiently on a regular grid.
+	 * 
+	 * @param r_0		Range of the first point along the line of sight [parsecs]
+	 * @param r_step	Step in range between consecutive points [parsecs]
+	 * @param density	On exit, contains the density relative to that at the Sun at each point.
+	 */
+	public void getDensity(double r_0, double r_step, double[] density) {
+		for(int i=0; i<density.length; i++) {
+			density[i] = getDensity(r_0 + i*r_step);
+		}
+	}
+	
+	/**
+	 * Get the right ascension towards the line of sight.
+	 * @return
+	 * 	The right ascension towards the line of sight [radians]
+	 */
+	public double getRa() {
+		return ra;
+	}
+	
+	/**
+	 * Get the declination towards the line of sight.
+	 * @return
+	 * 	The declination towards the line of sight [radians]
+	 */
+	public double getDec() {
+		return dec;
+	}
+}
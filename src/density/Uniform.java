@@ -1,5 +1,7 @@
 package density;
 
+import java.util.Arrays;
+
 /**
  * Represents spatially homogeneous populations, i.e. the spheroid.
  * @author nrowell
@@ -19,6 +21,23 @@ public class Uniform extends DensityProfile {
 		return 1.0;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LineOfSightDensity getLineOfSightDensity(double ra, double dec) {
+		return new LineOfSightDensity(ra, dec) {
+			@Override
+			public double getDensity(double r) {
+				return 1.0;
+			}
+			@Override
+			public void getDensity(double r_0, double r_step, double[] density) {
+				Arrays.fill(density, 1.0);
+			}
+		};
+	}
+	
 	/**
 	 * Text description of profile.
 	 */
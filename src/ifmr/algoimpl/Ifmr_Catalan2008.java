@@ -14,6 +14,11 @@ import ifmr.algo.BaseIfmr;
  */
 public class Ifmr_Catalan2008 extends BaseIfmr {
 
+	/**
+	 * The name of this IFMR.
+	 */
+	public static final String NAME = "Catalan et al. (2008)";
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -67,6 +72,6 @@ public class Ifmr_Catalan2008 extends BaseIfmr {
 	 * {@inheritDoc}
 	 */
     @Override
-    public String toString(){ return "Catalan et al. (2008)";}
+    public String toString(){ return NAME;}
 
 }
@@ -11,6 +11,11 @@ import ifmr.algo.BaseIfmr;
  * @author nickrowell
  */
 public class Ifmr_Cummings2018 extends BaseIfmr {
+
+	/**
+	 * The name of this IFMR.
+	 */
+	public static final String NAME = "Cummings et al (2018)";
 	
 	/**
 	 * Coefficients of segment 1 (initial mass 0.83 -> 2.85 M_{solar}, final mass 0.5554 -> 0.717 M_{solar})
@@ -111,6 +116,6 @@ public class Ifmr_Cummings2018 extends BaseIfmr {
 	 * {@inheritDoc}
 	 */
     @Override
-    public String toString(){ return "Cummings et al (2018)";}
+    public String toString(){ return NAME;}
     
 }
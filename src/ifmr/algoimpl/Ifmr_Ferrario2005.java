@@ -13,6 +13,11 @@ import ifmr.algo.BaseIfmr;
  * @author nickrowell
  */
 public class Ifmr_Ferrario2005 extends BaseIfmr {
+
+	/**
+	 * The name of this IFMR.
+	 */
+	public static final String NAME = "Ferrario (2005) linear";
 	
 	/**
 	 * Parameter A of linear model mf = A*(mi) + B
@@ -47,7 +52,7 @@ public class Ifmr_Ferrario2005 extends BaseIfmr {
 	 * {@inheritDoc}
 	 */
     @Override
-    public String toString(){ return "Ferrario (2005) linear";}
+    public String toString(){ return NAME;}
     
     
     
@@ -11,6 +11,11 @@ import ifmr.algo.BaseIfmr;
  */
 public class Ifmr_Kalirai2008 extends BaseIfmr {
 
+	/**
+	 * The name of this IFMR.
+	 */
+	public static final String NAME = "Kalirai et al. (2008)";
+
 	/**
 	 * Parameter A of linear model mf = A*(mi) + B
 	 */
@@ -44,5 +49,5 @@ public class Ifmr_Kalirai2008 extends BaseIfmr {
 	 * {@inheritDoc}
 	 */
     @Override
-    public String toString(){ return "Kalirai et al. (2008)";}
+    public String toString(){ return NAME;}
 }
@@ -10,6 +10,11 @@ import ifmr.algo.BaseIfmr;
  * @author nickrowell
  */
 public class Ifmr_Kalirai2009 extends BaseIfmr {
+
+	/**
+	 * The name of this IFMR.
+	 */
+	public static final String NAME = "Kalirai et al. (2009)";
 	
 	/**
 	 * Parameter A of linear model mf = A*(mi) + B
@@ -45,6 +50,6 @@ public class Ifmr_Kalirai2009 extends BaseIfmr {
 	 * {@inheritDoc}
 	 */
     @Override
-    public String toString(){ return "Kalirai et al. (2009)";}
+    public String toString(){ return NAME;}
 	    
 }
@@ -19,6 +19,11 @@ import numeric.functions.MonotonicLinear;
  */
 public class Ifmr_Renedo2010_Z0p01 extends BaseIfmr {
 
+	/**
+	 * The name of this IFMR.
+	 */
+	public static final String NAME = "Renedo et al. (2010)";
+
 	/**
 	 * Initial mass points.
 	 */
@@ -77,7 +82,7 @@ public class Ifmr_Renedo2010_Z0p01 extends BaseIfmr {
 	 */
     @Override
     public String toString() {
-    	return "Renedo et al. (2010)";
+    	return NAME;
     }
     
 }
\ No newline at end of file
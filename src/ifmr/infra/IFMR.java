@@ -1,12 +1,15 @@
 package ifmr.infra;
 
+import java.util.function.Supplier;
+
 import ifmr.algo.BaseIfmr;
 import ifmr.algoimpl.Ifmr_Catalan2008;
 import ifmr.algoimpl.Ifmr_Ferrario2005;
 import ifmr.algoimpl.Ifmr_Kalirai2008;
 import ifmr.algoimpl.Ifmr_Kalirai2009;
 import ifmr.algoimpl.Ifmr_Renedo2010_Z0p01;
-import ifmr.algoimpl.Ifmr_Cummings2018;;
+import ifmr.algoimpl.Ifmr_Cummings2018;
+import utils.LazySupplier;
 
 /**
  * Enumerated type to represent the available Initial-Final Mass Relations.
@@ -19,25 +22,34 @@ public enum IFMR {
 	/**
 	 * All available {@link BaseIfmr} implementations encapsulated in a corresponding {@link IFMR}
 	 */
-	KALIRAI_2009(new Ifmr_Kalirai2009()),
-    KALIRAI_2008(new Ifmr_Kalirai2008()),
-    FERRARIO_2005(new Ifmr_Ferrario2005()),
-    CATALAN_2008(new Ifmr_Catalan2008()),
-    RENEDO_2010(new Ifmr_Renedo2010_Z0p01()),
-    CUMMINGS_2018(new Ifmr_Cummings2018());
+	KALIRAI_2009(Ifmr_Kalirai2009.NAME, Ifmr_Kalirai2009::new),
+    KALIRAI_2008(Ifmr_Kalirai2008.NAME, Ifmr_Kalirai2008::new),
+    FERRARIO_2005(Ifmr_Ferrario2005.NAME, Ifmr_Ferrario2005::new),
+    CATALAN_2008(Ifmr_Catalan2008.NAME, Ifmr_Catalan2008::new),
+    RENEDO_2010(Ifmr_Renedo2010_Z0p01.NAME, Ifmr_Renedo2010_Z0p01::new),
+    CUMMINGS_2018(Ifmr_Cummings2018.NAME, Ifmr_Cummings2018::new);
+
+	/**
+	 * The name of the {@link BaseIfmr}; this is held here so that the IFMR doesn't have to be created
+	 * in order to present the options to the user or to identify the configuration.
+	 */
+	private final String name;
 
 	/**
-	 * The {@link BaseIfmr} that backs this {@link IFMR}
+	 * Supplies the {@link BaseIfmr} that backs this {@link IFMR}, which is created on first use.
 	 */
-    private BaseIfmr ifmr;
+    private final LazySupplier<BaseIfmr> ifmr;
     
     /**
      * Main constructor
+     * @param name
+     * 	The name of the {@link BaseIfmr} that backs this {@link IFMR}
      * @param ifmr
-     * 	The {@link BaseIfmr} that backs this {@link IFMR}
+     * 	Creates the {@link BaseIfmr} that backs this {@link IFMR}
      */
-    IFMR(BaseIfmr ifmr) {
-    	this.ifmr = ifmr;
+    IFMR(String name, Supplier<BaseIfmr> ifmr) {
+    	this.name = name;
+    	this.ifmr = new LazySupplier<>(ifmr);
     }
     
     /**
@@ -46,7 +58,7 @@ public enum IFMR {
      *  The {@link BaseIfmr} that backs this {@link IFMR}
      */
     public BaseIfmr getIFMR() {
-    	return ifmr;
+    	return ifmr.get();
     }
     
     /*
@@ -55,6 +67,6 @@ public enum IFMR {
      */
     @Override
     public String toString() {
-    	return ifmr.toString();
+    	return name;
     }
 }
@@ -1,5 +1,7 @@
 package imf.algo;
 
+import java.util.Random;
+
 /**
  * Supertype for all implementations of the Initial Mass Function.
  *
@@ -23,6 +25,16 @@ public abstract class BaseImf
      */
     public static final double M_upper  = 7.0;
     
+    /**
+     * Maximum error on the masses drawn using the {@link ImfSampler} returned by {@link #getSampler()} [M_{solar}].
+     */
+    public static final double SAMPLER_TOLERANCE = 1e-6;
+    
+    /**
+     * The {@link ImfSampler}, which is created on first use.
+     */
+    private volatile ImfSampler sampler;
+    
     /**
      * Get the IMF at the given solar mass.
      * @param M
@@ -41,6 +53,30 @@ public abstract class BaseImf
      */
     public abstract double getIntegral(double M);
     
+    /**
+     * Get the mass below which the given fraction of stars lie, i.e. invert {@link #getIntegral(double)}.
+     * This implementation uses a bisection search; extending classes should override it with the analytic
+     * inverse where one is available.
+     * @param x
+     * 		The fraction of stars lying below the desired mass [0:1]
+     * @return
+     * 		The corresponding stellar mass [M_{solar}]
+     */
+    public double getInverseIntegral(double x) {
+    	double min = M_lower;
+    	double max = M_upper;
+    	for(int i=0; i<100 && (max - min) > 1e-12; i++) {
+    		double mid = (min + max) / 2.0;
+    		if(getIntegral(mid) < x) {
+    			min = mid;
+    		}
+    		else {
+    			max = mid;
+    		}
+    	}
+    	return (min + max) / 2.0;
+    }
+    
     /**
      * Draw a random mass from the range {@link BaseImf#M_lower} -> {@link BaseImf#M_upper}.
      * @return
@@ -48,4 +84,45 @@ public abstract class BaseImf
      */
     public abstract double drawMass();
     
+    /**
+     * Draw a random mass from the range {@link BaseImf#M_lower} -> {@link BaseImf#M_upper}, using the
+     * given {@link Random} as the source of random numbers. This allows callers to provide independent
+     * streams of random numbers, e.g. one per thread in parallel simulations.
+     * 
+     * @param random
+     * 		The {@link Random} to use to draw the mass.
+     * @return
+     * 		Random stellar mass in the range [{@link BaseImf#M_lower}:{@link BaseImf#M_upper}] (M_{solar})
+     */
+    public abstract double drawMass(Random random);
+    
+    /**
+     * Get the {@link ImfSampler} for this IMF, which draws masses from a precomputed table of the inverse
+     * cumulative distribution to within {@link #SAMPLER_TOLERANCE}. This is much faster than {@link #drawMass(Random)}
+     * for the IMFs whose inverse involves special functions. The table is computed on the first call.
+     * @return
+     * 		The {@link ImfSampler} for this IMF.
+     */
+    public ImfSampler getSampler() {
+    	ImfSampler result = sampler;
+    	if(result == null) {
+    		synchronized(this) {
+    			result = sampler;
+    			if(result == null) {
+    				result = new ImfSampler(this, SAMPLER_TOLERANCE);
+    				sampler = result;
+    			}
+    		}
+    	}
+    	return result;
+    }
+    
+    /**
+     * Discard the {@link ImfSampler}, so that it is recomputed on next use. Extending classes must call this
+     * whenever the parameters of the IMF are changed.
+     */
+    protected void clearSampler() {
+    	sampler = null;
+    }
+    
 }
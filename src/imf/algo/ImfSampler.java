@@ -0,0 +1,181 @@
+package imf.algo;
+
+import java.util.Random;
+
+/**
+ * Class provides fast random draws of stellar mass from a {@link BaseImf}, using a precomputed table of the
+ * inverse cumulative distribution function (the mass as a function of the fraction of stars below it).
+ *
+ * The table is tabulated at equally spaced values of the cumulative fraction over [0:1], so that a draw requires
+ * a single uniform random number and a linear interpolation between two adjacent nodes, with no searching. Linear
+ * interpolation between monotonically increasing nodes is itself monotonic, so the sampled masses preserve the
+ * ordering of the uniform random numbers and always lie in the range [{@link BaseImf#M_lower}:{@link BaseImf#M_upper}].
+ *
+ * The table is refined by repeatedly halving the node spacing until the interpolated mass at the midpoint of every
+ * interval agrees with the exact inverse cumulative distribution to within the requested tolerance. Because the
+ * inverse cumulative distribution is smooth within each interval, the largest interpolation error occurs close to
+ * the midpoint, so this tolerance is the maximum error on any drawn mass (see {@link #getMaxError()}).
+ *
+ * Instances are immutable and may be shared by many threads, each using its own {@link Random}.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class ImfSampler {
+
+	/**
+	 * Number of intervals in the initial table.
+	 */
+	private static final int MIN_INTERVALS = 1 << 10;
+
+	/**
+	 * Maximum number of intervals in the table; refinement stops here even if the tolerance has not been met.
+	 */
+	private static final int MAX_INTERVALS = 1 << 22;
+
+	/**
+	 * Mass at each node of the table [M_{solar}]; node k lies at cumulative fraction k / {@link #nIntervals}.
+	 */
+	private final double[] masses;
+
+	/**
+	 * Number of intervals in the table; one less than the number of nodes.
+	 */
+	private final int nIntervals;
+
+	/**
+	 * The largest difference between the interpolated and exact mass at the interval midpoints [M_{solar}].
+	 */
+	private final double maxError;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param imf
+	 * 	The {@link BaseImf} to sample from.
+	 * @param tolerance
+	 * 	The maximum allowed error on the drawn masses [M_{solar}].
+	 */
+	public ImfSampler(BaseImf imf, double tolerance) {
+
+		if(!(tolerance > 0.0)) {
+			throw new IllegalArgumentException("Tolerance must be positive! Found " + tolerance);
+		}
+
+		int n = MIN_INTERVALS;
+		double[] nodes = new double[n + 1];
+		for(int k=0; k<=n; k++) {
+			nodes[k] = getNode(imf, (double)k / n);
+		}
+
+		while(true) {
+
+			// Exact masses at the midpoint of each interval; these are also the new nodes if the table is refined
+			double[] midpoints = new double[n];
+			double err = 0.0;
+			for(int k=0; k<n; k++) {
+				midpoints[k] = getNode(imf, (k + 0.5) / n);
+				err = Math.max(err, Math.abs(midpoints[k] - 0.5 * (nodes[k] + nodes[k+1])));
+			}
+
+			if(err <= tolerance || n >= MAX_INTERVALS) {
+				masses = nodes;
+				nIntervals = n;
+				maxError = err;
+				break;
+			}
+
+			// Halve the node spacing
+			double[] refined = new double[2 * n + 1];
+			for(int k=0; k<n; k++) {
+				refined[2*k] = nodes[k];
+				refined[2*k+1] = midpoints[k];
+			}
+			refined[2*n] = nodes[n];
+
+			nodes = refined;
+			n *= 2;
+		}
+	}
+
+	/**
+	 * Compute the mass at a node of the table, clamped to the valid range to guard against rounding errors at the ends.
+	 *
+	 * @param imf
+	 * 	The {@link BaseImf}.
+	 * @param x
+	 * 	The fraction of stars lying below the desired mass [0:1]
+	 * @return
+	 * 	The corresponding stellar mass [M_{solar}]
+	 */
+	private static double getNode(BaseImf imf, double x) {
+		return Math.max(BaseImf.M_lower, Math.min(BaseImf.M_upper, imf.getInverseIntegral(x)));
+	}
+
+	/**
+	 * Get the mass at the given fraction of stars, by interpolating the table.
+	 *
+	 * @param x
+	 * 	The fraction of stars lying below the desired mass [0:1)
+	 * @return
+	 * 	The corresponding stellar mass [M_{solar}]
+	 */
+	public double getMass(double x) {
+		double pos = x * nIntervals;
+		int k = (int)pos;
+		if(k >= nIntervals) {
+			return masses[nIntervals];
+		}
+		double m0 = masses[k];
+		return m0 + (pos - k) * (masses[k+1] - m0);
+	}
+
+	/**
+	 * Draw a random mass from the range {@link BaseImf#M_lower} -> {@link BaseImf#M_upper}.
+	 *
+	 * @param random
+	 * 	The {@link Random} to use to draw the mass.
+	 * @return
+	 * 	Random stellar mass in the range [{@link BaseImf#M_lower}:{@link BaseImf#M_upper}] (M_{solar})
+	 */
+	public double drawMass(Random random) {
+		return getMass(random.nextDouble());
+	}
+
+	/**
+	 * Draw many random masses from the range {@link BaseImf#M_lower} -> {@link BaseImf#M_upper}. This consumes the
+	 * same random numbers as the equivalent number of calls to {@link #drawMass(Random)}.
+	 *
+	 * @param random
+	 * 	The {@link Random} to use to draw the masses.
+	 * @param masses
+	 * 	On exit, the first n elements contain the random stellar masses [M_{solar}]
+	 * @param n
+	 * 	The number of masses to draw.
+	 */
+	public void drawMasses(Random random, double[] masses, int n) {
+		for(int i=0; i<n; i++) {
+			masses[i] = getMass(random.nextDouble());
+		}
+	}
+
+	/**
+	 * Get the maximum error on the drawn masses, measured at the midpoint of each interval of the table.
+	 *
+	 * @return
+	 * 	The maximum error on the drawn masses [M_{solar}]
+	 */
+	public double getMaxError() {
+		return maxError;
+	}
+
+	/**
+	 * Get the number of intervals in the table.
+	 *
+	 * @return
+	 * 	The number of intervals in the table.
+	 */
+	public int getNumberOfIntervals() {
+		return nIntervals;
+	}
+}
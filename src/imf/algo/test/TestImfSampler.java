@@ -0,0 +1,102 @@
+package imf.algo.test;
+
+import java.util.Random;
+
+import imf.algo.BaseImf;
+import imf.algo.ImfSampler;
+import imf.infra.IMF;
+
+/**
+ * Class tests the tabulated inverse cumulative distribution in the {@link ImfSampler} against the cumulative
+ * distribution obtained by direct numerical integration of {@link BaseImf#getIMF(double)}, for each of the
+ * available {@link IMF}s. The difference between the two is converted to an error on the mass by dividing
+ * by the IMF at the sampled mass, and must not exceed the tolerance on the sampler.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class TestImfSampler {
+
+	/**
+	 * Number of steps used in the numerical integration of the IMF.
+	 */
+	private static final int N_STEPS = 640000;
+
+	/**
+	 * Number of fractions of stars at which the sampler is tested.
+	 */
+	private static final int N_TEST = 100000;
+
+	/**
+	 * Largest permitted error on the normalisation of the IMF.
+	 */
+	private static final double NORM_TOLERANCE = 1e-8;
+
+	/**
+	 * Main application entry point.
+	 *
+	 * @param args
+	 * 	The command line arguments (ignored)
+	 */
+	public static void main(String[] args) {
+
+		Random random = new Random(3920571L);
+		double h = (BaseImf.M_upper - BaseImf.M_lower) / N_STEPS;
+
+		for(IMF type : IMF.values()) {
+
+			BaseImf imf = type.getIMF();
+			ImfSampler sampler = imf.getSampler();
+
+			// Cumulative distribution at each step, by midpoint rule integration; this never evaluates the IMF
+			// at the steps, so is unaffected by discontinuities at the transition between segments
+			double[] cdf = new double[N_STEPS + 1];
+			for(int k=1; k<=N_STEPS; k++) {
+				cdf[k] = cdf[k-1] + h * imf.getIMF(BaseImf.M_lower + (k - 0.5) * h);
+			}
+
+			if(Math.abs(cdf[N_STEPS] - 1.0) > NORM_TOLERANCE) {
+				throw new RuntimeException(type+": IMF integrates to "+cdf[N_STEPS]+" over the mass range");
+			}
+
+			if(sampler.getMaxError() > BaseImf.SAMPLER_TOLERANCE) {
+				throw new RuntimeException(type+": sampler error "+sampler.getMaxError()+" exceeds tolerance "
+						+ BaseImf.SAMPLER_TOLERANCE);
+			}
+
+			double maxMassErr = 0.0;
+			double maxCdfErr = 0.0;
+			double lastMass = BaseImf.M_lower;
+			for(int i=0; i<N_TEST; i++) {
+
+				// Random offset within each interval avoids testing only at the nodes of the table
+				double x = (i + random.nextDouble()) / N_TEST;
+				double m = sampler.getMass(x);
+
+				if(m < BaseImf.M_lower || m > BaseImf.M_upper || m < lastMass) {
+					throw new RuntimeException(type+": sampled mass "+m+" at fraction "+x+" is out of range or order");
+				}
+				lastMass = m;
+
+				// Fraction of stars below the sampled mass, interpolated from the numerical integral
+				double pos = (m - BaseImf.M_lower) / h;
+				int k = Math.min((int)pos, N_STEPS - 1);
+				double cdfNum = cdf[k] + (pos - k) * (cdf[k+1] - cdf[k]);
+
+				maxCdfErr = Math.max(maxCdfErr, Math.abs(cdfNum - imf.getIntegral(m)));
+				maxMassErr = Math.max(maxMassErr, Math.abs(cdfNum - x) / imf.getIMF(m));
+			}
+
+			System.out.println(type+": "+sampler.getNumberOfIntervals()+" intervals");
+			System.out.println(" - Max analytic cumulative distribution error = "+maxCdfErr);
+			System.out.println(" - Max sampled mass error                     = "+maxMassErr+" [M_{solar}]");
+
+			if(maxCdfErr > NORM_TOLERANCE) {
+				throw new RuntimeException(type+": analytic and numerical cumulative distributions disagree!");
+			}
+			if(maxMassErr > BaseImf.SAMPLER_TOLERANCE) {
+				throw new RuntimeException(type+": sampled masses disagree with the cumulative distribution!");
+			}
+		}
+	}
+}
@@ -0,0 +1,4 @@
+/**
+ * Tests associated with the IMF classes.
+ */
+package imf.algo.test;
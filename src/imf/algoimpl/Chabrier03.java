@@ -14,6 +14,11 @@ import imf.algo.BaseImf;
  * @version $Id$
  */
 public class Chabrier03 extends BaseImf {
+
+	/**
+	 * The name of this IMF.
+	 */
+	public static final String NAME = "Chabrier (2003) table 1";
 	
 	/**
 	 * Fixed seed to use for random number generation, in order to make applications deterministic.
@@ -126,8 +131,22 @@ public class Chabrier03 extends BaseImf {
      */
     @Override
     public double drawMass() {
-    	
-        double x = random.nextDouble();
+    	return drawMass(random);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double drawMass(Random random) {
+        return getInverseIntegral(random.nextDouble());
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getInverseIntegral(double x) {
         
         if(x < logNormInt * c) {
         	// Mass is in lognormal segment; get inverse cumulative distribution
@@ -146,7 +165,7 @@ public class Chabrier03 extends BaseImf {
      */
     @Override
     public String toString() {
-    	return "Chabrier (2003) table 1";
+    	return NAME;
     }
     
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package imf.algoimpl;
 
+import java.util.Random;
+
 import imf.algo.BaseImf;
 
 /**
@@ -14,6 +16,11 @@ import imf.algo.BaseImf;
 public class IMF_Kroupa extends BaseImf
 {
 
+    /**
+     * The name of this IMF.
+     */
+    public static final String NAME = "Kroupa";
+
     /**
      * Normalisation constant for Kroupa IMF.
      */
@@ -49,8 +56,24 @@ public class IMF_Kroupa extends BaseImf
     @Override
     public double drawMass() 
     {
-        double x = Math.random();
-        
+        return getInverseIntegral(Math.random());
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double drawMass(Random random) 
+    {
+        return getInverseIntegral(random.nextDouble());
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getInverseIntegral(double x)
+    {
         return Math.exp(Math.log(x * A * (-1.3) + Math.pow(M_lower, -1.3)) / -1.3);
     }
     
@@ -60,7 +83,7 @@ public class IMF_Kroupa extends BaseImf
     @Override
     public String toString() 
     {
-        return "Kroupa";
+        return NAME;
     }
 
 }
\ No newline at end of file
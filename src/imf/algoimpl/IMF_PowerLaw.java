@@ -23,6 +23,11 @@ public class IMF_PowerLaw extends BaseImf
      */
 	private static final Random random = new Random(seed);
 	
+    /**
+     * The Salpeter power law exponent.
+     */
+    public static final double SALPETER_EXPONENT = -2.35;
+    
     /**
      * Power law exponent.
      */
@@ -38,7 +43,7 @@ public class IMF_PowerLaw extends BaseImf
      */
     public IMF_PowerLaw()
     {
-        this(-2.35);
+        this(SALPETER_EXPONENT);
     }
     
     /**
@@ -62,6 +67,8 @@ public class IMF_PowerLaw extends BaseImf
         // calculate normalisation constant
         A = 1/(exponent+1) * (Math.pow(M_upper, exponent+1) - Math.pow(M_lower, exponent+1));
         A = 1/A;
+        // Existing sampler tables are for the old exponent
+        clearSampler();
     }
     
     /**
@@ -97,7 +104,22 @@ public class IMF_PowerLaw extends BaseImf
      */
     @Override
     public double drawMass() {
-        double x = random.nextDouble();        
+        return drawMass(random);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double drawMass(Random random) {
+        return getInverseIntegral(random.nextDouble());
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getInverseIntegral(double x) {
         return Math.pow((x/A)*(exponent+1) + Math.pow(M_lower,exponent+1), 1/(exponent+1));
     }
     
@@ -106,6 +128,17 @@ public class IMF_PowerLaw extends BaseImf
      */
     @Override
     public String toString() {
+    	return getName(exponent);
+    }
+    
+    /**
+     * Get the name of the power law IMF with the given exponent.
+     * @param exponent
+     * 	The power law exponent.
+     * @return
+     * 	The name of the IMF.
+     */
+    public static String getName(double exponent) {
     	return "Power law (exp = "+exponent+")";
     }
     
@@ -1,9 +1,12 @@
 package imf.infra;
 
+import java.util.function.Supplier;
+
 import imf.algo.BaseImf;
 import imf.algoimpl.Chabrier03;
 import imf.algoimpl.IMF_Kroupa;
 import imf.algoimpl.IMF_PowerLaw;
+import utils.LazySupplier;
 
 /**
  * Enumerated type to represent the available Initial Mass Function implementations.
@@ -16,22 +19,31 @@ public enum IMF {
 	/**
 	 * All available {@link BaseImf} implementations encapsulated in a corresponding {@link IMF}
 	 */
-	KROUPA(new IMF_Kroupa()),
-    POWER_LAW_SALPETER(new IMF_PowerLaw(-2.35)),
-    CHABRIER03(new Chabrier03());
+	KROUPA(IMF_Kroupa.NAME, IMF_Kroupa::new),
+    POWER_LAW_SALPETER(IMF_PowerLaw.getName(IMF_PowerLaw.SALPETER_EXPONENT), () -> new IMF_PowerLaw(IMF_PowerLaw.SALPETER_EXPONENT)),
+    CHABRIER03(Chabrier03.NAME, Chabrier03::new);
+
+	/**
+	 * The name of the {@link BaseImf} as constructed; this is held here so that the IMF doesn't have to be
+	 * created in order to present the options to the user or to identify the configuration.
+	 */
+	private final String name;
 
 	/**
-	 * The {@link BaseImf} that backs this {@link IMF}
+	 * Supplies the {@link BaseImf} that backs this {@link IMF}, which is created on first use.
 	 */
-    private BaseImf imf;
+    private final LazySupplier<BaseImf> imf;
     
     /**
      * Main constructor
+     * @param name
+     * 	The name of the {@link BaseImf} that backs this {@link IMF}
      * @param imf
-     * 	The {@link BaseImf} that backs this {@link IMF}
+     * 	Creates the {@link BaseImf} that backs this {@link IMF}
      */
-    IMF(BaseImf imf) {
-    	this.imf = imf;
+    IMF(String name, Supplier<BaseImf> imf) {
+    	this.name = name;
+    	this.imf = new LazySupplier<>(imf);
     }
     
     /**
@@ -40,7 +52,7 @@ public enum IMF {
      *  The {@link BaseImf} that backs this {@link IMF}
      */
     public BaseImf getIMF() {
-    	return imf;
+    	return imf.get();
     }
     
     /*
@@ -49,7 +61,8 @@ public enum IMF {
      */
     @Override
     public String toString() {
-    	return imf.toString();
+    	// The parameters of some IMFs can be changed once they have been created
+    	return imf.isCreated() ? imf.get().toString() : name;
     }
 	
 }
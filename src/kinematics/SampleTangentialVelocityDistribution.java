@@ -112,6 +112,10 @@ public class SampleTangentialVelocityDistribution
 		// Step size in distance
 		double d_step = (d_range_max - d_range_min)/DISTANCE_STEPS;
 		
+		// Population density profile at the centre of each distance step along this line of sight
+		double[] rho = new double[DISTANCE_STEPS];
+		density.getLineOfSightDensity(ra, dec).getDensity(d_range_min + 0.5*d_step, d_step, rho);
+		
 		// Main integral over distance
 		for(double d=0; d<DISTANCE_STEPS; d++)
 		{
@@ -124,7 +128,7 @@ public class SampleTangentialVelocityDistribution
 			double volume = omega * (Math.pow(d_max,3)/3.0 - Math.pow(d_min,3)/3.0);
 			
 			// Correction for population density profile 
-			volume *= density.getDensity(d_mid, ra, dec);
+			volume *= rho[(int)d];
 			
 			// Range of tangential velocities that pass proper motion
 			// limits at this distance.
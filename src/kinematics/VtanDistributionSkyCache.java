@@ -0,0 +1,455 @@
+package kinematics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import Jama.Matrix;
+import utils.TableCache;
+
+/**
+ * Class provides the tangential velocity distribution of a population towards any line of sight, interpolated
+ * from a table of distributions computed at the centres of a set of pixels on the sky. This is used in place
+ * of {@link TangentialVelocityDistribution#getVtanDistributionTowardsLos(Matrix, Matrix, double, double, double, double[], double[])}
+ * by applications that need the distribution towards many lines of sight for a single kinematic model, e.g. to
+ * integrate the survey volume over thousands of fields or to average the discovery fraction over the whole sky.
+ *
+ * The pixels are an equal area tessellation of the sky in equatorial coordinates. The sky is divided into rings
+ * of roughly constant width in declination, each of which is divided into equal steps in right ascension, with
+ * the number of pixels in each ring proportional to its circumference so that the pixels are roughly square.
+ * The boundaries between rings are then adjusted so that every pixel subtends exactly the same solid angle.
+ * The CDF towards an arbitrary line of sight is obtained by linear interpolation in right ascension between the
+ * neighbouring pixel centres in the rings above and below, then linear interpolation in declination between
+ * the rings. The distributions at the poles are also tabulated, for interpolation beyond the outermost rings.
+ * The PDF is obtained from the interpolated CDF, so the two are consistent.
+ *
+ * The distributions for all pixels are computed in parallel and written to the {@link TableCache}, keyed by a
+ * 64-bit hash of the algorithm version, velocity ellipsoid, mean motion, tangential velocity steps and pixel
+ * resolution, so that subsequent runs with the same kinematic model read them back rather than recomputing
+ * them. Within a run the {@link #MAX_CACHED_SKY_CACHES} most recently used caches are also kept in memory,
+ * keyed by the inputs themselves.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class VtanDistributionSkyCache {
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger logger = Logger.getLogger(VtanDistributionSkyCache.class.getName());
+
+	/**
+	 * Default number of rings of pixels between the poles.
+	 */
+	public static final int DEFAULT_RINGS = 90;
+
+	/**
+	 * Version of the tangential velocity distribution algorithm and table layout; this must be incremented
+	 * whenever a change to {@link TangentialVelocityDistribution} or to this class would change the tabulated
+	 * distributions, so that tables in the {@link TableCache} are recomputed.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Maximum number of {@link VtanDistributionSkyCache}s to keep in memory; each takes about
+	 * 8*(n_steps_vt+1) bytes per pixel, i.e. several MB at the default resolution.
+	 */
+	private static final int MAX_CACHED_SKY_CACHES = 4;
+
+	/**
+	 * Caches that have been loaded or computed in this run by their inputs, in order of access; the least
+	 * recently used cache is discarded once there are more than {@link #MAX_CACHED_SKY_CACHES}.
+	 */
+	private static final Map<String, VtanDistributionSkyCache> caches = new LinkedHashMap<String, VtanDistributionSkyCache>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, VtanDistributionSkyCache> eldest) {
+			return size() > MAX_CACHED_SKY_CACHES;
+		}
+	};
+
+	/**
+	 * Step size in tangential velocity between elements of the PDF/CDF [km/s].
+	 */
+	private final double vt_step;
+
+	/**
+	 * Number of elements in the tangential velocity PDF; the CDF has one more element.
+	 */
+	private final int n_steps_vt;
+
+	/**
+	 * The {@link Pixelisation} of the sky.
+	 */
+	private final Pixelisation pixels;
+
+	/**
+	 * The tangential velocity CDF at the centre of each pixel followed by the south and north poles; the
+	 * CDF for pixel k occupies elements k*(n_steps_vt+1) onwards.
+	 */
+	private final double[] cdfs;
+
+	/**
+	 * Equal area tessellation of the sky into rings of pixels.
+	 */
+	static final class Pixelisation {
+
+		/**
+		 * Number of pixels in each ring, from south to north.
+		 */
+		final int[] nPix;
+
+		/**
+		 * Index of the first pixel in each ring.
+		 */
+		final int[] first;
+
+		/**
+		 * Declination of the south pole, the centre of each ring from south to north, and the north pole [radians].
+		 */
+		final double[] nodeDec;
+
+		/**
+		 * Total number of pixels, excluding the poles.
+		 */
+		final int nTotal;
+
+		/**
+		 * Main constructor.
+		 *
+		 * @param nRings
+		 * 	Number of rings of pixels between the poles.
+		 */
+		Pixelisation(int nRings) {
+
+			double dDec = Math.PI / nRings;
+
+			nPix = new int[nRings];
+			first = new int[nRings];
+			int total = 0;
+			for(int j=0; j<nRings; j++) {
+				double dec = -Math.PI/2.0 + (j + 0.5) * dDec;
+				nPix[j] = Math.max(1, (int)Math.round(2.0 * Math.PI * Math.cos(dec) / dDec));
+				first[j] = total;
+				total += nPix[j];
+			}
+			nTotal = total;
+
+			// Place the ring boundaries so that each pixel has the same area, i.e. the rings span
+			// equal steps in sine of declination per pixel
+			nodeDec = new double[nRings + 2];
+			nodeDec[0] = -Math.PI/2.0;
+			double sinDecLower = -1.0;
+			for(int j=0; j<nRings; j++) {
+				double sinDecUpper = (j == nRings - 1) ? 1.0 : sinDecLower + 2.0 * nPix[j] / nTotal;
+				nodeDec[j+1] = Math.asin((sinDecLower + sinDecUpper) / 2.0);
+				sinDecLower = sinDecUpper;
+			}
+			nodeDec[nRings + 1] = Math.PI/2.0;
+		}
+
+		/**
+		 * Get the right ascension of the centre of a pixel.
+		 *
+		 * @param ring
+		 * 	The ring index.
+		 * @param i
+		 * 	The index of the pixel within the ring.
+		 * @return
+		 * 	The right ascension [radians]
+		 */
+		double getRa(int ring, int i) {
+			return (i + 0.5) * 2.0 * Math.PI / nPix[ring];
+		}
+	}
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param vt_step
+	 * 	Step size in tangential velocity between elements of the PDF/CDF [km/s].
+	 * @param n_steps_vt
+	 * 	Number of elements in the tangential velocity PDF.
+	 * @param pixels
+	 * 	The {@link Pixelisation} of the sky.
+	 * @param cdfs
+	 * 	The tangential velocity CDF at the centre of each pixel and the poles.
+	 */
+	private VtanDistributionSkyCache(double vt_step, int n_steps_vt, Pixelisation pixels, double[] cdfs) {
+		if(cdfs.length != (pixels.nTotal + 2) * (n_steps_vt + 1)) {
+			throw new IllegalArgumentException("Number of CDF elements ("+cdfs.length+") doesn't match the "
+					+ "number of pixels and tangential velocity steps!");
+		}
+		this.vt_step = vt_step;
+		this.n_steps_vt = n_steps_vt;
+		this.pixels = pixels;
+		this.cdfs = cdfs;
+	}
+
+	/**
+	 * Get the {@link VtanDistributionSkyCache} for the given kinematic model at the default resolution, from
+	 * the cache if it has been computed previously.
+	 *
+	 * @param covariance_G
+	 * 	Population velocity ellipsoid in Galactic coordinates [(km/s)^2]
+	 * @param mean_G
+	 * 	Population mean velocity relative to Sun, in Galactic coordinates [km/s]
+	 * @param vt_step
+	 * 	Step size in tangential velocity between elements of the PDF/CDF [km/s]
+	 * @param n_steps_vt
+	 * 	Number of elements in the tangential velocity PDF; the CDF has one more element.
+	 * @return
+	 * 	The {@link VtanDistributionSkyCache}.
+	 */
+	public static VtanDistributionSkyCache getCache(Matrix covariance_G, Matrix mean_G, double vt_step, int n_steps_vt) {
+		return getCache(covariance_G, mean_G, vt_step, n_steps_vt, DEFAULT_RINGS);
+	}
+
+	/**
+	 * Get the {@link VtanDistributionSkyCache} for the given kinematic model and resolution, from the cache if
+	 * it has been computed previously or else by computing the distribution for every pixel.
+	 *
+	 * @param covariance_G
+	 * 	Population velocity ellipsoid in Galactic coordinates [(km/s)^2]
+	 * @param mean_G
+	 * 	Population mean velocity relative to Sun, in Galactic coordinates [km/s]
+	 * @param vt_step
+	 * 	Step size in tangential velocity between elements of the PDF/CDF [km/s]
+	 * @param n_steps_vt
+	 * 	Number of elements in the tangential velocity PDF; the CDF has one more element.
+	 * @param nRings
+	 * 	Number of rings of pixels between the poles; the pixels are roughly 180/nRings degrees across.
+	 * @return
+	 * 	The {@link VtanDistributionSkyCache}.
+	 */
+	public static VtanDistributionSkyCache getCache(final Matrix covariance_G, final Matrix mean_G, final double vt_step,
+			final int n_steps_vt, final int nRings) {
+
+		if(vt_step <= 0.0 || n_steps_vt < 1) {
+			throw new IllegalArgumentException("Invalid tangential velocity steps: step = "+vt_step+", number = "+n_steps_vt);
+		}
+		if(nRings < 1) {
+			throw new IllegalArgumentException("Number of rings must be positive! Found "+nRings);
+		}
+
+		// The distributions are identified by all the inputs in memory, and by a 64-bit hash of them on disk
+		StringBuilder builder = new StringBuilder();
+		builder.append('v').append(VERSION).append(' ');
+		builder.append(Arrays.deepToString(covariance_G.getArray())).append(Arrays.deepToString(mean_G.getArray()));
+		builder.append(vt_step).append(' ').append(n_steps_vt).append(' ').append(nRings);
+		String inputs = builder.toString();
+
+		synchronized(caches) {
+			VtanDistributionSkyCache cache = caches.get(inputs);
+			if(cache == null) {
+				long checksum = getChecksum(inputs);
+				Pixelisation pixels = new Pixelisation(nRings);
+				String key = String.format("vtan-sky-%016x", checksum);
+				try {
+					double[][] table = TableCache.getTable(key, checksum,
+							() -> new double[][]{compute(covariance_G, mean_G, vt_step, n_steps_vt, pixels)});
+					cache = new VtanDistributionSkyCache(vt_step, n_steps_vt, pixels, table[0]);
+				}
+				catch (IOException e) {
+					// Not expected, as the computation doesn't read any files
+					throw new RuntimeException(e);
+				}
+				caches.put(inputs, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Compute a 64-bit hash of the inputs, from the first eight bytes of their SHA-256 digest.
+	 *
+	 * @param inputs
+	 * 	The inputs, in string form.
+	 * @return
+	 * 	The 64-bit hash.
+	 */
+	private static long getChecksum(String inputs) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(inputs.getBytes(StandardCharsets.UTF_8));
+			return ByteBuffer.wrap(digest).getLong();
+		}
+		catch (NoSuchAlgorithmException e) {
+			// Not expected, as every Java platform is required to support SHA-256
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Compute the tangential velocity CDF at the centre of every pixel and at the poles, in parallel.
+	 *
+	 * @param covariance_G
+	 * 	Population velocity ellipsoid in Galactic coordinates [(km/s)^2]
+	 * @param mean_G
+	 * 	Population mean velocity relative to Sun, in Galactic coordinates [km/s]
+	 * @param vt_step
+	 * 	Step size in tangential velocity between elements of the PDF/CDF [km/s]
+	 * @param n_steps_vt
+	 * 	Number of elements in the tangential velocity PDF.
+	 * @param pixels
+	 * 	The {@link Pixelisation} of the sky.
+	 * @return
+	 * 	The tangential velocity CDF at the centre of each pixel and the poles, in the layout of {@link #cdfs}.
+	 */
+	private static double[] compute(final Matrix covariance_G, final Matrix mean_G, final double vt_step,
+			final int n_steps_vt, final Pixelisation pixels) {
+
+		logger.info("Computing tangential velocity distributions for "+pixels.nTotal+" sky pixels");
+
+		final double[] cdfs = new double[(pixels.nTotal + 2) * (n_steps_vt + 1)];
+
+		// Each pixel writes to its own elements of the table
+		IntStream.range(0, pixels.nTotal + 2).parallel().forEach(pix -> {
+			double ra;
+			double dec;
+			if(pix >= pixels.nTotal) {
+				// The distribution at the poles is independent of right ascension
+				ra = 0.0;
+				dec = (pix == pixels.nTotal) ? -Math.PI/2.0 : Math.PI/2.0;
+			}
+			else {
+				int ring = Arrays.binarySearch(pixels.first, pix);
+				if(ring < 0) {
+					ring = -ring - 2;
+				}
+				ra = pixels.getRa(ring, pix - pixels.first[ring]);
+				dec = pixels.nodeDec[ring + 1];
+			}
+			double[] pdf = new double[n_steps_vt];
+			double[] cdf = new double[n_steps_vt + 1];
+			TangentialVelocityDistribution.getVtanDistributionTowardsLos(covariance_G, mean_G, ra, dec, vt_step, pdf, cdf);
+			System.arraycopy(cdf, 0, cdfs, pix * (n_steps_vt + 1), n_steps_vt + 1);
+		});
+
+		return cdfs;
+	}
+
+	/**
+	 * Get the tangential velocity distribution towards the given line of sight, interpolated between the
+	 * neighbouring pixels.
+	 *
+	 * @param ra
+	 * 	Right ascension of LOS, equatorial coordinates [radians]
+	 * @param dec
+	 * 	Declination of LOS, equatorial coordinates [radians]
+	 * @param pdf
+	 * 	On exit, contains tangential velocity PDF; see
+	 * {@link TangentialVelocityDistribution#getVtanDistributionTowardsLos(Matrix, Matrix, double, double, double, double[], double[])}.
+	 * May be null if only the CDF is required.
+	 * @param cdf
+	 * 	On exit, contains tangential velocity CDF; see
+	 * {@link TangentialVelocityDistribution#getVtanDistributionTowardsLos(Matrix, Matrix, double, double, double, double[], double[])}.
+	 * Must have {@link #getNumberOfVtSteps()}+1 elements.
+	 */
+	public void getVtanDistributionTowardsLos(double ra, double dec, double[] pdf, double[] cdf) {
+
+		if(cdf.length != n_steps_vt + 1 || (pdf != null && pdf.length != n_steps_vt)) {
+			throw new IllegalArgumentException("Tangential velocity distribution arrays must have "+n_steps_vt
+					+ " (PDF) and "+(n_steps_vt+1)+" (CDF) elements!");
+		}
+
+		int n = n_steps_vt + 1;
+		int nRings = pixels.nPix.length;
+
+		// Bracketing nodes in declination; node 0 is the south pole, nodes 1 to nRings are the
+		// ring centres and node nRings+1 is the north pole
+		int node = Arrays.binarySearch(pixels.nodeDec, dec);
+		if(node < 0) {
+			node = -node - 2;
+		}
+		node = Math.max(0, Math.min(nRings, node));
+		double fy = (dec - pixels.nodeDec[node]) / (pixels.nodeDec[node + 1] - pixels.nodeDec[node]);
+		fy = Math.max(0.0, Math.min(1.0, fy));
+
+		Arrays.fill(cdf, 0.0);
+		addRing(node, ra, 1.0 - fy, cdf);
+		addRing(node + 1, ra, fy, cdf);
+
+		if(pdf != null) {
+			for(int k=0; k<n_steps_vt; k++) {
+				pdf[k] = (cdf[k+1] - cdf[k]) / vt_step;
+			}
+		}
+	}
+
+	/**
+	 * Add the weighted CDF at the given node in declination, interpolated in right ascension between the
+	 * neighbouring pixels of the ring, to the given array.
+	 *
+	 * @param node
+	 * 	The node in declination; 0 is the south pole, 1 to nRings are the rings and nRings+1 is the north pole.
+	 * @param ra
+	 * 	Right ascension of LOS, equatorial coordinates [radians]
+	 * @param weight
+	 * 	The weight of the node.
+	 * @param cdf
+	 * 	The array to which the weighted CDF is added.
+	 */
+	private void addRing(int node, double ra, double weight, double[] cdf) {
+
+		int n = n_steps_vt + 1;
+		int nRings = pixels.nPix.length;
+
+		if(weight == 0.0) {
+			return;
+		}
+
+		if(node == 0 || node == nRings + 1) {
+			int p = (pixels.nTotal + (node == 0 ? 0 : 1)) * n;
+			for(int k=0; k<n; k++) {
+				cdf[k] += weight * cdfs[p + k];
+			}
+			return;
+		}
+
+		// Neighbouring pixels in the ring, wrapping around in right ascension
+		int ring = node - 1;
+		int nPix = pixels.nPix[ring];
+		double x = ra * nPix / (2.0 * Math.PI) - 0.5;
+		double fx = x - Math.floor(x);
+		int i0 = Math.floorMod((int)Math.floor(x), nPix);
+		int i1 = (i0 + 1) % nPix;
+
+		int p0 = (pixels.first[ring] + i0) * n;
+		int p1 = (pixels.first[ring] + i1) * n;
+		double w0 = weight * (1.0 - fx);
+		double w1 = weight * fx;
+		for(int k=0; k<n; k++) {
+			cdf[k] += w0 * cdfs[p0 + k] + w1 * cdfs[p1 + k];
+		}
+	}
+
+	/**
+	 * Get the step size in tangential velocity between elements of the PDF/CDF.
+	 *
+	 * @return
+	 * 	The step size in tangential velocity between elements of the PDF/CDF [km/s]
+	 */
+	public double getVtStep() {
+		return vt_step;
+	}
+
+	/**
+	 * Get the number of elements in the tangential velocity PDF; the CDF has one more element.
+	 *
+	 * @return
+	 * 	The number of elements in the tangential velocity PDF.
+	 */
+	public int getNumberOfVtSteps() {
+		return n_steps_vt;
+	}
+}
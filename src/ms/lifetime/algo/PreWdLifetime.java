@@ -34,6 +34,27 @@ public interface PreWdLifetime {
 	 */
 	public double[] getPreWdLifetime(double z, double y, double mass);
 	
+	/**
+	 * Get the total pre-WD lifetime for the given metallicity and stellar mass, and the first derivative
+	 * with respect to the mass, writing them to the given array. Implementations may override this to avoid
+	 * allocating a new array on each call.
+	 * 
+	 * @param z
+	 * 	The metallicity Z.
+	 * @param y
+	 * 	The helium content Y.
+	 * @param mass
+	 * 	The stellar mass [M_{Solar}]
+	 * @param result
+	 * 	On exit, contains the pre-WD lifetime [yr] for the given metallicity and stellar mass, and the first
+	 * derivative with respect to the mass.
+	 */
+	public default void getPreWdLifetime(double z, double y, double mass, double[] result) {
+		double[] lifetime = getPreWdLifetime(z, y, mass);
+		result[0] = lifetime[0];
+		result[1] = lifetime[1];
+	}
+	
 	/**
 	 * Get the stellar mass for the given metallicity and pre-WD lifetime, and the first derivative
 	 * with respect to the pre-WD lifetime.
@@ -50,4 +71,25 @@ public interface PreWdLifetime {
 	 */
 	public double[] getStellarMass(double z, double y, double lifetime);
 	
+	/**
+	 * Get the stellar mass for the given metallicity and pre-WD lifetime, and the first derivative
+	 * with respect to the pre-WD lifetime, writing them to the given array. Implementations may override
+	 * this to avoid allocating a new array on each call.
+	 * 
+	 * @param z
+	 * 	The metallicity Z.
+	 * @param y
+	 * 	The helium content Y.
+	 * @param lifetime
+	 * 	The pre-WD lifetime [yr]
+	 * @param result
+	 * 	On exit, contains the stellar mass for the given metallicity and pre-WD lifetime [M_{Solar}], and the
+	 * first derivative with respect to the pre-WD lifetime.
+	 */
+	public default void getStellarMass(double z, double y, double lifetime, double[] result) {
+		double[] mass = getStellarMass(z, y, lifetime);
+		result[0] = mass[0];
+		result[1] = mass[1];
+	}
+	
 }
\ No newline at end of file
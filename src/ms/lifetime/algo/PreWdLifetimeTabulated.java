@@ -1,11 +1,19 @@
 package ms.lifetime.algo;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map.Entry;
 import java.util.NavigableMap;
 import java.util.TreeMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import numeric.functions.MonotonicFunction1D;
+import numeric.functions.MonotonicLinear;
+import utils.TableCache;
+import utils.TableCache.TableBuilder;
 
 /**
  * Base class for implementations of {@link PreWdLifetime} that are based on tabulated models of
@@ -13,6 +21,16 @@ import numeric.functions.MonotonicFunction1D;
  * 
  * Bilinear interpolation of mass/lifetime within the grid of different metallicity models is performed.
  *
+ * On construction the model sets are compiled into a lattice of flat primitive arrays: the sorted Z values, the
+ * sorted Y values at each Z, and for each (Z,Y) model set the mass and lifetime nodes (sorted on mass for
+ * interpolating the lifetime, and on lifetime for interpolating the mass) along with the gradient of each segment.
+ * A lookup then requires binary searches on the Z and Y axes and along the four bracketing model sets, with no
+ * boxing or allocation when the methods that take a result array are used. Instances hold no per-lookup state, so
+ * they can be shared between threads without synchronisation.
+ * Lookups outside the range of a model set are passed to the original {@link MonotonicFunction1D}, so that the
+ * extrapolation is unchanged. Model sets that are not piecewise linear (i.e. not a {@link MonotonicLinear}) are
+ * tabulated at {@link #N_SAMPLED_NODES} masses first. The map of model sets is read-only after construction.
+ *
  * NOTE: the mapping and bilinear interpolation of the models is hardwired for a grid of models at regular intervals
  * in metallicity (Z,Y) space. This class will therefore give poor results if model sets at irregular
  * coordinates in (Z,Y) are used. An improved technique for handling these cases would be to perform
@@ -32,9 +50,70 @@ public abstract class PreWdLifetimeTabulated implements PreWdLifetime {
 	
 	/**
 	 * Mapping of the {@link MonotonicFunction1D} of pre-WD lifetime as a function of mass,
-	 * by metallicity. The outer key is Z, the inner key is Y.
+	 * by metallicity. The outer key is Z, the inner key is Y. This is populated by {@link #load()}
+	 * and replaced with a read-only view once the lattice has been compiled.
+	 */
+	protected NavigableMap<Double, NavigableMap<Double, MonotonicFunction1D>> lifetimeAsFnMassByMetallicity;
+	
+	/**
+	 * Number of masses at which model sets that are not piecewise linear are tabulated.
+	 */
+	protected static final int N_SAMPLED_NODES = 2048;
+	
+	/**
+	 * Lowest mass at which model sets that are not piecewise linear are tabulated [M_{Solar}].
+	 */
+	private static final double SAMPLED_MASS_MIN = 0.1;
+	
+	/**
+	 * Highest mass at which model sets that are not piecewise linear are tabulated [M_{Solar}].
+	 */
+	private static final double SAMPLED_MASS_MAX = 100.0;
+	
+	/**
+	 * Metallicity (Z) of the model sets, in ascending order.
+	 */
+	private double[] zNodes;
+	
+	/**
+	 * Helium content (Y) of the model sets at each Z, in ascending order.
+	 */
+	private double[][] yNodes;
+	
+	/**
+	 * Mass nodes of each (Z,Y) model set, in ascending order [M_{Solar}].
+	 */
+	private double[][][] massNodes;
+	
+	/**
+	 * Pre-WD lifetime nodes of each (Z,Y) model set, corresponding to the {@link #massNodes} [yr].
+	 */
+	private double[][][] lifetimeNodes;
+	
+	/**
+	 * Gradient of the pre-WD lifetime with respect to mass along each segment of each model set.
+	 */
+	private double[][][] lifetimeGradient;
+	
+	/**
+	 * Pre-WD lifetime nodes of each (Z,Y) model set, in ascending order, for interpolating the mass [yr].
+	 */
+	private double[][][] invLifetimeNodes;
+	
+	/**
+	 * Mass nodes of each (Z,Y) model set, corresponding to the {@link #invLifetimeNodes} [M_{Solar}].
+	 */
+	private double[][][] invMassNodes;
+	
+	/**
+	 * Gradient of the mass with respect to pre-WD lifetime along each segment of each model set.
+	 */
+	private double[][][] massGradient;
+	
+	/**
+	 * The original {@link MonotonicFunction1D} of each (Z,Y) model set, used outside the range of the nodes.
 	 */
-	public NavigableMap<Double, NavigableMap<Double, MonotonicFunction1D>> lifetimeAsFnMassByMetallicity;
+	private MonotonicFunction1D[][] models;
 	
 	/**
 	 * Main constructor.
@@ -45,6 +124,27 @@ public abstract class PreWdLifetimeTabulated implements PreWdLifetime {
 		
 		// Populate the map
 		load();
+		
+		// Compile the model sets into the lattice
+		compile();
+		
+		// The lattice is not recompiled, so prevent any further changes to the model sets
+		NavigableMap<Double, NavigableMap<Double, MonotonicFunction1D>> readOnly = new TreeMap<>();
+		for(Entry<Double, NavigableMap<Double, MonotonicFunction1D>> zEntry : lifetimeAsFnMassByMetallicity.entrySet()) {
+			readOnly.put(zEntry.getKey(), Collections.unmodifiableNavigableMap(zEntry.getValue()));
+		}
+		lifetimeAsFnMassByMetallicity = Collections.unmodifiableNavigableMap(readOnly);
+	}
+	
+	/**
+	 * Get the model sets of pre-WD lifetime as a function of mass, by metallicity.
+	 * 
+	 * @return
+	 * 	Read-only mapping of the {@link MonotonicFunction1D} of pre-WD lifetime as a function of mass,
+	 * by metallicity. The outer key is Z, the inner key is Y.
+	 */
+	public NavigableMap<Double, NavigableMap<Double, MonotonicFunction1D>> getLifetimeAsFnMassByMetallicity() {
+		return lifetimeAsFnMassByMetallicity;
 	}
 	
 	/**
@@ -54,45 +154,219 @@ public abstract class PreWdLifetimeTabulated implements PreWdLifetime {
 	protected abstract void load();
 	
 	/**
-	 * Determines if the given value for the metallicity (Z) is within the range covered
-	 * by the models set or not.
-	 * @param z
-	 * 	The Z value.
+	 * Get the {@link MonotonicFunction1D} of pre-WD lifetime as a function of mass for a single set of
+	 * models. The mass/lifetime points are compiled from the directory of model files only if the
+	 * {@link TableCache} is missing or out of date, since this requires reading every file.
+	 * 
+	 * @param dir
+	 * 	The directory containing the set of models.
+	 * @param key
+	 * 	Name that identifies the set of models in the {@link TableCache}.
+	 * @param builder
+	 * 	The {@link TableBuilder} that compiles the mass (first column) and pre-WD lifetime (second
+	 * column) points from the directory of model files.
 	 * @return
-	 * 	True if this value lies within the range covered by the model set. False otherwise.
+	 * 	A {@link MonotonicFunction1D} that interpolates the total pre-WD lifetime as a function of the
+	 * stellar mass.
 	 */
-	private boolean zIsWithinRangeOfModels(double z) {
-
-    	// Z of lowest Z model
-    	double lowestZ = lifetimeAsFnMassByMetallicity.firstKey();
-    	
-    	// Z of highest Z model
-    	double highestZ = lifetimeAsFnMassByMetallicity.lastKey();
-    	
-        return (z>lowestZ && z<highestZ);
+	protected static MonotonicFunction1D getModelSet(File dir, String key, TableBuilder builder) {
+		
+		double[][] massLifetime;
+		try {
+			massLifetime = TableCache.getTable(dir, key, builder);
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to use table cache for " + key + "; reading models directly", e);
+			try {
+				massLifetime = builder.build();
+			}
+			catch (IOException e2) {
+				throw new RuntimeException("Unable to read models from " + dir, e2);
+			}
+		}
+		
+		return new MonotonicLinear(massLifetime[0], massLifetime[1]);
 	}
 	
 	/**
-	 * Determines if the given value for the helium content (Y) is within the range covered
-	 * by the given models set or not.
-	 * @param y
-	 * 	The Y value.
-	 * @param yModels
-	 * 	The Map of {@link MonotonicFunction1D} by Y value that constitutes the model set.
+	 * Compiles the model sets in {@link #lifetimeAsFnMassByMetallicity} into the flat primitive lattice.
+	 */
+	private void compile() {
+		
+		int nZ = lifetimeAsFnMassByMetallicity.size();
+		zNodes = new double[nZ];
+		yNodes = new double[nZ][];
+		massNodes = new double[nZ][][];
+		lifetimeNodes = new double[nZ][][];
+		lifetimeGradient = new double[nZ][][];
+		invLifetimeNodes = new double[nZ][][];
+		invMassNodes = new double[nZ][][];
+		massGradient = new double[nZ][][];
+		models = new MonotonicFunction1D[nZ][];
+		
+		int iz = 0;
+		for(Entry<Double, NavigableMap<Double, MonotonicFunction1D>> zEntry : lifetimeAsFnMassByMetallicity.entrySet()) {
+			
+			zNodes[iz] = zEntry.getKey();
+			
+			int nY = zEntry.getValue().size();
+			yNodes[iz] = new double[nY];
+			massNodes[iz] = new double[nY][];
+			lifetimeNodes[iz] = new double[nY][];
+			lifetimeGradient[iz] = new double[nY][];
+			invLifetimeNodes[iz] = new double[nY][];
+			invMassNodes[iz] = new double[nY][];
+			massGradient[iz] = new double[nY][];
+			models[iz] = new MonotonicFunction1D[nY];
+			
+			int iy = 0;
+			for(Entry<Double, MonotonicFunction1D> yEntry : zEntry.getValue().entrySet()) {
+				
+				yNodes[iz][iy] = yEntry.getKey();
+				models[iz][iy] = yEntry.getValue();
+				
+				double[][] points = getPoints(yEntry.getValue());
+				if(points[0].length < 2) {
+					throw new IllegalArgumentException("Model set at Z="+zNodes[iz]+", Y="+yNodes[iz][iy]+
+							" has fewer than two points!");
+				}
+				
+				double[][] sorted = sort(points[0], points[1]);
+				massNodes[iz][iy] = sorted[0];
+				lifetimeNodes[iz][iy] = sorted[1];
+				lifetimeGradient[iz][iy] = getGradients(sorted[0], sorted[1]);
+				
+				sorted = sort(points[1], points[0]);
+				invLifetimeNodes[iz][iy] = sorted[0];
+				invMassNodes[iz][iy] = sorted[1];
+				massGradient[iz][iy] = getGradients(sorted[0], sorted[1]);
+				
+				iy++;
+			}
+			iz++;
+		}
+	}
+	
+	/**
+	 * Get the mass and pre-WD lifetime points of a model set. These are the nodes of a {@link MonotonicLinear};
+	 * other functions are tabulated at {@link #N_SAMPLED_NODES} logarithmically spaced masses.
+	 * 
+	 * @param fun
+	 * 	The {@link MonotonicFunction1D} of pre-WD lifetime as a function of mass.
 	 * @return
-	 * 	True if this value lies within the range covered by the model set. False otherwise.
+	 * 	Arrays containing the masses [M_{Solar}] and the corresponding pre-WD lifetimes [yr].
 	 */
-	private boolean yIsWithinRangeOfModels(double y, NavigableMap<Double, MonotonicFunction1D> yModels) {
-
-    	// Y of lowest Y model
-    	double lowestY = yModels.firstKey();
-    	
-    	// Y of highest Y model
-    	double highestY = yModels.lastKey();
-    	
-        return (y>lowestY && y<highestY);
+	private static double[][] getPoints(MonotonicFunction1D fun) {
+		
+		if(fun instanceof MonotonicLinear) {
+			MonotonicLinear linear = (MonotonicLinear)fun;
+			return new double[][]{linear.X, linear.Y};
+		}
+		
+		double[] mass = new double[N_SAMPLED_NODES];
+		double[] lifetime = new double[N_SAMPLED_NODES];
+		double logMin = Math.log(SAMPLED_MASS_MIN);
+		double logStep = (Math.log(SAMPLED_MASS_MAX) - logMin) / (N_SAMPLED_NODES - 1);
+		for(int i=0; i<N_SAMPLED_NODES; i++) {
+			mass[i] = Math.exp(logMin + i * logStep);
+			lifetime[i] = fun.getY(mass[i])[0];
+		}
+		return new double[][]{mass, lifetime};
 	}
 	
+    /**
+     * Sort a set of (x,y) points into ascending order of x.
+     * 
+     * @param x
+     * 	The x values.
+     * @param y
+     * 	The y values.
+     * @return
+     * 	Arrays containing the sorted x and y values.
+     */
+    private static double[][] sort(double[] x, double[] y) {
+    	
+    	Integer[] order = new Integer[x.length];
+    	for(int i=0; i<order.length; i++) {
+    		order[i] = i;
+    	}
+    	Arrays.sort(order, (a, b) -> Double.compare(x[a], x[b]));
+    	
+    	double[] xs = new double[x.length];
+    	double[] ys = new double[y.length];
+    	for(int i=0; i<order.length; i++) {
+    		xs[i] = x[order[i]];
+    		ys[i] = y[order[i]];
+    	}
+    	return new double[][]{xs, ys};
+    }
+    
+    /**
+     * Compute the gradient of each segment of a piecewise linear function.
+     * 
+     * @param x
+     * 	The x values, in ascending order.
+     * @param y
+     * 	The y values.
+     * @return
+     * 	The gradient of each of the x.length-1 segments.
+     */
+    private static double[] getGradients(double[] x, double[] y) {
+    	double[] gradient = new double[x.length - 1];
+    	for(int i=0; i<gradient.length; i++) {
+    		// Coincident nodes can't be bracketed by a value, so the gradient is irrelevant
+    		gradient[i] = (x[i+1] == x[i]) ? 0.0 : (y[i+1] - y[i]) / (x[i+1] - x[i]);
+    	}
+    	return gradient;
+    }
+    
+    /**
+     * Find the index of the lower of the two nodes used to interpolate or extrapolate to the given value,
+     * i.e. the last node not greater than the value, clamped to the range [0:nodes.length-2] so that
+     * extrapolation uses the two nodes nearest the end of the range. If there is a single node then this
+     * is zero.
+     * 
+     * @param nodes
+     * 	The nodes, in ascending order.
+     * @param x
+     * 	The value.
+     * @return
+     * 	The index of the lower node.
+     */
+    private static int getSegment(double[] nodes, double x) {
+    	int lo = 0;
+    	int hi = nodes.length - 2;
+    	while(lo < hi) {
+    		int mid = (lo + hi + 1) >>> 1;
+    		if(nodes[mid] <= x) {
+    			lo = mid;
+    		}
+    		else {
+    			hi = mid - 1;
+    		}
+    	}
+    	return Math.max(lo, 0);
+    }
+    
+    /**
+     * Get the interpolation weight of the upper of two nodes.
+     * 
+     * @param nodes
+     * 	The nodes, in ascending order.
+     * @param lower
+     * 	The index of the lower node; the upper node has the next index, if there is one.
+     * @param x
+     * 	The value.
+     * @return
+     * 	The interpolation weight of the upper node, or zero if there is a single node.
+     */
+    private static double getWeight(double[] nodes, int lower, double x) {
+    	if(nodes.length < 2) {
+    		return 0.0;
+    	}
+    	return (x - nodes[lower]) / (nodes[lower+1] - nodes[lower]);
+    }
+    
 	/**
 	 * Get the total pre-WD lifetime for the given metallicity and stellar mass, and the first derivative
 	 * with respect to the mass.
@@ -107,54 +381,17 @@ public abstract class PreWdLifetimeTabulated implements PreWdLifetime {
 	 * with respect to the mass.
 	 */
 	public double[] getPreWdLifetime(double z, double y, double mass) {
-		
-		// Retrieve the two Z model sets to be used to interpolate/extrapolate the lifetime
-		Entry<Double, NavigableMap<Double, MonotonicFunction1D>> zLower = getZlower(z);
-		Entry<Double, NavigableMap<Double, MonotonicFunction1D>> zUpper = getZupper(z);
-		
-		// Now retrieve the two surrounding Y values for each constant-Z set of models
-		Entry<Double, MonotonicFunction1D> yLowerZLower = getYlower(y, zLower);
-		Entry<Double, MonotonicFunction1D> yUpperZLower = getYupper(y, zLower);
-		Entry<Double, MonotonicFunction1D> yLowerZUpper = getYlower(y, zUpper);
-		Entry<Double, MonotonicFunction1D> yUpperZUpper = getYupper(y, zUpper);
-		
-		// Get the (Z,Y) coordinates of each lifetime(mass) sequence
-		double[] zy_00 = {zLower.getKey(), yLowerZLower.getKey()};
-		double[] zy_01 = {zLower.getKey(), yUpperZLower.getKey()};
-		double[] zy_10 = {zUpper.getKey(), yLowerZUpper.getKey()};
-		double[] zy_11 = {zUpper.getKey(), yUpperZUpper.getKey()};
-		
-		// Extract the lifetimes at the given mass, for each sequence
-		double[] f_00 = yLowerZLower.getValue().getY(mass);
-		double[] f_01 = yUpperZLower.getValue().getY(mass);
-		double[] f_10 = yLowerZUpper.getValue().getY(mass);
-		double[] f_11 = yUpperZUpper.getValue().getY(mass);
-		
-		// Interpolate lifetime at (z0,y), and first derivative wrt mass
-		double[] f_z0y = f_00;
-		if((zy_01[1] - zy_00[1])!=0.0) {
-			double s = (y - zy_00[1]) / (zy_01[1] - zy_00[1]);
-			f_z0y[0] = f_00[0] + s * (f_01[0] - f_00[0]);
-			f_z0y[1] = f_00[1] + s * (f_01[1] - f_00[1]);
-		}
-		
-		// Interpolate lifetime at (z1,y)
-		double[] f_z1y = f_10;
-		if((zy_11[1] - zy_10[1])!=0.0) {
-			double s = (y - zy_10[1]) / (zy_11[1] - zy_10[1]);
-			f_z1y[0] = f_10[0] + s * (f_11[0] - f_10[0]);
-			f_z1y[1] = f_10[1] + s * (f_11[1] - f_10[1]);
-		}
-		
-		// Interpolate the lifetime at (z,y)
-		double[] f_zy = f_z0y;
-		if((zy_10[0] - zy_00[0])!=0.0) {
-			double s = (z - zy_00[0]) / (zy_10[0] - zy_00[0]);
-			f_zy[0] = f_z0y[0] + s * (f_z1y[0] - f_z0y[0]);
-			f_zy[1] = f_z0y[1] + s * (f_z1y[1] - f_z0y[1]);
-		}
-		
-		return f_zy;
+		double[] result = new double[2];
+		getPreWdLifetime(z, y, mass, result);
+		return result;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void getPreWdLifetime(double z, double y, double mass, double[] result) {
+		interpolate(z, y, mass, false, result);
 	}
 	
 	/**
@@ -171,6 +408,16 @@ public abstract class PreWdLifetimeTabulated implements PreWdLifetime {
 	 * derivative with respect to the pre-WD lifetime.
 	 */
 	public double[] getStellarMass(double z, double y, double lifetime) {
+		double[] result = new double[2];
+		getStellarMass(z, y, lifetime, result);
+		return result;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void getStellarMass(double z, double y, double lifetime, double[] result) {
 		
 		////////////////////////////////////////////////////////////////////////////
 		//                                                                        //
@@ -181,51 +428,9 @@ public abstract class PreWdLifetimeTabulated implements PreWdLifetime {
 		//                                                                        //
 		////////////////////////////////////////////////////////////////////////////
 		
-		// Retreive the two Z model sets to be used to interpolate/extrapolate the lifetime
-		Entry<Double, NavigableMap<Double, MonotonicFunction1D>> zLower = getZlower(z);
-		Entry<Double, NavigableMap<Double, MonotonicFunction1D>> zUpper = getZupper(z);
-		
-		// Now retrieve the two surrounding Y values for each constant-Z set of models
-		Entry<Double, MonotonicFunction1D> yLowerZLower = getYlower(y, zLower);
-		Entry<Double, MonotonicFunction1D> yUpperZLower = getYupper(y, zLower);
-		Entry<Double, MonotonicFunction1D> yLowerZUpper = getYlower(y, zUpper);
-		Entry<Double, MonotonicFunction1D> yUpperZUpper = getYupper(y, zUpper);
-		
-		// Get the (Z,Y) coordinates of each lifetime(mass) sequence
-		double[] zy_00 = {zLower.getKey(), yLowerZLower.getKey()};
-		double[] zy_01 = {zLower.getKey(), yUpperZLower.getKey()};
-		double[] zy_10 = {zUpper.getKey(), yLowerZUpper.getKey()};
-		double[] zy_11 = {zUpper.getKey(), yUpperZUpper.getKey()};
-		
-		// Extract the mass at the given lifetime, for each sequence
-		double[] f_00 = yLowerZLower.getValue().getX(lifetime);
-		double[] f_01 = yUpperZLower.getValue().getX(lifetime);
-		double[] f_10 = yLowerZUpper.getValue().getX(lifetime);
-		double[] f_11 = yUpperZUpper.getValue().getX(lifetime);
-		
-		// Interpolate mass at (z0,y)
-		double[] f_z0y = f_00;
-		if((zy_01[1] - zy_00[1])!=0.0) {
-			double s = (y - zy_00[1]) / (zy_01[1] - zy_00[1]);
-			f_z0y[0] = f_00[0] + s * (f_01[0] - f_00[0]);
-			f_z0y[1] = f_00[1] + s * (f_01[1] - f_00[1]);
-		}
-		// Interpolate mass at (z1,y)
-		double[] f_z1y = f_10;
-		if((zy_11[1] - zy_10[1])!=0.0) {
-			double s = (y - zy_10[1]) / (zy_11[1] - zy_10[1]);
-			f_z1y[0] = f_10[0] + s * (f_11[0] - f_10[0]);
-			f_z1y[1] = f_10[1] + s * (f_11[1] - f_10[1]);
-		}
-		
-		// Interpolate the mass at (z,y)
-		double[] f_zy = f_z0y;
-		if((zy_10[0] - zy_00[0])!=0.0) {
-			double s = (z - zy_00[0]) / (zy_10[0] - zy_00[0]);
-			f_zy[0] = f_z0y[0] + s * (f_z1y[0] - f_z0y[0]);
-			f_zy[1] = f_z0y[1] + s * (f_z1y[1] - f_z0y[1]);
-		}
-		
+		interpolate(z, y, lifetime, true, result);
+		double mass = result[0];
+		double dMass = result[1];
 		
 		////////////////////////////////////////////////////////////
 		//                                                        //
@@ -233,200 +438,126 @@ public abstract class PreWdLifetimeTabulated implements PreWdLifetime {
 		//                                                        //
 		////////////////////////////////////////////////////////////
 		
-		double[] lPrime = getPreWdLifetime(z, y, f_zy[0]);
+		interpolate(z, y, mass, false, result);
 		
 		// Corrected mass
-		f_zy[0] = f_zy[0] - ((lPrime[0] - lifetime) / lPrime[1]);
-		
-		return f_zy;
+		result[0] = mass - ((result[0] - lifetime) / result[1]);
+		result[1] = dMass;
 	}
 	
 	/**
-	 * For the given value of Z, retrieve the {@link Entry<Double, NavigableMap<Double, MonotonicFunction1D>>}
-	 * corresponding to the lower Z key for interpolation.
+	 * Interpolate/extrapolate the pre-WD lifetime as a function of mass, or the mass as a function of pre-WD
+	 * lifetime, and the first derivative, between the four model sets that bracket a (Z,Y) point. The model
+	 * sets at each Z are interpolated in Y first, then the results are interpolated in Z.
 	 * 
 	 * @param z
-	 * 	The value of the mean metallicity Z at which the interpolation is to be performed.
-	 * @return
-	 * 	The {@link Entry<Double, NavigableMap<Double, MonotonicFunction1D>>} containing the set of models
-	 * that lie at the lower Z value for use in the interpolation.
+	 * 	The metallicity Z.
+	 * @param y
+	 * 	The helium content Y.
+	 * @param x
+	 * 	The abscissa; the mass [M_{Solar}] or the pre-WD lifetime [yr].
+	 * @param inverse
+	 * 	If true, interpolate the mass as a function of pre-WD lifetime; otherwise interpolate the pre-WD
+	 * lifetime as a function of mass.
+	 * @param result
+	 * 	On exit, contains the function value and first derivative.
 	 */
-	private Entry<Double, NavigableMap<Double, MonotonicFunction1D>> getZlower(double z) {
-		
-		// Retrieve the two Z model sets to be used to interpolate/extrapolate the lifetime
-		Entry<Double, NavigableMap<Double, MonotonicFunction1D>> zLower = null;
-		Entry<Double, NavigableMap<Double, MonotonicFunction1D>> zUpper = null;
+	private void interpolate(double z, double y, double x, boolean inverse, double[] result) {
 		
-		if(zIsWithinRangeOfModels(z)) {
-			// We're interpolating wrt Z
-			zLower = lifetimeAsFnMassByMetallicity.lowerEntry(z);
-			zUpper = lifetimeAsFnMassByMetallicity.higherEntry(z);
-		}
-		else {
-			// We're extrapolating wrt Z
-			if(z <= lifetimeAsFnMassByMetallicity.firstKey()) {
-				// Z is below the lowest value available: get the lowest two models
-				zLower = lifetimeAsFnMassByMetallicity.firstEntry();
-				zUpper = lifetimeAsFnMassByMetallicity.higherEntry(lifetimeAsFnMassByMetallicity.firstKey());
-				if(zUpper==null) {
-					// There's only ONE Z value available in the model set: set both extracted sets equal
-					// to this to enable extrapolation (which will result in constant value).
-					zUpper = zLower;
-				}
-			}
-			else{
-				// Z is above the highest value available: get the highest two models
-				zLower = lifetimeAsFnMassByMetallicity.lowerEntry(lifetimeAsFnMassByMetallicity.lastKey());
-				zUpper = lifetimeAsFnMassByMetallicity.lastEntry();
-				if(zLower==null) {
-					// See comment above
-					zLower = zUpper;
-				}
-			}
+		if(zNodes.length == 0) {
+			throw new RuntimeException("No pre-WD lifetime models have been loaded!");
 		}
 		
-		return zLower;
-	}
-	
-	/**
-	 * For the given value of Z, retrieve the {@link Entry<Double, NavigableMap<Double, MonotonicFunction1D>>}
-	 * corresponding to the upper Z key for interpolation.
-	 * 
-	 * @param z
-	 * 	The value of the mean metallicity Z at which the interpolation is to be performed.
-	 * @return
-	 * 	The {@link Entry<Double, NavigableMap<Double, MonotonicFunction1D>>} containing the set of models
-	 * that lie at the upper Z value for use in the interpolation.
-	 */
-	private Entry<Double, NavigableMap<Double, MonotonicFunction1D>> getZupper(double z) {
-		
-		// Retrieve the two Z model sets to be used to interpolate/extrapolate the lifetime
-		Entry<Double, NavigableMap<Double, MonotonicFunction1D>> zLower = null;
-		Entry<Double, NavigableMap<Double, MonotonicFunction1D>> zUpper = null;
-		
-		if(zIsWithinRangeOfModels(z)) {
-			// We're interpolating wrt Z
-			zLower = lifetimeAsFnMassByMetallicity.lowerEntry(z);
-			zUpper = lifetimeAsFnMassByMetallicity.higherEntry(z);
+		// Index and interpolation weight of the lower and upper Z
+		int iz = getSegment(zNodes, z);
+		double sz = getWeight(zNodes, iz, z);
+		
+		// Interpolate at (z0,y)
+		int iy0 = getSegment(yNodes[iz], y);
+		interpolateY(iz, iy0, getWeight(yNodes[iz], iy0, y), x, inverse, result);
+		
+		if(sz != 0.0) {
+			double f0 = result[0];
+			double df0 = result[1];
+			
+			// Interpolate at (z1,y)
+			int iy1 = getSegment(yNodes[iz+1], y);
+			interpolateY(iz+1, iy1, getWeight(yNodes[iz+1], iy1, y), x, inverse, result);
+			
+			// Interpolate at (z,y)
+			result[0] = f0 + sz * (result[0] - f0);
+			result[1] = df0 + sz * (result[1] - df0);
 		}
-		else {
-			// We're extrapolating wrt Z
-			if(z <= lifetimeAsFnMassByMetallicity.firstKey()) {
-				// Z is below the lowest value available: get the lowest two models
-				zLower = lifetimeAsFnMassByMetallicity.firstEntry();
-				zUpper = lifetimeAsFnMassByMetallicity.higherEntry(lifetimeAsFnMassByMetallicity.firstKey());
-				if(zUpper==null) {
-					// There's only ONE Z value available in the model set: set both extracted sets equal
-					// to this to enable extrapolation (which will result in constant value).
-					zUpper = zLower;
-				}
-			}
-			else{
-				// Z is above the highest value available: get the highest two models
-				zLower = lifetimeAsFnMassByMetallicity.lowerEntry(lifetimeAsFnMassByMetallicity.lastKey());
-				zUpper = lifetimeAsFnMassByMetallicity.lastEntry();
-				if(zLower==null) {
-					// See comment above
-					zLower = zUpper;
-				}
-			}
-		}
-		
-		return zUpper;
 	}
 	
 	/**
-	 * For the given Y value and set of constant-Z models, retrieve the {@link Entry<Double, MonotonicFunction1D>} that
-	 * is suitable for forming the lower Y value for use in the interpolation.
+	 * Interpolate/extrapolate the function and its first derivative at the given abscissa, between the
+	 * model sets at a single Z value.
 	 * 
-	 * @param y
-	 * 	The value of the mean metallicity parameter Y
-	 * @param map
-	 * 	The set of constant Z models
-	 * @return
-	 * 	The {@link Entry<Double, MonotonicFunction1D>} that is suitable for forming the lower Y value for
-	 * use in the interpolation.
+	 * @param iz
+	 * 	Index of the Z.
+	 * @param iy
+	 * 	Index of the lower Y; the upper Y has the next index, if there is one.
+	 * @param sy
+	 * 	Interpolation weight of the upper Y.
+	 * @param x
+	 * 	The abscissa.
+	 * @param inverse
+	 * 	If true, interpolate the mass as a function of pre-WD lifetime; otherwise interpolate the pre-WD
+	 * lifetime as a function of mass.
+	 * @param result
+	 * 	On exit, contains the function value and first derivative.
 	 */
-	private Entry<Double, MonotonicFunction1D> getYlower(double y, Entry<Double, NavigableMap<Double, MonotonicFunction1D>> map) {
-		
-		Entry<Double, MonotonicFunction1D> yLower = null;
-		Entry<Double, MonotonicFunction1D> yUpper = null;
-
-		if(yIsWithinRangeOfModels(y, map.getValue())) {
-			// Interpolation wrt Y at the lower Z value
-			yLower = map.getValue().lowerEntry(y);
-			yUpper = map.getValue().higherEntry(y);
+	private void interpolateY(int iz, int iy, double sy, double x, boolean inverse, double[] result) {
+		
+		// Interpolate along the lower Y model set
+		evaluate(iz, iy, x, inverse, result);
+		
+		if(sy != 0.0) {
+			double f = result[0];
+			double df = result[1];
+			
+			// Interpolate along the upper Y model set
+			evaluate(iz, iy+1, x, inverse, result);
+			
+			result[0] = f + sy * (result[0] - f);
+			result[1] = df + sy * (result[1] - df);
 		}
-		else {
-			// Extrapolation wrt Y at the lower Z value
-			if(y <= map.getValue().firstKey()) {
-				// Y is below the lowest value available: get the lowest two models
-				yLower = map.getValue().firstEntry();
-				yUpper = map.getValue().higherEntry(map.getValue().firstKey());
-				if(yUpper == null) {
-					// See comment above
-					yUpper = yLower;
-				}
-			}
-			else {
-				// Y is above the highest value available: get the highest two models
-				yLower = map.getValue().lowerEntry(map.getValue().lastKey());
-				yUpper = map.getValue().lastEntry();
-				if(yLower == null) {
-					// See comment above
-					yLower = yUpper;
-				}
-			}
-		}
-		
-		return yLower;
 	}
 	
 	/**
-	 * For the given Y value and set of constant-Z models, retrieve the {@link Entry<Double, MonotonicFunction1D>} that
-	 * is suitable for forming the upper Y value for use in the interpolation.
+	 * Evaluate the function and its first derivative at the given abscissa along a single model set. Within
+	 * the range of the nodes this interpolates linearly along the bracketing segment; outside the range the
+	 * original {@link MonotonicFunction1D} is used, so that the extrapolation is that of the model set.
 	 * 
-	 * @param y
-	 * 	The value of the mean metallicity parameter Y
-	 * @param map
-	 * 	The set of constant Z models
-	 * @return
-	 * 	The {@link Entry<Double, MonotonicFunction1D>} that is suitable for forming the upper Y value for
-	 * use in the interpolation.
+	 * @param iz
+	 * 	Index of the Z.
+	 * @param iy
+	 * 	Index of the Y.
+	 * @param x
+	 * 	The abscissa.
+	 * @param inverse
+	 * 	If true, evaluate the mass as a function of pre-WD lifetime; otherwise evaluate the pre-WD
+	 * lifetime as a function of mass.
+	 * @param result
+	 * 	On exit, contains the function value and first derivative.
 	 */
-	private Entry<Double, MonotonicFunction1D> getYupper(double y, Entry<Double, NavigableMap<Double, MonotonicFunction1D>> map) {
+	private void evaluate(int iz, int iy, double x, boolean inverse, double[] result) {
 		
-		Entry<Double, MonotonicFunction1D> yLower = null;
-		Entry<Double, MonotonicFunction1D> yUpper = null;
-
-		if(yIsWithinRangeOfModels(y, map.getValue())) {
-			// Interpolation wrt Y at the lower Z value
-			yLower = map.getValue().lowerEntry(y);
-			yUpper = map.getValue().higherEntry(y);
-		}
-		else {
-			// Extrapolation wrt Y at the lower Z value
-			if(y <= map.getValue().firstKey()) {
-				// Y is below the lowest value available: get the lowest two models
-				yLower = map.getValue().firstEntry();
-				yUpper = map.getValue().higherEntry(map.getValue().firstKey());
-				if(yUpper == null) {
-					// See comment above
-					yUpper = yLower;
-				}
-			}
-			else {
-				// Y is above the highest value available: get the highest two models
-				yLower = map.getValue().lowerEntry(map.getValue().lastKey());
-				yUpper = map.getValue().lastEntry();
-				if(yLower == null) {
-					// See comment above
-					yLower = yUpper;
-				}
-			}
+		double[] nodes = inverse ? invLifetimeNodes[iz][iy] : massNodes[iz][iy];
+		
+		if(x < nodes[0] || x > nodes[nodes.length-1]) {
+			double[] f = inverse ? models[iz][iy].getX(x) : models[iz][iy].getY(x);
+			result[0] = f[0];
+			result[1] = f[1];
+			return;
 		}
 		
-		return yUpper;
+		double[] fNodes = inverse ? invMassNodes[iz][iy] : lifetimeNodes[iz][iy];
+		double[] gradients = inverse ? massGradient[iz][iy] : lifetimeGradient[iz][iy];
+		int j = getSegment(nodes, x);
+		result[0] = fNodes[j] + gradients[j] * (x - nodes[j]);
+		result[1] = gradients[j];
 	}
 	
-}
\ No newline at end of file
+}
@@ -1,7 +1,5 @@
 package ms.lifetime.algoimpl;
 
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.logging.Logger;
 
 import ms.lifetime.algo.PreWdLifetime;
@@ -46,21 +44,25 @@ public class PreWdLifetime_Hurley2000 implements PreWdLifetime {
     private static final double DM_FINITE_DIFF = 0.001;
     
 	/**
-	 * Cache of values of the coefficients a1-a10 as a function of metallicity Z.
+	 * The name of these models.
 	 */
-	SortedMap<Double, double[]> coeffs;
+	public static final String NAME = "Hurley et al. (2000)";
 	
 	/**
 	 * Main constructor for the {@link PreWdLifetime_Hurley2000}.
+	 * 
+	 * Note that the coefficients a1-a10 are not cached by metallicity: they're cubic polynomials in log(Z)
+	 * that are cheaper to evaluate than to look up, and when the metallicity is drawn at random for each
+	 * star a cache keyed on Z would grow without limit. Instead they're computed once at the start of each
+	 * public method and shared by all the evaluations of the lifetime formula that it requires. This also
+	 * leaves the class stateless and therefore thread safe.
 	 */
 	public PreWdLifetime_Hurley2000() {
-		// Initialise coefficients cache
-		coeffs = new TreeMap<>();
 	}
 	
 	@Override
 	public String getName() {
-		return "Hurley et al. (2000)";
+		return NAME;
 	}
 	
 	/**
@@ -69,7 +71,8 @@ public class PreWdLifetime_Hurley2000 implements PreWdLifetime {
 	 * @param z
 	 * 	The metallicity Z.
 	 * @return
-	 * 	An array containing the values of the coefficients a1 to a10 for the given metallicity.
+	 * 	An array containing the values of the coefficients a1 to a10 for the given metallicity, followed
+	 * by the metallicity-dependent factor x used in equation 5.
 	 */
 	private static double[] getCoeffs(double z) {
 		
@@ -78,7 +81,7 @@ public class PreWdLifetime_Hurley2000 implements PreWdLifetime {
 		double zeta3 = zeta2 * zeta;
 		
 		// Coefficients of equation 4
-		double[] a = new double[10];
+		double[] a = new double[11];
 		a[0] = 1.593890e3  + 2.053038e3  * zeta + 1.231226e3  * zeta2 + 2.327785e2  * zeta3;
 		a[1] = 2.706708e3  + 1.483131e3  * zeta + 5.772723e2  * zeta2 + 7.411230e1  * zeta3;
 		a[2] = 1.466143e2  - 1.048442e2  * zeta - 6.795374e1  * zeta2 - 1.391127e1  * zeta3;
@@ -90,6 +93,9 @@ public class PreWdLifetime_Hurley2000 implements PreWdLifetime {
 		a[8] = 1.312179e0  - 3.294936e-1 * zeta + 9.231860e-2 * zeta2 + 2.610989e-2 * zeta3;
 		a[9] = 8.073972e-1;
 		
+		// Factor x of equation 5
+		a[10] = Math.max(0.95, Math.min(0.95 - 0.03 * (zeta + 0.30103), 0.99));
+		
 		return a;
 	}
 
@@ -99,11 +105,13 @@ public class PreWdLifetime_Hurley2000 implements PreWdLifetime {
 	@Override
 	public double[] getPreWdLifetime(double z, double y, double mass) {
 		
+		double[] a = getCoeffs(z);
+		
 		// Main sequence lifetime [Myr]
-		double t_MS = getMainSequenceLifetime(z, mass);
+		double t_MS = getMainSequenceLifetime(a, mass);
 		
 		// Estimate first derivative by finite differences [Myr/M_{solar}]
-		double dt_dM = (getMainSequenceLifetime(z, mass + DM_FINITE_DIFF) - getMainSequenceLifetime(z, mass - DM_FINITE_DIFF)) / (2 * DM_FINITE_DIFF);
+		double dt_dM = (getMainSequenceLifetime(a, mass + DM_FINITE_DIFF) - getMainSequenceLifetime(a, mass - DM_FINITE_DIFF)) / (2 * DM_FINITE_DIFF);
 		
 		// Scale lifetime to per-year units
 		t_MS *= 1e6;
@@ -121,11 +129,13 @@ public class PreWdLifetime_Hurley2000 implements PreWdLifetime {
 		// Scale lifetime to per-megayear units
 		double tMyr = lifetime/1e6;
 		
+		double[] a = getCoeffs(z);
+		
 		// Stellar mass
-		double mass = getStellarMass(z, tMyr);
+		double mass = getStellarMass(a, tMyr);
 
 		// Estimate first derivative by finite differences
-		double dM_dt = (getStellarMass(z, tMyr + DT_FINITE_DIFF) - getStellarMass(z, tMyr - DT_FINITE_DIFF)) / (2 * DT_FINITE_DIFF);
+		double dM_dt = (getStellarMass(a, tMyr + DT_FINITE_DIFF) - getStellarMass(a, tMyr - DT_FINITE_DIFF)) / (2 * DT_FINITE_DIFF);
 
 		return new double[]{mass, dM_dt};
 	}
@@ -134,21 +144,14 @@ public class PreWdLifetime_Hurley2000 implements PreWdLifetime {
 	 * Compute the time to the base of the giant branch, for the given metallicity and mass. This is an
 	 * implementation of equation 4.
 	 * 
-	 * @param z
-	 * 	The metallicity Z.
+	 * @param a
+	 * 	The coefficients for the metallicity Z; see {@link #getCoeffs(double)}.
 	 * @param mass
 	 * 	The stellar mass [M_{solar}]
 	 * @return
 	 * 	The time to the base of the giant branch [Myr].
 	 */
-	private double getTimeToBaseOfGiantBranch(double z, double mass) {
-		
-		// Compute coefficients if necessary
-		if(!coeffs.containsKey(z)) {
-			coeffs.put(z, getCoeffs(z));
-		}
-		// Retrieve coefficients
-		double[] a = coeffs.get(z);
+	private static double getTimeToBaseOfGiantBranch(double[] a, double mass) {
 		
 		double mass2 = mass * mass;
 		double mass4 = mass2 * mass2;
@@ -165,29 +168,20 @@ public class PreWdLifetime_Hurley2000 implements PreWdLifetime {
 	 * Compute the main sequence lifetime, for the given metallicity and mass. This is an
 	 * implementation of equation 5.
 	 * 
-	 * @param z
-	 * 	The metallicity Z.
+	 * @param a
+	 * 	The coefficients for the metallicity Z; see {@link #getCoeffs(double)}.
 	 * @param mass
 	 * 	The stellar mass [M_{solar}]
 	 * @return
 	 * 	The main sequence lifetime [Myr].
 	 */
-	private double getMainSequenceLifetime(double z, double mass) {
-		
-		double zeta = Math.log10(z / 0.02);
-
-		// Compute coefficients if necessary
-		if(!coeffs.containsKey(z)) {
-			coeffs.put(z, getCoeffs(z));
-		}
-		// Retrieve coefficients
-		double[] a = coeffs.get(z);
+	private static double getMainSequenceLifetime(double[] a, double mass) {
 		
 		// Time to the base of the giant branch (equation 4)
-		double t_BGB = getTimeToBaseOfGiantBranch(z, mass);
+		double t_BGB = getTimeToBaseOfGiantBranch(a, mass);
 		
 		// Main sequence lifetime
-		double x = Math.max(0.95, Math.min(0.95 - 0.03 * (zeta + 0.30103), 0.99));
+		double x = a[10];
 		double mu = Math.max(0.5, 1.0 - 0.01 * Math.max(a[5]/Math.pow(mass, a[6]), a[7] + a[8]/Math.pow(mass, a[9])));
 		
 		double t_MS = Math.max(mu * t_BGB, x * t_BGB);
@@ -200,14 +194,14 @@ public class PreWdLifetime_Hurley2000 implements PreWdLifetime {
 	 * This uses a binary search algorithm to find the mass whose lifetime is within {@link #T_MS_TOL} of
 	 * the requested one.
 	 * 
-	 * @param z
-	 * 	The metallicity Z.
+	 * @param a
+	 * 	The coefficients for the metallicity Z; see {@link #getCoeffs(double)}.
 	 * @param lifetime
 	 * 	The main sequence lifetime [Myr]
 	 * @return
 	 * 	The stellar mass [M_{solar}]
 	 */
-	private double getStellarMass(double z, double lifetime) {
+	private static double getStellarMass(double[] a, double lifetime) {
 		
 		// Binary search algorithm
 
@@ -217,7 +211,7 @@ public class PreWdLifetime_Hurley2000 implements PreWdLifetime {
 
         // Current test mass
         double mid = (min + max) / 2.0;
-        double t_MS = getMainSequenceLifetime(z, mid);
+        double t_MS = getMainSequenceLifetime(a, mid);
 
         int nIter = 0;
         while (Math.abs(t_MS - lifetime) > T_MS_TOL) {
@@ -237,7 +231,7 @@ public class PreWdLifetime_Hurley2000 implements PreWdLifetime {
             
             mid = (min + max) / 2.0;
             
-            t_MS = getMainSequenceLifetime(z, mid);
+            t_MS = getMainSequenceLifetime(a, mid);
 
             if (nIter++ > MAX_ITER) {
                 throw new RuntimeException("Couldn't locate stellar mass; check main sequence lifetime formula!");
@@ -1,9 +1,6 @@
 package ms.lifetime.algoimpl;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.TreeMap;
@@ -15,7 +12,7 @@ import numeric.functions.Linear;
 import numeric.functions.MonotonicFunction1D;
 import numeric.functions.MonotonicLinear;
 import numeric.minimisation.nllsq.algoimpl.LevenbergMarquardtExponentialFitter;
-import util.ParseUtil;
+import utils.TableCache;
 
 /**
  * Class provides an implementation of the {@link PreWdLifetime} that encapsulates the pre-WD lifetimes as
@@ -90,14 +87,14 @@ public class PreWdLifetime_LPCODE extends PreWdLifetimeTabulated {
 	/**
 	 * The name of these models.
 	 */
-	private static final String name = "Renedo et al. (2010)";
+	public static final String NAME = "Renedo et al. (2010)";
 	
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public String getName() {
-		return name;
+		return NAME;
 	}
 	
 	/**
@@ -121,18 +118,12 @@ public class PreWdLifetime_LPCODE extends PreWdLifetimeTabulated {
 		// Loop over each distinct mass in turn and read the files
 		for(int f=0; f<colours.length; f++) {
 			
-			// Open readers on each file
-			InputStream colourIs = this.getClass().getClassLoader().getResourceAsStream(colourLoc + colours[f]);
-			InputStream tracksIs = this.getClass().getClassLoader().getResourceAsStream(tracksLoc + tracks[f]);
-	        
-			BufferedReader colourIn = new BufferedReader(new InputStreamReader(colourIs));
-			BufferedReader tracksIn = new BufferedReader(new InputStreamReader(tracksIs));
-	        
+			// Read each file, from the binary table cache if that's up to date
 			double[][] colourData = null, tracksData = null;
 			
 			try {
-				colourData = ParseUtil.parseFile(colourIn, ParseUtil.whitespaceDelim, comments);
-				tracksData = ParseUtil.parseFile(tracksIn, ParseUtil.whitespaceDelim, comments);
+				colourData = TableCache.getTable(colourLoc + colours[f], comments);
+				tracksData = TableCache.getTable(tracksLoc + tracks[f], comments);
 			}
 			catch (IOException e) {
 				logger.warning("Could not load the Renedo et al. (2010) model files!");
@@ -15,7 +15,6 @@ import java.util.logging.Level;
 import ms.lifetime.algo.PreWdLifetimeTabulated;
 import numeric.functions.Linear;
 import numeric.functions.MonotonicFunction1D;
-import numeric.functions.MonotonicLinear;
 import util.FileUtil;
 
 /**
@@ -48,14 +47,14 @@ public class PreWdLifetime_PARSECv1p2 extends PreWdLifetimeTabulated {
 	/**
 	 * The name of these models.
 	 */
-	private static final String name = "PARSEC v1.2";
+	public static final String NAME = "PARSEC v1.2";
 	
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public String getName() {
-		return name;
+		return NAME;
 	}
 	
 	/**
@@ -99,7 +98,7 @@ public class PreWdLifetime_PARSECv1p2 extends PreWdLifetimeTabulated {
 	    	
 	    	// Read the directory contents & create the MonotonicFunction1D that interpolates
 	    	// pre-WD lifetime as a function of mass
-	    	MonotonicFunction1D fun = readModelSet(dir);
+	    	MonotonicFunction1D fun = getModelSet(dir, modelPathStr + dir.getName(), () -> readModelSet(dir));
 	    	
 	    	// Install in the map
 	    	lifetimeAsFnMassByMetallicity.get(z).put(y, fun);
@@ -109,16 +108,16 @@ public class PreWdLifetime_PARSECv1p2 extends PreWdLifetimeTabulated {
 	/**
 	 * Read the contents of a directory containing a set of PARSECv1.2 stellar evolutionary models
 	 * of varying mass (for a single metallicity) and encapsulate the total pre-WD lifetimes
-	 * as a function of mass in a {@link MonotonicFunction1D}.
+	 * as a function of mass.
 	 * 
 	 * @param path
 	 * 	Path to the directory containing the full set of models of varying mass, for a single
 	 * metallicity.
 	 * @return
-	 * 	A {@link MonotonicFunction1D} that interpolates the total pre-WD lifetime as a
-	 * function of the stellar mass.
+	 * 	Array containing the stellar masses [M_{Solar}] (first element) and the corresponding total pre-WD
+	 * lifetimes [yr] (second element), in ascending order of mass.
 	 */
-	private MonotonicFunction1D readModelSet(File path) {
+	private double[][] readModelSet(File path) {
 
 		// Parse data from the file names
 		// Filenames are of the format:
@@ -326,7 +325,7 @@ public class PreWdLifetime_PARSECv1p2 extends PreWdLifetimeTabulated {
         	i++;
         }
         
-        return new MonotonicLinear(masses, preWdLifetimes);
+        return new double[][]{masses, preWdLifetimes};
 	}
 	
     /**
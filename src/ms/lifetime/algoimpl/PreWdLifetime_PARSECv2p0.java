@@ -15,7 +15,6 @@ import java.util.logging.Level;
 import ms.lifetime.algo.PreWdLifetimeTabulated;
 import numeric.functions.Linear;
 import numeric.functions.MonotonicFunction1D;
-import numeric.functions.MonotonicLinear;
 import util.FileUtil;
 
 /**
@@ -44,7 +43,7 @@ public class PreWdLifetime_PARSECv2p0 extends PreWdLifetimeTabulated {
 	/**
 	 * The name of these models.
 	 */
-	private static final String name = "PARSEC v2.0";
+	public static final String NAME = "PARSEC v2.0";
 	
 	/**
 	 * Hardcoded choice of rotational parameter.
@@ -56,7 +55,7 @@ public class PreWdLifetime_PARSECv2p0 extends PreWdLifetimeTabulated {
 	 */
 	@Override
 	public String getName() {
-		return name;
+		return NAME;
 	}
 	
 	/**
@@ -107,7 +106,7 @@ public class PreWdLifetime_PARSECv2p0 extends PreWdLifetimeTabulated {
 	    	
 	    	// Read the directory contents & create the MonotonicFunction1D that interpolates
 	    	// pre-WD lifetime as a function of mass
-	    	MonotonicFunction1D fun = readModelSet(dir);
+	    	MonotonicFunction1D fun = getModelSet(dir, modelPathStr + dir.getName(), () -> readModelSet(dir));
 	    	
 	    	// Install in the map
 	    	lifetimeAsFnMassByMetallicity.get(z).put(y, fun);
@@ -117,16 +116,16 @@ public class PreWdLifetime_PARSECv2p0 extends PreWdLifetimeTabulated {
 	/**
 	 * Read the contents of a directory containing a set of PARSECv1.2 stellar evolutionary models
 	 * of varying mass (for a single metallicity) and encapsulate the total pre-WD lifetimes
-	 * as a function of mass in a {@link MonotonicFunction1D}.
+	 * as a function of mass.
 	 * 
 	 * @param path
 	 * 	Path to the directory containing the full set of models of varying mass, for a single
 	 * metallicity.
 	 * @return
-	 * 	A {@link MonotonicFunction1D} that interpolates the total pre-WD lifetime as a
-	 * function of the stellar mass.
+	 * 	Array containing the stellar masses [M_{Solar}] (first element) and the corresponding total pre-WD
+	 * lifetimes [yr] (second element), in ascending order of mass.
 	 */
-	private MonotonicFunction1D readModelSet(File path) {
+	private double[][] readModelSet(File path) {
 
 		// Parse data from the file names
 		// Filenames are of the format:
@@ -248,7 +247,7 @@ public class PreWdLifetime_PARSECv2p0 extends PreWdLifetimeTabulated {
         	i++;
         }
         
-        return new MonotonicLinear(masses, preWdLifetimes);
+        return new double[][]{masses, preWdLifetimes};
 	}
 	
     /**
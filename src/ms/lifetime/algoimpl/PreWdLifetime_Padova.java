@@ -12,7 +12,6 @@ import java.util.logging.Level;
 
 import ms.lifetime.algo.PreWdLifetimeTabulated;
 import numeric.functions.MonotonicFunction1D;
-import numeric.functions.MonotonicLinear;
 import util.FileUtil;
 
 /**
@@ -61,14 +60,14 @@ public class PreWdLifetime_Padova extends PreWdLifetimeTabulated {
 	/**
 	 * The name of these models.
 	 */
-	private static final String name = "Padova";
+	public static final String NAME = "Padova";
 	
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public String getName() {
-		return name;
+		return NAME;
 	}
 	
 	/**
@@ -109,7 +108,7 @@ public class PreWdLifetime_Padova extends PreWdLifetimeTabulated {
 	    	}
 	    	
 	    	// Read the directory contents & create the MonotonicFunction1D
-	    	MonotonicFunction1D fun = readModelSet(file);
+	    	MonotonicFunction1D fun = getModelSet(file, modelPathStr + file.getName(), () -> readModelSet(file));
 	    	
 	    	// Install in the map
 	    	lifetimeAsFnMassByMetallicity.get(z).put(y, fun);
@@ -119,15 +118,15 @@ public class PreWdLifetime_Padova extends PreWdLifetimeTabulated {
 	/**
 	 * Read the contents of a directory containing a set of Padova stellar evolutionary models
 	 * of varying mass (for a single metallicity) and encapsulate the total pre-WD lifetimes
-	 * as a function of mass in a {@link MonotonicFunction1D}.
+	 * as a function of mass.
 	 * @param path
 	 * 	Path to the directory containing the full set of models of varying mass, for a single
 	 * metallicity.
 	 * @return
-	 * 	A {@link MonotonicFunction1D} that interpolates the total pre-WD lifetime as a
-	 * function of the stellar mass.
+	 * 	Array containing the stellar masses [M_{Solar}] (first element) and the corresponding total pre-WD
+	 * lifetimes [yr] (second element), in ascending order of mass.
 	 */
-	private MonotonicFunction1D readModelSet(File path) {
+	private double[][] readModelSet(File path) {
 
         // List to store all mass/lifetime points
         List<MassLifetimeCoordinate> points = new LinkedList<MassLifetimeCoordinate>();
@@ -213,7 +212,7 @@ public class PreWdLifetime_Padova extends PreWdLifetimeTabulated {
         	lifetime[i] = points.get(i).getTotalLifetime();
         }
         
-        return new MonotonicLinear(mass, lifetime);
+        return new double[][]{mass, lifetime};
 	}
 	
     /**
@@ -231,7 +231,7 @@ public class PlotPreWdMasses {
 			
 			// Array of raw data points. A bit trickier to assemble.
 			NavigableMap<Double, NavigableMap<Double, MonotonicFunction1D>> lifetimeAsFnMassByMetallicity = 
-					preWdLifetimeTab.lifetimeAsFnMassByMetallicity;
+					preWdLifetimeTab.getLifetimeAsFnMassByMetallicity();
 			
 			// Calculate the number of distinct metallicity tracks
 			int nMetals = 0;
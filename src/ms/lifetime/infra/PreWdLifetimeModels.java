@@ -1,11 +1,14 @@
 package ms.lifetime.infra;
 
+import java.util.function.Supplier;
+
 import ms.lifetime.algo.PreWdLifetime;
 import ms.lifetime.algoimpl.PreWdLifetime_Hurley2000;
 import ms.lifetime.algoimpl.PreWdLifetime_LPCODE;
 import ms.lifetime.algoimpl.PreWdLifetime_PARSECv1p2;
 import ms.lifetime.algoimpl.PreWdLifetime_PARSECv2p0;
 import ms.lifetime.algoimpl.PreWdLifetime_Padova;
+import utils.LazySupplier;
 
 /**
  * Enumerated type representing the different implementations of {@link PreWdLifetime} that are available.
@@ -15,30 +18,44 @@ import ms.lifetime.algoimpl.PreWdLifetime_Padova;
  */
 public enum PreWdLifetimeModels {
 	
-	PADOVA(new PreWdLifetime_Padova()),
-	LPCODE(new PreWdLifetime_LPCODE()),
-	PARSECV1p2s(new PreWdLifetime_PARSECv1p2()),
-	PARSECV2p0(new PreWdLifetime_PARSECv2p0()),
-	HURLEY(new PreWdLifetime_Hurley2000());
+	PADOVA(PreWdLifetime_Padova.NAME, PreWdLifetime_Padova::new),
+	LPCODE(PreWdLifetime_LPCODE.NAME, PreWdLifetime_LPCODE::new),
+	PARSECV1p2s(PreWdLifetime_PARSECv1p2.NAME, PreWdLifetime_PARSECv1p2::new),
+	PARSECV2p0(PreWdLifetime_PARSECv2p0.NAME, PreWdLifetime_PARSECv2p0::new),
+	HURLEY(PreWdLifetime_Hurley2000.NAME, PreWdLifetime_Hurley2000::new);
+	
+	/**
+	 * The name of the {@link PreWdLifetime}; this is held here so that the models don't have to be
+	 * loaded in order to present the options to the user.
+	 */
+	private final String name;
 	
-	private PreWdLifetime preWdLifetimeModels;
+	/**
+	 * Supplies the {@link PreWdLifetime}, which is created on first use. The tabulated models load
+	 * all their data on construction.
+	 */
+	private final LazySupplier<PreWdLifetime> preWdLifetimeModels;
 	
 	/**
 	 * The main constructor.
+	 * @param name
+	 * 	The name of the {@link PreWdLifetime} supplied by this source.
 	 * @param preWdLifetimeModels
-	 * 	The {@link PreWdLifetime} supplied by this source.
+	 * 	Creates the {@link PreWdLifetime} supplied by this source.
 	 */
-	PreWdLifetimeModels(PreWdLifetime preWdLifetimeModels) {
-		this.preWdLifetimeModels = preWdLifetimeModels;
+	PreWdLifetimeModels(String name, Supplier<PreWdLifetime> preWdLifetimeModels) {
+		this.name = name;
+		this.preWdLifetimeModels = new LazySupplier<>(preWdLifetimeModels);
 	}
 	
 	/**
-	 * Resolve the {@link PreWdLifetimeModels} to the corresponding {@link PreWdLifetime}.
+	 * Resolve the {@link PreWdLifetimeModels} to the corresponding {@link PreWdLifetime}. This is
+	 * created on the first call.
 	 * @return
 	 * 	The {@link PreWdLifetime} implementation corresponding to this {@link PreWdLifetimeModels}.
 	 */
     public PreWdLifetime getPreWdLifetimeModels() {
-    	return preWdLifetimeModels;
+    	return preWdLifetimeModels.get();
     }
     
     /**
@@ -46,7 +63,7 @@ public enum PreWdLifetimeModels {
      */
     @Override
     public String toString() {
-    	return getPreWdLifetimeModels().getName();
+    	return name;
     }
 	
 }
\ No newline at end of file
@@ -1,14 +1,12 @@
 package photometry;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 
 import infra.Quantity;
 import numeric.functions.Linear;
 import util.ParseUtil;
+import utils.TableCache;
 
 /**
  * This enum represents magnitudes in particular photometric passbands. It also contains the filter transmission
@@ -206,11 +204,10 @@ public enum Filter implements Quantity<Filter> {
 			return;
 		}
 		
-		InputStream is = this.getClass().getClassLoader().getResourceAsStream("resources/filters/"+getFilename());
-
-        try(BufferedReader in = new BufferedReader(new InputStreamReader(is)))
+        try
         {
-        	double[][] data = ParseUtil.parseFile(in, ParseUtil.whitespaceDelim, ParseUtil.hashComment);
+        	// Read the transmission function, from the binary table cache if that's up to date
+        	double[][] data = TableCache.getTable("resources/filters/"+getFilename(), ParseUtil.hashComment);
         	
         	// First column contains the wavelength [Angstroms], second column contains the throughput
 	        transmission = new Linear(data[0], data[1]);
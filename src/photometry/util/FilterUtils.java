@@ -2,8 +2,6 @@ package photometry.util;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Scanner;
@@ -15,6 +13,7 @@ import numeric.functions.Linear;
 import numeric.integration.IntegrableFunction;
 import numeric.integration.IntegrationUtils;
 import photometry.Filter;
+import utils.TableCache;
 
 /**
  * Utility methods for {@link Filter}s.
@@ -104,9 +103,22 @@ public class FilterUtils {
      */
     private static void initialiseVegaSpectrum() throws IOException {
     	
-		// Read the Vega spectrum to a Linear interpolation object
-		InputStream is = (new FilterUtils()).getClass().getClassLoader().getResourceAsStream(vegaSpectrumPath);
-		BufferedReader in = new BufferedReader(new InputStreamReader(is));
+		// Read the Vega spectrum to a Linear interpolation object, from the binary table cache if that's up to date
+		double[][] vega = TableCache.getTable(vegaSpectrumPath, FilterUtils::parseVegaSpectrum);
+		
+        vegaSpectrum = new Linear(vega[0], vega[1]);
+    }
+    
+    /**
+     * Parse the Vega spectrum.
+     * @param in
+     * 	A {@link BufferedReader} open on the file containing the Vega spectrum.
+     * @return
+     * 	The wavelength [Angstroms] (first element) and flux (second element) at each point in the spectrum.
+     * @throws IOException
+     * 	If there's a problem reading the Vega spectrum from file
+     */
+    private static double[][] parseVegaSpectrum(BufferedReader in) throws IOException {
 		
 		List<Double> vegaWavelength = new LinkedList<>();
         List<Double> vegaFlux = new LinkedList<>();
@@ -133,8 +145,17 @@ public class FilterUtils {
             
             scan.close();
         }
-		
-        vegaSpectrum = new Linear(vegaWavelength, vegaFlux);
+        
+        double[][] vega = new double[2][vegaWavelength.size()];
+        int i=0;
+        for(double angstroms : vegaWavelength) {
+        	vega[0][i++] = angstroms;
+        }
+        i=0;
+        for(double flux : vegaFlux) {
+        	vega[1][i++] = flux;
+        }
+        return vega;
     }
     
     /**
@@ -25,6 +25,8 @@ package projects.gaia.exec;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 import ifmr.algo.BaseIfmr;
@@ -109,8 +111,17 @@ public class CreateModelHrDiagram {
 //		script.append("plot '-' u ($2-$3):1 w p pt 5 ps 0.25").append(OSChecker.newline);
 		script.append("plot '-' u ($2-$3):1 w d").append(OSChecker.newline);
 	    
+		// Number of stars to generate
+		int nStars = 100000;
+		
+		// Cooling time, mass and atmosphere type of the stars that have formed WDs
+		double[] t_wd = new double[nStars];
+		double[] mass_wd = new double[nStars];
+		WdAtmosphereType[] wd_atm = new WdAtmosphereType[nStars];
+		int nWds = 0;
+		
 		// Generate stars
-	    for(int i = 0; i<100000; i++) {
+	    for(int i = 0; i<nStars; i++) {
 	    	
 	    	// Draw creation time; this is equal to the total stellar age
 	    	double t = sfr.drawCreationTime();
@@ -129,30 +140,29 @@ public class CreateModelHrDiagram {
 	    	if(t > t_ms) {
 	    		
 	    		// White dwarf cooling time
-	    		double t_wd = t - t_ms;
+	    		t_wd[nWds] = t - t_ms;
 	    		
 	    		// White dwarf mass
-	    		double mass_wd = ifmr.getMf(mass_ms);
+	    		mass_wd[nWds] = ifmr.getMf(mass_ms);
 	    		
 	    		// Draw WD atmosphere type
-	    		WdAtmosphereType wd_atm = rand.nextFloat() > w_H ? WdAtmosphereType.He : WdAtmosphereType.H;
-	    		
-	    		// Get white dwarf magnitudes at the present day
-	    		double g = wdCoolingModels.quantity(t_wd, mass_wd, wd_atm, Filter.G_NOM_DR2);
-	    		double bp = wdCoolingModels.quantity(t_wd, mass_wd, wd_atm, Filter.BP_NOM_DR2);
-	    		double rp = wdCoolingModels.quantity(t_wd, mass_wd, wd_atm, Filter.RP_NOM_DR2);
-	    		
-//	    		double g = wdCoolingModels.mag(t_wd, mass_wd, wd_atm, Filter.B);
-//	    		double bp = wdCoolingModels.mag(t_wd, mass_wd, wd_atm, Filter.B);
-//	    		double rp = wdCoolingModels.mag(t_wd, mass_wd, wd_atm, Filter.V);
-	    		
+	    		wd_atm[nWds] = rand.nextFloat() > w_H ? WdAtmosphereType.He : WdAtmosphereType.H;
 	    		
-	    		// Plot colour-magnitude diagram
-				script.append(g + "\t" + bp + "\t" + rp).append(OSChecker.newline);
-
+	    		nWds++;
 	    	}
 	    }
 	    
+	    // Get white dwarf magnitudes at the present day, for all WDs at once
+	    List<Filter> filters = Arrays.asList(Filter.G_NOM_DR2, Filter.BP_NOM_DR2, Filter.RP_NOM_DR2);
+//	    List<Filter> filters = Arrays.asList(Filter.B, Filter.B, Filter.V);
+	    double[][] mags = new double[filters.size()][nWds];
+	    wdCoolingModels.quantities(t_wd, mass_wd, wd_atm, nWds, filters, mags, null);
+	    
+	    for(int i = 0; i<nWds; i++) {
+    		// Plot colour-magnitude diagram
+			script.append(mags[0][i] + "\t" + mags[1][i] + "\t" + mags[2][i]).append(OSChecker.newline);
+	    }
+	    
 		script.append("e").append(OSChecker.newline);
 	    
 	    // Make plot
@@ -14,8 +14,9 @@ import wd.wdlf.algo.BaseWdlf;
 import wd.wdlf.algoimpl.ModelWDLF;
 import wd.wdlf.algoimpl.ObservedWdlf;
 import wd.wdlf.modelling.infra.ModellingState;
-import wd.wdlf.modelling.infra.MonteCarloWDLFSolver;
+import wd.wdlf.modelling.infra.ParallelMonteCarloWDLFSolver;
 import wd.wdlf.modelling.infra.WDLFSolver;
+import wd.wdlf.modelling.infra.WdlfModelEvaluator;
 
 /**
  * This class provides an application that is used to fit a simulated WDLF to an observed
@@ -69,7 +70,7 @@ public class WdlfFitter {
 		
 		state.syntheticSFR = sfr;
 		
-		final WDLFSolver solver = new MonteCarloWDLFSolver();
+		final WDLFSolver solver = new ParallelMonteCarloWDLFSolver();
 		
 		// Compute the initial guess model
         ModelWDLF syntheticWDLF = solver.calculateWDLF(state);
@@ -79,34 +80,28 @@ public class WdlfFitter {
 		out.newLine();
 		out.newLine();
 		
+		// Evaluates the model and the finite differences Jacobian, computing the perturbed models concurrently.
+		// Each concurrent evaluation has its own single threaded solver with the same seed, so that the
+		// finite differences use common random numbers.
+		final WdlfModelEvaluator evaluator = new WdlfModelEvaluator(state, seed -> new ParallelMonteCarloWDLFSolver(seed, 1),
+				ParallelMonteCarloWDLFSolver.DEFAULT_SEED);
+		
 		// Build an implementation of the LevenbergMarquardt
         LevenbergMarquardt lma = new LevenbergMarquardt() {
 
 			@Override
 			public double[] getModel(double[] params) {
-				
-				state.syntheticSFR.setParams(params);
-				
-				ModelWDLF syntheticWDLF = solver.calculateWDLF(state);
-				
-				// Extract the model WDLF points
-				double[] model = new double[syntheticWDLF.density.getBinCentres().length];
-				
-				for(int bin=0; bin<model.length; bin++) {
-					model[bin] = syntheticWDLF.density.getBinContents(bin);
-				}
-				
-				return model;
+				return evaluator.getModel(params);
 			}
 
 			@Override
 			public double[][] getJacobian(double[] params) {
-				throw new RuntimeException("Naughty naughty!");
+				return evaluator.getJacobian(params, finiteDifferencesStepSizePerParam());
 			}
 			
 			@Override
 			public boolean useFiniteDifferencesJacobian() {
-				return true;
+				return false;
 			}
 			
 			@Override
@@ -207,7 +202,7 @@ public class WdlfFitter {
 		
 		state.syntheticSFR = sfr;
 		
-		final WDLFSolver solver = new MonteCarloWDLFSolver();
+		final WDLFSolver solver = new ParallelMonteCarloWDLFSolver();
 		
 		// Compute the initial guess model
         ModelWDLF syntheticWDLF = solver.calculateWDLF(state);
@@ -217,34 +212,28 @@ public class WdlfFitter {
 		out.newLine();
 		out.newLine();
 		
+		// Evaluates the model and the finite differences Jacobian, computing the perturbed models concurrently.
+		// Each concurrent evaluation has its own single threaded solver with the same seed, so that the
+		// finite differences use common random numbers.
+		final WdlfModelEvaluator evaluator = new WdlfModelEvaluator(state, seed -> new ParallelMonteCarloWDLFSolver(seed, 1),
+				ParallelMonteCarloWDLFSolver.DEFAULT_SEED);
+		
 		// Build an implementation of the LevenbergMarquardt
         LevenbergMarquardt lma = new LevenbergMarquardt() {
 
 			@Override
 			public double[] getModel(double[] params) {
-				
-				state.syntheticSFR.setParams(params);
-				
-				ModelWDLF syntheticWDLF = solver.calculateWDLF(state);
-				
-				// Extract the model WDLF points
-				double[] model = new double[syntheticWDLF.density.getBinCentres().length];
-				
-				for(int bin=0; bin<model.length; bin++) {
-					model[bin] = syntheticWDLF.density.getBinContents(bin);
-				}
-				
-				return model;
+				return evaluator.getModel(params);
 			}
 
 			@Override
 			public double[][] getJacobian(double[] params) {
-				throw new RuntimeException("Naughty naughty!");
+				return evaluator.getJacobian(params, finiteDifferencesStepSizePerParam());
 			}
 			
 			@Override
 			public boolean useFiniteDifferencesJacobian() {
-				return true;
+				return false;
 			}
 			
 			@Override
@@ -345,7 +334,7 @@ public class WdlfFitter {
 		
 		state.syntheticSFR = sfr;
 		
-		final WDLFSolver solver = new MonteCarloWDLFSolver();
+		final WDLFSolver solver = new ParallelMonteCarloWDLFSolver();
 		
 		// Compute the initial guess model
         ModelWDLF syntheticWDLF = solver.calculateWDLF(state);
@@ -355,34 +344,28 @@ public class WdlfFitter {
 		out.newLine();
 		out.newLine();
 		
+		// Evaluates the model and the finite differences Jacobian, computing the perturbed models concurrently.
+		// Each concurrent evaluation has its own single threaded solver with the same seed, so that the
+		// finite differences use common random numbers.
+		final WdlfModelEvaluator evaluator = new WdlfModelEvaluator(state, seed -> new ParallelMonteCarloWDLFSolver(seed, 1),
+				ParallelMonteCarloWDLFSolver.DEFAULT_SEED);
+		
 		// Build an implementation of the LevenbergMarquardt
         LevenbergMarquardt lma = new LevenbergMarquardt() {
 
 			@Override
 			public double[] getModel(double[] params) {
-				
-				state.syntheticSFR.setParams(params);
-				
-				ModelWDLF syntheticWDLF = solver.calculateWDLF(state);
-				
-				// Extract the model WDLF points
-				double[] model = new double[syntheticWDLF.density.getBinCentres().length];
-				
-				for(int bin=0; bin<model.length; bin++) {
-					model[bin] = syntheticWDLF.density.getBinContents(bin);
-				}
-				
-				return model;
+				return evaluator.getModel(params);
 			}
 
 			@Override
 			public double[][] getJacobian(double[] params) {
-				throw new RuntimeException("Naughty naughty!");
+				return evaluator.getJacobian(params, finiteDifferencesStepSizePerParam());
 			}
 			
 			@Override
 			public boolean useFiniteDifferencesJacobian() {
-				return true;
+				return false;
 			}
 			
 			@Override
@@ -12,6 +12,7 @@ import java.util.LinkedList;
 import astrometry.util.AstrometryUtils;
 import density.DensityProfile;
 import density.ExponentialDisk;
+import density.LineOfSightDensity;
 import density.Uniform;
 import numeric.functions.Linear;
 import photometry.util.PhotometryUtils;
@@ -132,6 +133,11 @@ public class WhiteDwarfNumberCounts {
 			// Declination; zero at the equator
 			for(double dec = -Math.PI/2.0; dec < Math.PI/2.0; dec += ddec) {
 				
+				// Population density profiles along this line of sight
+				LineOfSightDensity thinDiskLos = thinDiskProfile.getLineOfSightDensity(ra, dec);
+				LineOfSightDensity thickDiskLos = thickDiskProfile.getLineOfSightDensity(ra, dec);
+				LineOfSightDensity spheroidLos = spheroidProfile.getLineOfSightDensity(ra, dec);
+				
 				// Continue integrating in r until there's no more survey volume
 				// XXX: fixed upper limit
 				NEXT_LOS:
@@ -144,9 +150,9 @@ public class WhiteDwarfNumberCounts {
 					double pi = AstrometryUtils.getParallaxFromDistance(r) * 1000.0;
 					
 					// Get the population density factor at this position
-					double thinDiskDensity = thinDiskProfile.getDensity(r, ra, dec);
-					double thickDiskDensity = thickDiskProfile.getDensity(r, ra, dec);
-					double spheroidDensity = spheroidProfile.getDensity(r, ra, dec);
+					double thinDiskDensity = thinDiskLos.getDensity(r);
+					double thickDiskDensity = thickDiskLos.getDensity(r);
+					double spheroidDensity = spheroidLos.getDensity(r);
 					
 					// Integrate over the luminosity function
 					for(int absG_bin=0; absG_bin<absG_steps; absG_bin++) {
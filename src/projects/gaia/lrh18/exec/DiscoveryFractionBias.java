@@ -1,15 +1,7 @@
 package projects.gaia.lrh18.exec;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-
 import Jama.Matrix;
-import kinematics.TangentialVelocityDistribution;
+import kinematics.VtanDistributionSkyCache;
 import numeric.functions.PositiveLinear;
 
 /**
@@ -79,6 +71,9 @@ public class DiscoveryFractionBias {
 			vtan[i] = i*vt_step;
 		}
 		
+		// Tangential velocity distributions across the sky, computed in parallel (or read from the cache)
+		VtanDistributionSkyCache vtanCache = VtanDistributionSkyCache.getCache(velDispTens, velMean, vt_step, n_els_vt);
+		
 		// Steps in right ascension and declination
 		int raSteps = 180;
 		int decSteps = 90;
@@ -86,10 +81,11 @@ public class DiscoveryFractionBias {
 		final double raStep = 2 * Math.PI / raSteps;
 		final double decStep = Math.PI / decSteps;
 		
-		// Set up for multiple threaded processing
-        final List<Future<Double>> futures = new LinkedList<Future<Double>>();
-        final ExecutorService executor = Executors.newFixedThreadPool(8);
-        
+		double[] vtan_true_cdf   = new double[n_els_vt+1];
+		
+		// Solid-angle weighted sky-average discovery fraction
+		double df = 0.0;
+		
 		for(int i = 0; i < raSteps; i++) {
 			
 			final double ra = i * raStep + raStep/2.0;
@@ -98,72 +94,19 @@ public class DiscoveryFractionBias {
 				
 				final double dec = -(Math.PI / 2.0) + j * decStep + decStep/2.0;
 				
+				// Element of solid angle
+				double dOmega = Math.cos(dec) * raStep * decStep / (4.0 * Math.PI);
 				
-				// Create Callable to perform the work for this time interval
-				final Callable<Double> worker = new Callable<Double>() 
-	            {
-	                @Override
-	                public Double call() throws Exception
-	                {
+				// Get the tangential velocity distribution towards the given line of sight
+				vtanCache.getVtanDistributionTowardsLos(ra, dec, null, vtan_true_cdf);
 				
-						// Element of solid angle
-						double dOmega = Math.cos(dec) * raStep * decStep / (4.0 * Math.PI);
-						
-						// Compute the tangential velocity distribution towards the given line of sight
-						double[] vtan_true_pdf   = new double[n_els_vt];
-						double[] vtan_true_cdf   = new double[n_els_vt+1];
-						TangentialVelocityDistribution.getVtanDistributionTowardsLos(velDispTens, velMean, ra, dec, vt_step, vtan_true_pdf, vtan_true_cdf);
-						
-						// Create interpolation object
-						PositiveLinear vtan_true = new PositiveLinear(vtan, vtan_true_cdf);
-						
-						// Fraction of the population with tangential velocities below the threshold
-						double df_lower = vtan_true.interpolateY(vtanThreshold)[0];
-						
-						return new Double(df_lower * dOmega);
-				
-	                }
-	            };
-	            futures.add(executor.submit(worker));
-			}
-		}
-		
-		
-		// Shutdown the execution
-		executor.shutdown();
-
-		// Progress tracking
-		int count = 0;
-		int nSteps = raSteps * decSteps;
-        int tenPercent = nSteps/10;
-        
-		// Solid-angle weighted sky-average discovery fraction
-		double df = 0.0;
-        
-		// Retrieve calibration sets from each worker thread and compile into a single list.
-		for (final Future<Double> future : futures)
-		{
-			try {
-				df += future.get();
+				// Create interpolation object
+				PositiveLinear vtan_true = new PositiveLinear(vtan, vtan_true_cdf);
 				
-				// Progress tracking
-				if(count%tenPercent==0) {
-	        		int nHash = count/tenPercent + 1;
-	        		StringBuilder str = new StringBuilder();
-	        		str.append("Progress: [");
-	        		for(int k=0; k<nHash; k++) {
-	        			str.append("#");
-	        		}
-	        		for(int k=nHash; k<10; k++) {
-	        			str.append(".");
-	        		}
-	        		str.append("]\r");
-	        		System.out.print(str.toString());
-	        	}
-				count++;
+				// Fraction of the population with tangential velocities below the threshold
+				double df_lower = vtan_true.interpolateY(vtanThreshold)[0];
 				
-			} catch (InterruptedException | ExecutionException e) {
-				e.printStackTrace();
+				df += df_lower * dOmega;
 			}
 		}
 		
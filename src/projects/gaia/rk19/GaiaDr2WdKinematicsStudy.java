@@ -15,6 +15,7 @@ import javax.imageio.ImageIO;
 
 import Jama.Matrix;
 import astrometry.util.AstrometryUtils;
+import astrometry.util.BatchAstrometryUtils;
 import constants.Galactic;
 import constants.Units;
 import infra.io.Gnuplot;
@@ -1313,10 +1314,50 @@ public class GaiaDr2WdKinematicsStudy {
 	 */
 	private static Collection<ExtendedGaiaSource> computePandA(Collection<GaiaSource> stars) {
 		
+		int n = stars.size();
+		double[] ra = new double[n];
+		double[] dec = new double[n];
+		double[] mu_acosd = new double[n];
+		double[] mu_d = new double[n];
+		double[] parallax = new double[n];
+		
+		int i = 0;
+		for(GaiaSource star : stars) {
+			ra[i] = Math.toRadians(star.ra);
+			dec[i] = Math.toRadians(star.dec);
+			mu_acosd[i] = star.pmra * Units.MILLIARCSEC_TO_RADIANS;
+			mu_d[i] = star.pmdec * Units.MILLIARCSEC_TO_RADIANS;
+			parallax[i] = star.parallax;
+			i++;
+		}
+		
+		// 1) Convert proper motion to Galactic coordinates
+		double[] l = new double[n];
+		double[] b = new double[n];
+		double[] mu_lcosb = new double[n];
+		double[] mu_b = new double[n];
+		BatchAstrometryUtils.convertPositionAndProperMotionEqToGal(ra, dec, mu_acosd, mu_d, l, b, mu_lcosb, mu_b);
+		
+		// 2) Subtract off the contribution from Galactic rotation, to leave the peculiar velocity [adopt Oort constants]
+		//      NOTE we include the cos(b) term in the mu_lcosb correction, which differs from equation (1) in Dehnen & Binney (1998)
+		//      as they are correcting proper motion that does not include the cos(b) term, i.e. just mu_l.
+		for(i=0; i<n; i++) {
+			mu_lcosb[i] = mu_lcosb[i] - (A_RadYr * Math.cos(2 * l[i]) + B_RadYr) * Math.cos(b[i]);
+			mu_b[i] = mu_b[i] + A_RadYr * Math.sin(2 * l[i]) * Math.cos(b[i]) * Math.sin(b[i]);
+		}
+		
+		// 3) Convert to proper motion velocity vector
+		double[] vx = new double[n];
+		double[] vy = new double[n];
+		double[] vz = new double[n];
+		BatchAstrometryUtils.getTangentialVelocityVector(l, b, mu_lcosb, mu_b, parallax, vx, vy, vz);
+		
 		Collection<ExtendedGaiaSource> starsWithVelocity = new LinkedList<>();
 		
+		i = 0;
 		for(GaiaSource star : stars) {
-			starsWithVelocity.add( new ExtendedGaiaSource(star));
+			starsWithVelocity.add( new ExtendedGaiaSource(star, l[i], b[i], mu_lcosb[i], mu_b[i], vx[i], vy[i], vz[i]));
+			i++;
 		}
 		
 		return starsWithVelocity;
@@ -1463,36 +1504,41 @@ public class GaiaDr2WdKinematicsStudy {
 	 */
 	static class ExtendedGaiaSource extends GaiaSource implements AstrometricStar {
 		
-		public ExtendedGaiaSource(GaiaSource star) {
+		/**
+		 * Main constructor.
+		 * 
+		 * @param star
+		 * 	The {@link GaiaSource}.
+		 * @param l
+		 * 	The Galactic longitude [radians]
+		 * @param b
+		 * 	The Galactic latitude [radians]
+		 * @param mu_lcosb
+		 * 	The proper motion in Galactic longitude, including cosine factor and corrected for Galactic rotation [radians/yr]
+		 * @param mu_b
+		 * 	The proper motion in Galactic latitude, corrected for Galactic rotation [radians/yr]
+		 * @param vx
+		 * 	The X component of the tangential velocity vector [km/s]
+		 * @param vy
+		 * 	The Y component of the tangential velocity vector [km/s]
+		 * @param vz
+		 * 	The Z component of the tangential velocity vector [km/s]
+		 */
+		public ExtendedGaiaSource(GaiaSource star, double l, double b, double mu_lcosb, double mu_b, double vx, double vy, double vz) {
 			
 			super(star);
 			
 			// Get the distance to the star [parsecs]
 			d = 1000.0 / star.parallax;
 			
-			// Retrieve some fields for convenience
-			double ra  = Math.toRadians(star.ra);
-			double dec = Math.toRadians(star.dec);
-			double mu_acosd = star.pmra * Units.MILLIARCSEC_TO_RADIANS;
-			double mu_d = star.pmdec * Units.MILLIARCSEC_TO_RADIANS;
-			
-			// 1) Convert proper motion to Galactic coordinates
-			double[] mu_lb = AstrometryUtils.convertPositionAndProperMotionEqToGal(ra, dec, mu_acosd, mu_d);
-			l = mu_lb[0];
-			b = mu_lb[1];
-			mu_lcosb = mu_lb[2];
-			mu_b = mu_lb[3];
-			
-			// 2) Subtract off the contribution from Galactic rotation, to leave the peculiar velocity [adopt Oort constants]
-			//      NOTE we include the cos(b) term in the mu_lcosb correction, which differs from equation (1) in Dehnen & Binney (1998)
-			//      as they are correcting proper motion that does not include the cos(b) term, i.e. just mu_l.
-			mu_lcosb = mu_lcosb - (A_RadYr * Math.cos(2 * l) + B_RadYr) * Math.cos(b);
-			mu_b = mu_b + A_RadYr * Math.sin(2 * l) * Math.cos(b) * Math.sin(b);
-			
-			// 3) Convert to proper motion velocity vector
-			p = AstrometryUtils.getTangentialVelocityVector(d, l, b, mu_lcosb, mu_b);
-			
-			// 4) Compute the projection matrix A along the line of sight towards this star
+			this.l = l;
+			this.b = b;
+			this.mu_lcosb = mu_lcosb;
+			this.mu_b = mu_b;
+			
+			p = new Matrix(new double[][]{{vx}, {vy}, {vz}});
+			
+			// Compute the projection matrix A along the line of sight towards this star
 			A = AstrometryUtils.getProjectionMatrixA(l, b);
 			
 			// This will be computed later
@@ -1,6 +1,6 @@
 package sdss.footprint;
 
-import Jama.*;
+import astrometry.util.Mat3;
 import java.io.*;
 import java.util.LinkedList;
 import java.util.List;
@@ -53,11 +53,9 @@ public class SdssFootprintUtils{
     	double startMu, endMu;
 
     	// Position vector in Equatorial coordinates
-    	double r[][] = new double[3][1];
-    	r[0][0] = Math.cos(dec)*Math.cos(ra);
-    	r[1][0] = Math.cos(dec)*Math.sin(ra);
-    	r[2][0] = Math.sin(dec);
-        Matrix R = new Matrix(r);
+    	double x = Math.cos(dec)*Math.cos(ra);
+    	double y = Math.cos(dec)*Math.sin(ra);
+    	double z = Math.sin(dec);
 
     	double cosNucosMu,cosNusinMu,sinNu,Nu;
     	double cosMu,sinMu,Mu;
@@ -66,12 +64,12 @@ public class SdssFootprintUtils{
     	for(Stripe stripe : footprint){
     		
     		// Position vector in Great Circle basis for this Stripe
-    	    Matrix R_prime = stripe.GTN.times(R);
+    		Mat3 gtn = stripe.gtn;
     	    
     	    //+++ Get great circle basis latitude by analysis of elements of R_prime +++//
-    	    cosNucosMu = R_prime.get(0,0);
-    	    cosNusinMu = R_prime.get(1,0);
-    	    sinNu      = R_prime.get(2,0);
+    	    cosNucosMu = gtn.m00*x + gtn.m01*y + gtn.m02*z;
+    	    cosNusinMu = gtn.m10*x + gtn.m11*y + gtn.m12*z;
+    	    sinNu      = gtn.m20*x + gtn.m21*y + gtn.m22*z;
 
             // Latitude in Great circle frame - star must lie within a few
             // degrees of equator to be included in survey.
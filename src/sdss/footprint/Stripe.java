@@ -3,6 +3,7 @@ package sdss.footprint;
 import java.util.Scanner;
 
 import Jama.Matrix;
+import astrometry.util.Mat3;
 
 /**
  * Class represents a single stripe in the SDSS footprint.
@@ -64,6 +65,11 @@ public class Stripe {
 	 */
 	public final Matrix GTN;
 	
+	/**
+	 * {@link Mat3} equivalent of {@link #GTN}, for transforming vectors without allocating any objects.
+	 */
+	public final Mat3 gtn;
+	
 	
 	/**
 	 * Main constructor for the {@link Stripe}.
@@ -102,6 +108,7 @@ public class Stripe {
 		eta = computeEta();
 		GTS = computeGTS();
 		GTN = computeGTN();
+		gtn = new Mat3(GTN);
 	}
 	
 	/**
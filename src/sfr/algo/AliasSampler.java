@@ -0,0 +1,197 @@
+package sfr.algo;
+
+import java.util.Random;
+
+import numeric.data.DiscreteFunction1D;
+
+/**
+ * Class provides constant time random draws from a star formation rate represented by a set of discrete bins,
+ * using the alias method of Walker (1977) with the table construction of Vose (1991).
+ *
+ * The probability of drawing each bin is proportional to the number of stars formed in it, i.e. the rate times
+ * the part of the bin width lying within the range of lookback times being sampled. The alias table divides the
+ * unit interval into equal slots, one per bin; each slot is shared between its own bin and at most one other
+ * (its alias). A draw picks a slot and chooses between the bin and its alias using the same uniform random number,
+ * then reuses the remaining fraction to place the creation time uniformly within the chosen bin. Each draw
+ * therefore consumes a single random number and allocates nothing.
+ *
+ * Instances are immutable and may be shared by many threads, each using its own {@link Random}.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public final class AliasSampler {
+
+	/**
+	 * The {@link DiscreteFunction1D} that the table was built from.
+	 */
+	private final DiscreteFunction1D source;
+
+	/**
+	 * The upper limit on the lookback time [yr].
+	 */
+	private final double t_max;
+
+	/**
+	 * Probability of choosing the bin itself rather than its alias, for each slot.
+	 */
+	private final double[] prob;
+
+	/**
+	 * Index of the alias bin for each slot.
+	 */
+	private final int[] alias;
+
+	/**
+	 * Lower edge of the sampled range within each bin [yr].
+	 */
+	private final double[] lower;
+
+	/**
+	 * Width of the sampled range within each bin [yr].
+	 */
+	private final double[] width;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param source
+	 * 	The {@link DiscreteFunction1D} containing the star formation rate in each bin [N/yr].
+	 * @param t_max
+	 * 	The upper limit on the lookback time [yr]; creation times are drawn from the range 0 -> t_max.
+	 * @throws IllegalArgumentException
+	 * 	If no stars are formed within the range.
+	 */
+	public AliasSampler(DiscreteFunction1D source, double t_max) {
+
+		this.source = source;
+		this.t_max = t_max;
+
+		int n = source.size();
+		prob = new double[n];
+		alias = new int[n];
+		lower = new double[n];
+		width = new double[n];
+
+		// Number of stars formed in each bin, restricted to the range being sampled. Negative rates
+		// form no stars.
+		double[] weights = new double[n];
+		double total = 0.0;
+		for(int i=0; i<n; i++) {
+			lower[i] = Math.max(source.getBinLowerEdge(i), 0.0);
+			width[i] = Math.max(Math.min(source.getBinUpperEdge(i), t_max) - lower[i], 0.0);
+			weights[i] = Math.max(source.getBinContents(i), 0.0) * width[i];
+			total += weights[i];
+		}
+
+		if(!(total > 0.0) || Double.isInfinite(total)) {
+			throw new IllegalArgumentException("Cannot sample star formation rate: total number of stars formed "
+					+ "between 0 and " + t_max + " yr is " + total);
+		}
+
+		// Vose's construction: scale the weights so the mean is one, then repeatedly fill the remaining
+		// space in an underfull slot from an overfull bin.
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int nSmall = 0;
+		int nLarge = 0;
+		for(int i=0; i<n; i++) {
+			weights[i] *= n / total;
+			if(weights[i] < 1.0) {
+				small[nSmall++] = i;
+			}
+			else {
+				large[nLarge++] = i;
+			}
+		}
+
+		while(nSmall > 0 && nLarge > 0) {
+			int s = small[--nSmall];
+			int l = large[--nLarge];
+			prob[s] = weights[s];
+			alias[s] = l;
+			weights[l] = (weights[l] + weights[s]) - 1.0;
+			if(weights[l] < 1.0) {
+				small[nSmall++] = l;
+			}
+			else {
+				large[nLarge++] = l;
+			}
+		}
+
+		// Whatever remains is full to within rounding error
+		while(nLarge > 0) {
+			int l = large[--nLarge];
+			prob[l] = 1.0;
+			alias[l] = l;
+		}
+		while(nSmall > 0) {
+			int s = small[--nSmall];
+			prob[s] = 1.0;
+			alias[s] = s;
+		}
+	}
+
+	/**
+	 * Determine if this table was built from the given star formation rate bins and range.
+	 *
+	 * @param data
+	 * 	The {@link DiscreteFunction1D} containing the star formation rate in each bin.
+	 * @param t_max
+	 * 	The upper limit on the lookback time [yr].
+	 * @return
+	 * 	True if the table was built from the same {@link DiscreteFunction1D} instance and range.
+	 */
+	boolean isFor(DiscreteFunction1D data, double t_max) {
+		return source == data && this.t_max == t_max;
+	}
+
+	/**
+	 * Get the creation time corresponding to the given uniform random number.
+	 *
+	 * @param x
+	 * 	Uniform random number [0:1)
+	 * @return
+	 * 	The lookback time of creation [yr].
+	 */
+	public double getCreationTime(double x) {
+		double pos = x * prob.length;
+		int slot = Math.min((int)pos, prob.length - 1);
+		double frac = pos - slot;
+		double p = prob[slot];
+		if(frac < p) {
+			return lower[slot] + (frac / p) * width[slot];
+		}
+		int bin = alias[slot];
+		return lower[bin] + ((frac - p) / (1.0 - p)) * width[bin];
+	}
+
+	/**
+	 * Draw a random creation time.
+	 *
+	 * @param random
+	 * 	The {@link Random} to use to draw the creation time.
+	 * @return
+	 * 	The lookback time of creation [yr].
+	 */
+	public double drawCreationTime(Random random) {
+		return getCreationTime(random.nextDouble());
+	}
+
+	/**
+	 * Draw many random creation times. This consumes the same random numbers as the equivalent number
+	 * of calls to {@link #drawCreationTime(Random)}.
+	 *
+	 * @param random
+	 * 	The {@link Random} to use to draw the creation times.
+	 * @param times
+	 * 	On exit, the first n elements contain the lookback times of creation [yr].
+	 * @param n
+	 * 	The number of creation times to draw.
+	 */
+	public void drawCreationTimes(Random random, double[] times, int n) {
+		for(int i=0; i<n; i++) {
+			times[i] = getCreationTime(random.nextDouble());
+		}
+	}
+}
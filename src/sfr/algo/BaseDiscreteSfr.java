@@ -1,5 +1,7 @@
 package sfr.algo;
 
+import java.util.Random;
+
 import infra.os.OSChecker;
 import numeric.data.DiscreteFunction1D;
 
@@ -17,6 +19,11 @@ public abstract class BaseDiscreteSfr extends BaseSfr {
 	 */
 	public DiscreteFunction1D data;
 	
+	/**
+	 * The {@link AliasSampler} used to draw creation times, which is rebuilt on first use after the bins change.
+	 */
+	private volatile AliasSampler sampler;
+	
 	/**
 	 * Default constructor.
 	 */
@@ -56,8 +63,57 @@ public abstract class BaseDiscreteSfr extends BaseSfr {
      * {@inheritDoc}
      */
 	@Override
-	public double drawCreationTime() {
-        return data.draw(0, t_max, random);
+	public double[] integrateSFR(double t0, double t1) {
+		if(t0 >= t1) {
+			return new double[]{0.0, 0.0};
+		}
+        return data.integrate(t0, t1);
+	}
+
+    /**
+     * {@inheritDoc}
+     */
+	@Override
+	public double drawCreationTime(Random random) {
+        return getSampler().drawCreationTime(random);
+	}
+
+    /**
+     * {@inheritDoc}
+     */
+	@Override
+	public void drawCreationTimes(Random random, double[] times, int n) {
+        getSampler().drawCreationTimes(random, times, n);
+	}
+	
+	/**
+	 * Get the {@link AliasSampler} for the current star formation rate bins. This is rebuilt automatically if
+	 * {@link #data} or {@link BaseSfr#t_max} has been replaced; if the contents of {@link #data} are modified in place
+	 * then {@link #binsChanged()} must be called.
+	 * 
+	 * @return
+	 * 	The {@link AliasSampler} for the current star formation rate bins.
+	 */
+	public AliasSampler getSampler() {
+		AliasSampler result = sampler;
+		if(result == null || !result.isFor(data, t_max)) {
+			synchronized(this) {
+				result = sampler;
+				if(result == null || !result.isFor(data, t_max)) {
+					result = new AliasSampler(data, t_max);
+					sampler = result;
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Discard the {@link AliasSampler}, so that it is rebuilt on next use. This must be called whenever the contents
+	 * of {@link #data} are modified in place.
+	 */
+	public void binsChanged() {
+		sampler = null;
 	}
 
     /**
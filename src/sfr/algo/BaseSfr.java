@@ -94,13 +94,77 @@ public abstract class BaseSfr {
      */
     public abstract double[] integrateSFR();
     
+    /**
+     * Integrate SFR over the given range of lookback time to get the number of stars formed, and the
+     * uncertainty. This implementation uses Simpson's rule on {@link #getSFR(double)} over the part of the
+     * range that lies between {@link BaseSfr#t_min} and {@link BaseSfr#t_max}; extending classes should
+     * override it where the integral can be computed exactly.
+     * 
+     * @param t0
+     * 	The lower limit on the lookback time [yr].
+     * @param t1
+     * 	The upper limit on the lookback time [yr].
+     * @return
+     * 	The number of stars formed between the given lookback times, and the standard error on this.
+     */
+    public double[] integrateSFR(double t0, double t1) {
+    	
+    	double a = Math.max(t0, t_min);
+    	double b = Math.min(t1, t_max);
+    	if(a >= b) {
+    		return new double[]{0.0, 0.0};
+    	}
+    	
+    	// Number of (pairs of) strips
+    	int n = 64;
+    	double h = (b - a) / (2 * n);
+    	double sum = getSFR(a) + getSFR(b);
+    	for(int i=1; i<2*n; i++) {
+    		sum += ((i % 2 == 1) ? 4.0 : 2.0) * getSFR(a + i * h);
+    	}
+    	
+    	return new double[]{sum * h / 3.0, 0.0};
+    }
+    
     /**
      * Draw a random creation time from the star formation rate.
      * 
      * @return
      * 	The lookback time of creation (0 = present day) [yr].
      */
-    public abstract double drawCreationTime();
+    public double drawCreationTime() {
+    	return drawCreationTime(random);
+    }
+    
+    /**
+     * Draw a random creation time from the star formation rate, using the given {@link Random}
+     * as the source of random numbers. This allows callers to provide independent streams of
+     * random numbers, e.g. one per thread in parallel simulations.
+     * 
+     * @param random
+     * 	The {@link Random} to use to draw the creation time.
+     * @return
+     * 	The lookback time of creation (0 = present day) [yr].
+     */
+    public abstract double drawCreationTime(Random random);
+    
+    /**
+     * Draw many random creation times from the star formation rate, using the given {@link Random}
+     * as the source of random numbers. Extending classes may override this where the draws can be made
+     * more efficiently in bulk.
+     * 
+     * @param random
+     * 	The {@link Random} to use to draw the creation times.
+     * @param times
+     * 	On exit, the first n elements contain the lookback times of creation (0 = present day) [yr].
+     * @param n
+     * 	The number of creation times to draw.
+     */
+    public void drawCreationTimes(Random random, double[] times, int n) {
+    	for(int i=0; i<n; i++) {
+    		times[i] = drawCreationTime(random);
+    	}
+    }
     
     /**
      * Gets a table of data representing the star formation rate, one point per line, formatted into two
@@ -0,0 +1,151 @@
+package sfr.algo.test;
+
+import java.util.Random;
+
+import numeric.data.DiscreteFunction1D;
+import sfr.algo.AliasSampler;
+
+/**
+ * Class tests the marginal distribution of the creation times drawn by the {@link AliasSampler} against the
+ * number of stars formed in each bin of the star formation rate. The unit interval is swept on a fine uniform
+ * grid, which yields the bin probabilities encoded in the alias table up to the resolution of the grid. The
+ * star formation rate includes bins that straddle zero and the maximum lookback time, and bins with zero and
+ * negative rates that must never be drawn.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class TestAliasSampler {
+
+	/**
+	 * Number of points in the grid of uniform random numbers.
+	 */
+	private static final int N_GRID = 20000000;
+
+	/**
+	 * Number of random creation times to draw.
+	 */
+	private static final int N_DRAWS = 100000;
+
+	/**
+	 * Main application entry point.
+	 *
+	 * @param args
+	 * 	The command line arguments (ignored)
+	 */
+	public static void main(String[] args) {
+
+		Random random = new Random(1749203L);
+
+		// Bins of random width, starting below zero lookback time
+		int n = 25;
+		double[] centres = new double[n];
+		double[] widths = new double[n];
+		double[] rates = new double[n];
+		double[] errors = new double[n];
+		double edge = -0.2e9;
+		for(int i=0; i<n; i++) {
+			widths[i] = 0.2e9 + 0.6e9 * random.nextDouble();
+			centres[i] = edge + widths[i] / 2.0;
+			rates[i] = 1e-12 * random.nextDouble();
+			edge += widths[i];
+		}
+		rates[5] = 0.0;
+		rates[11] = -1e-12;
+		DiscreteFunction1D sfr = new DiscreteFunction1D(centres, widths, rates, errors);
+
+		// Maximum lookback time lies within the second to last bin
+		double t_max = sfr.getBinLowerEdge(n - 2) + 0.3 * widths[n - 2];
+
+		AliasSampler sampler = new AliasSampler(sfr, t_max);
+
+		// Expected probability of drawing each bin, and the range sampled within it
+		double[] lower = new double[n];
+		double[] upper = new double[n];
+		double[] expected = new double[n];
+		double total = 0.0;
+		for(int i=0; i<n; i++) {
+			lower[i] = Math.max(sfr.getBinLowerEdge(i), 0.0);
+			upper[i] = Math.max(Math.min(sfr.getBinUpperEdge(i), t_max), lower[i]);
+			expected[i] = Math.max(rates[i], 0.0) * (upper[i] - lower[i]);
+			total += expected[i];
+		}
+		for(int i=0; i<n; i++) {
+			expected[i] /= total;
+		}
+
+		// Sweep the unit interval and accumulate the fraction and mean creation time in each bin
+		double[] fraction = new double[n];
+		double[] meanTime = new double[n];
+		for(int j=0; j<N_GRID; j++) {
+			double t = sampler.getCreationTime((j + 0.5) / N_GRID);
+			int bin = getBin(upper, t);
+			if(bin < 0 || t < lower[bin] || expected[bin] == 0.0) {
+				throw new RuntimeException("Creation time "+t+" lies outside the sampled range");
+			}
+			fraction[bin] += 1.0 / N_GRID;
+			meanTime[bin] += t;
+		}
+
+		// Each slot of the table is split between two bins at one point, so the grid resolves each
+		// bin probability to within the number of slots over the number of grid points
+		double tolerance = 2.0 * n / N_GRID;
+		double maxErr = 0.0;
+		for(int i=0; i<n; i++) {
+			double err = Math.abs(fraction[i] - expected[i]);
+			maxErr = Math.max(maxErr, err);
+			if(err > tolerance) {
+				throw new RuntimeException("Probability of bin "+i+" differs: expected "+expected[i]+", found "+fraction[i]);
+			}
+			// Creation times are uniform within the sampled range of each bin
+			if(expected[i] > 0.0) {
+				meanTime[i] /= fraction[i] * N_GRID;
+				double centre = 0.5 * (lower[i] + upper[i]);
+				if(Math.abs(meanTime[i] - centre) > 1e-3 * (upper[i] - lower[i])) {
+					throw new RuntimeException("Mean creation time in bin "+i+" differs: expected "+centre+", found "+meanTime[i]);
+				}
+			}
+		}
+		System.out.println("Max bin probability difference = "+maxErr+" (tolerance "+tolerance+")");
+
+		// Drawing many creation times at once consumes the same random numbers as drawing them one at a time
+		double[] times = new double[N_DRAWS];
+		sampler.drawCreationTimes(new Random(55L), times, N_DRAWS);
+		Random single = new Random(55L);
+		for(int j=0; j<N_DRAWS; j++) {
+			double t = sampler.drawCreationTime(single);
+			if(t != times[j]) {
+				throw new RuntimeException("Creation time "+j+" differs: expected "+t+", found "+times[j]);
+			}
+		}
+		System.out.println("Batch draws: OK");
+
+		// A star formation rate that forms no stars in range can't be sampled
+		try {
+			new AliasSampler(sfr, sfr.getBinLowerEdge(0));
+			throw new RuntimeException("Sampler accepted a star formation rate that forms no stars");
+		}
+		catch(IllegalArgumentException e) {
+			System.out.println("Empty range: OK");
+		}
+	}
+
+	/**
+	 * Get the bin containing the given creation time.
+	 *
+	 * @param upper
+	 * 	The upper edge of the sampled range in each bin [yr].
+	 * @param t
+	 * 	The creation time [yr].
+	 * @return
+	 * 	The index of the first bin whose upper edge is not below the creation time, or -1 if there isn't one.
+	 */
+	private static int getBin(double[] upper, double t) {
+		for(int i=0; i<upper.length; i++) {
+			if(t <= upper[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
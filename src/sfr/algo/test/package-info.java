@@ -0,0 +1,4 @@
+/**
+ * Tests associated with the SFR classes.
+ */
+package sfr.algo.test;
@@ -1,5 +1,7 @@
 package sfr.algoimpl;
 
+import java.util.Random;
+
 import infra.os.OSChecker;
 import sfr.algo.BaseSfr;
 
@@ -79,7 +81,17 @@ public class ConstantSFR extends BaseSfr {
      * {@inheritDoc}
      */
 	@Override
-	public double drawCreationTime() {
+	public double[] integrateSFR(double t0, double t1) {
+		double mean = Math.max(Math.min(t1, t_max) - Math.max(t0, t_min), 0.0) * rate;
+		double std = 0.0;
+		return new double[]{mean, std};
+	}
+
+    /**
+     * {@inheritDoc}
+     */
+	@Override
+	public double drawCreationTime(Random random) {
 		return t_min + (t_max - t_min) * random.nextDouble();
 	}
 
@@ -1,5 +1,7 @@
 package sfr.algoimpl;
 
+import java.util.Random;
+
 import infra.os.OSChecker;
 import sfr.algo.BaseSfr;
 
@@ -102,7 +104,21 @@ public class ExponentialDecaySFR extends BaseSfr {
      * {@inheritDoc}
      */
 	@Override
-	public double drawCreationTime() {
+	public double[] integrateSFR(double t0, double t1) {
+		
+		double a = Math.max(t0, t_min);
+		double b = Math.min(t1, t_max);
+		double mean = (a < b) ? lambda * r0 * (Math.exp((b - t_max)/lambda) - Math.exp((a - t_max)/lambda)) : 0.0;
+		double std = 0.0;
+		
+		return new double[]{mean, std};
+	}
+
+    /**
+     * {@inheritDoc}
+     */
+	@Override
+	public double drawCreationTime(Random random) {
 		
 		// Draw point on cumulative distribution randomly distributed in range 0:integrateSFR()
 		double cdf = random.nextDouble() * integrateSFR()[0];
@@ -101,6 +101,7 @@ public class InitialGuessSFR extends BaseDiscreteSfr {
      */
     public void setSFRBin(int bin, double rate, double sigma) {
         data.setBin(bin, rate, sigma);
+        binsChanged();
     }
     
     public String printParameters(){
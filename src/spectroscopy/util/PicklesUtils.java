@@ -1,10 +1,7 @@
 package spectroscopy.util;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.Collection;
 import java.util.Map;
 import java.util.TreeMap;
@@ -16,6 +13,7 @@ import numeric.functions.Linear;
 import spectroscopy.LuminosityClass;
 import spectroscopy.SpectralType;
 import util.ParseUtil;
+import utils.TableCache;
 
 /**
  * Utilities related to the Pickles library of stellar spectra.
@@ -165,13 +163,11 @@ public class PicklesUtils {
 				// Have determined all the metadata for the spectrum
 				PicklesMetadata metaData = new PicklesMetadata(spectralType, lumClass, metallicity);
 				
-				// Load the spectrum from the file
-				InputStream is = (new PicklesUtils()).getClass().getClassLoader().getResourceAsStream("resources/spectro/pickles/"+name);
-				
+				// Load the spectrum from the file, or from the table cache if that's up to date
 				double[][] specData = null;
 				
-				try(BufferedReader in = new BufferedReader(new InputStreamReader(is))) {
-					specData = ParseUtil.parseFile(in, ParseUtil.whitespaceDelim, ParseUtil.hashComment);
+				try {
+					specData = TableCache.getTable("resources/spectro/pickles/"+name, ParseUtil.hashComment);
 				}
 				catch (IOException e) {
 					logger.warning("Could not load "+name+"!");
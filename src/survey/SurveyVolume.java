@@ -1,6 +1,7 @@
 package survey;
 
 import kinematics.TangentialVelocityDistribution;
+import kinematics.VtanDistributionSkyCache;
 import numeric.functions.Linear;
 import numeric.functions.MonotonicLinear;
 import Jama.Matrix;
@@ -136,8 +137,94 @@ public class SurveyVolume
 		// the cumulative distribution at steps along the line of sight.
 		Linear vtan_cdf_interpolator = new Linear(vtan, vtan_cdf);
 		
+		getGeneralizedSurveyVolumeAlongLos(vtan_cdf_interpolator, ra, dec, mu_min, mu_max, vt_min, vt_max,
+			     omega, density, d_step, vol_diff, vol_cum,
+			     GENERALIZE_FOR_DENSITY_PROFILE, GENERALIZE_FOR_KINEMATIC_SELECTION);
+	}
+	
+	/**
+	 * Compute the differential and total cumulative survey volume as a function of distance along the given
+	 * line of sight and for the given survey footprint size, using the tangential velocity distribution
+	 * interpolated from a {@link VtanDistributionSkyCache}. This is equivalent to the other methods but avoids
+	 * computing the tangential velocity distribution for each line of sight, which is useful when computing
+	 * the survey volume for many lines of sight.
+	 * 
+	 * @param vtanCache			Tangential velocity distributions of the population across the sky
+	 * @param ra				Right Ascension of LOS, equatorial coordinates [radians]
+	 * @param dec				Declination of LOS, equatorial coordinates [radians]
+	 * @param mu_min			Survey proper motion lower limit [arcsec/year]
+	 * @param mu_max			Survey proper motion upper limit [arcsec/year]
+	 * @param vt_min			Survey tangential velocity lower limit [km/s]
+	 * @param vt_max			Survey tangential velocity upper limit [km/s]
+	 * @param omega				Survey footprint size [steradians]
+	 * @param density			Population density profile
+	 * @param d_step			Step size in distance for tabulated survey volume function [pc]
+	 * @param vol_diff			On exit, contains differential survey volume as a function of distance [pc^2]; see
+	 * 							other methods.
+	 * @param vol_cum			On exit, contains cumulative survey volume as a function of distance [pc^3]; see
+	 * 							other methods.
+	 * @param GENERALIZE_FOR_DENSITY_PROFILE
+	 * 							Activates generalisation for non-uniform density profile
+	 * @param GENERALIZE_FOR_KINEMATIC_SELECTION
+	 * 							Activates generalisation for kinematic selection
+	 */
+	public static void getGeneralizedSurveyVolumeAlongLos(VtanDistributionSkyCache vtanCache,
+		     double ra, double dec, double mu_min, double mu_max, double vt_min, double vt_max,
+		     double omega, DensityProfile density, double d_step, double[] vol_diff, double[] vol_cum,
+		     boolean GENERALIZE_FOR_DENSITY_PROFILE, boolean GENERALIZE_FOR_KINEMATIC_SELECTION)
+	{
+		// Sanity checks
+		assert(vol_diff.length+1==vol_cum.length) : "Cumulative array must have one more element than differential array!";
+		
+		double[] vtan_cdf = new double[vtanCache.getNumberOfVtSteps()+1];
+		double[] vtan = new double[vtan_cdf.length];
+		for(int i=0; i<vtan_cdf.length; i++)
+			vtan[i] = i*vtanCache.getVtStep();
+		
+		vtanCache.getVtanDistributionTowardsLos(ra, dec, null, vtan_cdf);
+		
+		getGeneralizedSurveyVolumeAlongLos(new Linear(vtan, vtan_cdf), ra, dec, mu_min, mu_max, vt_min, vt_max,
+			     omega, density, d_step, vol_diff, vol_cum,
+			     GENERALIZE_FOR_DENSITY_PROFILE, GENERALIZE_FOR_KINEMATIC_SELECTION);
+	}
+	
+	/**
+	 * Compute the differential and total cumulative survey volume as a function of distance along the given
+	 * line of sight, given the interpolated tangential velocity CDF along the line of sight.
+	 * 
+	 * @param vtan_cdf_interpolator
+	 * 							Interpolates the tangential velocity CDF along the line of sight
+	 * @param ra				Right Ascension of LOS, equatorial coordinates [radians]
+	 * @param dec				Declination of LOS, equatorial coordinates [radians]
+	 * @param mu_min			Survey proper motion lower limit [arcsec/year]
+	 * @param mu_max			Survey proper motion upper limit [arcsec/year]
+	 * @param vt_min			Survey tangential velocity lower limit [km/s]
+	 * @param vt_max			Survey tangential velocity upper limit [km/s]
+	 * @param omega				Survey footprint size [steradians]
+	 * @param density			Population density profile
+	 * @param d_step			Step size in distance for tabulated survey volume function [pc]
+	 * @param vol_diff			On exit, contains differential survey volume as a function of distance [pc^2]
+	 * @param vol_cum			On exit, contains cumulative survey volume as a function of distance [pc^3]
+	 * @param GENERALIZE_FOR_DENSITY_PROFILE
+	 * 							Activates generalisation for non-uniform density profile
+	 * @param GENERALIZE_FOR_KINEMATIC_SELECTION
+	 * 							Activates generalisation for kinematic selection
+	 */
+	private static void getGeneralizedSurveyVolumeAlongLos(Linear vtan_cdf_interpolator,
+		     double ra, double dec, double mu_min, double mu_max, double vt_min, double vt_max,
+		     double omega, DensityProfile density, double d_step, double[] vol_diff, double[] vol_cum,
+		     boolean GENERALIZE_FOR_DENSITY_PROFILE, boolean GENERALIZE_FOR_KINEMATIC_SELECTION)
+	{
 		// Commence simulation
 		
+		// Population density profile at the centre of each distance step along this line of sight
+		double[] rho = null;
+		if(GENERALIZE_FOR_DENSITY_PROFILE)
+		{
+			rho = new double[vol_diff.length];
+			density.getLineOfSightDensity(ra, dec).getDensity(0.5*d_step, d_step, rho);
+		}
+		
 		// Main survey volume integral over distance
 		for(int d=0; d<vol_diff.length; d++)
 		{
@@ -158,7 +245,7 @@ public class SurveyVolume
 			if(GENERALIZE_FOR_DENSITY_PROFILE)
 			{
 				// Correct volume for density scale factor
-				v *= density.getDensity(d_mid, ra, dec);
+				v *= rho[d];
 			}
 			
 			// Generalise for kinematic selection
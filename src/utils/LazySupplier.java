@@ -0,0 +1,74 @@
+package utils;
+
+import java.util.function.Supplier;
+
+/**
+ * A {@link Supplier} that creates its value on the first call to {@link #get()} and returns the same
+ * instance on every subsequent call. This is used by the enumerated types that represent the available
+ * model implementations, so that only the models that are actually used are constructed (some models load
+ * large tables of data on construction).
+ * 
+ * This class is thread safe: if several threads call {@link #get()} concurrently then the value is still
+ * only created once.
+ *
+ * @param <T>
+ * 	The type of the value.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public final class LazySupplier<T> implements Supplier<T> {
+	
+	/**
+	 * The {@link Supplier} used to create the value; this is released once the value has been created.
+	 */
+	private Supplier<? extends T> factory;
+	
+	/**
+	 * The value, or null if this has not yet been created.
+	 */
+	private volatile T value;
+	
+	/**
+	 * Main constructor.
+	 * 
+	 * @param factory
+	 * 	The {@link Supplier} used to create the value; this is called at most once and must not return null.
+	 */
+	public LazySupplier(Supplier<? extends T> factory) {
+		this.factory = factory;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T get() {
+		// Double-checked locking on the volatile field
+		T result = value;
+		if(result == null) {
+			synchronized(this) {
+				result = value;
+				if(result == null) {
+					result = factory.get();
+					if(result == null) {
+						throw new IllegalStateException("Factory returned null!");
+					}
+					value = result;
+					factory = null;
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Determine if the value has been created, without creating it.
+	 * 
+	 * @return
+	 * 	True if the value has been created.
+	 */
+	public boolean isCreated() {
+		return value != null;
+	}
+}
@@ -0,0 +1,495 @@
+package utils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import util.ParseUtil;
+
+/**
+ * Utility class that maintains a binary cache of the numerical tables parsed from the text resources
+ * (WD cooling models, pre-WD lifetimes, filter transmission functions, spectra etc). Parsing the text
+ * files dominates the start up time of short batch runs, so each table is written to the cache the first
+ * time it's parsed and read back by memory mapping the cache file on subsequent runs.
+ *
+ * Each cache file has the following (big-endian) format:
+ *
+ * int    - magic number, identifying the file as a table cache
+ * int    - format version, {@link #VERSION}
+ * long   - checksum of the source that the table was compiled from
+ * int    - number of columns
+ * int[]  - number of rows in each column
+ * double - the table elements, in column order
+ *
+ * The checksum is the CRC32 of the location, size and modification time of the source file, so the cache
+ * is recompiled automatically whenever the source file is edited without having to read the whole file
+ * to validate the cache. Resources inside a jar use the size and modification time of the jar entry; for
+ * resources available by other means the checksum falls back to the CRC32 of the contents. Tables compiled
+ * from a whole directory of files (e.g. the pre-WD lifetimes, which are derived from the final line of each
+ * of many stellar evolution tracks) use a checksum of the file names, sizes and modification times.
+ *
+ * If the cache file is missing, stale or unreadable then the source is parsed and the cache file is
+ * (re)written. Failure to write the cache is not an error; the table is simply parsed again next time.
+ *
+ * The cache is disabled by default, in which case all tables are parsed or computed from the source and
+ * nothing is written to disk. It is enabled by setting the system property {@link #CACHE_DIR_PROPERTY}
+ * to the cache directory, e.g. -Dastronomy.tablecache.dir=/path/to/cache. Cache files are not deleted
+ * automatically: the parsed text resources take a few MB in total, and tables computed from
+ * simulations (see {@link #getTable(String, long, TableBuilder)}) add one file per distinct set of
+ * inputs, so the directory should be cleared manually when it's no longer needed.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public final class TableCache {
+
+	/**
+	 * The {@link Logger}.
+	 */
+	private static final Logger logger = Logger.getLogger(TableCache.class.getName());
+
+	/**
+	 * Name of the system property used to set the cache directory.
+	 */
+	public static final String CACHE_DIR_PROPERTY = "astronomy.tablecache.dir";
+
+	/**
+	 * Magic number at the start of each cache file.
+	 */
+	private static final int MAGIC = 0x54424C43;
+
+	/**
+	 * Version of the cache file format; increment this if the format or any of the parsers change, to
+	 * force existing caches to be recompiled.
+	 */
+	public static final int VERSION = 2;
+
+	/**
+	 * Interface for parsing a text file into a table of columns.
+	 */
+	public interface TableParser {
+
+		/**
+		 * Parse the file into a table of columns.
+		 *
+		 * @param in
+		 * 	A {@link BufferedReader} open on the file.
+		 * @return
+		 * 	The contents of the file, indexed by [column][row].
+		 * @throws IOException
+		 * 	If there's a problem reading the file.
+		 */
+		double[][] parse(BufferedReader in) throws IOException;
+	}
+
+	/**
+	 * Interface for compiling a table of columns from a directory of files.
+	 */
+	public interface TableBuilder {
+
+		/**
+		 * Compile the table from the source files.
+		 *
+		 * @return
+		 * 	The table, indexed by [column][row].
+		 * @throws IOException
+		 * 	If there's a problem reading the files.
+		 */
+		double[][] build() throws IOException;
+	}
+
+	/**
+	 * Private constructor to enforce non-instantiability.
+	 */
+	private TableCache() {
+
+	}
+
+	/**
+	 * Get the table from a whitespace-delimited text resource, using the cached copy if it's up to date.
+	 *
+	 * @param resource
+	 * 	Location of the text file on the classpath.
+	 * @param comments
+	 * 	Prefixes that identify comment lines in the text file.
+	 * @return
+	 * 	The contents of the file, indexed by [column][row].
+	 * @throws IOException
+	 * 	If the resource can't be found or read.
+	 */
+	public static double[][] getTable(String resource, final List<String> comments) throws IOException {
+		return getTable(resource, in -> ParseUtil.parseFile(in, ParseUtil.whitespaceDelim, comments));
+	}
+
+	/**
+	 * Get the table from a text resource, using the cached copy if it's up to date.
+	 *
+	 * @param resource
+	 * 	Location of the text file on the classpath.
+	 * @param parser
+	 * 	The {@link TableParser} used to parse the text file if the cache is missing or stale.
+	 * @return
+	 * 	The contents of the file, indexed by [column][row].
+	 * @throws IOException
+	 * 	If the resource can't be found or read.
+	 */
+	public static double[][] getTable(String resource, TableParser parser) throws IOException {
+
+		URL url = TableCache.class.getClassLoader().getResource(resource);
+		if(url == null) {
+			throw new IOException("Could not find resource " + resource);
+		}
+
+		if(!isEnabled()) {
+			return parse(url, parser);
+		}
+
+		long checksum = checksum(url);
+		double[][] table = readCache(resource, checksum);
+
+		if(table == null) {
+			table = parse(url, parser);
+			writeCache(resource, checksum, table);
+		}
+
+		return table;
+	}
+
+	/**
+	 * Parse the table from a text resource.
+	 *
+	 * @param url
+	 * 	The {@link URL} of the text file.
+	 * @param parser
+	 * 	The {@link TableParser} used to parse the text file.
+	 * @return
+	 * 	The contents of the file, indexed by [column][row].
+	 * @throws IOException
+	 * 	If the resource can't be read.
+	 */
+	private static double[][] parse(URL url, TableParser parser) throws IOException {
+		try(BufferedReader in = new BufferedReader(new InputStreamReader(url.openStream()))) {
+			return parser.parse(in);
+		}
+	}
+
+	/**
+	 * Get a table compiled from a directory of files, using the cached copy if it's up to date.
+	 *
+	 * @param dir
+	 * 	The directory containing the source files.
+	 * @param key
+	 * 	Name that identifies the table in the cache, usually the resource location of the directory.
+	 * @param builder
+	 * 	The {@link TableBuilder} used to compile the table if the cache is missing or stale.
+	 * @return
+	 * 	The table, indexed by [column][row].
+	 * @throws IOException
+	 * 	If there's a problem reading the source files.
+	 */
+	public static double[][] getTable(File dir, String key, TableBuilder builder) throws IOException {
+
+		if(!isEnabled()) {
+			return builder.build();
+		}
+
+		CRC32 crc = new CRC32();
+		updateChecksum(crc, dir, "");
+		long checksum = crc.getValue();
+
+		double[][] table = readCache(key, checksum);
+
+		if(table == null) {
+			table = builder.build();
+			writeCache(key, checksum, table);
+		}
+
+		return table;
+	}
+
+	/**
+	 * Get a table computed from some set of inputs that are summarised by a checksum, using the cached copy
+	 * if it was computed from inputs with the same checksum. This is used for tables that are expensive to
+	 * compute rather than to parse, e.g. those derived from Monte Carlo simulations.
+	 *
+	 * @param key
+	 * 	Name that identifies the table in the cache.
+	 * @param checksum
+	 * 	Checksum of the inputs that the table is computed from.
+	 * @param builder
+	 * 	The {@link TableBuilder} used to compute the table if the cache is missing or stale.
+	 * @return
+	 * 	The table, indexed by [column][row].
+	 * @throws IOException
+	 * 	If there's a problem computing the table.
+	 */
+	public static double[][] getTable(String key, long checksum, TableBuilder builder) throws IOException {
+
+		if(!isEnabled()) {
+			return builder.build();
+		}
+
+		double[][] table = readCache(key, checksum);
+
+		if(table == null) {
+			table = builder.build();
+			writeCache(key, checksum, table);
+		}
+
+		return table;
+	}
+
+	/**
+	 * Compute the checksum of a resource from its location, size and modification time. If the resource
+	 * is neither a file nor a jar entry then the CRC32 of its contents is used instead.
+	 *
+	 * @param url
+	 * 	The {@link URL} of the resource.
+	 * @return
+	 * 	The checksum.
+	 * @throws IOException
+	 * 	If there's a problem reading the resource.
+	 */
+	private static long checksum(URL url) throws IOException {
+
+		CRC32 crc = new CRC32();
+
+		if("file".equals(url.getProtocol())) {
+			File file;
+			try {
+				file = new File(url.toURI());
+			}
+			catch(URISyntaxException e) {
+				throw new IOException("Invalid resource location " + url, e);
+			}
+			crc.update((url + ":" + file.length() + ":" + file.lastModified()).getBytes(StandardCharsets.UTF_8));
+		}
+		else if("jar".equals(url.getProtocol())) {
+			JarEntry entry = ((JarURLConnection) url.openConnection()).getJarEntry();
+			crc.update((url + ":" + entry.getSize() + ":" + entry.getTime()).getBytes(StandardCharsets.UTF_8));
+		}
+		else {
+			try(InputStream is = url.openStream()) {
+				byte[] buffer = new byte[65536];
+				int n;
+				while((n = is.read(buffer)) > 0) {
+					crc.update(buffer, 0, n);
+				}
+			}
+		}
+
+		return crc.getValue();
+	}
+
+	/**
+	 * Update the checksum with the names, sizes and modification times of all the files in the
+	 * directory tree, in a fixed (sorted) order.
+	 *
+	 * @param crc
+	 * 	The {@link CRC32} to update.
+	 * @param file
+	 * 	The file or directory.
+	 * @param path
+	 * 	The path of the file relative to the top level directory.
+	 * @throws IOException
+	 * 	If the directory can't be listed.
+	 */
+	private static void updateChecksum(CRC32 crc, File file, String path) throws IOException {
+
+		if(file.isDirectory()) {
+			File[] files = file.listFiles();
+			if(files == null) {
+				throw new IOException("Could not list directory " + file);
+			}
+			Arrays.sort(files);
+			for(File child : files) {
+				updateChecksum(crc, child, path + "/" + child.getName());
+			}
+		}
+		else {
+			crc.update((path + ":" + file.length() + ":" + file.lastModified() + "\n").getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Determine if the cache is enabled, i.e. if the cache directory has been set.
+	 *
+	 * @return
+	 * 	True if the cache is enabled.
+	 */
+	public static boolean isEnabled() {
+		return getCacheDirectory() != null;
+	}
+
+	/**
+	 * Get the cache directory.
+	 *
+	 * @return
+	 * 	The cache directory, or null if the cache is disabled.
+	 */
+	private static File getCacheDirectory() {
+		String dir = System.getProperty(CACHE_DIR_PROPERTY, "");
+		if(dir.isEmpty()) {
+			return null;
+		}
+		return new File(dir);
+	}
+
+	/**
+	 * Get the cache file for the table with the given key.
+	 *
+	 * @param key
+	 * 	Name that identifies the table in the cache.
+	 * @return
+	 * 	The cache file, or null if the cache is disabled.
+	 */
+	private static File getCacheFile(String key) {
+		File dir = getCacheDirectory();
+		if(dir == null) {
+			return null;
+		}
+		return new File(dir, key.replaceAll("[^A-Za-z0-9._-]", "_") + ".tbl");
+	}
+
+	/**
+	 * Read the table from the cache by memory mapping the cache file.
+	 *
+	 * @param key
+	 * 	Name that identifies the table in the cache.
+	 * @param checksum
+	 * 	Checksum of the current source; if this doesn't match the checksum recorded in the cache file
+	 * then the cache is stale.
+	 * @return
+	 * 	The table, indexed by [column][row], or null if the cache file is missing, stale or unreadable.
+	 */
+	private static double[][] readCache(String key, long checksum) {
+
+		File file = getCacheFile(key);
+		if(file == null || !file.isFile()) {
+			return null;
+		}
+
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if(buffer.remaining() < 20 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != checksum) {
+				return null;
+			}
+
+			int nCols = buffer.getInt();
+			if(nCols < 0 || buffer.remaining() < 4l * nCols) {
+				return null;
+			}
+
+			double[][] table = new double[nCols][];
+			long nElements = 0;
+			for(int col=0; col<nCols; col++) {
+				int nRows = buffer.getInt();
+				if(nRows < 0) {
+					return null;
+				}
+				table[col] = new double[nRows];
+				nElements += nRows;
+			}
+			if(buffer.remaining() != 8l * nElements) {
+				return null;
+			}
+
+			DoubleBuffer doubles = buffer.asDoubleBuffer();
+			for(int col=0; col<nCols; col++) {
+				doubles.get(table[col]);
+			}
+
+			return table;
+		}
+		catch(IOException | RuntimeException e) {
+			logger.log(Level.WARNING, "Unable to read table cache file " + file + "; parsing source instead", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Write the table to the cache. The file is written under a temporary name then moved into place,
+	 * so that concurrent processes never see a partially written cache file.
+	 *
+	 * @param key
+	 * 	Name that identifies the table in the cache.
+	 * @param checksum
+	 * 	Checksum of the source that the table was compiled from.
+	 * @param table
+	 * 	The table, indexed by [column][row].
+	 */
+	private static void writeCache(String key, long checksum, double[][] table) {
+
+		File file = getCacheFile(key);
+		if(file == null) {
+			return;
+		}
+
+		Path tmp = null;
+		try {
+			Files.createDirectories(file.getParentFile().toPath());
+			tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+
+			try(OutputStream os = Files.newOutputStream(tmp);
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(checksum);
+				out.writeInt(table.length);
+				for(double[] col : table) {
+					out.writeInt(col.length);
+				}
+				// Encode each column in bulk rather than element by element
+				for(double[] col : table) {
+					ByteBuffer bytes = ByteBuffer.allocate(8 * col.length);
+					bytes.asDoubleBuffer().put(col);
+					out.write(bytes.array());
+				}
+			}
+
+			try {
+				Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch(IOException e) {
+			logger.log(Level.WARNING, "Unable to write table cache file " + file, e);
+			if(tmp != null) {
+				try {
+					Files.deleteIfExists(tmp);
+				}
+				catch(IOException e2) {
+					// Nothing more to do
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package utils.exec;
+
+import java.util.logging.Logger;
+
+import infra.Quantity;
+import ms.lifetime.infra.PreWdLifetimeModels;
+import photometry.Filter;
+import photometry.util.FilterUtils;
+import spectroscopy.util.PicklesUtils;
+import utils.TableCache;
+import wd.models.algo.WdCoolingModelSet;
+import wd.models.infra.WdAtmosphereType;
+import wd.models.infra.WdCoolingModels;
+
+/**
+ * Class used to compile the binary {@link TableCache} for all the WD cooling models, pre-WD lifetime
+ * models, filter transmission functions, the Vega spectrum and the Pickles library, so that subsequent runs
+ * don't have to parse any of the text resources. Tables that are already cached and up to date are left
+ * untouched.
+ * 
+ * The cache directory must be set using the system property {@link TableCache#CACHE_DIR_PROPERTY}.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class CompileTableCache {
+	
+	/**
+	 * The {@link Logger}.
+	 */
+	private static final Logger logger = Logger.getLogger(CompileTableCache.class.getName());
+	
+	/**
+	 * Main application entry point.
+	 * 
+	 * @param args
+	 * 	The command line arguments (ignored)
+	 */
+	public static void main(String[] args) {
+		
+		if(!TableCache.isEnabled()) {
+			logger.severe("The table cache is disabled; set the cache directory using -D" + TableCache.CACHE_DIR_PROPERTY);
+			return;
+		}
+		
+		long start = System.currentTimeMillis();
+		
+		// Filter transmission functions are loaded when the enum is initialised
+		logger.info("Compiled " + Filter.values().length + " filters");
+		
+		FilterUtils.getVegaSpectrum();
+		logger.info("Compiled Vega spectrum");
+		
+		PicklesUtils.loadPicklesSpectra();
+		logger.info("Compiled Pickles library");
+		
+		// Tabulated pre-WD lifetime models are loaded on construction
+		for(PreWdLifetimeModels preWdLifetimeModels : PreWdLifetimeModels.values()) {
+			preWdLifetimeModels.getPreWdLifetimeModels();
+			logger.info("Compiled pre-WD lifetime models " + preWdLifetimeModels);
+		}
+		
+		// WD cooling models are loaded lazily, so load every quantity for every atmosphere type
+		for(WdCoolingModels wdCoolingModels : WdCoolingModels.values()) {
+			WdCoolingModelSet wdCoolingModelSet = wdCoolingModels.getWdCoolingModels();
+			for(WdAtmosphereType atm : wdCoolingModelSet.getWdAtmosphereTypes()) {
+				for(Quantity<?> quantity : wdCoolingModelSet.getPassbands(atm)) {
+					wdCoolingModelSet.getCoolingTracks(quantity, atm);
+				}
+			}
+			logger.info("Compiled WD cooling models " + wdCoolingModels);
+		}
+		
+		logger.info("Finished compiling table cache in " + (System.currentTimeMillis() - start) / 1000.0 + " s");
+	}
+	
+}
@@ -0,0 +1,4 @@
+/**
+ * Executable classes related to the general utilities.
+ */
+package utils.exec;
@@ -23,6 +23,9 @@
 
 package wd.models.algo;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map.Entry;
 import java.util.NavigableMap;
 
 import infra.Quantity;
@@ -33,6 +36,14 @@ import wd.models.infra.WdAtmosphereType;
  * Class represents a grid of WD cooling models for a single {@link Quantity} and {@link WdAtmosphereType},
  * which can be used to interpolate the cooling time to a particular value of the quantity. Multiple instances of this
  * are used to compile a {@link WdCoolingModelSet}.
+ * 
+ * On construction the cooling tracks are compiled into flat primitive arrays: a sorted array of the track masses,
+ * and for each track the cooling time and quantity nodes (sorted on cooling time for interpolating the quantity, and
+ * on the quantity for interpolating the cooling time) along with the gradient of each segment. Interpolation then
+ * requires one binary search on the mass axis and one on each of the two bracketing tracks, with no boxing or
+ * allocation. Interpolation is linear on both axes; outside the range of a track the original {@link MonotonicLinear}
+ * is used, so that the extrapolation along the track is unchanged. Instances are immutable and hold no per-lookup
+ * state, so they can be shared between threads without synchronisation.
  *
  * @author nrowell
  * @version $Id$
@@ -50,9 +61,49 @@ public class WdCoolingModelGrid {
 	protected WdAtmosphereType atm;
 	
 	/**
-	 * Map of WD cooling track (represented by a {@link MonotonicLinear}) by mass.
+	 * Unmodifiable map of WD cooling track (represented by a {@link MonotonicLinear}) by mass.
 	 */
     public final NavigableMap<Double, MonotonicLinear> quantityAsFnTcoolByMass;
+    
+    /**
+     * Masses of the cooling tracks, in ascending order [M_{Solar}].
+     */
+    private final double[] masses;
+    
+    /**
+     * Cooling time nodes of each track, in ascending order [yr].
+     */
+    private final double[][] tcoolNodes;
+    
+    /**
+     * Quantity nodes of each track, corresponding to the {@link #tcoolNodes}.
+     */
+    private final double[][] quantityNodes;
+    
+    /**
+     * Gradient of the quantity with respect to cooling time along each segment of each track.
+     */
+    private final double[][] quantityGradient;
+    
+    /**
+     * Quantity nodes of each track, in ascending order, for interpolating the cooling time.
+     */
+    private final double[][] invQuantityNodes;
+    
+    /**
+     * Cooling time nodes of each track, corresponding to the {@link #invQuantityNodes} [yr].
+     */
+    private final double[][] invTcoolNodes;
+    
+    /**
+     * Gradient of the cooling time with respect to the quantity along each segment of each track.
+     */
+    private final double[][] tcoolGradient;
+    
+    /**
+     * The original cooling track at each mass, used outside the range of the nodes.
+     */
+    private final MonotonicLinear[] tracks;
 	
     /**
      * Main constructor for the {@link WdCoolingModelGrid}.
@@ -69,7 +120,168 @@ public class WdCoolingModelGrid {
     		final NavigableMap<Double, MonotonicLinear> quantityAsFnTcoolByMass) {
     	this.quantity = quantity;
     	this.atm = atm;
-    	this.quantityAsFnTcoolByMass = quantityAsFnTcoolByMass;
+    	this.quantityAsFnTcoolByMass = Collections.unmodifiableNavigableMap(quantityAsFnTcoolByMass);
+    	
+    	if(quantityAsFnTcoolByMass.isEmpty()) {
+    		throw new IllegalArgumentException("No cooling tracks for "+quantity+" and "+atm+"!");
+    	}
+    	
+    	int nTracks = quantityAsFnTcoolByMass.size();
+    	masses = new double[nTracks];
+    	tcoolNodes = new double[nTracks][];
+    	quantityNodes = new double[nTracks][];
+    	quantityGradient = new double[nTracks][];
+    	invQuantityNodes = new double[nTracks][];
+    	invTcoolNodes = new double[nTracks][];
+    	tcoolGradient = new double[nTracks][];
+    	tracks = new MonotonicLinear[nTracks];
+    	
+    	int t = 0;
+    	for(Entry<Double, MonotonicLinear> entry : quantityAsFnTcoolByMass.entrySet()) {
+    		
+    		masses[t] = entry.getKey();
+    		MonotonicLinear track = entry.getValue();
+    		tracks[t] = track;
+    		
+    		if(track.X.length < 2) {
+    			throw new IllegalArgumentException("Cooling track at mass "+masses[t]+" has fewer than two points!");
+    		}
+    		
+    		double[][] sorted = sort(track.X, track.Y);
+    		tcoolNodes[t] = sorted[0];
+    		quantityNodes[t] = sorted[1];
+    		quantityGradient[t] = getGradients(sorted[0], sorted[1]);
+    		
+    		sorted = sort(track.Y, track.X);
+    		invQuantityNodes[t] = sorted[0];
+    		invTcoolNodes[t] = sorted[1];
+    		tcoolGradient[t] = getGradients(sorted[0], sorted[1]);
+    		
+    		t++;
+    	}
+    }
+    
+    /**
+     * Sort a set of (x,y) points into ascending order of x.
+     * 
+     * @param x
+     * 	The x values.
+     * @param y
+     * 	The y values.
+     * @return
+     * 	Arrays containing the sorted x and y values.
+     */
+    private static double[][] sort(double[] x, double[] y) {
+    	
+    	Integer[] order = new Integer[x.length];
+    	for(int i=0; i<order.length; i++) {
+    		order[i] = i;
+    	}
+    	Arrays.sort(order, (a, b) -> Double.compare(x[a], x[b]));
+    	
+    	double[] xs = new double[x.length];
+    	double[] ys = new double[y.length];
+    	for(int i=0; i<order.length; i++) {
+    		xs[i] = x[order[i]];
+    		ys[i] = y[order[i]];
+    	}
+    	return new double[][]{xs, ys};
+    }
+    
+    /**
+     * Compute the gradient of each segment of a piecewise linear function.
+     * 
+     * @param x
+     * 	The x values, in ascending order.
+     * @param y
+     * 	The y values.
+     * @return
+     * 	The gradient of each of the x.length-1 segments.
+     */
+    private static double[] getGradients(double[] x, double[] y) {
+    	double[] gradient = new double[x.length - 1];
+    	for(int i=0; i<gradient.length; i++) {
+    		// Coincident nodes can't be bracketed by a value, so the gradient is irrelevant
+    		gradient[i] = (x[i+1] == x[i]) ? 0.0 : (y[i+1] - y[i]) / (x[i+1] - x[i]);
+    	}
+    	return gradient;
+    }
+    
+    /**
+     * Find the index of the last node not greater than the given value, clamped to the range
+     * [0:nodes.length-2] so that it always identifies a valid segment for interpolation or extrapolation.
+     * 
+     * @param nodes
+     * 	The nodes, in ascending order.
+     * @param x
+     * 	The value.
+     * @return
+     * 	The index of the segment.
+     */
+    private static int getSegment(double[] nodes, double x) {
+    	int lo = 0;
+    	int hi = nodes.length - 2;
+    	while(lo < hi) {
+    		int mid = (lo + hi + 1) >>> 1;
+    		if(nodes[mid] <= x) {
+    			lo = mid;
+    		}
+    		else {
+    			hi = mid - 1;
+    		}
+    	}
+    	return lo;
+    }
+    
+    /**
+     * Interpolate the quantity along a single track at the given cooling time.
+     * 
+     * @param track
+     * 	The index of the track.
+     * @param tcool
+     * 	WD cooling time [yr]
+     * @return
+     * 	The interpolated/extrapolated value of the quantity.
+     */
+    private double quantityAlongTrack(int track, double tcool) {
+    	double[] x = tcoolNodes[track];
+    	if(tcool < x[0] || tcool > x[x.length-1]) {
+    		return tracks[track].interpolateY(tcool)[0];
+    	}
+    	int j = getSegment(x, tcool);
+    	return quantityNodes[track][j] + quantityGradient[track][j] * (tcool - x[j]);
+    }
+    
+    /**
+     * Interpolate the cooling time along a single track at the given value of the quantity.
+     * 
+     * @param track
+     * 	The index of the track.
+     * @param value
+     * 	Value of the {@link Quantity}.
+     * @return
+     * 	The interpolated/extrapolated cooling time [yr]
+     */
+    private double tcoolAlongTrack(int track, double value) {
+    	double[] x = invQuantityNodes[track];
+    	if(value < x[0] || value > x[x.length-1]) {
+    		return tracks[track].interpolateUniqueX(value)[0];
+    	}
+    	int j = getSegment(x, value);
+    	return invTcoolNodes[track][j] + tcoolGradient[track][j] * (value - x[j]);
+    }
+    
+    /**
+     * Find the index of the lower of the two tracks used to interpolate or extrapolate to the given mass.
+     * 
+     * @param mass
+     * 	WD mass [M_{solar}]
+     * @return
+     * 	The index of the lower track; the upper track has the next index. If the grid contains a single
+     * track then this is zero.
+     */
+    private int getLowerTrack(double mass) {
+    	return masses.length == 1 ? 0 : getSegment(masses, mass);
     }
     
     /**
@@ -80,14 +292,7 @@ public class WdCoolingModelGrid {
      * 	True if the mass lies within the range covered by the model grid; false otherwise.
      */
     public boolean massIsWithinRangeOfModels(double mass){ 
-    	
-    	// Mass of lowest mass cooling track
-    	double lowestMass = quantityAsFnTcoolByMass.firstKey();
-    	
-    	// Mass of highest mass cooling track
-    	double highestMass = quantityAsFnTcoolByMass.lastKey();
-    	
-        return (mass>=lowestMass && mass<=highestMass);
+        return (mass>=masses[0] && mass<=masses[masses.length-1]);
     }
 
     /**
@@ -109,8 +314,24 @@ public class WdCoolingModelGrid {
         }
         
         // If either upper or lower CoolingTrack is extrapolated, then this point is considered to be extrapolated.
-        return quantityAsFnTcoolByMass.floorEntry(mass).getValue().isXExtrapolated(age)||
-               quantityAsFnTcoolByMass.ceilingEntry(mass).getValue().isXExtrapolated(age);
+        int lower = getLowerTrack(mass);
+        int upper = (masses[lower] == mass || masses.length == 1) ? lower : lower + 1;
+        return isTcoolExtrapolated(lower, age) || isTcoolExtrapolated(upper, age);
+    }
+    
+    /**
+     * Determine if the given cooling time lies outside the range of the given track.
+     * 
+     * @param track
+     * 	The index of the track.
+     * @param tcool
+     * 	WD cooling time [yr]
+     * @return
+     * 	True if the cooling time lies outside the range of the track.
+     */
+    private boolean isTcoolExtrapolated(int track, double tcool) {
+    	double[] nodes = tcoolNodes[track];
+    	return tcool < nodes[0] || tcool > nodes[nodes.length-1];
     }
     
     /**
@@ -124,56 +345,58 @@ public class WdCoolingModelGrid {
      * 	The value of the {@link Quantity} at the given cooling time and mass.
      */
     public double quantity(double tcool, double mass) {
+    	return quantity(tcool, mass, null);
+    }
+    
+    /**
+     * Interpolate/extrapolate the {@link Quantity} at arbitrary cooling time, mass and atmosphere type, and
+     * determine whether the models had to be extrapolated, in a single lookup.
+     *
+     * @param tcool
+     * 	WD cooling time [yr]
+     * @param mass
+     * 	WD mass [M_{solar}]
+     * @param isExtrapolated
+     * 	If not null, on exit the first element is set to true if the models had to be extrapolated
+     * (see {@link #isExtrapolated(double, double)}) and false otherwise.
+     * @return
+     * 	The value of the {@link Quantity} at the given cooling time and mass.
+     */
+    public double quantity(double tcool, double mass, boolean[] isExtrapolated) {
+    	
+    	int lower = getLowerTrack(mass);
     	
-    	if(quantityAsFnTcoolByMass.containsKey(mass)) {
+    	if(masses[lower] == mass || masses.length == 1) {
     		// Mass coincides exactly with one of the constant mass cooling tracks.
     		// No inter-mass interpolation is necessary
-    		return quantityAsFnTcoolByMass.get(mass).interpolateY(tcool)[0];
+    		if(isExtrapolated != null) {
+    			isExtrapolated[0] = !massIsWithinRangeOfModels(mass) || isTcoolExtrapolated(lower, tcool);
+    		}
+    		return quantityAlongTrack(lower, tcool);
     	}
+    	int upper = lower + 1;
     	
-    	double lowerMass = Double.NaN;
-    	double higherMass = Double.NaN;
-    	MonotonicLinear lowerMassTrack = null;
-    	MonotonicLinear higherMassTrack = null;
-    	
-    	if(massIsWithinRangeOfModels(mass)) {
-    		// Linear interpolation between two neighbouring constant-mass cooling tracks
-    		lowerMass = quantityAsFnTcoolByMass.floorKey(mass);
-    		higherMass = quantityAsFnTcoolByMass.ceilingKey(mass);
-    		// Get the cooling tracks immediately above and below this mass.
-    		lowerMassTrack = quantityAsFnTcoolByMass.get(lowerMass);
-    		higherMassTrack = quantityAsFnTcoolByMass.get(higherMass);
-    	}
-    	else {
-    		// Linear extrapolation beyond extreme range of mass. We use the two constant mass
-    		// tracks closest to the edge of the range to perform a linear extrapolation.
-    		if(mass < quantityAsFnTcoolByMass.firstKey()) {
-    			// Extrapolation to masses lower than the lowest mass track: extract the
-    			// masses of the lowest two tracks
-    			lowerMass = quantityAsFnTcoolByMass.firstKey();
-    			higherMass = quantityAsFnTcoolByMass.higherKey(lowerMass);
-    		}
-    		else {
-    			// Extrapolation to masses higher than the highest mass track: extract the
-    			// masses of the highest two tracks
-    			higherMass = quantityAsFnTcoolByMass.lastKey();
-    			lowerMass = quantityAsFnTcoolByMass.lowerKey(higherMass);
+    	if(masses[upper] == mass) {
+    		if(isExtrapolated != null) {
+    			isExtrapolated[0] = isTcoolExtrapolated(upper, tcool);
     		}
-    		lowerMassTrack = quantityAsFnTcoolByMass.get(lowerMass);
-    		higherMassTrack = quantityAsFnTcoolByMass.get(higherMass);
+    		return quantityAlongTrack(upper, tcool);
+    	}
+    	
+    	if(isExtrapolated != null) {
+    		isExtrapolated[0] = !massIsWithinRangeOfModels(mass) ||
+    				isTcoolExtrapolated(lower, tcool) || isTcoolExtrapolated(upper, tcool);
     	}
     	
-    	// Data points at (x0,y0) and (x1,y1) where x=mass; y=magnitude
-		double x0 = lowerMass;
-		double y0 = lowerMassTrack.interpolateY(tcool)[0];
-		double x1 = higherMass;
-		double y1 = higherMassTrack.interpolateY(tcool)[0];
-		// Mass at which to interpolate the magnitude
-		double x = mass;
-		// Interpolated magnitude
-		double y = y0 + (y1-y0)*(x-x0)/(x1-x0);
+    	// Linear interpolation between two neighbouring constant-mass cooling tracks, or linear extrapolation
+    	// from the two tracks closest to the edge of the range. Data points at (x0,y0) and (x1,y1) where
+    	// x=mass; y=quantity
+		double x0 = masses[lower];
+		double y0 = quantityAlongTrack(lower, tcool);
+		double x1 = masses[upper];
+		double y1 = quantityAlongTrack(upper, tcool);
 		
-		return y;
+		return y0 + (y1-y0)*(mass-x0)/(x1-x0);
     }
     
     /**
@@ -188,58 +411,27 @@ public class WdCoolingModelGrid {
      * 	Cooling time [yr] to the given value of the {@link Quantity}, for the given WD mass, atmosphere type.
      */
     public double tcool(double value, double mass) {
-
-    	if(quantityAsFnTcoolByMass.containsKey(mass)) {
+    	
+    	int lower = getLowerTrack(mass);
+    	
+    	if(masses[lower] == mass || masses.length == 1) {
     		// Mass coincides exactly with one of the constant mass cooling tracks.
     		// No inter-mass interpolation is necessary
-    		return quantityAsFnTcoolByMass.get(mass).interpolateUniqueX(value)[0];
+    		return tcoolAlongTrack(lower, value);
     	}
-
-    	double lowerMass = Double.NaN;
-    	double higherMass = Double.NaN;
-    	MonotonicLinear lowerMassTrack = null;
-    	MonotonicLinear higherMassTrack = null;
+    	int upper = lower + 1;
     	
-    	if(massIsWithinRangeOfModels(mass)) {
-    		// Linear interpolation between two neighbouring constant-mass cooling tracks
-    		lowerMass = quantityAsFnTcoolByMass.floorKey(mass);
-    		higherMass = quantityAsFnTcoolByMass.ceilingKey(mass);
-    		
-    		// Get the cooling tracks immediately above and below this mass.
-    		lowerMassTrack = quantityAsFnTcoolByMass.get(lowerMass);
-    		higherMassTrack = quantityAsFnTcoolByMass.get(higherMass);
-    	}
-    	else {
-    		// Linear extrapolation beyond extreme range of mass. We use the two constant mass
-    		// tracks closest to the edge of the range to perform a linear extrapolation.
-    		
-    		if(mass < quantityAsFnTcoolByMass.firstKey()) {
-    			// Extrapolation to masses lower than the lowest mass track: extract the
-    			// masses of the lowest two tracks
-    			lowerMass = quantityAsFnTcoolByMass.firstKey();
-    			higherMass = quantityAsFnTcoolByMass.higherKey(lowerMass);
-    		}
-    		else {
-    			// Extrapolation to masses higher than the highest mass track: extract the
-    			// masses of the highest two tracks
-    			higherMass = quantityAsFnTcoolByMass.lastKey();
-    			lowerMass = quantityAsFnTcoolByMass.lowerKey(higherMass);
-    		}
-    		lowerMassTrack = quantityAsFnTcoolByMass.get(lowerMass);
-    		higherMassTrack = quantityAsFnTcoolByMass.get(higherMass);
+    	if(masses[upper] == mass) {
+    		return tcoolAlongTrack(upper, value);
     	}
     	
     	// Data points at (x0,y0) and (x1,y1) where x=mass; y=cooling time
-		double x0 = lowerMass;
-		double y0 = lowerMassTrack.interpolateUniqueX(value)[0];
-		double x1 = higherMass;
-		double y1 = higherMassTrack.interpolateUniqueX(value)[0];
-		// Mass at which to interpolate the cooling time
-		double x = mass;
-		// Interpolated cooling time
-		double y = y0 + (y1-y0)*(x-x0)/(x1-x0);
+		double x0 = masses[lower];
+		double y0 = tcoolAlongTrack(lower, value);
+		double x1 = masses[upper];
+		double y1 = tcoolAlongTrack(upper, value);
 		
-		return y;
+		return y0 + (y1-y0)*(mass-x0)/(x1-x0);
     }
     
 }
\ No newline at end of file
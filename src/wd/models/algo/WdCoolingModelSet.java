@@ -1,18 +1,26 @@
 package wd.models.algo;
 
+import java.io.IOException;
+import java.util.BitSet;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedSet;
-import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 import infra.Quantity;
 import photometry.Filter;
+import util.ParseUtil;
+import utils.TableCache;
+import utils.TableCache.TableParser;
 import wd.models.infra.AtmosphereParameter;
 import wd.models.infra.WdAtmosphereType;
 
@@ -46,9 +54,11 @@ public abstract class WdCoolingModelSet {
 	
 	/**
 	 * Mapping of all loaded {@link WdCoolingModelGrid} by {@link Quantity} and {@link WdAtmosphereType}.
-	 * This map is initialised in a lazy fashion as the model set is used.
+	 * This map is initialised in a lazy fashion as the model set is used. The model sets are shared by
+	 * all threads (see {@link wd.models.infra.WdCoolingModels}) so concurrent maps are used; each
+	 * {@link WdCoolingModelGrid} is loaded exactly once.
 	 */
-    protected final Map<Quantity<?>, Map<WdAtmosphereType, WdCoolingModelGrid>> coolingModelsByQuantity = new HashMap<>();
+    protected final ConcurrentMap<Quantity<?>, ConcurrentMap<WdAtmosphereType, WdCoolingModelGrid>> coolingModelsByQuantity = new ConcurrentHashMap<>();
 	
 	/**
 	 * {@link Set} of all {@link WdAtmosphereType}s provided by the models.
@@ -67,6 +77,58 @@ public abstract class WdCoolingModelSet {
 	 * NOTE: contructors in implementing classes must populate this map.
 	 */
 	protected final Map<WdAtmosphereType, double[]> massGridByAtm = new HashMap<>();
+	
+	/**
+	 * Parsed contents of each model file, by resource location. Most model files contain the cooling
+	 * track for a single mass in many quantities (one per column), so each file is parsed once into
+	 * memory and the {@link WdCoolingModelGrid} for each {@link Quantity} is built from the shared table.
+	 * The tables are only needed while grids remain to be built, so they are released once the grid for every
+	 * {@link Quantity} and {@link WdAtmosphereType} has been loaded, or on calling {@link #releaseTables()}.
+	 */
+	private final Map<String, double[][]> tablesByResource = new ConcurrentHashMap<>();
+	
+	/**
+	 * Get the contents of a whitespace-delimited model file, parsing it only on the first call.
+	 * 
+	 * @param resource
+	 * 	Location of the model file on the classpath.
+	 * @param comments
+	 * 	Prefixes that identify comment lines in the model file.
+	 * @return
+	 * 	The contents of the file, indexed by [column][row]. This is shared and must not be modified.
+	 * @throws IOException
+	 * 	If the file can't be found or read.
+	 */
+	protected double[][] getTable(String resource, final List<String> comments) throws IOException {
+		return getTable(resource, in -> ParseUtil.parseFile(in, ParseUtil.whitespaceDelim, comments));
+	}
+	
+	/**
+	 * Get the contents of a model file, parsing it only on the first call. The contents are read from the
+	 * binary {@link TableCache} if that's up to date, otherwise the file is parsed and the cache updated.
+	 * 
+	 * @param resource
+	 * 	Location of the model file on the classpath.
+	 * @param parser
+	 * 	The {@link TableParser} used to parse the file.
+	 * @return
+	 * 	The contents of the file, indexed by [column][row]. This is shared and must not be modified.
+	 * @throws IOException
+	 * 	If the file can't be found or read.
+	 */
+	protected double[][] getTable(String resource, TableParser parser) throws IOException {
+		
+		double[][] table = tablesByResource.get(resource);
+		if(table != null) {
+			return table;
+		}
+		
+		table = TableCache.getTable(resource, parser);
+		
+		// If another thread loaded the same file in the meantime, use that table
+		double[][] existing = tablesByResource.putIfAbsent(resource, table);
+		return existing != null ? existing : table;
+	}
 
     /**
      * Load the {@link WdCoolingModelGrid} corresponding to the given {@link Quantity} and
@@ -210,17 +272,53 @@ public abstract class WdCoolingModelSet {
     				+ " for "+getName()+" models!");
     	}
     	
-    	// Lazy initialisation
-    	if(!coolingModelsByQuantity.containsKey(quantity))
-    	{
-    		coolingModelsByQuantity.put(quantity, new TreeMap<WdAtmosphereType, WdCoolingModelGrid>());
-    	}
-    	if(!coolingModelsByQuantity.get(quantity).containsKey(atm))
-    	{
-    		coolingModelsByQuantity.get(quantity).put(atm, load(quantity, atm));
+    	// Fast path: the grid has already been loaded, which requires no locking
+    	ConcurrentMap<WdAtmosphereType, WdCoolingModelGrid> gridsByAtm = coolingModelsByQuantity.get(quantity);
+    	if(gridsByAtm != null) {
+    		WdCoolingModelGrid grid = gridsByAtm.get(atm);
+    		if(grid != null) {
+    			return grid;
+    		}
     	}
     	
-    	return coolingModelsByQuantity.get(quantity).get(atm);
+    	// Lazy initialisation. Threads requesting the same grid concurrently block until the single load
+    	// has completed; grids for other quantities and atmosphere types are unaffected.
+    	gridsByAtm = coolingModelsByQuantity.computeIfAbsent(quantity, q -> new ConcurrentHashMap<>());
+    	WdCoolingModelGrid grid = gridsByAtm.computeIfAbsent(atm, a -> load(quantity, a));
+    	
+    	// Release the parsed model files once they can no longer be used
+    	if(allGridsLoaded()) {
+    		releaseTables();
+    	}
+    	return grid;
+    }
+    
+    /**
+     * Determine if the {@link WdCoolingModelGrid} for every {@link Quantity} and {@link WdAtmosphereType}
+     * provided by the models has been loaded.
+     * 
+     * @return
+     * 	True if every {@link WdCoolingModelGrid} has been loaded.
+     */
+    private boolean allGridsLoaded() {
+    	for(Entry<WdAtmosphereType, Set<Quantity<?>>> entry : quantitiesByAtm.entrySet()) {
+    		for(Quantity<?> quantity : entry.getValue()) {
+    			ConcurrentMap<WdAtmosphereType, WdCoolingModelGrid> gridsByAtm = coolingModelsByQuantity.get(quantity);
+    			if(gridsByAtm == null || !gridsByAtm.containsKey(entry.getKey())) {
+    				return false;
+    			}
+    		}
+    	}
+    	return true;
+    }
+    
+    /**
+     * Release the parsed contents of the model files held in memory to build the {@link WdCoolingModelGrid}s.
+     * Grids that have already been loaded are unaffected; any that are loaded later read the files again
+     * (from the {@link TableCache} if available).
+     */
+    public void releaseTables() {
+    	tablesByResource.clear();
     }
     
     /**
@@ -260,6 +358,104 @@ public abstract class WdCoolingModelSet {
     	return getCoolingTracks(quantity, atm).quantity(age, mass);
     }
     
+    /**
+     * Interpolate/extrapolate the {@link Quantity} at arbitrary cooling time, mass and atmosphere type, and
+     * determine whether the models had to be extrapolated, in a single lookup.
+     *
+     * @param age
+     * 	WD cooling time [yr]
+     * @param mass
+     * 	WD mass [M_{solar}]
+     * @param atm   
+     * 	The {@link WdAtmosphereType}
+     * @param quantity
+     * 	The {@link Quantity}
+     * @param isExtrapolated
+     * 	If not null, on exit the first element indicates whether the models had to be extrapolated.
+     * @return
+     * 	The value of the {@link Quantity}
+     */
+    public double quantity(double age, double mass, WdAtmosphereType atm, Quantity<?> quantity, boolean[] isExtrapolated) {
+    	return getCoolingTracks(quantity, atm).quantity(age, mass, isExtrapolated);
+    }
+    
+    /**
+     * Interpolate/extrapolate several {@link Quantity}s for a batch of WDs in one pass. This is equivalent to
+     * calling {@link #quantity(double, double, WdAtmosphereType, Quantity, boolean[])} for each WD and
+     * {@link Quantity}, but the {@link WdCoolingModelGrid}s are resolved only once per {@link Quantity} and
+     * {@link WdAtmosphereType}, and the WDs are processed one {@link Quantity} at a time so that the
+     * tables for a single grid are accessed together.
+     *
+     * @param ages
+     * 	WD cooling times [yr]
+     * @param masses
+     * 	WD masses [M_{solar}]
+     * @param atms
+     * 	WD atmosphere types
+     * @param n
+     * 	The number of WDs; the first n elements of each input array are used.
+     * @param quantities
+     * 	The {@link Quantity}s to compute, e.g. several passbands.
+     * @param values
+     * 	On exit, values[q][i] contains the value of the q'th {@link Quantity} for the i'th WD. Must have at
+     * least as many rows as there are {@link Quantity}s, each with at least n elements.
+     * @param isExtrapolated
+     * 	If not null, on exit bit i is set if the models had to be extrapolated to compute any of the
+     * {@link Quantity}s for the i'th WD, and cleared otherwise. Bits beyond the first n are left untouched.
+     * @throws IllegalArgumentException
+     * 	If any of the arrays are too short, or if any combination of {@link Quantity} and
+     * {@link WdAtmosphereType} is not available in these models.
+     */
+    public void quantities(double[] ages, double[] masses, WdAtmosphereType[] atms, int n,
+    		List<? extends Quantity<?>> quantities, double[][] values, BitSet isExtrapolated) {
+    	
+    	if(ages.length < n || masses.length < n || atms.length < n) {
+    		throw new IllegalArgumentException("Input arrays are shorter than the number of WDs ("+n+")!");
+    	}
+    	if(values.length < quantities.size()) {
+    		throw new IllegalArgumentException("Output array has "+values.length+" rows; need one for each of "
+    				+ quantities.size()+" quantities!");
+    	}
+    	
+    	if(isExtrapolated != null) {
+    		isExtrapolated.clear(0, n);
+    	}
+    	
+    	boolean[] extrapolated = new boolean[1];
+    	
+    	int q = 0;
+    	for(Quantity<?> quantity : quantities) {
+    		
+    		double[] out = values[q++];
+    		if(out.length < n) {
+    			throw new IllegalArgumentException("Output array for "+quantity+" is shorter than the number of WDs ("+n+")!");
+    		}
+    		
+    		// Grids for this quantity, resolved on first use, indexed by atmosphere type ordinal
+    		WdCoolingModelGrid[] grids = new WdCoolingModelGrid[WdAtmosphereType.values().length];
+    		
+    		for(int i=0; i<n; i++) {
+    			
+    			WdAtmosphereType atm = atms[i];
+    			WdCoolingModelGrid grid = grids[atm.ordinal()];
+    			if(grid == null) {
+    				grid = getCoolingTracks(quantity, atm);
+    				grids[atm.ordinal()] = grid;
+    			}
+    			
+    			if(isExtrapolated != null) {
+    				out[i] = grid.quantity(ages[i], masses[i], extrapolated);
+    				if(extrapolated[0]) {
+    					isExtrapolated.set(i);
+    				}
+    			}
+    			else {
+    				out[i] = grid.quantity(ages[i], masses[i]);
+    			}
+    		}
+    	}
+    }
+    
     /**
      * Interpolate/extrapolate cooling time at arbitrary values of the chosen {@link Quantity}, mass and atmosphere
      * type.
@@ -1,9 +1,6 @@
 package wd.models.algoimpl;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -16,7 +13,6 @@ import infra.Quantity;
 import numeric.functions.MonotonicLinear;
 import photometry.Filter;
 import photometry.util.PhotometryUtils;
-import util.ParseUtil;
 import wd.models.algo.WdCoolingModelGrid;
 import wd.models.algo.WdCoolingModelSet;
 import wd.models.infra.AtmosphereParameter;
@@ -35,6 +31,16 @@ import wd.models.infra.WdAtmosphereType;
  * 
  */
 public class WdCoolingModelSet_BaSTI extends WdCoolingModelSet {
+
+	/**
+	 * The name of the models including phase separation.
+	 */
+	public static final String NAME_PS = "BaSTI, inc. phase separation";
+	
+	/**
+	 * The name of the models without phase separation.
+	 */
+	public static final String NAME_NO_PS = "BaSTI, no phase separation";
 	
 	/**
 	 * String containing the name of this {@link WdCoolingModelSet_BaSTI}, identifying
@@ -55,7 +61,7 @@ public class WdCoolingModelSet_BaSTI extends WdCoolingModelSet {
 	public WdCoolingModelSet_BaSTI(boolean includingPhaseSeparation) {
 		
 		this.includingPhaseSeparation = includingPhaseSeparation;
-		name = includingPhaseSeparation ? "BaSTI, inc. phase separation" : "BaSTI, no phase separation";
+		name = includingPhaseSeparation ? NAME_PS : NAME_NO_PS;
 		
 		wdAtmosphereTypes.add(WdAtmosphereType.H);
 		wdAtmosphereTypes.add(WdAtmosphereType.He);
@@ -127,13 +133,11 @@ public class WdCoolingModelSet_BaSTI extends WdCoolingModelSet {
 	    	int timeCol = 0;
 	    	int bandCol = getColumn(quantity);
 	        
-	        // Open reader on file containing WD cooling model
-	        InputStream is = (this).getClass().getClassLoader().getResourceAsStream("resources/wd/cooling/BaSTI/"+name);
-	        
-	        try(BufferedReader in = new BufferedReader(new InputStreamReader(is))) {
+	        // Get the parsed contents of the file containing WD cooling model
+	        try {
 	        	List<String> comments = new LinkedList<>();
 	        	comments.add("#");
-	        	double[][] data = ParseUtil.parseFile(in, ParseUtil.whitespaceDelim, comments);
+	        	double[][] data = getTable("resources/wd/cooling/BaSTI/"+name, comments);
 	        	int nPoints = data[0].length;
 	        	double[] coolingTimeArray = new double[nPoints];
 		        double[] quantityArray = new double[nPoints];
@@ -158,7 +162,7 @@ public class WdCoolingModelSet_BaSTI extends WdCoolingModelSet {
 	        }
 	        catch (IOException e) {
 	        	logger.log(Level.SEVERE, "Unable to load BaSTI WD cooling model file "
-	        			+ "from InputStream "+is.toString(), e);
+	        			+ "from "+name, e);
 				e.printStackTrace();
 	        }
 		}
@@ -1,9 +1,6 @@
 package wd.models.algoimpl;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -19,7 +16,6 @@ import ms.lifetime.algoimpl.PreWdLifetime_LPCODE;
 import numeric.functions.MonotonicLinear;
 import photometry.Filter;
 import photometry.util.PhotometryUtils;
-import util.ParseUtil;
 import wd.models.algo.WdCoolingModelGrid;
 import wd.models.algo.WdCoolingModelSet;
 import wd.models.infra.AtmosphereParameter;
@@ -77,6 +73,11 @@ import wd.models.infra.WdAtmosphereType;
  * @version $Id$
  */
 public class WdCoolingModelSet_LPCODE extends WdCoolingModelSet {
+
+	/**
+	 * The name of the models.
+	 */
+	public static final String NAME = "LPCODE";
 	
 	/**
 	 * Path to the DA models.
@@ -154,7 +155,7 @@ public class WdCoolingModelSet_LPCODE extends WdCoolingModelSet {
      */
     @Override
     public String getName() {
-    	return "LPCODE";
+    	return NAME;
     }
     
     /** 
@@ -216,13 +217,11 @@ public class WdCoolingModelSet_LPCODE extends WdCoolingModelSet {
 				filename = String.format("col_%7.5f", mass);
 			}
 	        
-	        // Open reader on file containing WD cooling model
-	        InputStream is = getClass().getClassLoader().getResourceAsStream(filepath+filename);
-	        
+	        // Get the parsed contents of the file containing WD cooling model
 	        double[][] colourData = null;
 			
-			try(BufferedReader in = new BufferedReader(new InputStreamReader(is))) {
-				colourData = ParseUtil.parseFile(in, ParseUtil.whitespaceDelim, comments);
+			try {
+				colourData = getTable(filepath+filename, comments);
 			}
 			catch (IOException e) {
 				logger.warning("Could not load the LPCODE "+atm+" model files!");
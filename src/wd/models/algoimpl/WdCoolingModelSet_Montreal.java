@@ -1,9 +1,6 @@
 package wd.models.algoimpl;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -15,13 +12,17 @@ import java.util.logging.Level;
 import infra.Quantity;
 import numeric.functions.MonotonicLinear;
 import photometry.Filter;
-import util.ParseUtil;
 import wd.models.algo.WdCoolingModelGrid;
 import wd.models.algo.WdCoolingModelSet;
 import wd.models.infra.AtmosphereParameter;
 import wd.models.infra.WdAtmosphereType;
 
 public class WdCoolingModelSet_Montreal extends WdCoolingModelSet {
+
+	/**
+	 * The name of the models.
+	 */
+	public static final String NAME = "Montreal";
 	
 	/**
 	 * Constructor for the {@link WdCoolingModelSet_Montreal}.
@@ -69,7 +70,7 @@ public class WdCoolingModelSet_Montreal extends WdCoolingModelSet {
      */
     @Override
     public String getName() {
-    	return "Montreal";
+    	return NAME;
     }
     
     /** 
@@ -88,14 +89,12 @@ public class WdCoolingModelSet_Montreal extends WdCoolingModelSet {
 	        int timeCol = cols[0];
 	        int bandCol = cols[1];
 	        
-	        // Open reader on file containing WD cooling model
-	        InputStream is = getClass().getClassLoader().getResourceAsStream("resources/wd/cooling/Montreal/"+name);
-	        
-	        try(BufferedReader in = new BufferedReader(new InputStreamReader(is))) {
+	        // Get the parsed contents of the file containing WD cooling model
+	        try {
 	        	List<String> comments = new LinkedList<>();
 	        	comments.add("#");
 	        	comments.add("?");
-	        	double[][] data = ParseUtil.parseFile(in, ParseUtil.whitespaceDelim, comments);
+	        	double[][] data = getTable("resources/wd/cooling/Montreal/"+name, comments);
 	        	int nPoints = data[0].length;
 	        	double[] coolingTimeArray = new double[nPoints];
 		        double[] quantityArray = new double[nPoints];
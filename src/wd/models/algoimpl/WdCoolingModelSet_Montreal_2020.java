@@ -1,9 +1,6 @@
 package wd.models.algoimpl;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -15,7 +12,6 @@ import java.util.logging.Level;
 import infra.Quantity;
 import numeric.functions.MonotonicLinear;
 import photometry.Filter;
-import util.ParseUtil;
 import wd.models.algo.WdCoolingModelGrid;
 import wd.models.algo.WdCoolingModelSet;
 import wd.models.infra.AtmosphereParameter;
@@ -38,6 +34,11 @@ import wd.models.infra.WdAtmosphereType;
  */
 public class WdCoolingModelSet_Montreal_2020 extends WdCoolingModelSet {
 
+	/**
+	 * The name of the models.
+	 */
+	public static final String NAME = "Montreal (new 2020)";
+
 	/**
 	 * Column in the data files that contains the cooling time (zero-based indexing).
 	 */
@@ -91,7 +92,7 @@ public class WdCoolingModelSet_Montreal_2020 extends WdCoolingModelSet {
      */
     @Override
     public String getName() {
-    	return "Montreal (new 2020)";
+    	return NAME;
     }
     
     /** 
@@ -109,14 +110,12 @@ public class WdCoolingModelSet_Montreal_2020 extends WdCoolingModelSet {
 	    	String filename = String.format(atm + "_%.1f", mass);
 	        int bandCol = colNumsByQuantity.get(quantity);
 	        
-	        // Open reader on file containing WD cooling model
-	        InputStream is = getClass().getClassLoader().getResourceAsStream("resources/wd/cooling/Montreal/new/"+filename);
-	        
-	        try(BufferedReader in = new BufferedReader(new InputStreamReader(is))) {
+	        // Get the parsed contents of the file containing WD cooling model
+	        try {
 	        	List<String> comments = new LinkedList<>();
 	        	comments.add("#");
 	        	comments.add("?");
-	        	double[][] data = ParseUtil.parseFile(in, ParseUtil.whitespaceDelim, comments);
+	        	double[][] data = getTable("resources/wd/cooling/Montreal/new/"+filename, comments);
 	        	
 	        	// Determine how many points there are with zero age.
 	        	int zeroAgePoints = 0;
@@ -2,8 +2,7 @@ package wd.models.algoimpl;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -40,6 +39,16 @@ import wd.models.infra.WdAtmosphereType;
  *
  */
 public class WdCoolingModelSet_Montreal_2020_Evolutionary extends WdCoolingModelSet {
+
+	/**
+	 * The name of the models.
+	 */
+	public static final String NAME = "Montreal evolutionary (new 2020)";
+	
+	/**
+	 * Columns of the table parsed from each evolutionary sequence file.
+	 */
+	private static final int TCOOL_COL = 0, MBOL_COL = 1, TEFF_COL = 2, LOGG_COL = 3;
     
 	/**
 	 * Constructor for the {@link WdCoolingModelSet_Montreal_2020_Evolutionary}.
@@ -72,7 +81,7 @@ public class WdCoolingModelSet_Montreal_2020_Evolutionary extends WdCoolingModel
      */
     @Override
     public String getName() {
-    	return "Montreal evolutionary (new 2020)";
+    	return NAME;
     }
     
     /** 
@@ -83,68 +92,32 @@ public class WdCoolingModelSet_Montreal_2020_Evolutionary extends WdCoolingModel
 		
 		// Superclass has verified that the given {@link Quantity} is included in the models.
 		
+		// Column of the parsed table containing the quantity
+		int col = 0;
+		if(quantity == Filter.M_BOL) {
+			col = MBOL_COL;
+		}
+		else if(quantity == AtmosphereParameter.TEFF) {
+			col = TEFF_COL;
+		}
+		else if(quantity == AtmosphereParameter.LOGG) {
+			col = LOGG_COL;
+		}
+		
 		NavigableMap<Double, MonotonicLinear> quantityAsFnTcoolByMass = new TreeMap<>();
 		
 		for(double mass : getMassGridPoints(atm)) {
 
 	    	String filename = String.format("seq_%03d_%s.txt", (int)Math.rint(mass*100), atm == WdAtmosphereType.H ? "thick" : "thin");
 	    	
-	        // Open reader on file containing WD cooling model
-	        InputStream is = getClass().getClassLoader().getResourceAsStream("resources/wd/cooling/Montreal/new/evolutionary/"+filename);
-	        
-	        try(BufferedReader in = new BufferedReader(new InputStreamReader(is))) {
-	        	
-	        	// Purge 5 header lines
-	        	for(int i=0; i<5; i++) {
-	        		in.readLine();
-	        	}
-	        	
-	        	// Unsure in advance how many lines to read; use a List
-	        	List<double[]> data = new LinkedList<>();
-	        	
-	        	String line1;
-	        	while ((line1 = in.readLine()) != null) {
-	        	
-	        		// Each record is split over 3 lines; first line contains all required quantities
-	        		// so purge lines 2 & 3
-	        		in.readLine();
-	        		in.readLine();
-	        	
-	        		Scanner scan = new Scanner(line1);
-	        		scan.next();  // Flush #Mod
-	        		double teff = scan.nextDouble();
-	        		double logg = scan.nextDouble();
-	        		scan.next();  // Flush radius
-	        		double tcool = scan.nextDouble();
-	        		double lnu_cgs = scan.nextDouble();
-	        		scan.close();
-	        		
-	        		// Use established solar values
-	        		double mbol = Solar.mbol - 2.5 * Math.log10(lnu_cgs / Solar.lnu_cgs);
-	        		
-	        		double value = 0.0;
-	        		if(quantity == Filter.M_BOL) {
-	        			value = mbol;
-	        		}
-	        		else if(quantity == AtmosphereParameter.TEFF) {
-	        			value = teff;
-	        		}
-	        		else if(quantity == AtmosphereParameter.LOGG) {
-	        			value = logg;
-	        		}
-	        		
-	        		data.add(new double[] {tcool, value});
-	        	}
-	        	
-	        	double[] coolingTimeArray = new double[data.size()];
-		        double[] quantityArray = new double[data.size()];
+	        // Get the parsed contents of the file containing WD cooling model
+	        try {
+	        	double[][] data = getTable("resources/wd/cooling/Montreal/new/evolutionary/"+filename,
+	        			WdCoolingModelSet_Montreal_2020_Evolutionary::parseSequence);
 		        
-		        int idx=0;
-		        for(double[] element : data) {
-		        	coolingTimeArray[idx] = element[0];
-		        	quantityArray[idx] = element[1];
-		        	idx++;
-		        }
+		        // The table is shared by the grids for every quantity, so copy the columns
+		        double[] coolingTimeArray = Arrays.copyOf(data[TCOOL_COL], data[TCOOL_COL].length);
+		        double[] quantityArray = Arrays.copyOf(data[col], data[col].length);
 		        
 		        try {
 		        	quantityAsFnTcoolByMass.put(mass, new MonotonicLinear(coolingTimeArray, quantityArray));
@@ -164,4 +137,61 @@ public class WdCoolingModelSet_Montreal_2020_Evolutionary extends WdCoolingModel
 		
 		return new WdCoolingModelGrid(quantity, atm, quantityAsFnTcoolByMass);
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Parses an evolutionary sequence file into a table with columns for the cooling time, bolometric
+	 * magnitude, effective temperature and surface gravity (in that order).
+	 * 
+	 * @param in
+	 * 	A {@link BufferedReader} open on the evolutionary sequence file.
+	 * @return
+	 * 	The table of parsed values, indexed by [column][row].
+	 * @throws IOException
+	 * 	If there's a problem reading the file.
+	 */
+	private static double[][] parseSequence(BufferedReader in) throws IOException {
+		
+    	// Purge 5 header lines
+    	for(int i=0; i<5; i++) {
+    		in.readLine();
+    	}
+    	
+    	// Unsure in advance how many lines to read; use a List
+    	List<double[]> data = new LinkedList<>();
+    	
+    	String line1;
+    	while ((line1 = in.readLine()) != null) {
+    	
+    		// Each record is split over 3 lines; first line contains all required quantities
+    		// so purge lines 2 & 3
+    		in.readLine();
+    		in.readLine();
+    	
+    		Scanner scan = new Scanner(line1);
+    		scan.next();  // Flush #Mod
+    		double teff = scan.nextDouble();
+    		double logg = scan.nextDouble();
+    		scan.next();  // Flush radius
+    		double tcool = scan.nextDouble();
+    		double lnu_cgs = scan.nextDouble();
+    		scan.close();
+    		
+    		// Use established solar values
+    		double mbol = Solar.mbol - 2.5 * Math.log10(lnu_cgs / Solar.lnu_cgs);
+    		
+    		data.add(new double[] {tcool, mbol, teff, logg});
+    	}
+    	
+    	double[][] table = new double[4][data.size()];
+        
+        int idx=0;
+        for(double[] element : data) {
+        	for(int col=0; col<4; col++) {
+        		table[col][idx] = element[col];
+        	}
+        	idx++;
+        }
+        
+        return table;
+	}
+}
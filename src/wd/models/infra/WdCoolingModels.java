@@ -1,5 +1,8 @@
 package wd.models.infra;
 
+import java.util.function.Supplier;
+
+import utils.LazySupplier;
 import wd.models.algo.WdCoolingModelSet;
 import wd.models.algoimpl.WdCoolingModelSet_BaSTI;
 import wd.models.algoimpl.WdCoolingModelSet_LPCODE;
@@ -15,31 +18,44 @@ import wd.models.algoimpl.WdCoolingModelSet_Montreal_2020_Evolutionary;
  */
 public enum WdCoolingModels {
 	
-	MONTREAL(new WdCoolingModelSet_Montreal()),
-	MONTREAL_NEW_2020(new WdCoolingModelSet_Montreal_2020()),
-	MONTREAL_EVOL(new WdCoolingModelSet_Montreal_2020_Evolutionary()),
-    BASTI_PS(new WdCoolingModelSet_BaSTI(true)), 
-    BASTI_NO_PS(new WdCoolingModelSet_BaSTI(false)),
-    RENEDO(new WdCoolingModelSet_LPCODE());
+	MONTREAL(WdCoolingModelSet_Montreal.NAME, WdCoolingModelSet_Montreal::new),
+	MONTREAL_NEW_2020(WdCoolingModelSet_Montreal_2020.NAME, WdCoolingModelSet_Montreal_2020::new),
+	MONTREAL_EVOL(WdCoolingModelSet_Montreal_2020_Evolutionary.NAME, WdCoolingModelSet_Montreal_2020_Evolutionary::new),
+    BASTI_PS(WdCoolingModelSet_BaSTI.NAME_PS, () -> new WdCoolingModelSet_BaSTI(true)), 
+    BASTI_NO_PS(WdCoolingModelSet_BaSTI.NAME_NO_PS, () -> new WdCoolingModelSet_BaSTI(false)),
+    RENEDO(WdCoolingModelSet_LPCODE.NAME, WdCoolingModelSet_LPCODE::new);
     
-	private WdCoolingModelSet wdCoolingModelSet;
+	/**
+	 * The name of the {@link WdCoolingModelSet}; this is held here so that the models don't have to be
+	 * loaded in order to present the options to the user.
+	 */
+	private final String name;
+	
+	/**
+	 * Supplies the {@link WdCoolingModelSet}, which is created on first use.
+	 */
+	private final LazySupplier<WdCoolingModelSet> wdCoolingModelSet;
 	
 	/**
 	 * The main constructor.
+	 * @param name
+	 * 	The name of the {@link WdCoolingModelSet} supplied by this source.
 	 * @param wdCoolingModelsBase
-	 * 	The cooling models supplied by this source.
+	 * 	Creates the cooling models supplied by this source.
 	 */
-	WdCoolingModels(WdCoolingModelSet wdCoolingModelsBase) {
-		this.wdCoolingModelSet = wdCoolingModelsBase;
+	WdCoolingModels(String name, Supplier<WdCoolingModelSet> wdCoolingModelsBase) {
+		this.name = name;
+		this.wdCoolingModelSet = new LazySupplier<>(wdCoolingModelsBase);
 	}
 	
 	/**
-	 * Resolve the {@link WdCoolingModels} to the corresponding {@link BaseWdCoolingModels}.
+	 * Resolve the {@link WdCoolingModels} to the corresponding {@link BaseWdCoolingModels}. This is
+	 * created on the first call.
 	 * @return
 	 * 	The {@link BaseWdCoolingModels} implementation corresponding to this {@link WdCoolingModels}.
 	 */
     public WdCoolingModelSet getWdCoolingModels() {
-    	return wdCoolingModelSet;
+    	return wdCoolingModelSet.get();
     }
     
     /**
@@ -47,6 +63,6 @@ public enum WdCoolingModels {
      */
     @Override
     public String toString() {
-    	return getWdCoolingModels().toString();
+    	return name;
     }
 }
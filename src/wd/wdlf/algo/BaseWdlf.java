@@ -117,14 +117,27 @@ public class BaseWdlf {
      * on each point.
      */
     public BaseWdlf(BaseWdlf copyMe, boolean resample) {
+    	this(copyMe, resample, new Random());
+    }
+
+    /**
+     * Copy constructor, optionally with resampling of the input density values using the given
+     * random number generator.
+     * 
+     * @param copyMe
+     * 	The {@link BaseWdlf} to copy.
+     * @param resample
+     * 	Boolean flag indicating if the density values are to be resampled from the inputs (true) or not (false).
+     * @param rng
+     * 	The {@link Random} used to resample the density values.
+     */
+    public BaseWdlf(BaseWdlf copyMe, boolean resample, Random rng) {
     	this.filter = copyMe.filter;
     	this.name = copyMe.name;
     	this.reference = copyMe.reference;
     	this.density = new DiscreteFunction1D(copyMe.density);
     	
-    	if(true) {
-    		
-    		Random rng = new Random();
+    	if(resample) {
     		
     		for(int i=0; i<density.size(); i++) {
     			double value = density.getBinContents(i);
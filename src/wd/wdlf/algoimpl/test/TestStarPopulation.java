@@ -0,0 +1,227 @@
+package wd.wdlf.algoimpl.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import wd.wdlf.dm.Star;
+import wd.wdlf.dm.StarPopulation;
+import wd.wdlf.dm.WdlfModellingParameters;
+
+/**
+ * Class tests the reweighting of a {@link StarPopulation} against the same operations applied to the
+ * individual {@link Star}s, i.e. {@link Star#reweight(double, double)} and
+ * {@link Star#addObservationalUncertainty(double)}, as done by the inversion algorithm before the
+ * columnar population was introduced. The population includes importance-sampled stars with non-unit
+ * weights.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class TestStarPopulation {
+
+	/**
+	 * Number of simulation stars to draw in each lookback time bin.
+	 */
+	private static final int N_STARS_PER_BIN = 5000;
+
+	/**
+	 * Largest permitted relative difference between the two methods.
+	 */
+	private static final double TOLERANCE = 1e-12;
+
+	/**
+	 * Main application entry point.
+	 *
+	 * @param args
+	 * 	The command line arguments (ignored)
+	 */
+	public static void main(String[] args) {
+
+		Random random = new Random(8734521L);
+		WdlfModellingParameters params = new WdlfModellingParameters();
+
+		// Magnitude bins cover only part of the range of simulated magnitudes, so that some stars are unobserved
+		int nMagBins = 10;
+		double[] magBinCentres = new double[nMagBins];
+		double[] magBinWidths = new double[nMagBins];
+		for(int bin=0; bin<nMagBins; bin++) {
+			magBinCentres[bin] = 10.25 + 0.5 * bin;
+			magBinWidths[bin] = 0.5;
+		}
+
+		double[] timeBinCentres = {2.5e9, 5.5e9, 8.5e9};
+		double[] timeBinWidths = {3e9, 3e9, 3e9};
+		int nTimeBins = timeBinCentres.length;
+
+		StarPopulation population = new StarPopulation(magBinCentres, magBinWidths, timeBinCentres, timeBinWidths);
+		List<Star> stars = new ArrayList<>();
+		List<Integer> starMagBin = new ArrayList<>();
+		List<Integer> starTimeBin = new ArrayList<>();
+
+		for(int tBin=0; tBin<nTimeBins; tBin++) {
+			double tMin = timeBinCentres[tBin] - timeBinWidths[tBin]/2.0;
+			double tMax = timeBinCentres[tBin] + timeBinWidths[tBin]/2.0;
+			for(int i=0; i<N_STARS_PER_BIN; i++) {
+				// Alternate between unit weight stars and importance-sampled stars
+				Star star = (i % 2 == 0) ? new Star(tMin, tMax, params, random) : Star.drawWhiteDwarf(tMin, tMax, params, random);
+				if(star == null) {
+					continue;
+				}
+				star.setMag(9.0 + 7.0 * random.nextDouble());
+				boolean observed = population.add(tBin, star);
+				int mBin = getMagBin(population, star.getMag());
+				if(observed != (mBin >= 0)) {
+					throw new RuntimeException("Star at magnitude "+star.getMag()+" observed flag is "+observed);
+				}
+				stars.add(star);
+				starMagBin.add(mBin);
+				starTimeBin.add(tBin);
+			}
+		}
+
+		System.out.println("Simulated "+stars.size()+" stars");
+		compare("Initial", population, stars, starMagBin, starTimeBin);
+
+		// Scale each lookback time bin to the number of real stars, with no uncertainty
+		double[] n = new double[nTimeBins];
+		for(int tBin=0; tBin<nTimeBins; tBin++) {
+			n[tBin] = 1e3 * (1.0 + random.nextDouble());
+			population.reweightTimeBin(tBin, n[tBin]);
+		}
+		for(int i=0; i<stars.size(); i++) {
+			stars.get(i).reweight(n[starTimeBin.get(i)], 0.0);
+		}
+		compare("Time bin reweighting", population, stars, starMagBin, starTimeBin);
+
+		// Scale each magnitude bin with uncertainty and add observational variance per real star
+		double[] w = new double[nMagBins];
+		double[] sigmaW = new double[nMagBins];
+		double[] varPerRealStar = new double[nMagBins];
+		for(int bin=0; bin<nMagBins; bin++) {
+			w[bin] = 0.5 + random.nextDouble();
+			sigmaW[bin] = 0.1 * random.nextDouble();
+			varPerRealStar[bin] = 0.01 * random.nextDouble();
+		}
+		population.reweightMagBins(w, sigmaW, varPerRealStar);
+		for(int i=0; i<stars.size(); i++) {
+			int bin = starMagBin.get(i);
+			if(bin < 0) {
+				continue;
+			}
+			Star star = stars.get(i);
+			star.reweight(w[bin], sigmaW[bin]);
+			star.addObservationalUncertainty(varPerRealStar[bin] * star.getNumber());
+		}
+		compare("Magnitude bin reweighting", population, stars, starMagBin, starTimeBin);
+
+		// Resetting the population must restore the state of newly drawn stars, which have variance equal to
+		// the square of their weight
+		population.resetNumbers();
+		double[][] sums = population.sumNumberByMagBin();
+		double[] expected = new double[nMagBins];
+		for(int i=0; i<stars.size(); i++) {
+			int bin = starMagBin.get(i);
+			if(bin >= 0) {
+				double weight = population.getWeight(i);
+				expected[bin] += weight * weight;
+			}
+		}
+		for(int bin=0; bin<nMagBins; bin++) {
+			check("Reset variance in bin "+bin, expected[bin], sums[1][bin]);
+		}
+		System.out.println("Reset: OK");
+	}
+
+	/**
+	 * Compare the sums of the number of real stars and the variance on this, by magnitude bin and by
+	 * lookback time bin, between the {@link StarPopulation} and the individual {@link Star}s.
+	 *
+	 * @param stage
+	 * 	Name of the stage of the test, for reporting.
+	 * @param population
+	 * 	The {@link StarPopulation}.
+	 * @param stars
+	 * 	The individual {@link Star}s.
+	 * @param starMagBin
+	 * 	The magnitude bin of each {@link Star}, or -1 if it is unobserved.
+	 * @param starTimeBin
+	 * 	The lookback time bin of each {@link Star}.
+	 */
+	private static void compare(String stage, StarPopulation population, List<Star> stars, List<Integer> starMagBin,
+			List<Integer> starTimeBin) {
+
+		int nMagBins = population.getNumberOfMagBins();
+		int nTimeBins = population.getNumberOfTimeBins();
+		double[] sumMag = new double[nMagBins];
+		double[] sum2Mag = new double[nMagBins];
+		double[] sumTime = new double[nTimeBins];
+		double[] sum2Time = new double[nTimeBins];
+		double[] weightTime = new double[nTimeBins];
+
+		for(int i=0; i<stars.size(); i++) {
+			int mBin = starMagBin.get(i);
+			if(mBin < 0) {
+				continue;
+			}
+			Star star = stars.get(i);
+			int tBin = starTimeBin.get(i);
+			sumMag[mBin] += star.getNumber();
+			sum2Mag[mBin] += star.getSigma2Number();
+			sumTime[tBin] += star.getNumber();
+			sum2Time[tBin] += star.getSigma2Number();
+			weightTime[tBin] += population.getWeight(i);
+		}
+
+		double[][] sums = population.sumNumberByMagBin();
+		for(int bin=0; bin<nMagBins; bin++) {
+			check(stage+": number in magnitude bin "+bin, sumMag[bin], sums[0][bin]);
+			check(stage+": variance in magnitude bin "+bin, sum2Mag[bin], sums[1][bin]);
+			if(sums[1][bin] <= 0.0) {
+				throw new RuntimeException(stage+": non-positive variance in magnitude bin "+bin);
+			}
+		}
+		for(int bin=0; bin<nTimeBins; bin++) {
+			double[] timeSums = population.sumObservedInTimeBin(bin);
+			check(stage+": number in time bin "+bin, sumTime[bin], timeSums[0]);
+			check(stage+": variance in time bin "+bin, sum2Time[bin], timeSums[1]);
+			check(stage+": weight in time bin "+bin, weightTime[bin], timeSums[2]);
+		}
+		System.out.println(stage+": OK");
+	}
+
+	/**
+	 * Get the magnitude bin containing the given magnitude.
+	 *
+	 * @param population
+	 * 	The {@link StarPopulation}, which defines the magnitude bins.
+	 * @param mag
+	 * 	The magnitude.
+	 * @return
+	 * 	The index of the magnitude bin, or -1 if the magnitude lies outside all the bins.
+	 */
+	private static int getMagBin(StarPopulation population, double mag) {
+		for(int bin=0; bin<population.getNumberOfMagBins(); bin++) {
+			if(mag >= population.getMagBinLower(bin) && mag < population.getMagBinUpper(bin)) {
+				return bin;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Check that two values agree to within the relative tolerance.
+	 *
+	 * @param name
+	 * 	Name of the quantity, for reporting.
+	 * @param expected
+	 * 	The expected value.
+	 * @param actual
+	 * 	The actual value.
+	 */
+	private static void check(String name, double expected, double actual) {
+		if(Math.abs(expected - actual) > TOLERANCE * Math.abs(expected)) {
+			throw new RuntimeException(name+" differs: expected "+expected+", found "+actual);
+		}
+	}
+}
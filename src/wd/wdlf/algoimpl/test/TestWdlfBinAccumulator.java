@@ -0,0 +1,228 @@
+package wd.wdlf.algoimpl.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import wd.wdlf.dm.Star;
+import wd.wdlf.dm.WdlfBinAccumulator;
+import wd.wdlf.dm.WdlfModellingParameters;
+
+/**
+ * Class tests the merging and reweighting of {@link WdlfBinAccumulator}s against the same operations applied to
+ * the individual {@link Star}s, i.e. {@link Star#reweight(double, double)} with zero uncertainty followed by
+ * summing the stars in each magnitude bin, as done by the Monte Carlo WDLF codes before the accumulator was
+ * introduced. The stars are split into chunks that are reweighted separately and merged in stages into
+ * accumulators that have themselves been reweighted, as in the parallel Monte Carlo solver.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class TestWdlfBinAccumulator {
+
+	/**
+	 * Number of chunks the simulation is split into.
+	 */
+	private static final int N_CHUNKS = 4;
+
+	/**
+	 * Number of simulation stars to draw in each chunk.
+	 */
+	private static final int N_STARS_PER_CHUNK = 5000;
+
+	/**
+	 * Largest permitted relative difference between the two methods.
+	 */
+	private static final double TOLERANCE = 1e-10;
+
+	/**
+	 * Main application entry point.
+	 *
+	 * @param args
+	 * 	The command line arguments (ignored)
+	 */
+	public static void main(String[] args) {
+
+		Random random = new Random(2290471L);
+		WdlfModellingParameters params = new WdlfModellingParameters();
+
+		// Magnitude bins cover only part of the range of simulated magnitudes, so that some stars are not accumulated
+		int nMagBins = 10;
+		double[] magBinCentres = new double[nMagBins];
+		double[] magBinWidths = new double[nMagBins];
+		for(int bin=0; bin<nMagBins; bin++) {
+			magBinCentres[bin] = 10.25 + 0.5 * bin;
+			magBinWidths[bin] = 0.5;
+		}
+
+		List<Star> stars = new ArrayList<>();
+		List<Integer> starMagBin = new ArrayList<>();
+		WdlfBinAccumulator[] chunks = new WdlfBinAccumulator[N_CHUNKS];
+
+		for(int c=0; c<N_CHUNKS; c++) {
+			chunks[c] = new WdlfBinAccumulator(magBinCentres, magBinWidths);
+			List<Star> chunkStars = new ArrayList<>();
+			for(int i=0; i<N_STARS_PER_CHUNK; i++) {
+				// Alternate between unit weight stars and importance-sampled stars
+				Star star = (i % 2 == 0) ? new Star(0.0, 10e9, params, random) : Star.drawWhiteDwarf(0.0, 10e9, params, random);
+				if(star == null) {
+					continue;
+				}
+				star.setMag(9.0 + 7.0 * random.nextDouble());
+				int mBin = getMagBin(magBinCentres, magBinWidths, star.getMag());
+				if(chunks[c].add(star) != (mBin >= 0)) {
+					throw new RuntimeException("Star at magnitude "+star.getMag()+" accumulated in wrong bin");
+				}
+				chunkStars.add(star);
+				starMagBin.add(mBin);
+			}
+
+			// Each chunk is scaled to a different number of stars formed
+			double w = 1e3 * (1.0 + random.nextDouble());
+			chunks[c].reweight(w);
+			for(Star star : chunkStars) {
+				star.reweight(w, 0.0);
+			}
+			stars.addAll(chunkStars);
+		}
+
+		// Merge the first half of the chunks into an intermediate accumulator and the rest directly into the
+		// total; both have been reweighted beforehand, which must not affect the merged contributions
+		WdlfBinAccumulator partial = new WdlfBinAccumulator(magBinCentres, magBinWidths);
+		partial.reweight(0.37);
+		WdlfBinAccumulator total = new WdlfBinAccumulator(magBinCentres, magBinWidths);
+		total.reweight(2.9);
+		for(int c=0; c<N_CHUNKS; c++) {
+			if(c < N_CHUNKS / 2) {
+				partial.add(chunks[c]);
+			}
+			else {
+				total.add(chunks[c]);
+			}
+		}
+		total.add(partial);
+		compare("Merge", total, stars, starMagBin);
+
+		// Global reweighting of the merged accumulator
+		double w = 0.5 + random.nextDouble();
+		total.reweight(w);
+		for(Star star : stars) {
+			star.reweight(w, 0.0);
+		}
+		compare("Reweighting", total, stars, starMagBin);
+	}
+
+	/**
+	 * Compare the statistics in each magnitude bin between the {@link WdlfBinAccumulator} and the individual
+	 * {@link Star}s.
+	 *
+	 * @param stage
+	 * 	Name of the stage of the test, for reporting.
+	 * @param whiteDwarfs
+	 * 	The {@link WdlfBinAccumulator}.
+	 * @param stars
+	 * 	The individual {@link Star}s.
+	 * @param starMagBin
+	 * 	The magnitude bin of each {@link Star}, or -1 if it lies outside all the bins.
+	 */
+	private static void compare(String stage, WdlfBinAccumulator whiteDwarfs, List<Star> stars, List<Integer> starMagBin) {
+
+		int nMagBins = whiteDwarfs.size();
+		long[] count = new long[nMagBins];
+		double[] sum = new double[nMagBins];
+		double[] sum2 = new double[nMagBins];
+		double[] sumMass = new double[nMagBins];
+		double[] sumMass2 = new double[nMagBins];
+		double[] sumAge = new double[nMagBins];
+		double[] sumAge2 = new double[nMagBins];
+
+		for(int i=0; i<stars.size(); i++) {
+			int bin = starMagBin.get(i);
+			if(bin < 0) {
+				continue;
+			}
+			Star star = stars.get(i);
+			double n = star.getNumber();
+			count[bin]++;
+			sum[bin] += n;
+			sum2[bin] += star.getSigma2Number();
+			sumMass[bin] += n * star.getWhiteDwarfMass();
+			sumMass2[bin] += n * star.getWhiteDwarfMass() * star.getWhiteDwarfMass();
+			sumAge[bin] += n * star.getTotalAge();
+			sumAge2[bin] += n * star.getTotalAge() * star.getTotalAge();
+		}
+
+		for(int bin=0; bin<nMagBins; bin++) {
+			if(count[bin] != whiteDwarfs.getCount(bin)) {
+				throw new RuntimeException(stage+": count in magnitude bin "+bin+" differs: expected "+count[bin]
+						+ ", found "+whiteDwarfs.getCount(bin));
+			}
+			if(count[bin] == 0l) {
+				continue;
+			}
+			double[] mass = getMeanAndStd(sumMass[bin], sumMass2[bin], sum[bin]);
+			double[] age = getMeanAndStd(sumAge[bin], sumAge2[bin], sum[bin]);
+			check(stage+": number in magnitude bin "+bin, sum[bin], whiteDwarfs.getNumber(bin));
+			check(stage+": variance in magnitude bin "+bin, sum2[bin], whiteDwarfs.getSigma2Number(bin));
+			check(stage+": mean WD mass in magnitude bin "+bin, mass[0], whiteDwarfs.getMeanWdMass(bin)[0]);
+			check(stage+": std WD mass in magnitude bin "+bin, mass[1], whiteDwarfs.getMeanWdMass(bin)[1]);
+			check(stage+": mean age in magnitude bin "+bin, age[0], whiteDwarfs.getMeanAge(bin)[0]);
+			check(stage+": std age in magnitude bin "+bin, age[1], whiteDwarfs.getMeanAge(bin)[1]);
+		}
+		System.out.println(stage+": OK");
+	}
+
+	/**
+	 * Compute the mean and standard deviation from the weighted sums of the first and second moments.
+	 *
+	 * @param sum
+	 * 	Weighted sum of the values.
+	 * @param sum2
+	 * 	Weighted sum of the squared values.
+	 * @param n
+	 * 	Sum of the weights.
+	 * @return
+	 * 	The mean and standard deviation.
+	 */
+	private static double[] getMeanAndStd(double sum, double sum2, double n) {
+		double mean = sum / n;
+		return new double[]{mean, Math.sqrt(sum2 / n - mean * mean)};
+	}
+
+	/**
+	 * Get the magnitude bin containing the given magnitude.
+	 *
+	 * @param centres
+	 * 	Centres of the magnitude bins.
+	 * @param widths
+	 * 	Widths of the magnitude bins.
+	 * @param mag
+	 * 	The magnitude.
+	 * @return
+	 * 	The index of the magnitude bin, or -1 if the magnitude lies outside all the bins.
+	 */
+	private static int getMagBin(double[] centres, double[] widths, double mag) {
+		for(int bin=0; bin<centres.length; bin++) {
+			if(mag >= centres[bin] - widths[bin]/2.0 && mag < centres[bin] + widths[bin]/2.0) {
+				return bin;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Check that two values agree to within the relative tolerance.
+	 *
+	 * @param name
+	 * 	Name of the quantity, for reporting.
+	 * @param expected
+	 * 	The expected value.
+	 * @param actual
+	 * 	The actual value.
+	 */
+	private static void check(String name, double expected, double actual) {
+		if(Math.abs(expected - actual) > TOLERANCE * Math.abs(expected)) {
+			throw new RuntimeException(name+" differs: expected "+expected+", found "+actual);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package wd.wdlf.algoimpl.test;
+
+import photometry.Filter;
+import sfr.algoimpl.ConstantSFR;
+import wd.models.infra.WdCoolingModels;
+import wd.wdlf.algoimpl.ModelWDLF;
+import wd.wdlf.modelling.infra.ModellingState;
+import wd.wdlf.modelling.infra.ParallelMonteCarloWDLFSolver;
+import wd.wdlf.modelling.infra.ResponseMatrixWDLFSolver;
+import wd.wdlf.modelling.infra.TrapeziumWDLFSolver;
+
+/**
+ * Class tests the WDLFs computed by numerical integration in the {@link TrapeziumWDLFSolver} and from the kernel
+ * in the {@link ResponseMatrixWDLFSolver} against the Monte Carlo WDLF computed by the
+ * {@link ParallelMonteCarloWDLFSolver}, for a constant star formation rate and a volume limited survey. Each
+ * must agree to within the combined Monte Carlo uncertainty and the tolerance of the integration, both in each
+ * magnitude bin and in the chi-square over all bins.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class TestWdlfSolvers {
+
+	/**
+	 * Number of WDs to simulate in the Monte Carlo WDLF.
+	 */
+	private static final int N_WDS = 200000;
+
+	/**
+	 * Number of lookback time bins in the kernel of the {@link ResponseMatrixWDLFSolver}.
+	 */
+	private static final int N_TIME_BINS = 30;
+
+	/**
+	 * Largest permitted difference between the WDLFs, in units of the combined uncertainty.
+	 */
+	private static final double N_SIGMA = 5.0;
+
+	/**
+	 * Main application entry point.
+	 *
+	 * @param args
+	 * 	The command line arguments (ignored)
+	 */
+	public static void main(String[] args) {
+
+		int nMagBins = 24;
+		double[] magBinCentres = new double[nMagBins];
+		double[] magBinWidths = new double[nMagBins];
+		for(int bin=0; bin<nMagBins; bin++) {
+			magBinCentres[bin] = 5.25 + 0.5 * bin;
+			magBinWidths[bin] = 0.5;
+		}
+
+		ModellingState state = new ModellingState();
+		state.params.setFilter(Filter.M_BOL);
+		state.params.setWdCoolingModels(WdCoolingModels.RENEDO);
+		state.wdlfBinCentres = magBinCentres;
+		state.wdlfBinWidths = magBinWidths;
+		state.n_WDs = N_WDS;
+		state.syntheticSFR = new ConstantSFR(0.0, 9.0e9, 1.5e-12);
+
+		ModelWDLF trapezium = new TrapeziumWDLFSolver().calculateWDLF(state);
+		ModelWDLF monteCarlo = new ParallelMonteCarloWDLFSolver(ParallelMonteCarloWDLFSolver.DEFAULT_SEED, 4).calculateWDLF(state);
+
+		compare("Trapezium", trapezium, monteCarlo, TrapeziumWDLFSolver.DEFAULT_TOLERANCE);
+
+		// The star formation rate is constant within each time bin of the kernel, so the response matrix is exact
+		// up to its own Monte Carlo uncertainty
+		ModelWDLF responseMatrix = new ResponseMatrixWDLFSolver(state.syntheticSFR.t_max, N_TIME_BINS,
+				N_WDS / N_TIME_BINS).calculateWDLF(state);
+
+		compare("Response matrix", responseMatrix, monteCarlo, 0.0);
+	}
+
+	/**
+	 * Compare a WDLF against the Monte Carlo WDLF in each magnitude bin.
+	 *
+	 * @param name
+	 * 	Name of the solver that computed the WDLF, for reporting.
+	 * @param wdlf
+	 * 	The {@link ModelWDLF} to test.
+	 * @param monteCarlo
+	 * 	The Monte Carlo {@link ModelWDLF}.
+	 * @param tolerance
+	 * 	The relative tolerance on the WDLF being tested, in addition to any uncertainty it reports.
+	 */
+	private static void compare(String name, ModelWDLF wdlf, ModelWDLF monteCarlo, double tolerance) {
+
+		double chi2 = 0.0;
+		int n = 0;
+		for(int bin=0; bin<monteCarlo.size(); bin++) {
+
+			double expected = monteCarlo.density.getBinContents(bin);
+			double actual = wdlf.density.getBinContents(bin);
+
+			// Bins without any simulated WDs carry no information
+			if(expected == 0.0) {
+				continue;
+			}
+
+			double sigmaMc = monteCarlo.density.getBinUncertainty(bin);
+			double sigma = wdlf.density.getBinUncertainty(bin);
+			double sigmaTol = tolerance * Math.abs(actual);
+			double sigmaTotal = Math.sqrt(sigmaMc*sigmaMc + sigma*sigma + sigmaTol*sigmaTol);
+
+			double z = (actual - expected) / sigmaTotal;
+			chi2 += z * z;
+			n++;
+
+			if(Math.abs(z) > N_SIGMA) {
+				throw new RuntimeException(name+" WDLF in bin at "+monteCarlo.density.getBinCentre(bin)+" differs: expected "
+						+ expected+" +/- "+sigmaMc+", found "+actual+" +/- "+sigma);
+			}
+		}
+
+		// Chi-square over all bins must also be consistent with its expected distribution
+		if(chi2 > n + N_SIGMA * Math.sqrt(2.0 * n)) {
+			throw new RuntimeException(name+" WDLF chi-square "+chi2+" is too large for "+n+" bins");
+		}
+		System.out.println(name+": chi-square = "+chi2+" for "+n+" bins: OK");
+	}
+}
@@ -0,0 +1,233 @@
+package wd.wdlf.dm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ifmr.algo.BaseIfmr;
+import ifmr.infra.IFMR;
+import imf.algo.ImfSampler;
+import imf.infra.IMF;
+import ms.lifetime.algo.PreWdLifetime;
+import ms.lifetime.infra.PreWdLifetimeModels;
+
+/**
+ * Class provides the progenitor mass, pre-WD lifetime and WD mass of simulation stars drawn from the IMF, for
+ * populations with a single metallicity (Z) and helium content (Y), from a single precomputed table.
+ *
+ * The table shares the nodes of the {@link ImfSampler} of the IMF, which are equally spaced in the fraction of stars
+ * lying below the mass. At each node the pre-WD lifetime and WD mass are computed from the models, so that the
+ * progenitor of a star is obtained from a single uniform random number by one linear interpolation in the table,
+ * in place of the IMF sampling, pre-WD lifetime interpolation and IFMR evaluation. The progenitor masses are
+ * identical to those drawn from the {@link ImfSampler}; the pre-WD lifetimes and WD masses are interpolated
+ * linearly between the nodes, which introduces small errors (typically much less than one part in 10^4 of the
+ * lifetime) where the models have curvature or kinks within an interval.
+ *
+ * Tables are cached by the configuration of IMF, pre-WD lifetime models, IFMR, Z and Y, and are immutable so
+ * may be shared by many threads. Each table takes three arrays of the size of the {@link ImfSampler} table (up to
+ * about 1 MB), so only the {@link #MAX_CACHED_TABLES} most recently used configurations are kept;
+ * {@link WdlfModellingParameters} also holds a reference to its current table.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class ProgenitorTable {
+
+	/**
+	 * Maximum number of {@link ProgenitorTable}s to keep in the cache.
+	 */
+	private static final int MAX_CACHED_TABLES = 8;
+
+	/**
+	 * Cache of {@link ProgenitorTable}s by configuration, in order of access; the least recently used
+	 * table is discarded once there are more than {@link #MAX_CACHED_TABLES}.
+	 */
+	private static final Map<String, ProgenitorTable> cache = new LinkedHashMap<String, ProgenitorTable>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ProgenitorTable> eldest) {
+			return size() > MAX_CACHED_TABLES;
+		}
+	};
+
+	/**
+	 * The {@link IMF}.
+	 */
+	private final IMF imf;
+
+	/**
+	 * The {@link PreWdLifetimeModels}.
+	 */
+	private final PreWdLifetimeModels preWdLifetimeModels;
+
+	/**
+	 * The {@link IFMR}.
+	 */
+	private final IFMR ifmr;
+
+	/**
+	 * The metallicity (Z).
+	 */
+	private final double z;
+
+	/**
+	 * The helium content (Y).
+	 */
+	private final double y;
+
+	/**
+	 * The {@link ImfSampler} that the table was computed from; a new sampler is created if the IMF changes.
+	 */
+	private final ImfSampler sampler;
+
+	/**
+	 * Number of intervals in the table; one less than the number of nodes.
+	 */
+	private final int nIntervals;
+
+	/**
+	 * Progenitor mass at each node of the table [M_{Solar}]; node k lies at cumulative fraction k / {@link #nIntervals}.
+	 */
+	private final double[] progenitorMass;
+
+	/**
+	 * Total pre-WD lifetime at each node of the table [yr].
+	 */
+	private final double[] preWdLifetime;
+
+	/**
+	 * WD mass at each node of the table [M_{Solar}].
+	 */
+	private final double[] whiteDwarfMass;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param imf
+	 * 	The {@link IMF}.
+	 * @param preWdLifetimeModels
+	 * 	The {@link PreWdLifetimeModels}.
+	 * @param ifmr
+	 * 	The {@link IFMR}.
+	 * @param z
+	 * 	The metallicity (Z).
+	 * @param y
+	 * 	The helium content (Y).
+	 * @param sampler
+	 * 	The {@link ImfSampler} of the IMF.
+	 */
+	private ProgenitorTable(IMF imf, PreWdLifetimeModels preWdLifetimeModels, IFMR ifmr, double z, double y, ImfSampler sampler) {
+
+		this.imf = imf;
+		this.preWdLifetimeModels = preWdLifetimeModels;
+		this.ifmr = ifmr;
+		this.z = z;
+		this.y = y;
+		this.sampler = sampler;
+
+		PreWdLifetime preWdLifetimes = preWdLifetimeModels.getPreWdLifetimeModels();
+		BaseIfmr baseIfmr = ifmr.getIFMR();
+
+		nIntervals = sampler.getNumberOfIntervals();
+		progenitorMass = new double[nIntervals + 1];
+		preWdLifetime = new double[nIntervals + 1];
+		whiteDwarfMass = new double[nIntervals + 1];
+
+		double[] lifetime = new double[2];
+		for(int k=0; k<=nIntervals; k++) {
+			// The sampler returns its node mass exactly at the node fractions
+			progenitorMass[k] = sampler.getMass((double)k / nIntervals);
+			preWdLifetimes.getPreWdLifetime(z, y, progenitorMass[k], lifetime);
+			preWdLifetime[k] = lifetime[0];
+			whiteDwarfMass[k] = baseIfmr.getMf(progenitorMass[k]);
+		}
+	}
+
+	/**
+	 * Get the {@link ProgenitorTable} for the given configuration, from the cache if it has been computed
+	 * already.
+	 *
+	 * @param imf
+	 * 	The {@link IMF}.
+	 * @param preWdLifetimeModels
+	 * 	The {@link PreWdLifetimeModels}.
+	 * @param ifmr
+	 * 	The {@link IFMR}.
+	 * @param z
+	 * 	The metallicity (Z).
+	 * @param y
+	 * 	The helium content (Y).
+	 * @return
+	 * 	The {@link ProgenitorTable}.
+	 */
+	public static ProgenitorTable getProgenitorTable(IMF imf, PreWdLifetimeModels preWdLifetimeModels, IFMR ifmr, double z, double y) {
+		String key = imf.name() + "/" + preWdLifetimeModels.name() + "/" + ifmr.name() + "/" + z + "/" + y;
+		ImfSampler sampler = imf.getIMF().getSampler();
+		synchronized(cache) {
+			ProgenitorTable table = cache.get(key);
+			if(table == null || table.sampler != sampler) {
+				table = new ProgenitorTable(imf, preWdLifetimeModels, ifmr, z, y, sampler);
+				cache.put(key, table);
+			}
+			return table;
+		}
+	}
+
+	/**
+	 * Determine if this table was computed for the given configuration, and for the current {@link ImfSampler}
+	 * of the IMF.
+	 *
+	 * @param imf
+	 * 	The {@link IMF}.
+	 * @param preWdLifetimeModels
+	 * 	The {@link PreWdLifetimeModels}.
+	 * @param ifmr
+	 * 	The {@link IFMR}.
+	 * @param z
+	 * 	The metallicity (Z).
+	 * @param y
+	 * 	The helium content (Y).
+	 * @return
+	 * 	True if the table is valid for the given configuration.
+	 */
+	public boolean matches(IMF imf, PreWdLifetimeModels preWdLifetimeModels, IFMR ifmr, double z, double y) {
+		return this.imf == imf && this.preWdLifetimeModels == preWdLifetimeModels && this.ifmr == ifmr &&
+				this.z == z && this.y == y && this.sampler == imf.getIMF().getSampler();
+	}
+
+	/**
+	 * Set the progenitor mass, pre-WD lifetime, WD mass and composition of the given {@link Star}.
+	 *
+	 * @param star
+	 * 	The {@link Star}.
+	 * @param x
+	 * 	The fraction of stars lying below the progenitor mass [0:1)
+	 */
+	void setProgenitor(Star star, double x) {
+		double pos = x * nIntervals;
+		int k = (int)pos;
+		if(k >= nIntervals) {
+			star.progenitorMass = progenitorMass[nIntervals];
+			star.preWdLifetime = preWdLifetime[nIntervals];
+			star.whiteDwarfMass = whiteDwarfMass[nIntervals];
+		}
+		else {
+			double f = pos - k;
+			star.progenitorMass = progenitorMass[k] + f * (progenitorMass[k+1] - progenitorMass[k]);
+			star.preWdLifetime = preWdLifetime[k] + f * (preWdLifetime[k+1] - preWdLifetime[k]);
+			star.whiteDwarfMass = whiteDwarfMass[k] + f * (whiteDwarfMass[k+1] - whiteDwarfMass[k]);
+		}
+		star.z = z;
+		star.y = y;
+	}
+
+	/**
+	 * Get the number of intervals in the table.
+	 * @return
+	 * 	The number of intervals in the table; one less than the number of nodes.
+	 */
+	public int getNumberOfIntervals() {
+		return nIntervals;
+	}
+}
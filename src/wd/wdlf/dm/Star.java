@@ -2,6 +2,8 @@ package wd.wdlf.dm;
 
 import java.util.Random;
 
+import imf.algo.BaseImf;
+import ms.lifetime.algo.PreWdLifetime;
 import photometry.util.PhotometryUtils;
 import sfr.algo.BaseSfr;
 import wd.models.infra.WdAtmosphereType;
@@ -99,23 +101,59 @@ public class Star {
      * 	The {@link WdlfModellingParameters}.
      */
     public Star(WdlfModellingParameters params) {
+    	ProgenitorTable table = params.getProgenitorTable();
+    	if(table != null) {
+    		setProgenitor(params, table, random.nextDouble(), random);
+    	}
+    	else {
+    		setProgenitor(params, params.getIMF().getSampler().drawMass(random), drawComposition(params, random), random);
+    	}
+    }
+    
+    /**
+     * Set the fields that are assignable from the {@link WdlfModellingParameters} alone, drawing
+     * all stochastic fields from the given {@link Random}.
+     * @param params
+     * 	The {@link WdlfModellingParameters}.
+     * @param random
+     * 	The {@link Random} used to assign the stochastic fields.
+     */
+    public Star(WdlfModellingParameters params, Random random) {
+    	ProgenitorTable table = params.getProgenitorTable();
+    	if(table != null) {
+    		setProgenitor(params, table, random.nextDouble(), random);
+    	}
+    	else {
+    		setProgenitor(params, params.getIMF().getSampler().drawMass(random), drawComposition(params, random), random);
+    	}
+    }
+    
+    /**
+     * Constructor used by the factory methods, which set the fields.
+     */
+    private Star() {
     	
-		// Draw MS mass for star
-		this.progenitorMass = params.getIMF().drawMass();
+    }
+    
+    /**
+     * Set the fields that are assignable from the {@link WdlfModellingParameters}, the
+     * given progenitor mass and the given composition.
+     * @param params
+     * 	The {@link WdlfModellingParameters}.
+     * @param progenitorMass
+     * 	Mass of main sequence progenitor star [M_{Solar}]
+     * @param composition
+     * 	The metallicity (Z) and helium content (Y) of the star.
+     * @param random
+     * 	The {@link Random} used to assign the remaining stochastic fields.
+     */
+    private void setProgenitor(WdlfModellingParameters params, double progenitorMass, double[] composition, Random random) {
+    	
+		// MS mass for star
+		this.progenitorMass = progenitorMass;
 		
-		// Draw metallicity for the star. Must avoid assigning non-positive values in cases where the sigma is large.
-		double z = -Double.MAX_VALUE;
-		double y = -Double.MAX_VALUE;
-		while(z<=0.0) {
-			// Redraw until we get a positive value
-			z = params.getMeanMetallicity() + random.nextGaussian() * params.getMetallicitySigma();
-		}
-		while(y<=0.0) {
-			// Redraw until we get a positive value
-			y = params.getMeanHeliumContent() + random.nextGaussian() * params.getHeliumContentSigma();
-		}
-		this.z = z;
-		this.y = y;
+		this.z = composition[0];
+		this.y = composition[1];
 		
 		// Get total pre-WD lifetime for star
 		this.preWdLifetime = params.getPreWdLifetime().getPreWdLifetime(z, y, progenitorMass)[0];
@@ -127,6 +165,26 @@ public class Star {
 		this.wdAtmType = (random.nextDouble() < params.getW_H()) ? WdAtmosphereType.H : WdAtmosphereType.He;
     }
     
+    /**
+     * Set the fields that are assignable from the {@link WdlfModellingParameters}, looking up the progenitor
+     * mass, pre-WD lifetime and WD mass in the {@link ProgenitorTable}.
+     * @param params
+     * 	The {@link WdlfModellingParameters}.
+     * @param table
+     * 	The {@link ProgenitorTable} for the {@link WdlfModellingParameters}.
+     * @param x
+     * 	The fraction of stars lying below the progenitor mass [0:1)
+     * @param random
+     * 	The {@link Random} used to assign the remaining stochastic fields.
+     */
+    private void setProgenitor(WdlfModellingParameters params, ProgenitorTable table, double x, Random random) {
+    	
+    	table.setProgenitor(this, x);
+		
+		// Assign WD atmosphere type randomly
+		this.wdAtmType = (random.nextDouble() < params.getW_H()) ? WdAtmosphereType.H : WdAtmosphereType.He;
+    }
+    
     /**
      * Construct a Star where the total age is drawn from the SFR.
      * 
@@ -143,6 +201,25 @@ public class Star {
 		this.totalAge = sfr.drawCreationTime();
     }
     
+    /**
+     * Construct a Star where the total age is drawn from the SFR, drawing all stochastic fields
+     * from the given {@link Random}.
+     * 
+     * @param sfr
+     * 	The {@link BaseSfr}
+     * @param params
+     * 	The WdlfModellingParameters
+     * @param random
+     * 	The {@link Random} used to assign the stochastic fields.
+     */
+    public Star(BaseSfr sfr, WdlfModellingParameters params, Random random) {
+    	
+    	this(params, random);
+    	
+		// Draw random lookback time of creation of star
+		this.totalAge = sfr.drawCreationTime(random);
+    }
+    
     /**
      * Constructor for Star where formation time is drawn uniformly between specified limits.
      * 
@@ -161,6 +238,184 @@ public class Star {
 		this.totalAge = t_min + random.nextDouble()*(t_max-t_min);
     }  
     
+    /**
+     * Constructor for Star where formation time is drawn uniformly between specified limits, drawing
+     * all stochastic fields from the given {@link Random}.
+     * 
+     * @param t_min
+     * 	Minimum lookback time [yr].
+     * @param t_max
+     * 	Maximum lookback time [yr].
+     * @param params
+     * 	The {@link WdlfModellingParameters}.
+     * @param random
+     * 	The {@link Random} used to assign the stochastic fields.
+     */
+    public Star(double t_min, double t_max, WdlfModellingParameters params, Random random) {
+    	
+    	this(params, random);
+    	
+        // Draw random lookback time of creation of star uniformly between specified limits
+		this.totalAge = t_min + random.nextDouble()*(t_max-t_min);
+    }
+    
+    /**
+     * Draw the metallicity (Z) and helium content (Y) for a star.
+     * @param params
+     * 	The {@link WdlfModellingParameters}.
+     * @param random
+     * 	The {@link Random} used to draw the composition.
+     * @return
+     * 	The metallicity (Z) and helium content (Y).
+     */
+    private static double[] drawComposition(WdlfModellingParameters params, Random random) {
+		// Draw metallicity for the star. Must avoid assigning non-positive values in cases where the sigma is large.
+		// No random numbers are used if the sigma is zero.
+		double z = params.getMetallicitySigma() == 0.0 ? params.getMeanMetallicity() : -Double.MAX_VALUE;
+		double y = params.getHeliumContentSigma() == 0.0 ? params.getMeanHeliumContent() : -Double.MAX_VALUE;
+		while(z<=0.0) {
+			// Redraw until we get a positive value
+			z = params.getMeanMetallicity() + random.nextGaussian() * params.getMetallicitySigma();
+		}
+		while(y<=0.0) {
+			// Redraw until we get a positive value
+			y = params.getMeanHeliumContent() + random.nextGaussian() * params.getHeliumContentSigma();
+		}
+		return new double[]{z, y};
+    }
+    
+    /**
+     * Draw a Star that has formed a WD by the present day, where the total age is drawn from the SFR.
+     * See {@link #drawWhiteDwarf(WdlfModellingParameters, double[], double, Random)}.
+     * 
+     * @param sfr
+     * 	The {@link BaseSfr}
+     * @param params
+     * 	The WdlfModellingParameters
+     * @return
+     * 	The Star, or null if none of the stars formed at the drawn lookback time have formed WDs.
+     */
+    public static Star drawWhiteDwarf(BaseSfr sfr, WdlfModellingParameters params) {
+    	double[] composition = drawComposition(params, random);
+    	return drawWhiteDwarf(params, composition, sfr.drawCreationTime(), random);
+    }
+    
+    /**
+     * Draw a Star that has formed a WD by the present day, where the total age is drawn from the SFR,
+     * drawing all stochastic fields from the given {@link Random}.
+     * See {@link #drawWhiteDwarf(WdlfModellingParameters, double[], double, Random)}.
+     * 
+     * @param sfr
+     * 	The {@link BaseSfr}
+     * @param params
+     * 	The WdlfModellingParameters
+     * @param random
+     * 	The {@link Random} used to assign the stochastic fields.
+     * @return
+     * 	The Star, or null if none of the stars formed at the drawn lookback time have formed WDs.
+     */
+    public static Star drawWhiteDwarf(BaseSfr sfr, WdlfModellingParameters params, Random random) {
+    	double[] composition = drawComposition(params, random);
+    	return drawWhiteDwarf(params, composition, sfr.drawCreationTime(random), random);
+    }
+    
+    /**
+     * Draw a Star that has formed a WD by the present day, where the formation time is drawn uniformly
+     * between specified limits, drawing all stochastic fields from the given {@link Random}.
+     * See {@link #drawWhiteDwarf(WdlfModellingParameters, double[], double, Random)}.
+     * 
+     * @param t_min
+     * 	Minimum lookback time [yr].
+     * @param t_max
+     * 	Maximum lookback time [yr].
+     * @param params
+     * 	The {@link WdlfModellingParameters}.
+     * @param random
+     * 	The {@link Random} used to assign the stochastic fields.
+     * @return
+     * 	The Star, or null if none of the stars formed at the drawn lookback time have formed WDs.
+     */
+    public static Star drawWhiteDwarf(double t_min, double t_max, WdlfModellingParameters params, Random random) {
+    	double[] composition = drawComposition(params, random);
+    	return drawWhiteDwarf(params, composition, t_min + random.nextDouble()*(t_max-t_min), random);
+    }
+    
+    /**
+     * Draw a Star of the given composition and total age whose progenitor mass lies above the main
+     * sequence turn-off mass, so that it has formed a WD by the present day. The progenitor mass is drawn
+     * from the IMF truncated at the turn-off mass, and the Star represents the fraction of the IMF that
+     * lies above the turn-off mass, i.e. the probability that a Star drawn from the full IMF would have
+     * formed a WD. Averaged over many Stars, the numbers are equal to those obtained by drawing from the
+     * full IMF and discarding the Stars that haven't formed WDs, but without the wasted draws.
+     * 
+     * The turn-off mass and the pre-WD lifetime of the drawn mass are interpolated separately, so a Star
+     * drawn just above the turn-off mass can have a pre-WD lifetime fractionally longer than its total age.
+     * The pre-WD lifetime of such Stars is clamped to just below the total age, so that they form WDs at
+     * the present day and every Star drawn here carries its weight, rather than being discarded by the caller.
+     * 
+     * @param params
+     * 	The {@link WdlfModellingParameters}.
+     * @param composition
+     * 	The metallicity (Z) and helium content (Y) of the star.
+     * @param totalAge
+     * 	The lookback time at which the star formed [yr].
+     * @param random
+     * 	The {@link Random} used to assign the remaining stochastic fields.
+     * @return
+     * 	The Star, or null if none of the stars formed at this lookback time have formed WDs.
+     */
+    private static Star drawWhiteDwarf(WdlfModellingParameters params, double[] composition, double totalAge, Random random) {
+    	
+    	BaseImf imf = params.getIMF();
+    	PreWdLifetime preWdLifetime = params.getPreWdLifetime();
+    	
+    	// Even the heaviest stars formed at this time haven't formed WDs; the stellar mass lookup may not
+    	// cover lifetimes this short.
+    	if(!(totalAge > preWdLifetime.getPreWdLifetime(composition[0], composition[1], BaseImf.M_upper)[0])) {
+    		return null;
+    	}
+    	
+    	// Mass of stars formed at this time that are just forming WDs at the present day
+    	double turnOffMass = preWdLifetime.getStellarMass(composition[0], composition[1], totalAge)[0];
+    	
+    	if(!(turnOffMass < BaseImf.M_upper)) {
+    		// No stars formed at this time have formed WDs
+    		return null;
+    	}
+    	
+    	// Fraction of stars lying below the turn-off mass
+    	double x = (turnOffMass > BaseImf.M_lower) ? imf.getIntegral(turnOffMass) : 0.0;
+    	
+    	if(x >= 1.0) {
+    		return null;
+    	}
+    	
+    	// Draw the progenitor mass from the IMF above the turn-off mass
+    	double u = x + random.nextDouble() * (1.0 - x);
+    	
+    	Star star = new Star();
+    	ProgenitorTable table = params.getProgenitorTable();
+    	if(table != null) {
+    		star.setProgenitor(params, table, u, random);
+    	}
+    	else {
+    		star.setProgenitor(params, imf.getSampler().getMass(u), composition, random);
+    	}
+    	star.totalAge = totalAge;
+    	
+    	// The star lies above the turn-off mass so must have formed a WD; clamp any interpolation error
+    	if(!(star.preWdLifetime < totalAge)) {
+    		star.preWdLifetime = Math.nextDown(totalAge);
+    	}
+    	
+    	// The Star represents the fraction of stars that have formed WDs, with a variance equal to
+    	// the square of that number as for the other Stars.
+    	star.number = 1.0 - x;
+    	star.sigma2_number = star.number * star.number;
+    	
+    	return star;
+    }
+    
     /**
      * Set lookback time at which this star formed. 
      * @param totalAge
@@ -0,0 +1,789 @@
+package wd.wdlf.dm;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import wd.models.infra.WdAtmosphereType;
+
+/**
+ * Class represents a simulated white dwarf population as a set of primitive columns (structure-of-arrays),
+ * for use by the WDLF inversion algorithm. Each simulation star occupies one row, and is binned on two
+ * axes: the lookback time bin in which it formed, and the magnitude bin of the observed WDLF in which it
+ * lies (if any). The bin indices are computed once when the star is added and stored alongside the other
+ * columns, so that the reweighting and SFR marginalisation passes are simple loops over arrays with no
+ * per-star objects or range lookups.
+ *
+ * Stars must be added in non-decreasing order of lookback time bin; this is how the inversion algorithm
+ * generates them, and it means that the stars in each lookback time bin occupy a contiguous range of rows.
+ * Stars that lie outside all the magnitude bins are retained (they are needed to compute the fraction of
+ * WDs that are observed) but are flagged as unobserved.
+ *
+ * Each star carries a weight, which is the number of real stars it represents before any reweighting. This
+ * is one unless the star was drawn by importance sampling (see {@link Star#drawWhiteDwarf(double, double,
+ * WdlfModellingParameters, java.util.Random)}), in which case the fractions of WDs that are observed are
+ * computed from the weights rather than the counts of stars. As for {@link Star}, the variance on the number
+ * of real stars represented by each simulation star is initially the square of its weight; this is the Monte
+ * Carlo counting term that propagates through the reweighting to the uncertainty on the SFR.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class StarPopulation {
+
+	/**
+	 * Default initial capacity, if none is specified.
+	 */
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The enum constants of {@link WdAtmosphereType}, indexed by ordinal.
+	 */
+	private static final WdAtmosphereType[] ATMOSPHERES = WdAtmosphereType.values();
+
+	/**
+	 * Centres of the magnitude bins.
+	 */
+	private final double[] magBinCentres;
+
+	/**
+	 * Widths of the magnitude bins.
+	 */
+	private final double[] magBinWidths;
+
+	/**
+	 * Lower edges of the magnitude bins.
+	 */
+	private final double[] magBinLower;
+
+	/**
+	 * Upper edges of the magnitude bins.
+	 */
+	private final double[] magBinUpper;
+
+	/**
+	 * Lower edges of the lookback time bins [yr].
+	 */
+	private final double[] timeBinLower;
+
+	/**
+	 * Upper edges of the lookback time bins [yr].
+	 */
+	private final double[] timeBinUpper;
+
+	/**
+	 * Index of the first row belonging to each lookback time bin.
+	 */
+	private final int[] timeBinStart;
+
+	/**
+	 * Number of simulation stars in each lookback time bin.
+	 */
+	private final int[] timeBinCount;
+
+	/**
+	 * Sum of the weights of the simulation stars in each lookback time bin.
+	 */
+	private final double[] timeBinWeight;
+
+	/**
+	 * Number of rows (simulation stars) in the population.
+	 */
+	private int size = 0;
+
+	/**
+	 * Total stellar age (i.e. lookback time to formation) of each star [yr].
+	 */
+	private double[] totalAge;
+
+	/**
+	 * Main sequence progenitor mass of each star [M_{Solar}].
+	 */
+	private double[] progenitorMass;
+
+	/**
+	 * White dwarf mass of each star [M_{Solar}].
+	 */
+	private double[] wdMass;
+
+	/**
+	 * Magnitude of each star, including the simulated observational error.
+	 */
+	private double[] mag;
+
+	/**
+	 * Weight of each star, i.e. the number of real stars it represents before any reweighting.
+	 */
+	private double[] weight;
+
+	/**
+	 * Number of real stars represented by each simulation star.
+	 */
+	private double[] number;
+
+	/**
+	 * Variance on the number of real stars represented by each simulation star.
+	 */
+	private double[] sigma2Number;
+
+	/**
+	 * Ordinal of the {@link WdAtmosphereType} of each star.
+	 */
+	private byte[] atmosphere;
+
+	/**
+	 * Index of the magnitude bin of each star, or -1 if it lies outside all the magnitude bins.
+	 */
+	private int[] magBin;
+
+	/**
+	 * Index of the lookback time bin of each star.
+	 */
+	private int[] timeBin;
+
+	/**
+	 * Flags the stars that lie in one of the magnitude bins.
+	 */
+	private final BitSet isObserved = new BitSet();
+
+	/**
+	 * Number of simulation stars in each magnitude bin.
+	 */
+	private final int[] magBinCount;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param magBinCentres
+	 * 	Centres of the magnitude bins; must be in ascending order with non-overlapping bins.
+	 * @param magBinWidths
+	 * 	Widths of the magnitude bins.
+	 * @param timeBinCentres
+	 * 	Centres of the lookback time bins [yr]; must be in ascending order with non-overlapping bins.
+	 * @param timeBinWidths
+	 * 	Widths of the lookback time bins [yr].
+	 * @param capacity
+	 * 	The initial number of rows to allocate; the columns grow as required.
+	 */
+	public StarPopulation(double[] magBinCentres, double[] magBinWidths, double[] timeBinCentres, double[] timeBinWidths, int capacity) {
+
+		this.magBinCentres = magBinCentres.clone();
+		this.magBinWidths = magBinWidths.clone();
+		magBinLower = new double[magBinCentres.length];
+		magBinUpper = new double[magBinCentres.length];
+		setEdges(magBinCentres, magBinWidths, magBinLower, magBinUpper);
+
+		timeBinLower = new double[timeBinCentres.length];
+		timeBinUpper = new double[timeBinCentres.length];
+		setEdges(timeBinCentres, timeBinWidths, timeBinLower, timeBinUpper);
+
+		timeBinStart = new int[timeBinCentres.length];
+		timeBinCount = new int[timeBinCentres.length];
+		timeBinWeight = new double[timeBinCentres.length];
+		magBinCount = new int[magBinCentres.length];
+
+		capacity = Math.max(capacity, 1);
+		totalAge = new double[capacity];
+		progenitorMass = new double[capacity];
+		wdMass = new double[capacity];
+		mag = new double[capacity];
+		weight = new double[capacity];
+		number = new double[capacity];
+		sigma2Number = new double[capacity];
+		atmosphere = new byte[capacity];
+		magBin = new int[capacity];
+		timeBin = new int[capacity];
+	}
+
+	/**
+	 * Constructor using the default initial capacity.
+	 *
+	 * @param magBinCentres
+	 * 	Centres of the magnitude bins; must be in ascending order with non-overlapping bins.
+	 * @param magBinWidths
+	 * 	Widths of the magnitude bins.
+	 * @param timeBinCentres
+	 * 	Centres of the lookback time bins [yr]; must be in ascending order with non-overlapping bins.
+	 * @param timeBinWidths
+	 * 	Widths of the lookback time bins [yr].
+	 */
+	public StarPopulation(double[] magBinCentres, double[] magBinWidths, double[] timeBinCentres, double[] timeBinWidths) {
+		this(magBinCentres, magBinWidths, timeBinCentres, timeBinWidths, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Computes the bin edges from the bin centres and widths, and checks that the bins are ascending and
+	 * non-overlapping.
+	 *
+	 * @param centres
+	 * 	The bin centres.
+	 * @param widths
+	 * 	The bin widths.
+	 * @param lower
+	 * 	On exit, contains the lower edges of the bins.
+	 * @param upper
+	 * 	On exit, contains the upper edges of the bins.
+	 */
+	private static void setEdges(double[] centres, double[] widths, double[] lower, double[] upper) {
+
+		if(centres.length != widths.length) {
+			throw new IllegalArgumentException("Number of bin centres ("+centres.length+") and bin widths ("
+					+ widths.length+") differ!");
+		}
+
+		for(int bin=0; bin<centres.length; bin++) {
+			lower[bin] = centres[bin] - widths[bin]/2.0;
+			upper[bin] = centres[bin] + widths[bin]/2.0;
+			if(bin > 0 && lower[bin] < upper[bin-1]) {
+				throw new IllegalArgumentException("Bins must be ascending and non-overlapping! Found bin "
+						+ bin + " at ["+lower[bin]+":"+upper[bin]+"]");
+			}
+		}
+	}
+
+	/**
+	 * Get the index of the bin containing the given value.
+	 *
+	 * @param lower
+	 * 	Lower edges of the bins.
+	 * @param upper
+	 * 	Upper edges of the bins.
+	 * @param x
+	 * 	The value.
+	 * @return
+	 * 	The index of the bin containing the value, or -1 if it lies outside all the bins.
+	 */
+	private static int getBin(double[] lower, double[] upper, double x) {
+
+		// Binary search for the last bin with lower edge not greater than the value
+		int lo = 0;
+		int hi = lower.length - 1;
+		int bin = -1;
+		while(lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if(lower[mid] <= x) {
+				bin = mid;
+				lo = mid + 1;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+
+		if(bin < 0 || x >= upper[bin]) {
+			return -1;
+		}
+		return bin;
+	}
+
+	/**
+	 * Increase the capacity of all the columns.
+	 */
+	private void grow() {
+		int capacity = totalAge.length + (totalAge.length >> 1) + 1;
+		totalAge = Arrays.copyOf(totalAge, capacity);
+		progenitorMass = Arrays.copyOf(progenitorMass, capacity);
+		wdMass = Arrays.copyOf(wdMass, capacity);
+		mag = Arrays.copyOf(mag, capacity);
+		weight = Arrays.copyOf(weight, capacity);
+		number = Arrays.copyOf(number, capacity);
+		sigma2Number = Arrays.copyOf(sigma2Number, capacity);
+		atmosphere = Arrays.copyOf(atmosphere, capacity);
+		magBin = Arrays.copyOf(magBin, capacity);
+		timeBin = Arrays.copyOf(timeBin, capacity);
+	}
+
+	/**
+	 * Add a simulation star to the population. The star initially represents one real star, with unit
+	 * variance.
+	 *
+	 * @param tBin
+	 * 	Index of the lookback time bin in which the star formed; this must not be less than that of the
+	 * previous star added.
+	 * @param totalAge
+	 * 	Total stellar age [yr]
+	 * @param progenitorMass
+	 * 	Main sequence progenitor mass [M_{Solar}]
+	 * @param wdMass
+	 * 	White dwarf mass [M_{Solar}]
+	 * @param atm
+	 * 	The {@link WdAtmosphereType} of the white dwarf.
+	 * @param mag
+	 * 	Magnitude of the white dwarf.
+	 * @return
+	 * 	True if the star lies in one of the magnitude bins, i.e. it is observed; false otherwise.
+	 */
+	public boolean add(int tBin, double totalAge, double progenitorMass, double wdMass, WdAtmosphereType atm, double mag) {
+		return add(tBin, totalAge, progenitorMass, wdMass, atm, mag, 1.0);
+	}
+
+	/**
+	 * Add a simulation star to the population. The star initially represents a number of real stars
+	 * equal to its weight, with variance equal to the square of its weight.
+	 *
+	 * @param tBin
+	 * 	Index of the lookback time bin in which the star formed; this must not be less than that of the
+	 * previous star added.
+	 * @param totalAge
+	 * 	Total stellar age [yr]
+	 * @param progenitorMass
+	 * 	Main sequence progenitor mass [M_{Solar}]
+	 * @param wdMass
+	 * 	White dwarf mass [M_{Solar}]
+	 * @param atm
+	 * 	The {@link WdAtmosphereType} of the white dwarf.
+	 * @param mag
+	 * 	Magnitude of the white dwarf.
+	 * @param weight
+	 * 	Weight of the star, i.e. the number of real stars it represents before any reweighting.
+	 * @return
+	 * 	True if the star lies in one of the magnitude bins, i.e. it is observed; false otherwise.
+	 */
+	public boolean add(int tBin, double totalAge, double progenitorMass, double wdMass, WdAtmosphereType atm, double mag,
+			double weight) {
+		return add(tBin, totalAge, progenitorMass, wdMass, atm, mag, weight, weight * weight);
+	}
+
+	/**
+	 * Add a simulation star to the population, with the given variance on the number of real stars it
+	 * represents.
+	 *
+	 * @param tBin
+	 * 	Index of the lookback time bin in which the star formed; this must not be less than that of the
+	 * previous star added.
+	 * @param totalAge
+	 * 	Total stellar age [yr]
+	 * @param progenitorMass
+	 * 	Main sequence progenitor mass [M_{Solar}]
+	 * @param wdMass
+	 * 	White dwarf mass [M_{Solar}]
+	 * @param atm
+	 * 	The {@link WdAtmosphereType} of the white dwarf.
+	 * @param mag
+	 * 	Magnitude of the white dwarf.
+	 * @param weight
+	 * 	Weight of the star, i.e. the number of real stars it represents before any reweighting.
+	 * @param sigma2Number
+	 * 	Variance on the number of real stars represented by the star.
+	 * @return
+	 * 	True if the star lies in one of the magnitude bins, i.e. it is observed; false otherwise.
+	 */
+	public boolean add(int tBin, double totalAge, double progenitorMass, double wdMass, WdAtmosphereType atm, double mag,
+			double weight, double sigma2Number) {
+
+		if(tBin < 0 || tBin >= timeBinLower.length) {
+			throw new IllegalArgumentException("Lookback time bin "+tBin+" out of range [0:"+(timeBinLower.length-1)+"]");
+		}
+		if(size > 0 && tBin < timeBin[size-1]) {
+			throw new IllegalArgumentException("Stars must be added in order of lookback time bin! Found bin "
+					+ tBin + " after bin " + timeBin[size-1]);
+		}
+
+		if(size == this.totalAge.length) {
+			grow();
+		}
+
+		// The first star in a new lookback time bin marks the start of that bin and any skipped bins
+		if(size == 0 || tBin != timeBin[size-1]) {
+			for(int b = (size == 0 ? 0 : timeBin[size-1] + 1); b <= tBin; b++) {
+				timeBinStart[b] = size;
+			}
+		}
+
+		int mBin = getBin(magBinLower, magBinUpper, mag);
+
+		this.totalAge[size] = totalAge;
+		this.progenitorMass[size] = progenitorMass;
+		this.wdMass[size] = wdMass;
+		this.mag[size] = mag;
+		this.weight[size] = weight;
+		this.number[size] = weight;
+		this.sigma2Number[size] = sigma2Number;
+		this.atmosphere[size] = (byte)atm.ordinal();
+		this.magBin[size] = mBin;
+		this.timeBin[size] = tBin;
+
+		if(mBin >= 0) {
+			isObserved.set(size);
+			magBinCount[mBin]++;
+		}
+
+		timeBinCount[tBin]++;
+		timeBinWeight[tBin] += weight;
+		size++;
+
+		return mBin >= 0;
+	}
+
+	/**
+	 * Add a simulation {@link Star} to the population.
+	 *
+	 * @param tBin
+	 * 	Index of the lookback time bin in which the star formed.
+	 * @param star
+	 * 	The {@link Star} to add; the number of real stars it represents is copied as its weight, along
+	 * with the variance on this.
+	 * @return
+	 * 	True if the star lies in one of the magnitude bins, i.e. it is observed; false otherwise.
+	 */
+	public boolean add(int tBin, Star star) {
+		return add(tBin, star.getTotalAge(), star.getProgenitorMass(), star.getWhiteDwarfMass(),
+				star.getWhiteDwarfAtmph(), star.getMag(), star.getNumber(), star.getSigma2Number());
+	}
+
+	/**
+	 * Scales the number of real stars represented by every simulation star in the given lookback time bin,
+	 * with no uncertainty on the scale factor.
+	 *
+	 * @param tBin
+	 * 	Index of the lookback time bin.
+	 * @param w
+	 * 	Scale factor to apply to the number of real stars represented by each simulated star.
+	 */
+	public void reweightTimeBin(int tBin, double w) {
+		double w2 = w * w;
+		int end = timeBinStart[tBin] + timeBinCount[tBin];
+		for(int i=timeBinStart[tBin]; i<end; i++) {
+			number[i] *= w;
+			sigma2Number[i] *= w2;
+		}
+	}
+
+	/**
+	 * Resets every simulation star to represent a number of real stars equal to its weight, with variance
+	 * equal to the square of its weight, as for a newly created {@link Star}. This allows the same population
+	 * to be reweighted again from scratch.
+	 */
+	public void resetNumbers() {
+		for(int i=0; i<size; i++) {
+			number[i] = weight[i];
+			sigma2Number[i] = weight[i] * weight[i];
+		}
+	}
+
+	/**
+	 * Applies a separate scale factor with uncertainty to the stars in each magnitude bin, then adds a
+	 * separate additive constant per real star to the variance on the number of real stars. This is
+	 * equivalent to calling {@link Star#reweight(double, double)} followed by
+	 * {@link Star#addObservationalUncertainty(double)} on every observed star, and is done in a single
+	 * pass over the population.
+	 *
+	 * @param w
+	 * 	Scale factor for each magnitude bin.
+	 * @param sigmaW
+	 * 	Standard deviation on the scale factor for each magnitude bin.
+	 * @param varPerRealStar
+	 * 	Variance to add per real star (after reweighting) for each magnitude bin.
+	 */
+	public void reweightMagBins(double[] w, double[] sigmaW, double[] varPerRealStar) {
+		for(int i=isObserved.nextSetBit(0); i>=0 && i<size; i=isObserved.nextSetBit(i+1)) {
+			int bin = magBin[i];
+			double n = number[i];
+			double s2 = n*n*sigmaW[bin]*sigmaW[bin] + w[bin]*w[bin]*sigma2Number[i];
+			n *= w[bin];
+			number[i] = n;
+			sigma2Number[i] = s2 + varPerRealStar[bin] * n;
+		}
+	}
+
+	/**
+	 * Sum the number of real stars, and the variance on this, for the stars in each magnitude bin.
+	 *
+	 * @return
+	 * 	Array of two arrays, containing the sum of the number of real stars and the sum of the variance
+	 * on this in each magnitude bin.
+	 */
+	public double[][] sumNumberByMagBin() {
+		double[] sum = new double[magBinLower.length];
+		double[] sum2 = new double[magBinLower.length];
+		for(int i=isObserved.nextSetBit(0); i>=0 && i<size; i=isObserved.nextSetBit(i+1)) {
+			sum[magBin[i]] += number[i];
+			sum2[magBin[i]] += sigma2Number[i];
+		}
+		return new double[][]{sum, sum2};
+	}
+
+	/**
+	 * Sum the number of real stars, and the variance on this, for the observed stars in the given
+	 * lookback time bin, and sum the weights of the observed stars.
+	 *
+	 * @param tBin
+	 * 	Index of the lookback time bin.
+	 * @return
+	 * 	The sum of the number of real stars, the sum of the variance on this, and the sum of the weights
+	 * of the observed simulation stars (which is the number of them, if all the weights are one).
+	 */
+	public double[] sumObservedInTimeBin(int tBin) {
+		double sum = 0.0;
+		double sum2 = 0.0;
+		double n = 0.0;
+		int end = timeBinStart[tBin] + timeBinCount[tBin];
+		for(int i=isObserved.nextSetBit(timeBinStart[tBin]); i>=0 && i<end; i=isObserved.nextSetBit(i+1)) {
+			sum += number[i];
+			sum2 += sigma2Number[i];
+			n += weight[i];
+		}
+		return new double[]{sum, sum2, n};
+	}
+
+	/**
+	 * Get the number of simulation stars in the population.
+	 * @return
+	 * 	The number of simulation stars in the population.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the number of magnitude bins.
+	 * @return
+	 * 	The number of magnitude bins.
+	 */
+	public int getNumberOfMagBins() {
+		return magBinLower.length;
+	}
+
+	/**
+	 * Get the number of lookback time bins.
+	 * @return
+	 * 	The number of lookback time bins.
+	 */
+	public int getNumberOfTimeBins() {
+		return timeBinLower.length;
+	}
+
+	/**
+	 * Get the centre of the given magnitude bin.
+	 * @param bin
+	 * 	The magnitude bin index.
+	 * @return
+	 * 	The centre of the magnitude bin.
+	 */
+	public double getMagBinCentre(int bin) {
+		return magBinCentres[bin];
+	}
+
+	/**
+	 * Get the width of the given magnitude bin.
+	 * @param bin
+	 * 	The magnitude bin index.
+	 * @return
+	 * 	The width of the magnitude bin.
+	 */
+	public double getMagBinWidth(int bin) {
+		return magBinWidths[bin];
+	}
+
+	/**
+	 * Get the lower edge of the given magnitude bin.
+	 * @param bin
+	 * 	The magnitude bin index.
+	 * @return
+	 * 	The lower edge of the magnitude bin.
+	 */
+	public double getMagBinLower(int bin) {
+		return magBinLower[bin];
+	}
+
+	/**
+	 * Get the upper edge of the given magnitude bin.
+	 * @param bin
+	 * 	The magnitude bin index.
+	 * @return
+	 * 	The upper edge of the magnitude bin.
+	 */
+	public double getMagBinUpper(int bin) {
+		return magBinUpper[bin];
+	}
+
+	/**
+	 * Get the lower edge of the given lookback time bin.
+	 * @param bin
+	 * 	The lookback time bin index.
+	 * @return
+	 * 	The lower edge of the lookback time bin [yr].
+	 */
+	public double getTimeBinLower(int bin) {
+		return timeBinLower[bin];
+	}
+
+	/**
+	 * Get the upper edge of the given lookback time bin.
+	 * @param bin
+	 * 	The lookback time bin index.
+	 * @return
+	 * 	The upper edge of the lookback time bin [yr].
+	 */
+	public double getTimeBinUpper(int bin) {
+		return timeBinUpper[bin];
+	}
+
+	/**
+	 * Get the number of simulation stars in the given magnitude bin.
+	 * @param bin
+	 * 	The magnitude bin index.
+	 * @return
+	 * 	The number of simulation stars in the magnitude bin.
+	 */
+	public int getMagBinCount(int bin) {
+		return magBinCount[bin];
+	}
+
+	/**
+	 * Get the number of simulation stars in the given lookback time bin.
+	 * @param bin
+	 * 	The lookback time bin index.
+	 * @return
+	 * 	The number of simulation stars in the lookback time bin.
+	 */
+	public int getTimeBinCount(int bin) {
+		return timeBinCount[bin];
+	}
+
+	/**
+	 * Get the sum of the weights of the simulation stars in the given lookback time bin; this is the
+	 * number of simulation stars in the bin, if all the weights are one.
+	 * @param bin
+	 * 	The lookback time bin index.
+	 * @return
+	 * 	The sum of the weights of the simulation stars in the lookback time bin.
+	 */
+	public double getTimeBinWeight(int bin) {
+		return timeBinWeight[bin];
+	}
+
+	/**
+	 * Get the index of the first star in the given lookback time bin; the stars in the bin occupy
+	 * {@link #getTimeBinCount(int)} consecutive rows starting from this one.
+	 * @param bin
+	 * 	The lookback time bin index.
+	 * @return
+	 * 	The index of the first star in the lookback time bin.
+	 */
+	public int getTimeBinStart(int bin) {
+		return timeBinStart[bin];
+	}
+
+	/**
+	 * Get the total stellar age of the given star.
+	 * @param i
+	 * 	The index of the star.
+	 * @return
+	 * 	The total stellar age [yr].
+	 */
+	public double getTotalAge(int i) {
+		return totalAge[i];
+	}
+
+	/**
+	 * Get the progenitor mass of the given star.
+	 * @param i
+	 * 	The index of the star.
+	 * @return
+	 * 	The progenitor mass [M_{Solar}].
+	 */
+	public double getProgenitorMass(int i) {
+		return progenitorMass[i];
+	}
+
+	/**
+	 * Get the white dwarf mass of the given star.
+	 * @param i
+	 * 	The index of the star.
+	 * @return
+	 * 	The white dwarf mass [M_{Solar}].
+	 */
+	public double getWhiteDwarfMass(int i) {
+		return wdMass[i];
+	}
+
+	/**
+	 * Get the magnitude of the given star.
+	 * @param i
+	 * 	The index of the star.
+	 * @return
+	 * 	The magnitude.
+	 */
+	public double getMag(int i) {
+		return mag[i];
+	}
+
+	/**
+	 * Get the number of real stars represented by the given simulation star.
+	 * @param i
+	 * 	The index of the star.
+	 * @return
+	 * 	The number of real stars represented by the simulation star.
+	 */
+	public double getNumber(int i) {
+		return number[i];
+	}
+
+	/**
+	 * Get the weight of the given simulation star, i.e. the number of real stars it represents before
+	 * any reweighting.
+	 * @param i
+	 * 	The index of the star.
+	 * @return
+	 * 	The weight of the simulation star.
+	 */
+	public double getWeight(int i) {
+		return weight[i];
+	}
+
+	/**
+	 * Get the variance on the number of real stars represented by the given simulation star.
+	 * @param i
+	 * 	The index of the star.
+	 * @return
+	 * 	The variance on the number of real stars represented by the simulation star.
+	 */
+	public double getSigma2Number(int i) {
+		return sigma2Number[i];
+	}
+
+	/**
+	 * Get the {@link WdAtmosphereType} of the given star.
+	 * @param i
+	 * 	The index of the star.
+	 * @return
+	 * 	The {@link WdAtmosphereType}.
+	 */
+	public WdAtmosphereType getWhiteDwarfAtmph(int i) {
+		return ATMOSPHERES[atmosphere[i]];
+	}
+
+	/**
+	 * Get the magnitude bin of the given star.
+	 * @param i
+	 * 	The index of the star.
+	 * @return
+	 * 	The magnitude bin index, or -1 if the star lies outside all the magnitude bins.
+	 */
+	public int getMagBin(int i) {
+		return magBin[i];
+	}
+
+	/**
+	 * Get the lookback time bin of the given star.
+	 * @param i
+	 * 	The index of the star.
+	 * @return
+	 * 	The lookback time bin index.
+	 */
+	public int getTimeBin(int i) {
+		return timeBin[i];
+	}
+
+	/**
+	 * Determines if the given star lies in one of the magnitude bins.
+	 * @param i
+	 * 	The index of the star.
+	 * @return
+	 * 	True if the star lies in one of the magnitude bins.
+	 */
+	public boolean getIsObserved(int i) {
+		return isObserved.get(i);
+	}
+
+}
@@ -0,0 +1,417 @@
+package wd.wdlf.dm;
+
+/**
+ * Class accumulates the statistics of a simulated white dwarf population in magnitude bins, without
+ * retaining the individual {@link Star}s. For each bin it keeps running sums of the number of real stars
+ * represented by the simulation stars, the variance on this, and the number-weighted first and second moments
+ * of the WD mass and total stellar age. This is sufficient to compute the luminosity function and the mean
+ * mass and age in each bin, and the memory footprint is independent of the number of simulated stars.
+ *
+ * Deterministic integrations of the WDLF can also add their expected contributions to each bin directly (see
+ * {@link #addExpected(int, double, double, double, double, double)}); these carry no simulation stars and no
+ * Monte Carlo variance.
+ *
+ * A global scale factor can be applied to the number of real stars represented by every simulation star
+ * after the accumulation has finished (see {@link #reweight(double)}); this is how the Monte Carlo WDLF
+ * codes account for the total number of stars formed during the simulation.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class WdlfBinAccumulator {
+
+	/**
+	 * Centres of the magnitude bins.
+	 */
+	private final double[] binCentres;
+
+	/**
+	 * Widths of the magnitude bins.
+	 */
+	private final double[] binWidths;
+
+	/**
+	 * Lower edges of the magnitude bins.
+	 */
+	private final double[] binLower;
+
+	/**
+	 * Upper edges of the magnitude bins.
+	 */
+	private final double[] binUpper;
+
+	/**
+	 * Number of simulation stars in each bin.
+	 */
+	private final long[] count;
+
+	/**
+	 * Sum of the number of real stars represented by the simulation stars in each bin.
+	 */
+	private final double[] sumNumber;
+
+	/**
+	 * Sum of the variance on the number of real stars represented by the simulation stars in each bin.
+	 */
+	private final double[] sumSigma2Number;
+
+	/**
+	 * Number-weighted sum of the WD mass in each bin.
+	 */
+	private final double[] sumMass;
+
+	/**
+	 * Number-weighted sum of the squared WD mass in each bin.
+	 */
+	private final double[] sumMass2;
+
+	/**
+	 * Number-weighted sum of the total stellar age in each bin.
+	 */
+	private final double[] sumAge;
+
+	/**
+	 * Number-weighted sum of the squared total stellar age in each bin.
+	 */
+	private final double[] sumAge2;
+
+	/**
+	 * Global scale factor applied to the number of real stars represented by every simulation star.
+	 */
+	private double weight = 1.0;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param binCentres
+	 * 	Centres of the magnitude bins; must be in ascending order with non-overlapping bins.
+	 * @param binWidths
+	 * 	Widths of the magnitude bins.
+	 */
+	public WdlfBinAccumulator(double[] binCentres, double[] binWidths) {
+
+		if(binCentres.length != binWidths.length) {
+			throw new IllegalArgumentException("Number of bin centres ("+binCentres.length+") and bin widths ("
+					+ binWidths.length+") differ!");
+		}
+
+		int n = binCentres.length;
+
+		this.binCentres = binCentres.clone();
+		this.binWidths = binWidths.clone();
+		binLower = new double[n];
+		binUpper = new double[n];
+		for(int bin=0; bin<n; bin++) {
+			binLower[bin] = binCentres[bin] - binWidths[bin]/2.0;
+			binUpper[bin] = binCentres[bin] + binWidths[bin]/2.0;
+			if(bin > 0 && binLower[bin] < binUpper[bin-1]) {
+				throw new IllegalArgumentException("Magnitude bins must be ascending and non-overlapping! Found bin "
+						+ bin + " at ["+binLower[bin]+":"+binUpper[bin]+"]");
+			}
+		}
+
+		count = new long[n];
+		sumNumber = new double[n];
+		sumSigma2Number = new double[n];
+		sumMass = new double[n];
+		sumMass2 = new double[n];
+		sumAge = new double[n];
+		sumAge2 = new double[n];
+	}
+
+	/**
+	 * Get the number of magnitude bins.
+	 * @return
+	 * 	The number of magnitude bins.
+	 */
+	public int size() {
+		return binCentres.length;
+	}
+
+	/**
+	 * Get the index of the bin containing the given magnitude.
+	 *
+	 * @param mag
+	 * 	The magnitude.
+	 * @return
+	 * 	The index of the bin containing the magnitude, or -1 if it lies outside all the bins.
+	 */
+	public int getBin(double mag) {
+
+		// Binary search for the last bin with lower edge not greater than the magnitude
+		int lo = 0;
+		int hi = binLower.length - 1;
+		int bin = -1;
+		while(lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if(binLower[mid] <= mag) {
+				bin = mid;
+				lo = mid + 1;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+
+		if(bin < 0 || mag >= binUpper[bin]) {
+			return -1;
+		}
+		return bin;
+	}
+
+	/**
+	 * Add a simulation star to the accumulator.
+	 *
+	 * @param mag
+	 * 	Magnitude of the star.
+	 * @param number
+	 * 	Number of real stars represented by the simulation star.
+	 * @param sigma2Number
+	 * 	Variance on the number of real stars represented by the simulation star.
+	 * @param wdMass
+	 * 	Mass of the white dwarf [M_{Solar}]
+	 * @param totalAge
+	 * 	Total stellar age [yr]
+	 * @return
+	 * 	True if the star lies in one of the magnitude bins and was accumulated; false otherwise.
+	 */
+	public boolean add(double mag, double number, double sigma2Number, double wdMass, double totalAge) {
+
+		int bin = getBin(mag);
+
+		if(bin < 0) {
+			return false;
+		}
+
+		count[bin]++;
+		sumNumber[bin] += number;
+		sumSigma2Number[bin] += sigma2Number;
+		sumMass[bin] += number * wdMass;
+		sumMass2[bin] += number * wdMass * wdMass;
+		sumAge[bin] += number * totalAge;
+		sumAge2[bin] += number * totalAge * totalAge;
+
+		return true;
+	}
+
+	/**
+	 * Add the statistics of a group of simulation stars, that have already been summed, to the given bin.
+	 *
+	 * @param bin
+	 * 	The bin index.
+	 * @param count
+	 * 	Number of simulation stars.
+	 * @param number
+	 * 	Sum of the number of real stars represented by the simulation stars.
+	 * @param sigma2Number
+	 * 	Sum of the variance on the number of real stars represented by the simulation stars.
+	 * @param sumMass
+	 * 	Number-weighted sum of the WD mass [M_{Solar}]
+	 * @param sumMass2
+	 * 	Number-weighted sum of the squared WD mass [M_{Solar}^2]
+	 * @param sumAge
+	 * 	Number-weighted sum of the total stellar age [yr]
+	 * @param sumAge2
+	 * 	Number-weighted sum of the squared total stellar age [yr^2]
+	 */
+	public void add(int bin, long count, double number, double sigma2Number, double sumMass, double sumMass2,
+			double sumAge, double sumAge2) {
+		this.count[bin] += count;
+		this.sumNumber[bin] += number;
+		this.sumSigma2Number[bin] += sigma2Number;
+		this.sumMass[bin] += sumMass;
+		this.sumMass2[bin] += sumMass2;
+		this.sumAge[bin] += sumAge;
+		this.sumAge2[bin] += sumAge2;
+	}
+
+	/**
+	 * Add the expected contribution of a deterministic integration to the given bin. Unlike the other add
+	 * methods this doesn't represent any simulation stars, so the count is unchanged and no Monte Carlo variance
+	 * is added; the bin is no longer empty if the number of real stars is positive.
+	 *
+	 * @param bin
+	 * 	The bin index.
+	 * @param number
+	 * 	Expected number of real stars.
+	 * @param sumMass
+	 * 	Number-weighted sum of the WD mass [M_{Solar}]
+	 * @param sumMass2
+	 * 	Number-weighted sum of the squared WD mass [M_{Solar}^2]
+	 * @param sumAge
+	 * 	Number-weighted sum of the total stellar age [yr]
+	 * @param sumAge2
+	 * 	Number-weighted sum of the squared total stellar age [yr^2]
+	 */
+	public void addExpected(int bin, double number, double sumMass, double sumMass2, double sumAge, double sumAge2) {
+		this.sumNumber[bin] += number;
+		this.sumMass[bin] += sumMass;
+		this.sumMass2[bin] += sumMass2;
+		this.sumAge[bin] += sumAge;
+		this.sumAge2[bin] += sumAge2;
+	}
+
+	/**
+	 * Add a simulation {@link Star} to the accumulator.
+	 *
+	 * @param star
+	 * 	The {@link Star} to add.
+	 * @return
+	 * 	True if the star lies in one of the magnitude bins and was accumulated; false otherwise.
+	 */
+	public boolean add(Star star) {
+		return add(star.getMag(), star.getNumber(), star.getSigma2Number(), star.getWhiteDwarfMass(), star.getTotalAge());
+	}
+
+	/**
+	 * Add the contents of another {@link WdlfBinAccumulator} with identical binning to this one, including
+	 * any global scale factor that has been applied to it.
+	 *
+	 * @param other
+	 * 	The {@link WdlfBinAccumulator} to add.
+	 */
+	public void add(WdlfBinAccumulator other) {
+
+		if(other.size() != size()) {
+			throw new IllegalArgumentException("Can't merge accumulators with different numbers of bins: "
+					+ size() + " and " + other.size());
+		}
+
+		// Contributions from the other accumulator must be expressed in units of this accumulator's weight
+		double w = other.weight / weight;
+		double w2 = (other.weight * other.weight) / (weight * weight);
+
+		for(int bin=0; bin<size(); bin++) {
+			count[bin] += other.count[bin];
+			sumNumber[bin] += w * other.sumNumber[bin];
+			sumSigma2Number[bin] += w2 * other.sumSigma2Number[bin];
+			sumMass[bin] += w * other.sumMass[bin];
+			sumMass2[bin] += w * other.sumMass2[bin];
+			sumAge[bin] += w * other.sumAge[bin];
+			sumAge2[bin] += w * other.sumAge2[bin];
+		}
+	}
+
+	/**
+	 * Scales the number of real stars represented by every simulation star accumulated so far. This is
+	 * equivalent to calling {@link Star#reweight(double, double)} with zero uncertainty on each star, but is
+	 * deferred until the statistics are read out.
+	 *
+	 * @param w
+	 * 	Scale factor to apply to the number of real stars represented by each simulated star.
+	 */
+	public void reweight(double w) {
+		weight *= w;
+	}
+
+	/**
+	 * Get the centre of the given bin.
+	 * @param bin
+	 * 	The bin index.
+	 * @return
+	 * 	The centre of the bin.
+	 */
+	public double getBinCentre(int bin) {
+		return binCentres[bin];
+	}
+
+	/**
+	 * Get the width of the given bin.
+	 * @param bin
+	 * 	The bin index.
+	 * @return
+	 * 	The width of the bin.
+	 */
+	public double getBinWidth(int bin) {
+		return binWidths[bin];
+	}
+
+	/**
+	 * Get the number of simulation stars in the given bin.
+	 * @param bin
+	 * 	The bin index.
+	 * @return
+	 * 	The number of simulation stars in the bin.
+	 */
+	public long getCount(int bin) {
+		return count[bin];
+	}
+
+	/**
+	 * Determines if the given bin contains no simulation stars and no expected contributions.
+	 * @param bin
+	 * 	The bin index.
+	 * @return
+	 * 	True if the bin contains no simulation stars and no expected contributions.
+	 */
+	public boolean isEmpty(int bin) {
+		return count[bin] == 0l && sumNumber[bin] == 0.0;
+	}
+
+	/**
+	 * Get the total number of real stars represented by the simulation stars in the given bin.
+	 * @param bin
+	 * 	The bin index.
+	 * @return
+	 * 	The total number of real stars represented by the simulation stars in the bin.
+	 */
+	public double getNumber(int bin) {
+		return weight * sumNumber[bin];
+	}
+
+	/**
+	 * Get the variance on the total number of real stars represented by the simulation stars in the given bin.
+	 * @param bin
+	 * 	The bin index.
+	 * @return
+	 * 	The variance on the total number of real stars represented by the simulation stars in the bin.
+	 */
+	public double getSigma2Number(int bin) {
+		return weight * weight * sumSigma2Number[bin];
+	}
+
+	/**
+	 * Get the number-weighted mean and standard deviation of the WD mass in the given bin.
+	 * @param bin
+	 * 	The bin index.
+	 * @return
+	 * 	The mean and standard deviation of the WD mass in the bin [M_{Solar}]; the global scale factor cancels.
+	 */
+	public double[] getMeanWdMass(int bin) {
+		return getMeanAndStd(sumMass[bin], sumMass2[bin], sumNumber[bin]);
+	}
+
+	/**
+	 * Get the number-weighted mean and standard deviation of the total stellar age in the given bin.
+	 * @param bin
+	 * 	The bin index.
+	 * @return
+	 * 	The mean and standard deviation of the total stellar age in the bin [yr]; the global scale factor cancels.
+	 */
+	public double[] getMeanAge(int bin) {
+		return getMeanAndStd(sumAge[bin], sumAge2[bin], sumNumber[bin]);
+	}
+
+	/**
+	 * Compute the mean and standard deviation from the weighted sums of the first and second moments.
+	 * @param sum
+	 * 	Weighted sum of the values.
+	 * @param sum2
+	 * 	Weighted sum of the squared values.
+	 * @param n
+	 * 	Sum of the weights.
+	 * @return
+	 * 	The mean and standard deviation.
+	 */
+	private static double[] getMeanAndStd(double sum, double sum2, double n) {
+
+		double mean = sum / n;
+		double mean2 = sum2 / n;
+
+		// Variance is equal to mean of square minus square of mean
+		double var = mean2 - mean * mean;
+
+		return new double[]{mean, Math.sqrt(var)};
+	}
+
+}
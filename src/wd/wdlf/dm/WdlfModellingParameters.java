@@ -85,6 +85,11 @@ public class WdlfModellingParameters {
      */
     private double sigM;
     
+    /**
+     * The most recently used {@link ProgenitorTable}, if any.
+     */
+    private volatile ProgenitorTable progenitorTable;
+    
     /**
      * Default constructor, setting appropriate default parameter values.
      */
@@ -353,6 +358,25 @@ public class WdlfModellingParameters {
     	return sigM;
     }
     
+    /**
+     * Get the {@link ProgenitorTable} for the current IMF, pre-WD lifetime models, IFMR and composition,
+     * if the progenitors all have the same composition.
+     * @return
+     * 	The {@link ProgenitorTable}, or null if the standard deviation of the metallicity or helium
+     * content is non-zero.
+     */
+    public ProgenitorTable getProgenitorTable() {
+    	if(sigmaZ != 0.0 || sigmaY != 0.0) {
+    		return null;
+    	}
+    	ProgenitorTable table = progenitorTable;
+    	if(table == null || !table.matches(imf, preWdLifetimeModels, ifmr, z, y)) {
+    		table = ProgenitorTable.getProgenitorTable(imf, preWdLifetimeModels, ifmr, z, y);
+    		progenitorTable = table;
+    	}
+    	return table;
+    }
+    
     @Override
     public String toString()
     {
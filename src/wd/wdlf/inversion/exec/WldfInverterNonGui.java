@@ -22,9 +22,11 @@ import wd.models.algo.WdCoolingModelSet;
 import wd.models.infra.WdAtmosphereType;
 import wd.models.infra.WdCoolingModels;
 import wd.wdlf.algo.BaseWdlf;
+import wd.wdlf.inversion.infra.BootstrapInverter;
 import wd.wdlf.inversion.infra.Convergence;
 import wd.wdlf.inversion.infra.InversionState;
 import wd.wdlf.inversion.infra.MonteCarloInverter;
+import wd.wdlf.inversion.infra.ResponseMatrixInverter;
 
 public class WldfInverterNonGui {
 
@@ -107,6 +109,14 @@ public class WldfInverterNonGui {
     	
     	inversionState.currentSfr = initialGuessSfr.copy();
     	
+    	// Simulate the WD population once and reweight it at each iteration. This is much faster, but
+    	// freezes the Monte Carlo noise so that it's no longer averaged down over the iterations.
+//    	inversionState.reusePopulation = true;
+    	
+    	// Compute the iterations from a response matrix rather than a simulated population. The matrix is
+    	// computed once, and persisted if the TableCache is enabled; the diagnostic plots aren't produced.
+//    	inversionState.useResponseMatrix = true;
+    	
     	// Write inversion state to file
         File output = new File(inversionState.outputDirectory, "wdlf_inversion_config.txt");
         try (BufferedWriter out = new BufferedWriter(new FileWriter(output))) {
@@ -188,7 +198,7 @@ public class WldfInverterNonGui {
 //		plotHrd(inversionState, WdCoolingModels.MONTREAL_NEW_2020.getWdCoolingModels(), 70000, Filter.G_DR3, Filter.BP_DR3, Filter.RP_DR3);
 		
         // Obtain robust estimate of the star formation rate uncertainty from bootstrap resampling of the input WDLF
-        resampling(inversionState, initialGuessSfr, wdlfToInvert, 200);
+        resampling(inversionState, initialGuessSfr, wdlfToInvert, 200, Runtime.getRuntime().availableProcessors());
 	}
 	
 	/**
@@ -206,16 +216,24 @@ public class WldfInverterNonGui {
     	// List of the relative change in chi-square with each iteration, for writing out
     	List<Double> relativeChangeAtEachIteration = new LinkedList<>();
     	
+    	// The ResponseMatrixInverter holds the kernel, so a single instance is used for all iterations
+    	final ResponseMatrixInverter kernelInversion = inversionState.useResponseMatrix ? new ResponseMatrixInverter(inversionState) : null;
+    	
     	while(!converged) {
     		
-            // Generate a new {@link MonteCarloInverter} with current SFR model.
-    		final MonteCarloInverter inversion = new MonteCarloInverter(inversionState);
-            
-			try {
-				inversion.performSingleIteration();
-			} catch (IOException e) {
-				logger.severe("Encountered IOException when performing single iteration: " + e.getLocalizedMessage());
-			}
+    		if(kernelInversion != null) {
+    			kernelInversion.performSingleIteration();
+    		}
+    		else {
+	            // Generate a new {@link MonteCarloInverter} with current SFR model.
+	    		final MonteCarloInverter inversion = new MonteCarloInverter(inversionState);
+	            
+				try {
+					inversion.performSingleIteration();
+				} catch (IOException e) {
+					logger.severe("Encountered IOException when performing single iteration: " + e.getLocalizedMessage());
+				}
+    		}
 			
 			// Update SFR
         	inversionState.currentSfr = (InitialGuessSFR)inversionState.updatedSfr.copy();
@@ -291,7 +309,7 @@ public class WldfInverterNonGui {
         	
         	// Draw progenitor formation time and mass
         	double totalAge = inversionState.currentSfr.drawCreationTime();
-    		double progenitorMass = inversionState.params.getIMF().drawMass();
+    		double progenitorMass = inversionState.params.getIMF().getSampler().drawMass(random);
     		double z = -Double.MAX_VALUE;
     		double y = -Double.MAX_VALUE;
     		while(z<=0.0) {
@@ -349,56 +367,24 @@ public class WldfInverterNonGui {
 	 * @param numMonteCarlo
 	 * 	The number of Monte Carlo resamplings of the WDLF to be drawn and inverted to derive statistics for the resulting
 	 * star formation rate.
+	 * @param parallelism
+	 * 	The maximum number of resamplings to invert concurrently.
 	 * @throws IOException
 	 * 	If there's a problem writing the outputs.
 	 */
-	private static void resampling(InversionState inversionState, InitialGuessSFR initialGuessSfr, BaseWdlf wdlfToInvert, int numMonteCarlo) throws IOException {
+	private static void resampling(InversionState inversionState, InitialGuessSFR initialGuessSfr, BaseWdlf wdlfToInvert, int numMonteCarlo, int parallelism) throws IOException {
 
         // Create directory to store the Monte Carlo products
     	File monteCarloDir = new File(inversionState.outputDirectory, "monteCarloSfh");
-    	monteCarloDir.mkdir();
     	
-    	BufferedWriter outSfh = new BufferedWriter(new FileWriter(new File(monteCarloDir, "MonteCarlo_SFHs.txt")));
-    	BufferedWriter outWdlf = new BufferedWriter(new FileWriter(new File(monteCarloDir, "MonteCarlo_WDLFs.txt")));
+    	// Invert the resampled WDLFs concurrently; replicates completed by a previous run are read back from
+    	// the output directory. The resampled WDLF and converged SFH of each are written as they complete.
+    	BootstrapInverter bootstrap = new BootstrapInverter(inversionState, initialGuessSfr, wdlfToInvert, numMonteCarlo,
+    			BootstrapInverter.DEFAULT_SEED, parallelism, new File(monteCarloDir, "replicates"));
     	
-    	// Don't write all the intermediate outputs; we'll just keep the converged SFH
-    	inversionState.writeOutput = false;
-        
-        InitialGuessSFR[] sfrs = new InitialGuessSFR[numMonteCarlo];
+        InitialGuessSFR[] sfrs = bootstrap.run();
         
-        for(int i=0; i<numMonteCarlo; i++) {
-        	
-        	logger.info("Monte Carlo realisation " + (i+1));
-        	
-	        // Reset InversionState
-	    	inversionState.currentSfr = initialGuessSfr.copy();
-	    	inversionState.iterations = 0;
-	    	inversionState.chi2.clear();
-			
-	    	// Resample the input WDLF
-	    	BaseWdlf resampledWdlf = new BaseWdlf(wdlfToInvert, true);
-	    	inversionState.wdlf_obs = resampledWdlf;
-			
-	    	// Perform inversion
-	        performInversion(inversionState);
-			
-	        sfrs[i] = inversionState.currentSfr.copy();
-	        
-			// Save the resampled WDLF and resulting SFH to file
-	        for(int j=0; j<sfrs[i].N; j++) {
-	        	outSfh.write(sfrs[i].data.getBinCentre(j) + "\t" + sfrs[i].data.getBinContents(j) + "\n");
-	        }
-	        outSfh.write("\n\n");
-	        outSfh.flush();
-	        
-	        for(int j=0; j<resampledWdlf.size(); j++) {
-	        	outWdlf.write(resampledWdlf.density.getBinCentre(j) + "\t" + resampledWdlf.density.getBinContents(j) + "\n");
-	        }
-	        outWdlf.write("\n\n");
-	        outWdlf.flush();
-        }
-        outSfh.close();
-        outWdlf.close();
+        bootstrap.writeCombined(new File(monteCarloDir, "MonteCarlo_SFHs.txt"), new File(monteCarloDir, "MonteCarlo_WDLFs.txt"));
         
         // Estimates of uncertainty on SFH from spread in values in the Monte Carlo realisations:
         // 1) Scaled median-of-absolute-deviations
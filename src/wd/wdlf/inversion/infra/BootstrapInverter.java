@@ -0,0 +1,526 @@
+package wd.wdlf.inversion.infra;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import sfr.algoimpl.InitialGuessSFR;
+import util.ParseUtil;
+import wd.wdlf.algo.BaseWdlf;
+
+/**
+ * Class performs bootstrap resampling of the WDLF inversion: many resampled realisations of the observed WDLF are
+ * each inverted to convergence, and the spread in the resulting star formation rates provides a robust estimate of
+ * the uncertainty on the star formation rate.
+ *
+ * The replicates are independent and are inverted concurrently, with the number running at any one time bounded by
+ * the configured parallelism. Each replicate works on its own copy of the {@link InversionState}, and draws all its
+ * random numbers (both for resampling the WDLF and for the Monte Carlo inversion) from its own {@link Random}, seeded
+ * from a master seed in replicate order. The result of each replicate is therefore independent of the parallelism and
+ * of the order in which the replicates complete.
+ *
+ * Each replicate writes its resampled WDLF and converged star formation rate to the output directory as soon as it
+ * finishes. The star formation rate file is written last and moved into place atomically, so that its presence marks
+ * a completed replicate. Replicates found to be complete on disk are read back rather than recomputed, which allows a
+ * partially completed bootstrap to be resumed after a crash. Each file records the seed of the replicate and the
+ * configuration of the inversion in its header, and a replicate is only read back if these match; otherwise the
+ * bootstrap fails rather than mixing replicates from different runs.
+ *
+ * If the {@link InversionState} selects the {@link ResponseMatrixInverter} then the random numbers of each replicate
+ * are used only to resample the WDLF; the kernel is computed from a fixed seed, and is shared between replicates
+ * through the {@link utils.TableCache} if that is enabled.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class BootstrapInverter {
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger logger = Logger.getLogger(BootstrapInverter.class.getName());
+
+	/**
+	 * Default master seed, in order to make applications deterministic.
+	 */
+	public static final long DEFAULT_SEED = 583155485729405634L;
+
+	/**
+	 * Format for the name of the file containing the converged star formation rate for each replicate.
+	 */
+	private static final String sfhFilenameFormat = "MonteCarlo_SFH_%04d.txt";
+
+	/**
+	 * Format for the name of the file containing the resampled WDLF for each replicate.
+	 */
+	private static final String wdlfFilenameFormat = "MonteCarlo_WDLF_%04d.txt";
+
+	/**
+	 * The {@link InversionState} that provides the modelling parameters and inversion configuration; this is copied
+	 * for each replicate and is not modified.
+	 */
+	private final InversionState inversionState;
+
+	/**
+	 * The {@link InitialGuessSFR} from which each replicate inversion starts.
+	 */
+	private final InitialGuessSFR initialGuessSfr;
+
+	/**
+	 * The {@link BaseWdlf} to be resampled and inverted.
+	 */
+	private final BaseWdlf wdlfToInvert;
+
+	/**
+	 * The number of bootstrap replicates.
+	 */
+	private final int numReplicates;
+
+	/**
+	 * Seed for each replicate.
+	 */
+	private final long[] seeds;
+
+	/**
+	 * Configuration of the inversion, one entry per line, recorded in the header of each replicate file.
+	 */
+	private final List<String> configuration;
+
+	/**
+	 * Maximum number of replicates to invert concurrently.
+	 */
+	private final int parallelism;
+
+	/**
+	 * Directory in which to write the products for each replicate.
+	 */
+	private final File outputDirectory;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param inversionState
+	 * 	The {@link InversionState} instance containing all the configuration and modelling parameters etc.
+	 * @param initialGuessSfr
+	 * 	The {@link InitialGuessSFR} containing the chosen initial guess star formation rate.
+	 * @param wdlfToInvert
+	 * 	The {@link BaseWdlf} containing the white dwarf luminosity function (WDLF) to be resampled and inverted.
+	 * @param numReplicates
+	 * 	The number of resamplings of the WDLF to be drawn and inverted.
+	 * @param seed
+	 * 	The master seed from which the seed for each replicate is derived.
+	 * @param parallelism
+	 * 	The maximum number of replicates to invert concurrently.
+	 * @param outputDirectory
+	 * 	Directory in which to write the products for each replicate; replicates already present here are not recomputed.
+	 */
+	public BootstrapInverter(InversionState inversionState, InitialGuessSFR initialGuessSfr, BaseWdlf wdlfToInvert,
+			int numReplicates, long seed, int parallelism, File outputDirectory) {
+
+		if(numReplicates < 1) {
+			throw new IllegalArgumentException("Number of replicates must be positive! Found "+numReplicates);
+		}
+		if(parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive! Found "+parallelism);
+		}
+
+		this.inversionState = inversionState;
+		this.initialGuessSfr = initialGuessSfr;
+		this.wdlfToInvert = wdlfToInvert;
+		this.numReplicates = numReplicates;
+		this.parallelism = parallelism;
+		this.outputDirectory = outputDirectory;
+
+		// Derive the replicate seeds in a fixed order
+		SplittableRandom master = new SplittableRandom(seed);
+		seeds = new long[numReplicates];
+		for(int i=0; i<numReplicates; i++) {
+			seeds[i] = master.split().nextLong();
+		}
+
+		configuration = getConfiguration();
+	}
+
+	/**
+	 * Get the configuration of the inversion that determines the results of each replicate, apart from the seed.
+	 *
+	 * @return
+	 * 	The configuration, one entry per line.
+	 */
+	private List<String> getConfiguration() {
+
+		StringBuilder out = new StringBuilder();
+		out.append("Modelling Parameters:\n").append(inversionState.params.toString());
+		out.append("Number of simulated WDs = ").append(inversionState.n_WDs).append("\n");
+		out.append("Reusing simulated population? ").append(inversionState.reusePopulation ? "yes\n" : "no\n");
+		out.append("Using response matrix? ").append(inversionState.useResponseMatrix ? "yes\n" : "no\n");
+		out.append("Importance sampling progenitor masses? ").append(inversionState.importanceSampling ? "yes\n" : "no\n");
+		out.append("Minimum iterations = ").append(inversionState.iterations_min).append("\n");
+		out.append("Chi-square threshold = ").append(inversionState.chi2Threshold).append("\n");
+		out.append("Initial guess SFR parameters:\n").append(initialGuessSfr.printParameters());
+		out.append("WDLF to invert (bin centre, width, density, uncertainty):\n");
+		for(int j=0; j<wdlfToInvert.size(); j++) {
+			out.append(wdlfToInvert.density.getBinCentre(j)).append(' ').append(wdlfToInvert.density.getBinWidth(j)).append(' ')
+				.append(wdlfToInvert.density.getBinContents(j)).append(' ').append(wdlfToInvert.density.getBinUncertainty(j)).append("\n");
+		}
+
+		List<String> lines = new ArrayList<>();
+		for(String line : out.toString().split("\\R")) {
+			line = normalise(line);
+			if(!line.isEmpty()) {
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Get the header lines that identify the given replicate, i.e. its seed and the configuration of the inversion.
+	 *
+	 * @param i
+	 * 	The index of the replicate.
+	 * @return
+	 * 	The header lines, without the leading comment character.
+	 */
+	private List<String> getHeader(int i) {
+		List<String> header = new ArrayList<>();
+		header.add("Replicate " + i + ", seed " + seeds[i]);
+		header.addAll(configuration);
+		return header;
+	}
+
+	/**
+	 * Write the header lines that identify the given replicate.
+	 *
+	 * @param i
+	 * 	The index of the replicate.
+	 * @param out
+	 * 	The {@link BufferedWriter} to write to.
+	 * @throws IOException
+	 * 	If there's a problem writing.
+	 */
+	private void writeHeader(int i, BufferedWriter out) throws IOException {
+		for(String line : getHeader(i)) {
+			out.write("# " + line + "\n");
+		}
+	}
+
+	/**
+	 * Remove the comment character and surrounding whitespace from a header line.
+	 *
+	 * @param line
+	 * 	The header line.
+	 * @return
+	 * 	The normalised line.
+	 */
+	private static String normalise(String line) {
+		line = line.trim();
+		while(line.startsWith("#")) {
+			line = line.substring(1).trim();
+		}
+		return line;
+	}
+
+	/**
+	 * Invert all the replicates that are not already present in the output directory.
+	 *
+	 * @return
+	 * 	The converged {@link InitialGuessSFR} for each replicate, in replicate order.
+	 * @throws IOException
+	 * 	If there's a problem reading or writing the replicate products.
+	 */
+	public InitialGuessSFR[] run() throws IOException {
+
+		if(!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new IOException("Could not make output directory " + outputDirectory.getAbsolutePath()+"!");
+		}
+
+		InitialGuessSFR[] sfrs = new InitialGuessSFR[numReplicates];
+
+		// Read back the replicates that completed in a previous run, and queue the rest
+		List<Callable<Void>> replicates = new ArrayList<>();
+		for(int i=0; i<numReplicates; i++) {
+			File sfhFile = getSfhFile(i);
+			if(sfhFile.isFile()) {
+				sfrs[i] = readSfr(i, sfhFile);
+				continue;
+			}
+			final int replicate = i;
+			replicates.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					sfrs[replicate] = invertReplicate(replicate);
+					return null;
+				}
+			});
+		}
+
+		logger.info("Bootstrap: " + (numReplicates - replicates.size()) + " of " + numReplicates
+				+ " replicates already complete; inverting " + replicates.size() + " with parallelism " + parallelism);
+
+		if(replicates.isEmpty()) {
+			return sfrs;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			for(Future<Void> future : executor.invokeAll(replicates)) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Bootstrap inversion interrupted!", e);
+		}
+		catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new RuntimeException("Bootstrap inversion failed!", e.getCause());
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		return sfrs;
+	}
+
+	/**
+	 * Concatenate the products of all the replicates into single files, in replicate order, with a blank line
+	 * between each. This must be called after {@link #run()} has completed.
+	 *
+	 * @param sfhFile
+	 * 	The file in which to write the star formation rates.
+	 * @param wdlfFile
+	 * 	The file in which to write the resampled WDLFs.
+	 * @throws IOException
+	 * 	If there's a problem reading or writing the replicate products.
+	 */
+	public void writeCombined(File sfhFile, File wdlfFile) throws IOException {
+		try (BufferedWriter outSfh = new BufferedWriter(new FileWriter(sfhFile));
+			 BufferedWriter outWdlf = new BufferedWriter(new FileWriter(wdlfFile))) {
+			for(int i=0; i<numReplicates; i++) {
+				append(getSfhFile(i), outSfh);
+				append(getWdlfFile(i), outWdlf);
+			}
+		}
+	}
+
+	/**
+	 * Perform the inversion of a single replicate and write its products to disk.
+	 *
+	 * @param i
+	 * 	The index of the replicate.
+	 * @return
+	 * 	The converged {@link InitialGuessSFR}.
+	 * @throws IOException
+	 * 	If there's a problem writing the products.
+	 */
+	private InitialGuessSFR invertReplicate(int i) throws IOException {
+
+		logger.info("Bootstrap: starting replicate " + (i+1) + " of " + numReplicates);
+
+		Random random = new Random(seeds[i]);
+
+		// Isolated state for this replicate, reset to the initial guess
+		InversionState state = inversionState.copy();
+		state.writeOutput = false;
+		state.currentSfr = initialGuessSfr.copy();
+		state.updatedSfr = null;
+		state.wdlf_model = null;
+		state.iterations = 0;
+		state.chi2.clear();
+
+		// Resample the input WDLF
+		state.wdlf_obs = new BaseWdlf(wdlfToInvert, true, random);
+
+		performInversion(state, random);
+
+		// Write the WDLF first; the SFR file marks the replicate as complete
+		File wdlfFile = getWdlfFile(i);
+		File wdlfTmp = new File(outputDirectory, wdlfFile.getName() + ".tmp");
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(wdlfTmp))) {
+			writeHeader(i, out);
+			out.write("# Columns: magnitude bin centre, resampled density\n");
+			for(int j=0; j<state.wdlf_obs.size(); j++) {
+				out.write(state.wdlf_obs.density.getBinCentre(j) + "\t" + state.wdlf_obs.density.getBinContents(j) + "\n");
+			}
+		}
+		move(wdlfTmp, wdlfFile);
+
+		File sfhFile = getSfhFile(i);
+		File sfhTmp = new File(outputDirectory, sfhFile.getName() + ".tmp");
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(sfhTmp))) {
+			writeHeader(i, out);
+			out.write("# Columns: lookback time bin centre [yr], star formation rate, standard deviation [N yr^{-1}]\n");
+			for(int j=0; j<state.currentSfr.N; j++) {
+				out.write(state.currentSfr.data.getBinCentre(j) + "\t" + state.currentSfr.data.getBinContents(j)
+					+ "\t" + state.currentSfr.data.getBinUncertainty(j) + "\n");
+			}
+		}
+		move(sfhTmp, sfhFile);
+
+		logger.info("Bootstrap: finished replicate " + (i+1) + " of " + numReplicates);
+
+		return state.currentSfr.copy();
+	}
+
+	/**
+	 * Iterate the inversion algorithm until it converges.
+	 *
+	 * @param inversionState
+	 * 	The {@link InversionState} instance. On exit this will contain the final converged results of the inversion.
+	 * @param random
+	 * 	The {@link Random} used by the Monte Carlo inversion; not used if the inversion uses a response matrix.
+	 * @throws IOException
+	 * 	If there's a problem writing the outputs of an iteration.
+	 */
+	public static void performInversion(InversionState inversionState, Random random) throws IOException {
+
+		boolean converged = false;
+
+		// The ResponseMatrixInverter holds the kernel, so a single instance is used for all iterations
+		final ResponseMatrixInverter kernelInversion = inversionState.useResponseMatrix ? new ResponseMatrixInverter(inversionState) : null;
+
+		while(!converged) {
+
+			if(kernelInversion != null) {
+				kernelInversion.performSingleIteration();
+			}
+			else {
+				new MonteCarloInverter(inversionState, random).performSingleIteration();
+			}
+
+			// Update SFR
+			inversionState.currentSfr = (InitialGuessSFR)inversionState.updatedSfr.copy();
+
+			// Don't check for convergence within the first few iterations
+			if(inversionState.iterations >= inversionState.iterations_min) {
+				Convergence convergence = Convergence.factory(Convergence.Type.SLIDINGLINEAR, inversionState.chi2);
+				converged = convergence.hasConverged(inversionState.chi2Threshold);
+			}
+		}
+	}
+
+	/**
+	 * Read the star formation rate for a completed replicate.
+	 *
+	 * @param i
+	 * 	The index of the replicate.
+	 * @param sfhFile
+	 * 	The file containing the star formation rate.
+	 * @return
+	 * 	The {@link InitialGuessSFR} with bins set from the file.
+	 * @throws IOException
+	 * 	If there's a problem reading the file, or it was computed with a different seed or configuration, or it
+	 * doesn't match the initial guess star formation rate.
+	 */
+	private InitialGuessSFR readSfr(int i, File sfhFile) throws IOException {
+
+		// The header precedes the column descriptions
+		List<String> header = new ArrayList<>();
+		try (BufferedReader in = new BufferedReader(new FileReader(sfhFile))) {
+			String line;
+			while((line = in.readLine()) != null && line.startsWith("#") && !line.startsWith("# Columns:")) {
+				header.add(normalise(line));
+			}
+		}
+		if(!header.equals(getHeader(i))) {
+			throw new IOException("Replicate file " + sfhFile.getAbsolutePath() + " was computed with a different seed "
+					+ "or configuration; remove it or use a different output directory.");
+		}
+
+		double[][] data;
+		try (BufferedReader in = new BufferedReader(new FileReader(sfhFile))) {
+			data = ParseUtil.parseFile(in, ParseUtil.whitespaceDelim, ParseUtil.hashComment);
+		}
+
+		InitialGuessSFR sfr = initialGuessSfr.copy();
+		if(data.length < 3 || data[0].length != sfr.N) {
+			throw new IOException("Replicate file " + sfhFile.getAbsolutePath() + " doesn't match the initial guess SFR!");
+		}
+		for(int j=0; j<sfr.N; j++) {
+			sfr.setSFRBin(j, data[1][j], data[2][j]);
+		}
+		return sfr;
+	}
+
+	/**
+	 * Append the contents of one file to a writer, followed by two newlines.
+	 *
+	 * @param file
+	 * 	The file to read.
+	 * @param out
+	 * 	The {@link BufferedWriter} to append to.
+	 * @throws IOException
+	 * 	If there's a problem reading or writing.
+	 */
+	private static void append(File file, BufferedWriter out) throws IOException {
+		try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+			String line;
+			while((line = in.readLine()) != null) {
+				if(!line.startsWith("#")) {
+					out.write(line + "\n");
+				}
+			}
+		}
+		out.write("\n\n");
+	}
+
+	/**
+	 * Move a file into place, atomically if the file system supports it.
+	 *
+	 * @param source
+	 * 	The file to move.
+	 * @param target
+	 * 	The destination.
+	 * @throws IOException
+	 * 	If the file can't be moved.
+	 */
+	private static void move(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Get the file containing the star formation rate for the given replicate.
+	 * @param i
+	 * 	The index of the replicate.
+	 * @return
+	 * 	The file containing the star formation rate.
+	 */
+	private File getSfhFile(int i) {
+		return new File(outputDirectory, String.format(sfhFilenameFormat, i));
+	}
+
+	/**
+	 * Get the file containing the resampled WDLF for the given replicate.
+	 * @param i
+	 * 	The index of the replicate.
+	 * @return
+	 * 	The file containing the resampled WDLF.
+	 */
+	private File getWdlfFile(int i) {
+		return new File(outputDirectory, String.format(wdlfFilenameFormat, i));
+	}
+}
@@ -9,6 +9,7 @@ import sfr.algoimpl.InitialGuessSFR;
 import wd.wdlf.algo.BaseWdlf;
 import wd.wdlf.algoimpl.ObservedWdlf;
 import wd.wdlf.dm.State;
+import wd.wdlf.dm.WdlfModellingParameters;
 
 /**
  * Class contains all variables related to inversion algorithm.
@@ -48,6 +49,36 @@ public class InversionState extends State
      */
     public int n_WDs = 2000000;
     
+    /**
+     * Should the simulated WD population be reused across iterations? The simulation stars are drawn
+     * independently of the SFR, so the population is simulated once and only reweighted for the current
+     * SFR at each iteration, until the modelling parameters, number of WDs or bin layout change. This
+     * freezes the Monte Carlo noise across iterations.
+     */
+    public boolean reusePopulation = false;
+    
+    /**
+     * Should the iterations be computed from a {@link wd.wdlf.modelling.infra.ResponseMatrix} rather than a
+     * simulated population? See {@link ResponseMatrixInverter}. The kernel is computed once and reused
+     * across iterations, so like {@link #reusePopulation} this freezes the Monte Carlo noise.
+     */
+    public boolean useResponseMatrix = false;
+    
+    /**
+     * Should the progenitor masses of the simulation stars be drawn by importance sampling? If set, the
+     * progenitor mass of each simulation star is drawn from the IMF above the main sequence turn-off mass
+     * for its formation time, so every star forms a WD, and the star is weighted by the fraction of the IMF
+     * above the turn-off mass. Otherwise masses are drawn from the full IMF and stars that haven't formed
+     * WDs are discarded, which wastes most of the draws in recent lookback time bins.
+     */
+    public boolean importanceSampling = false;
+    
+    /**
+     * The population simulated in a previous iteration, if {@link #reusePopulation} is set. This is not
+     * copied by {@link #copy()}, as the population is modified by each iteration.
+     */
+    SimulatedPopulation simulatedPopulation = null;
+    
     /** 
      * This is the function p(M_{bol}) calculated from the input star formation
      * rate. Initially set to null, then initialised when the first iteration 
@@ -88,6 +119,36 @@ public class InversionState extends State
     	return chi2.get(chi2.size()-1);
     }
     
+    /**
+     * Makes a copy of this {@link InversionState} that can be modified independently of it, e.g. by
+     * running a separate inversion on another thread. The WDLFs, SFRs and chi-square history are copied;
+     * the {@link WdlfModellingParameters} are shared, and must not be modified while any copy is in use.
+     * 
+     * @return
+     * 	A copy of this {@link InversionState}.
+     */
+    public InversionState copy() {
+    	
+    	InversionState copy = new InversionState();
+    	copy.outputDirectory = outputDirectory;
+    	copy.params = params;
+    	copy.writeOutput = writeOutput;
+    	copy.wdlf_obs = new BaseWdlf(wdlf_obs);
+    	copy.currentSfr = currentSfr.copy();
+    	copy.updatedSfr = (updatedSfr != null) ? updatedSfr.copy() : null;
+    	copy.n_WDs = n_WDs;
+    	copy.reusePopulation = reusePopulation;
+    	copy.useResponseMatrix = useResponseMatrix;
+    	copy.importanceSampling = importanceSampling;
+    	copy.wdlf_model = (wdlf_model != null) ? new BaseWdlf(wdlf_model) : null;
+    	copy.chi2 = new LinkedList<Double>(chi2);
+    	copy.iterations = iterations;
+    	copy.iterations_min = iterations_min;
+    	copy.chi2Threshold = chi2Threshold;
+    	
+    	return copy;
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -101,6 +162,9 @@ public class InversionState extends State
         out.append("Writing output to disk? ").append(writeOutput ? "yes\n" : "no\n");
         out.append("Modelling Parameters:\n").append(params.toString());
         out.append("Observed WDLF = ").append(wdlf_obs.name).append("\n");
+        out.append("Reusing simulated population? ").append(reusePopulation ? "yes\n" : "no\n");
+        out.append("Using response matrix? ").append(useResponseMatrix ? "yes\n" : "no\n");
+        out.append("Importance sampling progenitor masses? ").append(importanceSampling ? "yes\n" : "no\n");
         out.append("Initial guess SFR parameters:\n").append(currentSfr.printParameters());
         
         return out.toString();
@@ -7,12 +7,12 @@ import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import numeric.data.RangeMap;
 import photometry.Filter;
 import sfr.algoimpl.InitialGuessSFR;
 import wd.models.algo.WdCoolingModelSet;
 import wd.models.infra.WdAtmosphereType;
 import wd.wdlf.dm.Star;
+import wd.wdlf.dm.StarPopulation;
 import wd.wdlf.infra.NoSFRConstraintException;
 import wd.wdlf.inversion.util.InversionPlotUtil;
 import wd.wdlf.inversion.util.InversionUtil;
@@ -43,19 +43,19 @@ public class MonteCarloInverter {
     // Simulation parameters & objects
     
     /**
-     * Simulation stars binned according to WD magnitude.
+     * Simulation stars binned according to formation time and WD magnitude.
      */
-    private RangeMap<Star> whiteDwarfs;
+    private StarPopulation population;
     
     /**
-     * Simulation stars binned according to formation time.
+     * InversionState contains all WDLF inversion algorithm stuff.
      */
-    private RangeMap<Star> progenitors;
+    private InversionState inversionState;
     
     /**
-     * InversionState contains all WDLF inversion algorithm stuff.
+     * Source of random numbers for the simulation stars and their observational errors.
      */
-    private InversionState inversionState;
+    private final Random random;
     
     /**
      * {@link P_WD} represents the plot of the joint distribution of white dwarf mass and magnitude.
@@ -74,52 +74,79 @@ public class MonteCarloInverter {
      * 	The {@link InversionState} object.
      */
     public MonteCarloInverter(InversionState inversionState) {
+        this(inversionState, error);
+    }
+    
+    /**
+     * Constructor taking the source of random numbers. Inverters that run concurrently must each be
+     * given their own {@link Random}.
+     * 
+     * @param inversionState
+     * 	The {@link InversionState} object.
+     * @param random
+     * 	The {@link Random} used to generate the simulation stars and their observational errors.
+     */
+    public MonteCarloInverter(InversionState inversionState, Random random) {
         this.inversionState = inversionState;
+        this.random = random;
     }
     
-    /** 
-     * Implements a single iteration step of inversion algorithm.
+    /**
+     * Simulates a new population of WDs, with an equal number forming in each lookback time bin, and
+     * stores it in {@link #population}. Each simulation star initially represents one real star.
+     * 
+     * @return
+     * 	The number of simulation stars created in each lookback time bin, including those that have
+     * not yet become WDs.
      */
-    public final void performSingleIteration() throws IOException {
+    private double[] simulatePopulation() {
     	
     	// Extract some fields to local variables for convenience
     	WdCoolingModelSet wdCoolingModelSet = inversionState.params.getBaseWdCoolingModels();
     	Filter filter = inversionState.params.getFilter();
         
-        // Construct new objects to store simulation stars.
-        whiteDwarfs = new RangeMap<Star>(inversionState.wdlf_obs.density.getBinCentres(), inversionState.wdlf_obs.density.getBinWidths());
-        progenitors = new RangeMap<Star>(inversionState.currentSfr.data.getBinCentres(), inversionState.currentSfr.data.getBinWidths());
+        int nTimeBins = inversionState.currentSfr.data.size();
         
         // Distribute simulated WDs so that an equal number form in each lookback time bin.
-        double nWdsPerBin = inversionState.n_WDs / progenitors.size();
+        double nWdsPerBin = inversionState.n_WDs / nTimeBins;
+        
+        // Construct new object to store simulation stars, with room for all the WDs
+        population = new StarPopulation(inversionState.wdlf_obs.density.getBinCentres(), inversionState.wdlf_obs.density.getBinWidths(),
+        		inversionState.currentSfr.data.getBinCentres(), inversionState.currentSfr.data.getBinWidths(),
+        		nTimeBins * ((int)nWdsPerBin + 1));
         
         logger.info("Iteration "+inversionState.iterations+": Simulating "+inversionState.n_WDs+" white dwarfs...\n");
         
+        double[] nSimStars = new double[nTimeBins];
+        
+        // Records whether the WD models had to be extrapolated for each star
+        boolean[] extrapolated = new boolean[1];
+        
         // Loop over all lookback time bins.
-        for(int lookbackTimeBin = 0; lookbackTimeBin < progenitors.size(); lookbackTimeBin++) {
+        for(int lookbackTimeBin = 0; lookbackTimeBin < nTimeBins; lookbackTimeBin++) {
             
             // Lower edge of formation time bin
-            double t_lower = progenitors.getRange(lookbackTimeBin).lower;
+            double t_lower = population.getTimeBinLower(lookbackTimeBin);
             // Upper edge of formation time bin
-            double t_upper = progenitors.getRange(lookbackTimeBin).upper;    
+            double t_upper = population.getTimeBinUpper(lookbackTimeBin);    
             
             // Count number of simulation stars created in this bin in order
             // to get n_WDs_per_bin WD progenitors
             double N_SIM_STARS = 0;
 
-            // Number of real stars that form in this formation time bin.
-            double N_REAL_STARS = inversionState.currentSfr.data.integrate(lookbackTimeBin)[0];
-            
             // Continually create stars uniformly distributed in this formation
             // time bin until n_WD_s_per_bin WD progenitors have been made.
             for(int nWdsFormedInBin=0; nWdsFormedInBin<=nWdsPerBin; ) {
       
-                // Create a new Star using current distributions
-                Star star = new Star(t_lower, t_upper, inversionState.params);
+                // Create a new Star using current distributions. With importance sampling, the Star is
+                // null if no stars formed at the drawn time have become WDs.
+                Star star = inversionState.importanceSampling ?
+                		Star.drawWhiteDwarf(t_lower, t_upper, inversionState.params, random) :
+                		new Star(t_lower, t_upper, inversionState.params, random);
             
                 N_SIM_STARS++;
             
-                if(star.getTotalAge() > star.getPreWdLifetime()) {
+                if(star != null && star.getTotalAge() > star.getPreWdLifetime()) {
 
                     // Star has become a WD
                 	double coolingTimeWD = star.getTotalAge() - star.getPreWdLifetime();
@@ -128,10 +155,10 @@ public class MonteCarloInverter {
                 	WdAtmosphereType atmType = star.getWhiteDwarfAtmph();
                 
                     // Get magnitude at present day
-                    double mag = wdCoolingModelSet.quantity(coolingTimeWD, wdMass, atmType, filter);
+                    double mag = wdCoolingModelSet.quantity(coolingTimeWD, wdMass, atmType, filter, extrapolated);
                     
                     // Add (Gaussian) error to the magnitude to simulate observation error
-                    mag += error.nextGaussian() * inversionState.params.getSigM();
+                    mag += random.nextGaussian() * inversionState.params.getSigM();
                     
                     // Increment WD counter.
                     nWdsFormedInBin++;
@@ -139,21 +166,17 @@ public class MonteCarloInverter {
                     // Set magnitude of simulation star.
                     star.setMag(mag);
                 
-                    // Determine if WD models had to be extrapolated in order to get this magnitude.
-                    star.setExtrap(wdCoolingModelSet.isExtrapolated(coolingTimeWD, wdMass, atmType, filter));
+                    // Record if WD models had to be extrapolated in order to get this magnitude.
+                    star.setExtrap(extrapolated[0]);
                 
-                    // Now add star to whiteDwarfs and progenitors histograms. 
-                    // Note that the star will not be added to either of the
-                    // histograms if it lies outside their range. This will never
-                    // happen for progenitors, because the progenitors number
-                    // matches the star formation model used to generate simulation
-                    // stars. However, the whiteDwarfs object range is based on 
-                    // observed WDLF and there may be missing regions due to lack 
-                    // of data, so some stars may be lost from whiteDwarf population.
+                    // Now add star to the population, in the current formation time bin.
+                    // The magnitude bins are based on the observed WDLF and there may be
+                    // missing regions due to lack of data, so some stars may lie outside
+                    // all the magnitude bins; these are retained but flagged as unobserved.
                 
                     // Record whether star falls in WDLF data bin or not. Only
                     // observed WDs can be used to constrain star formation history.
-                    star.setIsObserved(whiteDwarfs.add(star.getMag(), star));
+                    star.setIsObserved(population.add(lookbackTimeBin, star));
                     
                     // Examine stars that fall in certain parts of the parameter space:
 
@@ -206,49 +229,76 @@ public class MonteCarloInverter {
 //                    	System.out.println("");
 //                    	System.out.println("");
 //                    }
-                    
-                    progenitors.add(star.getTotalAge(), star);
                 }
         
                 // Star hasn't yet turned into a WD - take no action.
 
             }
             
-            // The abundance of WDs must be scaled to reflect the true number of
-            // stars formed during simulation time. This is the scale factor, and is
-            // calculated in the main Monte Carlo simulation loop.
-            
-            // Loop keeps creating until the desired number of WDs have formed. 
-            // The abundance of these must then be scaled according to the total
-            // number of stars that were formed during the loop, and the total
-            // number that should have formed given the integrated star formation
-            // rate. The number factor is calculated here:
+            nSimStars[lookbackTimeBin] = N_SIM_STARS;
+        }
+        
+        return nSimStars;
+    }
+
+    /** 
+     * Implements a single iteration step of inversion algorithm.
+     */
+    public final void performSingleIteration() throws IOException {
+        
+        int nTimeBins = inversionState.currentSfr.data.size();
+        
+        // Number of simulation stars created in each lookback time bin
+        double[] nSimStars;
+        
+        SimulatedPopulation simulated = inversionState.simulatedPopulation;
+        
+        if(inversionState.reusePopulation && simulated != null && simulated.matches(inversionState)) {
+        	// The stars are drawn uniformly within each lookback time bin, independently of the SFR, so the
+        	// population from an earlier iteration can be reused; only the weights depend on the SFR.
+        	logger.info("Iteration "+inversionState.iterations+": Reusing "+simulated.population.size()+" simulated stars...\n");
+        	population = simulated.population;
+        	population.resetNumbers();
+        	nSimStars = simulated.nSimStars;
+        }
+        else {
+        	nSimStars = simulatePopulation();
+        	inversionState.simulatedPopulation = inversionState.reusePopulation ?
+        			new SimulatedPopulation(inversionState, population, nSimStars) : null;
+        }
+        
+        // The abundance of WDs must be scaled to reflect the true number of
+        // stars formed during simulation time. The simulation loop keeps creating
+        // stars until the desired number of WDs have formed; the abundance of these
+        // must then be scaled according to the total number of stars that were
+        // formed during the loop, and the total number that should have formed
+        // given the integrated star formation rate.
+        for(int lookbackTimeBin = 0; lookbackTimeBin < nTimeBins; lookbackTimeBin++) {
+        	
+            // Number of real stars that form in this formation time bin.
+            double N_REAL_STARS = inversionState.currentSfr.data.integrate(lookbackTimeBin)[0];
             
-            // Set number of real stars that each simulation star represents,
-            // and variance on that quantity.
-            double n = N_REAL_STARS / N_SIM_STARS;
+            // Set number of real stars that each simulation star represents.
+            double n = N_REAL_STARS / nSimStars[lookbackTimeBin];
             
             // Re-scale number density of all stars in current formation time 
             // bin to units of real stars. Note that this doesn't account
             // for low mass stars that don't form WDs at the present day.
-            for(Star star : progenitors.get(lookbackTimeBin)) {
-                star.reweight(n, 0);
-            }
-            
+            population.reweightTimeBin(lookbackTimeBin, n);
         }
         
         // Calculate forward-modelled WDLF for plotting. It's important to
         // do this before the scaleToObservedDensity call, as after that the
         // model WDLF will exactly match the observed one and won't reflect the
         // WDLF obtained from the initial SFR.
-        inversionState.wdlf_model = ModelWdlfUtil.getLF(true, whiteDwarfs);
+        inversionState.wdlf_model = ModelWdlfUtil.getLF(true, population);
         
         // Update step in Richardson-Lucy algorithm - correct modelled
         // values to observed values then back-propagate corrections to 
         // previous guess of SFR.
         logger.info("Iteration "+inversionState.iterations+": Scaling WD population...\n");
         
-        double chi2 = InversionUtil.scaleToObservedDensity(whiteDwarfs, inversionState.wdlf_obs);
+        double chi2 = InversionUtil.scaleToObservedDensity(population, inversionState.wdlf_obs);
         
         inversionState.chi2.add(chi2);
         
@@ -260,9 +310,9 @@ public class MonteCarloInverter {
         // the updated instance will then have the bin values set appropriately.
         inversionState.updatedSfr = (InitialGuessSFR)inversionState.currentSfr.copy();
     	
-        for(int bin = 0; bin<progenitors.size(); bin++) {
+        for(int bin = 0; bin<nTimeBins; bin++) {
             try {
-            	double[] sfrAndError = InversionUtil.getSFR(progenitors, bin, true, inversionState.params);
+            	double[] sfrAndError = InversionUtil.getSFR(population, bin, true, inversionState.params);
                 inversionState.updatedSfr.setSFRBin(bin, sfrAndError[0], sfrAndError[1]);
             }
             catch(NoSFRConstraintException e) {
@@ -284,11 +334,11 @@ public class MonteCarloInverter {
 	        
 	        logger.info("Iteration "+inversionState.iterations+": Creating P_WD\n");
 	        
-	        pwdPlot = InversionPlotUtil.getPwd(outputDir, inversionState, whiteDwarfs);
+	        pwdPlot = InversionPlotUtil.getPwd(outputDir, inversionState, population);
 	        
 	        logger.info("Iteration "+inversionState.iterations+": Creating P_MS\n");
 	        
-	        pmsPlot = InversionPlotUtil.getPms(outputDir, inversionState, progenitors);
+	        pmsPlot = InversionPlotUtil.getPms(outputDir, inversionState, population);
         }
         
         // Print out chi-square for this iteration
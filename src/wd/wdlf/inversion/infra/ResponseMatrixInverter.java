@@ -0,0 +1,212 @@
+package wd.wdlf.inversion.infra;
+
+import java.util.logging.Logger;
+
+import sfr.algoimpl.InitialGuessSFR;
+import wd.wdlf.dm.WdlfBinAccumulator;
+import wd.wdlf.inversion.util.InversionUtil;
+import wd.wdlf.modelling.infra.ResponseMatrix;
+import wd.wdlf.util.ModelWdlfUtil;
+
+/**
+ * Performs iterations of the WDLF inversion algorithm using a {@link ResponseMatrix} in place of a simulated
+ * population.
+ *
+ * Each iteration of the {@link MonteCarloInverter} weights the simulation stars in each lookback time bin by the
+ * number of real stars they represent, scales the stars in each magnitude bin to match the observed WDLF, then
+ * sums the scaled stars in each lookback time bin to get the updated star formation rate. Every one of these
+ * sums is linear in the counts of simulation stars in each (magnitude bin, time bin) element, so the iteration
+ * is computed here from the kernel with the same arithmetic and error propagation, in a time that is independent
+ * of the number of simulated stars. The only difference is that each simulation star initially carries a variance
+ * equal to the square of the number of real stars it represents, as in the {@link wd.wdlf.modelling.infra.MonteCarloWDLFSolver},
+ * so the Monte Carlo variance of the simulated WDLF is included in the uncertainties.
+ *
+ * The kernel is computed on the first iteration, or read from the cache, and reused for as long as the modelling
+ * parameters and bins are unchanged. The diagnostic plots produced by the {@link MonteCarloInverter} require the
+ * individual stars and are not available.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class ResponseMatrixInverter {
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger logger = Logger.getLogger(ResponseMatrixInverter.class.getName());
+
+	/**
+	 * Seed for the random number generator used to compute the kernel.
+	 */
+	public static final long seed = MonteCarloInverter.seed;
+
+	/**
+	 * InversionState contains all WDLF inversion algorithm stuff.
+	 */
+	private final InversionState inversionState;
+
+	/**
+	 * The {@link ResponseMatrix}.
+	 */
+	private ResponseMatrix kernel;
+
+	/**
+	 * The modelling parameters that {@link #kernel} was computed for, in string form.
+	 */
+	private String kernelParams;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param inversionState
+	 * 	The {@link InversionState} object.
+	 */
+	public ResponseMatrixInverter(InversionState inversionState) {
+		this.inversionState = inversionState;
+	}
+
+	/**
+	 * Get the {@link ResponseMatrix} for the current state of the inversion.
+	 *
+	 * @return
+	 * 	The {@link ResponseMatrix}.
+	 */
+	private ResponseMatrix getResponseMatrix() {
+
+		double[] magBinCentres = inversionState.wdlf_obs.density.getBinCentres();
+		double[] magBinWidths = inversionState.wdlf_obs.density.getBinWidths();
+		double[] timeBinCentres = inversionState.currentSfr.data.getBinCentres();
+		double[] timeBinWidths = inversionState.currentSfr.data.getBinWidths();
+		String params = inversionState.params.toString();
+
+		if(kernel == null || !params.equals(kernelParams) || !kernel.hasMagBins(magBinCentres, magBinWidths) ||
+				!kernel.hasTimeBins(timeBinCentres, timeBinWidths)) {
+			// At least one simulation star in each time bin, if there are fewer stars than time bins
+			int nWdsPerTimeBin = Math.max(1, inversionState.n_WDs / timeBinCentres.length);
+			kernel = ResponseMatrix.getResponseMatrix(inversionState.params, magBinCentres, magBinWidths,
+					timeBinCentres, timeBinWidths, nWdsPerTimeBin, seed);
+			kernelParams = params;
+		}
+
+		return kernel;
+	}
+
+	/**
+	 * Implements a single iteration step of inversion algorithm.
+	 */
+	public final void performSingleIteration() {
+
+		ResponseMatrix kernel = getResponseMatrix();
+
+		int nTimeBins = kernel.getNumberOfTimeBins();
+		int nMagBins = kernel.getNumberOfMagBins();
+
+		// Number of real stars that each simulation star represents, in each lookback time bin
+		double[] starsFormed = kernel.getStarsFormed(inversionState.currentSfr);
+		double[] n = new double[nTimeBins];
+		for(int j=0; j<nTimeBins; j++) {
+			n[j] = starsFormed[j] / kernel.getNumberOfSimStars(j);
+		}
+
+		// Forward-modelled WDLF for the current SFR
+		WdlfBinAccumulator whiteDwarfs = kernel.getWdlfBins(starsFormed);
+		inversionState.wdlf_model = ModelWdlfUtil.getLF(true, whiteDwarfs);
+
+		// Update step in Richardson-Lucy algorithm: correction factor, uncertainty on it and observational
+		// variance per real star in each magnitude bin. See InversionUtil.scaleToObservedDensity.
+		double[] w = new double[nMagBins];
+		double[] sigma_w = new double[nMagBins];
+		double[] varPerRealStar = new double[nMagBins];
+		double chi2 = 0;
+
+		for(int i=0; i<nMagBins; i++) {
+
+			w[i] = 1.0;
+
+			double width = kernel.getMagBinWidth(i);
+			double phi_obs = inversionState.wdlf_obs.density.getBinContents(i);
+			double phi_obs_err = inversionState.wdlf_obs.density.getBinUncertainty(i);
+
+			if(phi_obs <= 0) {
+				throw new RuntimeException("Observed WDLF density is "+phi_obs+" in bin "+i);
+			}
+			if(phi_obs_err <= 0) {
+				throw new RuntimeException("Observed WDLF error is "+phi_obs_err+" in bin "+i);
+			}
+
+			if(whiteDwarfs.isEmpty(i)) {
+				logger.warning("Too few simulation stars! No simulated white dwarfs lie in magnitude bin "+i);
+				continue;
+			}
+
+			double phi_sim = whiteDwarfs.getNumber(i) / width;
+			double phi_sim_err = Math.sqrt(whiteDwarfs.getSigma2Number(i)) / width;
+
+			chi2 += (phi_obs - phi_sim)*(phi_obs - phi_sim)/(phi_obs_err*phi_obs_err);
+
+			w[i] = phi_obs/phi_sim;
+			sigma_w[i] = Math.sqrt((phi_obs_err*phi_obs_err)/(phi_sim*phi_sim) + (phi_obs*phi_obs*phi_sim_err*phi_sim_err)/(Math.pow(phi_sim,4)));
+
+			// Observational variance is divided among the simulation stars in proportion to the
+			// number of real stars that each represents after reweighting
+			varPerRealStar[i] = phi_obs_err * phi_obs_err * width * width / (w[i] * whiteDwarfs.getNumber(i));
+		}
+
+		inversionState.chi2.add(chi2);
+
+		// Sum the rescaled stars in each lookback time bin to get the updated SFR. See InversionUtil.getSFR.
+		inversionState.updatedSfr = (InitialGuessSFR)inversionState.currentSfr.copy();
+
+		for(int j=0; j<nTimeBins; j++) {
+
+			double lookBackTimeMin = kernel.getTimeBinLower(j);
+			double lookBackTimeMax = kernel.getTimeBinUpper(j);
+
+			double density = 0.0;
+			double sigma2_density = 0.0;
+			double nObsWds = 0.0;
+
+			for(int i=0; i<nMagBins; i++) {
+				double c = kernel.getCount(i, j);
+				if(c == 0.0) {
+					continue;
+				}
+				// Number and variance on the number represented by each star after reweighting;
+				// each simulation star initially carries a variance equal to the square of its number.
+				double number = n[j] * w[i];
+				double sigma2 = n[j]*n[j]*sigma_w[i]*sigma_w[i] + w[i]*w[i]*n[j]*n[j] + varPerRealStar[i] * number;
+				density += c * number;
+				sigma2_density += c * sigma2;
+				nObsWds += c;
+			}
+
+			if(nObsWds == 0.0) {
+				logger.warning("SFR bin ["+lookBackTimeMin + ":"+lookBackTimeMax+"] - no observed WDs.");
+				continue;
+			}
+
+			// Correct for unobserved WDs
+			double unobservedWdCorrection = kernel.getNumberOfWds(j) / nObsWds;
+
+			// Correct for low mass stars / non-WD-progenitors
+			double fracWdProgenitors = InversionUtil.getFractionWDProgenitorsInTimeRange(lookBackTimeMin, lookBackTimeMax, inversionState.params);
+			if(fracWdProgenitors == 0.0) {
+				logger.warning("SFR bin ["+lookBackTimeMin + ":"+lookBackTimeMax+"] - no WD progenitors.");
+				continue;
+			}
+			double lowMassCorrection = 1.0 / fracWdProgenitors;
+
+			double correction = unobservedWdCorrection * lowMassCorrection;
+			double width = lookBackTimeMax - lookBackTimeMin;
+
+			density *= correction / width;
+			sigma2_density *= correction * correction / (width * width);
+
+			inversionState.updatedSfr.setSFRBin(j, density, Math.sqrt(sigma2_density));
+		}
+
+		logger.info("Iteration "+inversionState.iterations+": Chi^2 = "+chi2+"\n");
+
+		inversionState.iterations++;
+	}
+}
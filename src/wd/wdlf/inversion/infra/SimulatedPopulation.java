@@ -0,0 +1,179 @@
+package wd.wdlf.inversion.infra;
+
+import java.util.Arrays;
+
+import ifmr.infra.IFMR;
+import imf.algo.ImfSampler;
+import imf.infra.IMF;
+import ms.lifetime.infra.PreWdLifetimeModels;
+import photometry.Filter;
+import wd.models.infra.WdCoolingModels;
+import wd.wdlf.dm.StarPopulation;
+import wd.wdlf.dm.WdlfModellingParameters;
+
+/**
+ * Records a simulated {@link StarPopulation} so that it can be reused in later iterations of the WDLF inversion.
+ *
+ * The simulation stars are drawn uniformly within each lookback time bin, so the population depends only on the
+ * modelling parameters, the number of simulated WDs and the layout of the lookback time and magnitude bins; the
+ * star formation rate only enters through the number of real stars that each simulation star represents. The
+ * population can therefore be reused for as long as these are unchanged, with the weights recomputed from the
+ * current star formation rate at each iteration.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+class SimulatedPopulation {
+
+	/**
+	 * The {@link IMF} used to simulate the population.
+	 */
+	private final IMF imf;
+
+	/**
+	 * The {@link ImfSampler} of the IMF; a new one is created whenever the parameters of the IMF change.
+	 */
+	private final ImfSampler imfSampler;
+
+	/**
+	 * The {@link PreWdLifetimeModels} used to simulate the population.
+	 */
+	private final PreWdLifetimeModels preWdLifetimeModels;
+
+	/**
+	 * The {@link IFMR} used to simulate the population.
+	 */
+	private final IFMR ifmr;
+
+	/**
+	 * The {@link WdCoolingModels} used to simulate the population.
+	 */
+	private final WdCoolingModels wdCoolingModels;
+
+	/**
+	 * The {@link Filter} used to simulate the population.
+	 */
+	private final Filter filter;
+
+	/**
+	 * The mean and standard deviation of the metallicity and helium content, the fraction of WDs with H
+	 * atmospheres and the magnitude error used to simulate the population.
+	 */
+	private final double z, sigmaZ, y, sigmaY, w_H, sigM;
+
+	/**
+	 * The number of simulated WDs.
+	 */
+	private final int nWds;
+
+	/**
+	 * Whether the population was simulated using importance sampling of the progenitor masses.
+	 */
+	private final boolean importanceSampling;
+
+	/**
+	 * Centres of the lookback time bins [yr].
+	 */
+	private final double[] timeBinCentres;
+
+	/**
+	 * Widths of the lookback time bins [yr].
+	 */
+	private final double[] timeBinWidths;
+
+	/**
+	 * Centres of the magnitude bins.
+	 */
+	private final double[] magBinCentres;
+
+	/**
+	 * Widths of the magnitude bins.
+	 */
+	private final double[] magBinWidths;
+
+	/**
+	 * The simulated {@link StarPopulation}.
+	 */
+	final StarPopulation population;
+
+	/**
+	 * The number of simulation stars created in each lookback time bin, including those that have not yet
+	 * become WDs.
+	 */
+	final double[] nSimStars;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param inversionState
+	 * 	The {@link InversionState} used to simulate the population.
+	 * @param population
+	 * 	The simulated {@link StarPopulation}.
+	 * @param nSimStars
+	 * 	The number of simulation stars created in each lookback time bin.
+	 */
+	SimulatedPopulation(InversionState inversionState, StarPopulation population, double[] nSimStars) {
+		WdlfModellingParameters params = inversionState.params;
+		this.imf = params.getImfEnum();
+		this.imfSampler = params.getIMF().getSampler();
+		this.preWdLifetimeModels = params.getPreWdLifetimeModelsEnum();
+		this.ifmr = params.getIfmrEnum();
+		this.wdCoolingModels = params.getWdCoolingModelsEnum();
+		this.filter = params.getFilter();
+		this.z = params.getMeanMetallicity();
+		this.sigmaZ = params.getMetallicitySigma();
+		this.y = params.getMeanHeliumContent();
+		this.sigmaY = params.getHeliumContentSigma();
+		this.w_H = params.getW_H();
+		this.sigM = params.getSigM();
+		this.nWds = inversionState.n_WDs;
+		this.importanceSampling = inversionState.importanceSampling;
+		this.timeBinCentres = inversionState.currentSfr.data.getBinCentres().clone();
+		this.timeBinWidths = inversionState.currentSfr.data.getBinWidths().clone();
+		this.magBinCentres = inversionState.wdlf_obs.density.getBinCentres().clone();
+		this.magBinWidths = inversionState.wdlf_obs.density.getBinWidths().clone();
+		this.population = population;
+		this.nSimStars = nSimStars;
+	}
+
+	/**
+	 * Determine if the population can be reused with the current state of the inversion.
+	 *
+	 * @param inversionState
+	 * 	The {@link InversionState}.
+	 * @return
+	 * 	True if the modelling parameters, number of simulated WDs, sampling mode and bin layout are unchanged.
+	 */
+	boolean matches(InversionState inversionState) {
+		return nWds == inversionState.n_WDs &&
+				importanceSampling == inversionState.importanceSampling &&
+				Arrays.equals(timeBinCentres, inversionState.currentSfr.data.getBinCentres()) &&
+				Arrays.equals(timeBinWidths, inversionState.currentSfr.data.getBinWidths()) &&
+				Arrays.equals(magBinCentres, inversionState.wdlf_obs.density.getBinCentres()) &&
+				Arrays.equals(magBinWidths, inversionState.wdlf_obs.density.getBinWidths()) &&
+				matches(inversionState.params);
+	}
+
+	/**
+	 * Determine if the population was simulated with the given modelling parameters.
+	 *
+	 * @param params
+	 * 	The {@link WdlfModellingParameters}.
+	 * @return
+	 * 	True if the models, filter, composition and magnitude error are unchanged.
+	 */
+	private boolean matches(WdlfModellingParameters params) {
+		return imf == params.getImfEnum() &&
+				imfSampler == params.getIMF().getSampler() &&
+				preWdLifetimeModels == params.getPreWdLifetimeModelsEnum() &&
+				ifmr == params.getIfmrEnum() &&
+				wdCoolingModels == params.getWdCoolingModelsEnum() &&
+				filter == params.getFilter() &&
+				z == params.getMeanMetallicity() &&
+				sigmaZ == params.getMetallicitySigma() &&
+				y == params.getMeanHeliumContent() &&
+				sigmaY == params.getHeliumContentSigma() &&
+				w_H == params.getW_H() &&
+				sigM == params.getSigM();
+	}
+}
@@ -18,13 +18,11 @@ import infra.os.OSChecker;
 import ms.lifetime.algo.PreWdLifetime;
 import numeric.data.Histogram;
 import numeric.data.Histogram2D;
-import numeric.data.Range;
-import numeric.data.RangeMap;
 import photometry.Filter;
 import util.CharUtil;
 import wd.models.algo.WdCoolingModelSet;
 import wd.models.infra.WdAtmosphereType;
-import wd.wdlf.dm.Star;
+import wd.wdlf.dm.StarPopulation;
 import wd.wdlf.dm.WdlfModellingParameters;
 import wd.wdlf.inversion.infra.InversionState;
 
@@ -111,14 +109,14 @@ public class InversionPlotUtil {
      * 	The main {@link InversionState} instance that encapsulates all the modelling parameters and
      * other quantities.
 	 * @param progenitors
-     * 	The {@link RangeMap<Star>} containing the stars to process.
+     * 	The {@link StarPopulation} containing the stars to process.
 	 * @return
 	 * 	A {@link BufferedImage} containing the diagnostic plot P_{MS}: the joint distribution of progenitor
      * mass and formation time.
 	 * @throws IOException
 	 * 	If there's an exception when writing data files.
 	 */
-    public static BufferedImage getPms(File parent, InversionState inversionState, RangeMap<Star> progenitors) throws IOException {
+    public static BufferedImage getPms(File parent, InversionState inversionState, StarPopulation progenitors) throws IOException {
     	
     	// Get a reference to the {@link WdlfModellingParameters} for convenience
     	WdlfModellingParameters params = inversionState.params;
@@ -179,12 +177,10 @@ public class InversionPlotUtil {
         double zmax = 1.0;
         
         if(progenitors!=null) {
-        	for(int bin=0; bin<progenitors.size(); bin++) {
-                // Loop over all stars in bin
-                for (Star star : progenitors.get(bin)) {
-                    msMassFormationTimeDistribution.add(star.getTotalAge()/1.0E9, star.getProgenitorMass(), star.getNumber()/(dX*dY));
-                    progenitorMassDistribution.add(star.getProgenitorMass(), star.getNumber());
-                }
+            // Loop over all stars
+            for (int i=0; i<progenitors.size(); i++) {
+                msMassFormationTimeDistribution.add(progenitors.getTotalAge(i)/1.0E9, progenitors.getProgenitorMass(i), progenitors.getNumber(i)/(dX*dY));
+                progenitorMassDistribution.add(progenitors.getProgenitorMass(i), progenitors.getNumber(i));
             }
         	zmax = msMassFormationTimeDistribution.getMax();
         	progenitorMassFunctionPeak = progenitorMassDistribution.getMax();
@@ -238,21 +234,17 @@ public class InversionPlotUtil {
         	out.write("0 0 0");
         }
         else {
-        	for(int bin=0; bin<progenitors.size(); bin++) {
+        	for(int bin=0; bin<progenitors.getNumberOfTimeBins(); bin++) {
         		
         		// Get the fraction of observed WDs in this bin
-        		double nObsWds = 0.0;
-        		for(Star star : progenitors.get(bin)) {
-        			if(star.getIsObserved()) {
-        				nObsWds++;
-        			}
-        		}
-        		double fracObsWds = nObsWds / progenitors.size();
+        		double nObsWds = progenitors.sumObservedInTimeBin(bin)[2];
+        		double fracObsWds = nObsWds / progenitors.getTimeBinWeight(bin);
         		
-        		Range range = progenitors.getRange(bin);
+        		double lower = progenitors.getTimeBinLower(bin);
+        		double upper = progenitors.getTimeBinUpper(bin);
         		
-        		out.write(range.mid() + "\t" + fracObsWds + "\t" +
-        				InversionUtil.getFractionWDProgenitorsInTimeRange(range.lower, range.upper, params)+"\n");
+        		out.write((lower + upper) / 2.0 + "\t" + fracObsWds + "\t" +
+        				InversionUtil.getFractionWDProgenitorsInTimeRange(lower, upper, params)+"\n");
         	}
         }
         out.close();
@@ -458,14 +450,15 @@ public class InversionPlotUtil {
      * 	The main {@link InversionState} instance that encapsulates all the modelling parameters and
      * other quantities.
      * @param whiteDwarfs
-     * 	The {@link RangeMap<Star>} containing the stars to process, binned on magnitude.
+     * 	The {@link StarPopulation} containing the stars to process; only those lying in the magnitude
+     * bins are included.
      * @return
 	 * 	A {@link BufferedImage} containing the diagnostic plot P_{WD}: the joint distribution of white dwarf
      * mass and magnitude.
      * @throws IOException
 	 * 	If there's an exception when writing data files.
      */
-    public static BufferedImage getPwd(File parent, InversionState inversionState, RangeMap<Star> whiteDwarfs) throws IOException {
+    public static BufferedImage getPwd(File parent, InversionState inversionState, StarPopulation whiteDwarfs) throws IOException {
 
     	// Get a reference to the {@link WdlfModellingParameters} for convenience
     	WdlfModellingParameters params = inversionState.params;
@@ -529,18 +522,21 @@ public class InversionPlotUtil {
         int zexp = 1;
         if(whiteDwarfs!=null) {
         	// Populate the histogram
-        	for(int bin=0; bin<whiteDwarfs.size(); bin++) {
-                for (Star star : whiteDwarfs.get(bin)) {
-                    wdMassMagJointDistribution.add(star.getMag(), star.getWhiteDwarfMass(), star.getNumber()/(dX*dY));
-                    wdMassDistribution.add(star.getWhiteDwarfMass(), star.getNumber());
-                    switch(star.getWhiteDwarfAtmph()) {
-                    case H:
-                    	wdMassDistributionH.add(star.getWhiteDwarfMass(), star.getNumber());
-                    	break;
-                    case He:
-                    	wdMassDistributionHe.add(star.getWhiteDwarfMass(), star.getNumber());
-                    	break;
-                    }
+        	for(int i=0; i<whiteDwarfs.size(); i++) {
+        		if(!whiteDwarfs.getIsObserved(i)) {
+        			continue;
+        		}
+        		double wdMass = whiteDwarfs.getWhiteDwarfMass(i);
+        		double number = whiteDwarfs.getNumber(i);
+                wdMassMagJointDistribution.add(whiteDwarfs.getMag(i), wdMass, number/(dX*dY));
+                wdMassDistribution.add(wdMass, number);
+                switch(whiteDwarfs.getWhiteDwarfAtmph(i)) {
+                case H:
+                	wdMassDistributionH.add(wdMass, number);
+                	break;
+                case He:
+                	wdMassDistributionHe.add(wdMass, number);
+                	break;
                 }
         	}
         	zmax = wdMassMagJointDistribution.getMax();
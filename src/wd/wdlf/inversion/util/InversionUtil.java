@@ -1,15 +1,13 @@
 package wd.wdlf.inversion.util;
 
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import imf.algo.BaseImf;
-import numeric.data.Range;
-import numeric.data.RangeMap;
 import wd.wdlf.algo.BaseWdlf;
-import wd.wdlf.dm.Star;
+import wd.wdlf.dm.StarPopulation;
 import wd.wdlf.dm.WdlfModellingParameters;
 import wd.wdlf.infra.NoSFRConstraintException;
-import wd.wdlf.util.ModelWdlfUtil;
 
 /**
  * Class provides utilities that implement some of the main inversion operations on the simulated stellar
@@ -40,33 +38,45 @@ public class InversionUtil {
     /**
      * Scales the weight of each simulation star so that the simulated WDLF matches the observed WDLF.
      * @param stars
-     * 	The {@link RangeMap<Star>} containing the stars to process. This must represent the white dwarf
-     * population binned in the map according to their magnitude, with the same binning as the 
-     * observed WDLF.
+     * 	The {@link StarPopulation} containing the stars to process. This must have the same magnitude
+     * binning as the observed WDLF.
      * @param obsWdlf
      * 	The {@link BaseWdlf} representing the observed WDLF; the simulated stars will be scaled such
      * that their number density in each bin matches that of the observed WDLF.
      * @return
      * 	The chi-square for the initial fit of the simulated WDLF to the observed WDLF.
      */
-    public static double scaleToObservedDensity(RangeMap<Star> stars, BaseWdlf obsWdlf) {
+    public static double scaleToObservedDensity(StarPopulation stars, BaseWdlf obsWdlf) {
     	
         // Sanity check: this ObservedWDLF should have the same number of
         // density bins as the simulation wdlf.
-        if(stars.size() != obsWdlf.density.size()) {
+        int nBins = stars.getNumberOfMagBins();
+        if(nBins != obsWdlf.density.size()) {
             throw new RuntimeException("Observed WDLF and model WDLF have different number of"
-            		+ " magnitude bins!"+stars.size() + " and "+obsWdlf.density.size());
+            		+ " magnitude bins!"+nBins + " and "+obsWdlf.density.size());
         }
-                    
+        
+        // Sum the number of real stars and the variance in each magnitude bin in a single pass
+        double[][] sums = stars.sumNumberByMagBin();
+        
+        // Correction factor, uncertainty on it and observational variance per real star in each bin.
+        // Bins with no simulated stars are left unchanged.
+        double[] w = new double[nBins];
+        double[] sigma_w = new double[nBins];
+        double[] varPerRealStar = new double[nBins];
+        
         // Chi-square statistic for fit.
         double chi2 = 0;
         
         // Loop over all bins
-        for (int bin=0; bin<stars.size(); bin++) {
+        for (int bin=0; bin<nBins; bin++) {
+        	
+        	w[bin] = 1.0;
 
-            Range range = stars.getRange(bin);
-            double width = range.width();
-            double centre = range.mid();
+            double lower = stars.getMagBinLower(bin);
+            double upper = stars.getMagBinUpper(bin);
+            double width = stars.getMagBinWidth(bin);
+            double centre = stars.getMagBinCentre(bin);
         	
             // Sanity checks on bin configuration and density values
             if(Math.abs(width - obsWdlf.density.getBinWidth(bin)) > EPSILON) {
@@ -84,20 +94,19 @@ public class InversionUtil {
             	throw new RuntimeException("Observed WDLF error is "+obsWdlf.density.getBinUncertainty(bin)+" in bin "+bin);
             }
             
-            // Get number of simulated stars and associated error in this magnitude bin.
-            // This is the synthetic WDLF. Use per-magnitude units for comparison to observed WDLFs.
-            double[] synthWdlf = ModelWdlfUtil.getNumberDensity(stars, bin, true);
+            int N = stars.getMagBinCount(bin);
             
-            if(synthWdlf == null) {
+            if(N == 0) {
                 // If no simulated stars, this bin cannot be used to constrain SFR.
                 logger.warning("Too few simulation stars! No simulated white dwarfs"
-                		+ " lie in magnitude range ["+range.lower+":"+range.upper+"]");
+                		+ " lie in magnitude range ["+lower+":"+upper+"]");
                 continue;
             }
             
             // Density ratio between simulated WDs and observed WDs, and errors.
-            double phi_sim      = synthWdlf[0];
-            double phi_sim_err  = synthWdlf[1];
+            // This is the synthetic WDLF. Use per-magnitude units for comparison to observed WDLFs.
+            double phi_sim      = sums[0][bin] / width;
+            double phi_sim_err  = Math.sqrt(sums[1][bin]) / width;
             double phi_obs      = obsWdlf.density.getBinContents(bin);
             double phi_obs_err  = obsWdlf.density.getBinUncertainty(bin);
             
@@ -107,23 +116,22 @@ public class InversionUtil {
             // What factor must simulation stars be weighted by to give a number that matches observations?
             
             // CORRECTION FACTOR - correct simulated number of each WD to  match observed WD number.
-            double w = phi_obs/phi_sim;
+            w[bin] = phi_obs/phi_sim;
             
             // Uncertainty in correction factor, considering error in both simulated and observed star number.
-            double sigma_w = Math.sqrt((phi_obs_err*phi_obs_err)/(phi_sim*phi_sim) + (phi_obs*phi_obs*phi_sim_err*phi_sim_err)/(Math.pow(phi_sim,4)));
-            
-            // Weight all simulated stars in this bin by this factor.
-            for(Star star : stars.get(bin)) {
-                star.reweight(w, sigma_w);
-            }
+            sigma_w[bin] = Math.sqrt((phi_obs_err*phi_obs_err)/(phi_sim*phi_sim) + (phi_obs*phi_obs*phi_sim_err*phi_sim_err)/(Math.pow(phi_sim,4)));
             
             // Divide observational error among all simulation stars. Weight
             // according to number of real stars that each represents, so that
             // simulation stars representing more real stars carry a greater
-            // fraction of the observational error.
-            addObsError(stars, bin, phi_obs_err);
+            // fraction of the observational error. The mean number of real stars
+            // per simulation star is computed after the reweighting.
+            varPerRealStar[bin] = getObsErrorPerRealStar(N, w[bin] * sums[0][bin], width, phi_obs_err);
         }
         
+        // Weight all simulated stars by the factor for their bin, and add the observational error.
+        stars.reweightMagBins(w, sigma_w, varPerRealStar);
+        
         // At this point, the observed and simulated WDLFs are identical. The uncertainty on the simulated WDLF
         // is slightly larger due to the finite number of simulation stars; in the limit of an infinite number
         // of simulation stars, the error on the simulated WDLF converges on the observed WDLF.
@@ -138,34 +146,54 @@ public class InversionUtil {
      * magnitude range.
      * 
      * @param stars
-     * 	The {@link RangeMap<Star>} containing the stars to process.
+     * 	The {@link StarPopulation} containing the stars to process.
      * @param bin
-     * 	The index of the bin in the {@link RangeMap<Star>} containing the stars to process.
+     * 	The index of the magnitude bin containing the stars to process.
      * @param phiObsErr
      * 	Standard deviation on the observed WDLF in the given bin.
      */
-    public static void addObsError(RangeMap<Star> stars, int bin, double phiObsErr) {
+    public static void addObsError(StarPopulation stars, int bin, double phiObsErr) {
         
-        // Get number of simulation stars in bin
-        int N = stars.get(bin).size();
-
-        Range range = stars.getRange(bin);
-        double width = range.width();
+        int nBins = stars.getNumberOfMagBins();
         
-        // Mean number of real stars that each simulated star represents
-        double n_mean = 0;
-        for (Star star : stars.get(bin)) {
-            n_mean += star.getNumber();
-        }
-        n_mean /= N;
+        // Get number of simulation stars in bin, and the number of real stars they represent
+        int N = stars.getMagBinCount(bin);
+        double nReal = stars.sumNumberByMagBin()[0][bin];
+        double width = stars.getMagBinWidth(bin);
         
-        // Variance per real star.
-        double varPerRealStar = phiObsErr * phiObsErr * width * width / (N * n_mean);
+        // Leave the other bins unchanged
+        double[] w = new double[nBins];
+        Arrays.fill(w, 1.0);
+        double[] sigma_w = new double[nBins];
+        double[] varPerRealStar = new double[nBins];
+        varPerRealStar[bin] = getObsErrorPerRealStar(N, nReal, width, phiObsErr);
         
         // Add this variance onto each simulation star.
-        for(Star star : stars.get(bin)) {
-            star.addObservationalUncertainty(varPerRealStar * star.getNumber());
-        }
+        stars.reweightMagBins(w, sigma_w, varPerRealStar);
+    }
+    
+    /**
+     * Computes the variance per real star that must be added to each simulation star in a magnitude bin
+     * in order to incorporate the observational error on the WDLF in that bin.
+     * 
+     * @param N
+     * 	Number of simulation stars in the bin.
+     * @param nReal
+     * 	Total number of real stars represented by the simulation stars in the bin.
+     * @param width
+     * 	Width of the bin.
+     * @param phiObsErr
+     * 	Standard deviation on the observed WDLF in the bin.
+     * @return
+     * 	The variance per real star.
+     */
+    private static double getObsErrorPerRealStar(int N, double nReal, double width, double phiObsErr) {
+    	
+        // Mean number of real stars that each simulated star represents
+        double n_mean = nReal / N;
+        
+        // Variance per real star.
+        return phiObsErr * phiObsErr * width * width / (N * n_mean);
     }
     
     /**
@@ -179,9 +207,9 @@ public class InversionUtil {
      * WDs are accounted for by a simple scaling.
      * 
      * @param stars
-     * 	The {@link RangeMap<Star>} containing the stars to process.
+     * 	The {@link StarPopulation} containing the stars to process.
      * @param bin
-     * 	The index of the bin in the {@link RangeMap<Star>} containing the stars to process.
+     * 	The index of the lookback time bin containing the stars to process.
      * @param starsPerYear
 	 * 	If true, then the density units are scaled to stars-per-year (N yr^{-1}). If false,
 	 * then the density units are per-bin-width.
@@ -192,37 +220,28 @@ public class InversionUtil {
      * for unobserved WDs and low mass stars.
      * @throws NoSFRConstraintException
      */
-    public static double[] getSFR(RangeMap<Star> stars, int bin, boolean starsPerYear, WdlfModellingParameters params) throws NoSFRConstraintException {
+    public static double[] getSFR(StarPopulation stars, int bin, boolean starsPerYear, WdlfModellingParameters params) throws NoSFRConstraintException {
 
-        Range range = stars.getRange(bin);
-        double lookBackTimeMin = range.lower;
-        double lookBackTimeMax = range.upper;
-        double width = range.width();
-        
-        // Sum total number of observed WDs that formed in this bin
-        double density = 0;
-        // Variance on total SFR
-        double sigma2_density = 0;   
+        double lookBackTimeMin = stars.getTimeBinLower(bin);
+        double lookBackTimeMax = stars.getTimeBinUpper(bin);
+        double width = lookBackTimeMax - lookBackTimeMin;
         
         // Sum number of real stars represented by observed WD progenitors 
         // in this bin; only these are used to constrain SFR.
-        double nObsWds = 0;
-        for(Star star : stars.get(bin)) {
-            if(star.getIsObserved()) {
-                // Sum densities
-                density += star.getNumber();
-                // Sum errors in quadrature
-                sigma2_density += star.getSigma2Number();
-                nObsWds++;
-            }
-        }
+        double[] sums = stars.sumObservedInTimeBin(bin);
+        
+        // Sum total number of observed WDs that formed in this bin
+        double density = sums[0];
+        // Variance on total SFR
+        double sigma2_density = sums[1];
+        double nObsWds = sums[2];
         
         // CORRECT FOR UNOBSERVED WDS
         if(nObsWds==0.0) {
         	// None of the WDs produced by stars that formed in this time range lie within the range of the observed WDLF
             throw new NoSFRConstraintException("SFR bin ["+lookBackTimeMin + ":"+lookBackTimeMax+"] - no observed WDs.");
         }
-        double fracObsWds = nObsWds/stars.get(bin).size();
+        double fracObsWds = nObsWds/stars.getTimeBinWeight(bin);
         double unobservedWdCorrection =  1.0 / fracObsWds;
         density = density * unobservedWdCorrection;
         // Correct sigma on total number
@@ -287,6 +306,9 @@ public class InversionUtil {
         // produce white dwarfs).
         double A_j = 0;
         
+        // Receives the turn-off mass at each time element
+        double[] massMsto = new double[2];
+        
         for(double t=lookBackTimeMin; (t+dT/2.0)<lookBackTimeMax; t+=dT) {
             
             // Centre of this formation time element
@@ -294,7 +316,8 @@ public class InversionUtil {
             
             // Mass of stars formed at t_ms that are just forming WDs at the present time.
             // All stars that formed with lower masses have not yet produced WDs.
-            double mass_MSTO = params.getPreWdLifetime().getStellarMass(params.getMeanMetallicity(), params.getMeanHeliumContent(), t_ms)[0];
+            params.getPreWdLifetime().getStellarMass(params.getMeanMetallicity(), params.getMeanHeliumContent(), t_ms, massMsto);
+            double mass_MSTO = massMsto[0];
             
             // MS mass is within WD formation range - integrate IMF to get
             // mean fraction of stars that are too low mass to form
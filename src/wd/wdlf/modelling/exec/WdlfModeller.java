@@ -33,6 +33,8 @@ import wd.wdlf.modelling.gui.SurveyTypeForm;
 import wd.wdlf.modelling.gui.WDLFBinsForm;
 import wd.wdlf.modelling.infra.ModellingState;
 import wd.wdlf.modelling.infra.MonteCarloWDLFSolver;
+import wd.wdlf.modelling.infra.ResponseMatrixWDLFSolver;
+import wd.wdlf.modelling.infra.TrapeziumWDLFSolver;
 import wd.wdlf.modelling.infra.WDLFSolver;
 
 /**
@@ -74,6 +76,11 @@ public class WdlfModeller extends JFrame implements PropertyChangeListener
 	 */
 	public static String version = "1.02";
 	
+	/**
+	 * Number of lookback time bins used by the {@link ResponseMatrixWDLFSolver}.
+	 */
+	private static final int RESPONSE_MATRIX_TIME_BINS = 100;
+	
     /**
      * Main ModellingState object. This contains all parameters required to perform a WDLF simulation.
      */
@@ -229,7 +236,7 @@ public class WdlfModeller extends JFrame implements PropertyChangeListener
         // Calculate initial WDLF based on default parameters before showing the GUI. This allows
         // GUI components to be sized correctly. Note that we must compute this synchronously so that
         // frame is only packed once the simulation is complete.
-        WDLFSolver solver = new MonteCarloWDLFSolver();
+        WDLFSolver solver = getSolver();
         modellingState.syntheticWDLF = solver.calculateWDLF(modellingState);
         plotWDLF(modellingState.syntheticWDLF);
         
@@ -253,6 +260,22 @@ public class WdlfModeller extends JFrame implements PropertyChangeListener
         } 
     }
     
+    /**
+     * Get a {@link WDLFSolver} of the type selected in the {@link ModellingState}.
+     * @return
+     * 	The {@link WDLFSolver}.
+     */
+    private WDLFSolver getSolver()
+    {
+    	switch(modellingState.SOLVER)
+    	{
+    		case TRAPEZIUM: return new TrapeziumWDLFSolver();
+    		case RESPONSE_MATRIX: return new ResponseMatrixWDLFSolver(modellingState.syntheticSFR.t_max,
+    				RESPONSE_MATRIX_TIME_BINS, (int)Math.max(1, modellingState.n_WDs / RESPONSE_MATRIX_TIME_BINS));
+    		default: return new MonteCarloWDLFSolver();
+    	}
+    }
+
     /**
      * Check user input and commence WDLF simulation.
      */
@@ -283,7 +306,7 @@ public class WdlfModeller extends JFrame implements PropertyChangeListener
 		if(valid)
 		{	
 			// Get suitable solver:
-			final WDLFSolver solver = new MonteCarloWDLFSolver();
+			final WDLFSolver solver = getSolver();
 			solver.addPropertyChangeListener(this);
 			
 			// Run the WDLF simulation in a seperate thread (not the event dispatch thread; leave
@@ -15,7 +15,7 @@ import wd.wdlf.modelling.infra.ModellingState.SolverType;
  * 
  * Purpose:
  *  Class provides a GUI interface to set the solver type parameter of a
- * ModellingState object {MONTECARLO|TRAPEZIUM}.
+ * ModellingState object {MONTECARLO|TRAPEZIUM|RESPONSE_MATRIX}.
  * 
  * Note that this class isn't used currently, because only Monte Carlo solver
  * is implemented.
@@ -42,6 +42,7 @@ public class SolverTypeForm extends javax.swing.JPanel
     private javax.swing.JRadioButton monteCarloRadioButton;
     private javax.swing.ButtonGroup surveyTypeButtonGroup;
     private javax.swing.JRadioButton trapeziumRadioButton;
+    private javax.swing.JRadioButton responseMatrixRadioButton;
     
     /** Default constructor. */
     public SolverTypeForm()
@@ -63,6 +64,7 @@ public class SolverTypeForm extends javax.swing.JPanel
         surveyTypeButtonGroup = new javax.swing.ButtonGroup();
         monteCarloRadioButton = new javax.swing.JRadioButton();
         trapeziumRadioButton = new javax.swing.JRadioButton();
+        responseMatrixRadioButton = new javax.swing.JRadioButton();
         
         setBorder(javax.swing.BorderFactory.createTitledBorder("Select solver type"));
         
@@ -84,23 +86,33 @@ public class SolverTypeForm extends javax.swing.JPanel
             }
         });        
         
+        surveyTypeButtonGroup.add(responseMatrixRadioButton);
+        responseMatrixRadioButton.setText("Response matrix");
+        responseMatrixRadioButton.addActionListener(new java.awt.event.ActionListener() {
+            @Override
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                responseMatrixRadioButtonActionPerformed(evt);
+            }
+        });
         
         switch(modellingState.SOLVER)
         {
             case MONTECARLO: 
                 monteCarloRadioButton.setSelected(true);
-                trapeziumRadioButton.setSelected(false);
                 break;
             case TRAPEZIUM:
-                monteCarloRadioButton.setSelected(false);
                 trapeziumRadioButton.setSelected(true); 
                 break;
+            case RESPONSE_MATRIX:
+                responseMatrixRadioButton.setSelected(true);
+                break;
         }
         
         this.setLayout(new BorderLayout());
         
         add(monteCarloRadioButton, BorderLayout.NORTH);
-        add(trapeziumRadioButton, BorderLayout.SOUTH);
+        add(trapeziumRadioButton, BorderLayout.CENTER);
+        add(responseMatrixRadioButton, BorderLayout.SOUTH);
         
     }
                           
@@ -115,17 +127,24 @@ public class SolverTypeForm extends javax.swing.JPanel
         modellingState.SOLVER = SolverType.TRAPEZIUM;
     }
 
+    private void responseMatrixRadioButtonActionPerformed(ActionEvent evt) 
+    {
+        modellingState.SOLVER = SolverType.RESPONSE_MATRIX;
+    }
+
     /** Used to disable buttons while computing WDLF. */
     public void disableComponents()
     {
         monteCarloRadioButton.setEnabled(false);
         trapeziumRadioButton.setEnabled(false);
+        responseMatrixRadioButton.setEnabled(false);
     }
     /** Used to enable buttons after WDLF computation finished. */
     public void enableComponents()
     {
         monteCarloRadioButton.setEnabled(true);
         trapeziumRadioButton.setEnabled(true);
+        responseMatrixRadioButton.setEnabled(true);
     }
     
     /** Test function to check appearance of form. */
@@ -28,11 +28,12 @@ public class ModellingState extends State {
     // A couple of enumerated type definitions for basic survey options
     
     /**
-     * Types of WDLF solver. This isn't used currently - only Monte Carlo supported.
+     * Types of WDLF solver.
      */
     public static enum SolverType {
     	TRAPEZIUM,
-    	MONTECARLO
+    	MONTECARLO,
+    	RESPONSE_MATRIX
     };
     
     /**
@@ -69,7 +70,7 @@ public class ModellingState extends State {
     public BaseSfr syntheticSFR = null;
     
     /**
-     * Solver type {MONTECARLO|TRAPEZIUM}. Not used at present (Monte Carlo).
+     * Solver type {MONTECARLO|TRAPEZIUM|RESPONSE_MATRIX}.
      */
     public SolverType SOLVER = SolverType.MONTECARLO;
     
@@ -1,13 +1,12 @@
 package wd.wdlf.modelling.infra;
 
-import java.util.Collection;
 import java.util.Random;
 
-import numeric.data.RangeMap;
 import photometry.Filter;
 import wd.models.algo.WdCoolingModelSet;
 import wd.wdlf.algoimpl.ModelWDLF;
 import wd.wdlf.dm.Star;
+import wd.wdlf.dm.WdlfBinAccumulator;
 import wd.wdlf.util.ModelWdlfUtil;
 
 /**
@@ -21,11 +20,29 @@ public class MonteCarloWDLFSolver extends WDLFSolver {
     // Used to add Gaussian error to bolometric magnitude
     private static Random error = new Random();
     
+    /**
+     * Should the progenitor masses be drawn by importance sampling? See {@link Star#drawWhiteDwarf(sfr.algo.BaseSfr,
+     * wd.wdlf.dm.WdlfModellingParameters)}.
+     */
+    private final boolean importanceSampling;
+    
     /**
      * Default constructor.
      */
     public MonteCarloWDLFSolver() {
-    	
+    	this(false);
+    }
+    
+    /**
+     * Main constructor.
+     * 
+     * @param importanceSampling
+     * 	If true, the progenitor mass of each star is drawn from the IMF above the main sequence turn-off
+     * mass for its formation time, and the star is weighted by the fraction of the IMF above the turn-off
+     * mass. Otherwise masses are drawn from the full IMF and stars that haven't formed WDs are discarded.
+     */
+    public MonteCarloWDLFSolver(boolean importanceSampling) {
+    	this.importanceSampling = importanceSampling;
     }
     
     /**
@@ -34,8 +51,9 @@ public class MonteCarloWDLFSolver extends WDLFSolver {
     @Override
     public final ModelWDLF calculateWDLF(ModellingState modellingState) {
         
-        // Get WhiteDwarfs object for accumulating simulated stars.
-        RangeMap<Star> whiteDwarfs = new RangeMap<Star>(modellingState.wdlfBinCentres, modellingState.wdlfBinWidths);
+        // Accumulates the statistics of the simulated stars in each magnitude bin; the stars themselves
+        // are not retained, so memory use is independent of the number of simulated stars.
+        WdlfBinAccumulator whiteDwarfs = new WdlfBinAccumulator(modellingState.wdlfBinCentres, modellingState.wdlfBinWidths);
         
         // Counter for current number of WDs formed in a given run
         long wd;
@@ -60,14 +78,24 @@ public class MonteCarloWDLFSolver extends WDLFSolver {
         // Get the Filter
         Filter filter = modellingState.params.getFilter();
         
+        // Records whether the WD models had to be extrapolated for each star
+        boolean[] extrapolated = new boolean[1];
+        
         // Now generate stars until desired number of WDs has been produced
         for(wd=0; wd<modellingState.n_WDs; ) {
         
-            // Create a new Star using current distributions
-            Star star = new Star(modellingState.syntheticSFR, modellingState.params);
+            // Create a new Star using current distributions. With importance sampling, the Star is
+            // null if no stars formed at the drawn time have become WDs.
+            Star star = importanceSampling ?
+            		Star.drawWhiteDwarf(modellingState.syntheticSFR, modellingState.params) :
+            		new Star(modellingState.syntheticSFR, modellingState.params);
             
             N_SIM_STARS++;
             
+            if(star == null) {
+            	continue;
+            }
+            
             // XXX Restrict WDLF to 0.9-1.0 solar mass WDs
 //            if(star.getWhiteDwarfMass() < 0.9 || star.getWhiteDwarfMass() > 1.1) {
 //            	continue;
@@ -78,7 +106,8 @@ public class MonteCarloWDLFSolver extends WDLFSolver {
             	
                 // Star HAS become a WD
                 // Get bolometric magnitude at present day
-                double mbol = wdCoolingModels.quantity(coolingTimeWD, star.getWhiteDwarfMass(), star.getWhiteDwarfAtmph(), filter);
+                // and whether the WD models had to be extrapolated to get it
+                double mbol = wdCoolingModels.quantity(coolingTimeWD, star.getWhiteDwarfMass(), star.getWhiteDwarfAtmph(), filter, extrapolated);
                 
                 // Add Gaussian noise
                 mbol += error.nextGaussian() * modellingState.params.getSigM();
@@ -86,10 +115,9 @@ public class MonteCarloWDLFSolver extends WDLFSolver {
                 // Set bolometric magnitude of simulation star.
                 star.setMag(mbol);
                 
-                // Determine if WD models had to be extrapolated in order
+                // Record if WD models had to be extrapolated in order
                 // to get this bolometric magnitude.
-                star.setExtrap(wdCoolingModels.isExtrapolated(coolingTimeWD, star.getWhiteDwarfMass(),
-                                           star.getWhiteDwarfAtmph(), filter));
+                star.setExtrap(extrapolated[0]);
                 
                 // In volume limited survey, all stars are observed and each
                 // carries a weight of 1.
@@ -99,7 +127,7 @@ public class MonteCarloWDLFSolver extends WDLFSolver {
                                 
                         // Add star to simulated WDLF, if it lies within bolometric
                         // magnitude range of bins.
-                        star.setIsObserved(whiteDwarfs.add(star.getMag(), star));
+                        star.setIsObserved(whiteDwarfs.add(star));
                         
                         // Increment WD counter, if star was added to WDLF
                         if(star.getIsObserved()) wd++;
@@ -148,7 +176,7 @@ public class MonteCarloWDLFSolver extends WDLFSolver {
                         
                             // Add star to simulated WDLF, if it lies within bolometric
                             // magnitude range of bins.
-                            star.setIsObserved(whiteDwarfs.add(star.getMag(), star));
+                            star.setIsObserved(whiteDwarfs.add(star));
                         
                             // Increment WD counter, if star was added to WDLF
                             if(star.getIsObserved()) wd++;
@@ -176,12 +204,7 @@ public class MonteCarloWDLFSolver extends WDLFSolver {
         // rate. The weight factor is calculated here:
         WEIGHT = N_REAL_STARS / N_SIM_STARS;
 
-        for(int i=0; i<whiteDwarfs.size(); i++) {
-        	Collection<Star> stars = whiteDwarfs.get(i);
-	        for(Star star : stars) {
-	            star.reweight(WEIGHT, 0);
-	        }
-        }
+        whiteDwarfs.reweight(WEIGHT);
         
         // Derive WDLF from simulated population, in per-mbol units.
         
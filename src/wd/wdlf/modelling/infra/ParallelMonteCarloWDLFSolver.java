@@ -0,0 +1,325 @@
+package wd.wdlf.modelling.infra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import photometry.Filter;
+import wd.models.algo.WdCoolingModelSet;
+import wd.wdlf.algoimpl.ModelWDLF;
+import wd.wdlf.dm.Star;
+import wd.wdlf.dm.WdlfBinAccumulator;
+import wd.wdlf.util.ModelWdlfUtil;
+
+/**
+ * Instances of this class are used to calculate synthetic WDLF using Monte Carlo integration method,
+ * with the simulation of the stars divided among multiple threads.
+ *
+ * The total number of WDs is divided into one chunk per thread. Each chunk is simulated in a {@link ForkJoinPool}
+ * using its own stream of random numbers, which is seeded by splitting a master {@link SplittableRandom} in a fixed
+ * order. Each chunk accumulates stars in its own {@link WdlfBinAccumulator}, and these are merged in chunk order once all the
+ * chunks have completed. The resulting WDLF is therefore reproducible for a given seed and number of threads.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class ParallelMonteCarloWDLFSolver extends WDLFSolver {
+
+	/**
+	 * Default seed for the master random number generator, in order to make applications deterministic.
+	 */
+	public static final long DEFAULT_SEED = 58315548397523634L;
+
+	/**
+	 * Seed for the master random number generator from which the per-thread streams are split.
+	 */
+	private final long seed;
+
+	/**
+	 * Number of threads to divide the simulation among; this is also the number of chunks.
+	 */
+	private final int nThreads;
+
+	/**
+	 * Should the progenitor masses be drawn by importance sampling? See {@link MonteCarloWDLFSolver#MonteCarloWDLFSolver(boolean)}.
+	 */
+	private final boolean importanceSampling;
+
+	/**
+	 * Counts the number of WDs added to the WDLF by all threads, for progress reporting.
+	 */
+	private AtomicLong wdCounter;
+
+	/**
+	 * The highest percentage progress claimed for reporting by any thread.
+	 */
+	private AtomicInteger reportedPercent;
+
+    /**
+     * Default constructor; uses the default seed and one thread per available processor.
+     */
+    public ParallelMonteCarloWDLFSolver() {
+    	this(DEFAULT_SEED, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Main constructor.
+     *
+     * @param seed
+     * 	Seed for the master random number generator.
+     * @param nThreads
+     * 	Number of threads to divide the simulation among.
+     */
+    public ParallelMonteCarloWDLFSolver(long seed, int nThreads) {
+    	this(seed, nThreads, false);
+    }
+
+    /**
+     * Main constructor.
+     *
+     * @param seed
+     * 	Seed for the master random number generator.
+     * @param nThreads
+     * 	Number of threads to divide the simulation among.
+     * @param importanceSampling
+     * 	If true, the progenitor masses are drawn by importance sampling; see
+     * {@link MonteCarloWDLFSolver#MonteCarloWDLFSolver(boolean)}.
+     */
+    public ParallelMonteCarloWDLFSolver(long seed, int nThreads, boolean importanceSampling) {
+    	if(nThreads < 1) {
+    		throw new IllegalArgumentException("Number of threads must be positive! Found "+nThreads);
+    	}
+    	this.seed = seed;
+    	this.nThreads = nThreads;
+    	this.importanceSampling = importanceSampling;
+    }
+
+    /**
+     * Parallel Monte Carlo LF integration code.
+     */
+    @Override
+    public final ModelWDLF calculateWDLF(ModellingState modellingState) {
+
+        // Divide the WDs among the chunks; the first few chunks take the remainder
+        long nWdsPerChunk = modellingState.n_WDs / nThreads;
+        long remainder = modellingState.n_WDs % nThreads;
+
+        // Split the master random number generator in a fixed order to get the seed for each chunk
+        SplittableRandom master = new SplittableRandom(seed);
+
+        wdCounter = new AtomicLong(0l);
+        reportedPercent = new AtomicInteger(0);
+        synchronized(this) {
+        	setProgress(0);
+        }
+
+        List<Callable<Chunk>> chunks = new ArrayList<>(nThreads);
+        for(int c=0; c<nThreads; c++) {
+        	long nWds = nWdsPerChunk + (c < remainder ? 1 : 0);
+        	chunks.add(new Chunk(modellingState, nWds, new Random(master.split().nextLong())));
+        }
+
+        // Simulate all the chunks
+        List<Chunk> results = new ArrayList<>(nThreads);
+        ForkJoinPool pool = new ForkJoinPool(nThreads);
+        try {
+        	for(Future<Chunk> future : pool.invokeAll(chunks)) {
+        		results.add(future.get());
+        	}
+        }
+        catch (InterruptedException | ExecutionException e) {
+        	throw new RuntimeException("Parallel WDLF simulation failed!", e);
+		}
+        finally {
+        	pool.shutdown();
+        }
+
+        // Merge the per-chunk populations, in chunk order
+        WdlfBinAccumulator whiteDwarfs = new WdlfBinAccumulator(modellingState.wdlfBinCentres, modellingState.wdlfBinWidths);
+
+        // Count number of simulation stars created
+        double N_SIM_STARS = 0;
+
+        for(Chunk chunk : results) {
+        	N_SIM_STARS += chunk.nSimStars;
+        	whiteDwarfs.add(chunk.whiteDwarfs);
+        }
+
+        // Integrate SFR to get total number of real stars created.
+        double N_REAL_STARS = modellingState.syntheticSFR.integrateSFR()[0];
+
+        // Scale the abundance of WDs to reflect the true number of stars formed during simulation time.
+        double WEIGHT = N_REAL_STARS / N_SIM_STARS;
+
+        whiteDwarfs.reweight(WEIGHT);
+
+        // Derive WDLF from simulated population, in per-mbol units.
+        ModelWDLF modelWdlf = ModelWdlfUtil.getLF(true, whiteDwarfs);
+        modelWdlf.setName("Simulated WDLF");
+        modelWdlf.setFilter(modellingState.params.getFilter());
+
+        return modelWdlf;
+    }
+
+    /**
+     * Increment the count of WDs added to the WDLF by all threads, and update the progress.
+     *
+     * @param nWdsTotal
+     * 	The total number of WDs to be simulated.
+     */
+    private void incrementProgress(long nWdsTotal) {
+    	// If ints are used to count WD numbers, this calculation will overflow at about 20 million
+    	// WDs. Use longs then cast percentage to int.
+    	int percent = (int)(100l * wdCounter.incrementAndGet() / nWdsTotal);
+    	// Only the thread that advances the reported percentage updates the progress, to avoid
+    	// contention between the threads. The update itself is synchronized so that the listeners
+    	// see the changes in order.
+    	int reported = reportedPercent.get();
+    	while(percent > reported) {
+    		if(reportedPercent.compareAndSet(reported, percent)) {
+    			synchronized(this) {
+    				if(percent > progress) {
+    					setProgress(percent);
+    				}
+    			}
+    			return;
+    		}
+    		reported = reportedPercent.get();
+    	}
+    }
+
+    /**
+     * Simulates one chunk of the total number of WDs, using its own random number stream and
+     * accumulating the stars in its own {@link WdlfBinAccumulator}.
+     */
+    private class Chunk implements Callable<Chunk> {
+
+    	/**
+    	 * The {@link ModellingState}; this is only read by the chunk.
+    	 */
+    	private final ModellingState modellingState;
+
+    	/**
+    	 * Number of WDs to be simulated in this chunk.
+    	 */
+    	private final long nWds;
+
+    	/**
+    	 * The random number stream for this chunk.
+    	 */
+    	private final Random random;
+
+    	/**
+    	 * Simulated WDs, binned according to magnitude.
+    	 */
+    	private WdlfBinAccumulator whiteDwarfs;
+
+    	/**
+    	 * Number of simulation stars created in this chunk.
+    	 */
+    	private double nSimStars = 0;
+
+    	/**
+    	 * Main constructor.
+    	 *
+    	 * @param modellingState
+    	 * 	The {@link ModellingState}.
+    	 * @param nWds
+    	 * 	Number of WDs to be simulated in this chunk.
+    	 * @param random
+    	 * 	The random number stream for this chunk.
+    	 */
+    	private Chunk(ModellingState modellingState, long nWds, Random random) {
+    		this.modellingState = modellingState;
+    		this.nWds = nWds;
+    		this.random = random;
+    	}
+
+    	/**
+    	 * {@inheritDoc}
+    	 */
+		@Override
+		public Chunk call() {
+
+	        whiteDwarfs = new WdlfBinAccumulator(modellingState.wdlfBinCentres, modellingState.wdlfBinWidths);
+
+	        WdCoolingModelSet wdCoolingModels = modellingState.params.getBaseWdCoolingModels();
+	        Filter filter = modellingState.params.getFilter();
+
+	        double coolingTimeWD;
+
+	        // Records whether the WD models had to be extrapolated for each star
+	        boolean[] extrapolated = new boolean[1];
+
+	        for(long wd=0; wd<nWds; ) {
+
+	            // Create a new Star using current distributions. With importance sampling, the Star is
+	            // null if no stars formed at the drawn time have become WDs.
+	            Star star = importanceSampling ?
+	            		Star.drawWhiteDwarf(modellingState.syntheticSFR, modellingState.params, random) :
+	            		new Star(modellingState.syntheticSFR, modellingState.params, random);
+
+	            nSimStars++;
+
+	            // Determine time that star has been cooling as a WD
+	            if(star != null && (coolingTimeWD = (star.getTotalAge() - star.getPreWdLifetime())) > 0.0) {
+
+	                // Star HAS become a WD
+	                // Get bolometric magnitude at present day
+	                double mbol = wdCoolingModels.quantity(coolingTimeWD, star.getWhiteDwarfMass(), star.getWhiteDwarfAtmph(), filter, extrapolated);
+
+	                // Add Gaussian noise
+	                mbol += random.nextGaussian() * modellingState.params.getSigM();
+
+	                star.setMag(mbol);
+
+	                star.setExtrap(extrapolated[0]);
+
+	                switch(modellingState.surveyType) {
+	                    case VOLUME_LIMITED: {
+
+	                        // All stars are observed and each carries a weight of 1.
+	                        star.setIsObserved(whiteDwarfs.add(star));
+
+	                        if(star.getIsObserved()) {
+	                        	wd++;
+	                        	incrementProgress(modellingState.n_WDs);
+	                        }
+	                        break;
+	                    }
+	                    case MAGNITUDE_LIMITED: {
+
+	                    	// See MonteCarloWDLFSolver for details of the magnitude limited case
+	                        double survey_edge = Star.getDmax(modellingState.apparentMagLimit, -5);
+	                        double v_gen_tot   = modellingState.surveyVolume.interpolateY(survey_edge)[0];
+	                        double d_max = star.getDmax(modellingState.apparentMagLimit);
+	                        double v_gen_max = modellingState.surveyVolume.interpolateY(d_max)[0];
+	                        double obs_probability = v_gen_max/v_gen_tot;
+
+	                        if(random.nextDouble() < obs_probability) {
+
+	                            star.reweight(v_gen_tot/v_gen_max, 0);
+	                            star.setIsObserved(whiteDwarfs.add(star));
+
+	                            if(star.getIsObserved()) {
+	                            	wd++;
+	                            	incrementProgress(modellingState.n_WDs);
+	                            }
+	                        }
+	                        break;
+	                    }
+	                }
+	            }
+	        }
+
+			return this;
+		}
+    }
+}
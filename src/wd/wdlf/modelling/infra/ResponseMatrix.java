@@ -0,0 +1,615 @@
+package wd.wdlf.modelling.infra;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import photometry.Filter;
+import sfr.algo.BaseSfr;
+import utils.TableCache;
+import imf.algo.BaseImf;
+import wd.models.algo.WdCoolingModelSet;
+import wd.models.infra.WdAtmosphereType;
+import wd.wdlf.algoimpl.ModelWDLF;
+import wd.wdlf.dm.Star;
+import wd.wdlf.dm.WdlfBinAccumulator;
+import wd.wdlf.dm.WdlfModellingParameters;
+import wd.wdlf.util.ModelWdlfUtil;
+
+/**
+ * Class represents the response of the WDLF to star formation in each of a set of lookback time bins.
+ *
+ * For fixed input physics the WDLF is linear in the star formation rate: if N_j stars form in lookback time
+ * bin j, then the number of WDs in magnitude bin i is sum_j K_ij N_j, where the kernel element K_ij is the
+ * number of WDs in magnitude bin i per star formed in time bin j. The kernel is estimated by simulating a
+ * fixed number of WDs formed uniformly within each time bin, in the same way as the {@link MonteCarloWDLFSolver}.
+ * Once computed, the WDLF for any star formation rate is a matrix-vector product, which takes milliseconds
+ * rather than the seconds to minutes required for a full simulation.
+ *
+ * The kernel records the number of simulation stars in each element along with the number-weighted moments
+ * of the WD mass and total stellar age, so the mean mass and age and the Monte Carlo variance on the number
+ * of stars in each magnitude bin are computed exactly as for a full simulation in which the simulation stars
+ * in each time bin represent N_j / S_j real stars, where S_j is the number of simulation stars formed in that
+ * time bin. The approximation is that the stars are assumed to form uniformly within each time bin, so the
+ * time bins should be narrow compared to the features of the star formation rate.
+ *
+ * Kernels are expensive to compute, so if the {@link TableCache} is enabled they are written to it and read back
+ * on subsequent runs with the same modelling parameters, binning, number of simulated WDs and seed. The cached
+ * kernel is also identified by the {@link #VERSION} of the kernel computation and by a checksum of the model
+ * data (see {@link #getModelChecksum(WdlfModellingParameters)}), so that kernels are recomputed when either
+ * the algorithm or the model files change.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class ResponseMatrix {
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger logger = Logger.getLogger(ResponseMatrix.class.getName());
+
+	/**
+	 * Maximum number of simulation stars to create per WD requested in each time bin; this limits the
+	 * simulation in recent time bins in which few or no stars have had time to form WDs.
+	 */
+	private static final int MAX_STARS_PER_WD = 100;
+
+	/**
+	 * Version of the kernel computation and table layout; this must be incremented whenever a change to the
+	 * code would change the kernel, so that kernels in the {@link TableCache} are recomputed.
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * Number of progenitor masses at which the pre-WD lifetime and IFMR are evaluated for the model checksum.
+	 */
+	private static final int CHECKSUM_MASSES = 65;
+
+	/**
+	 * Cooling times at which the WD cooling models are evaluated for the model checksum [yr].
+	 */
+	private static final double[] CHECKSUM_TCOOL = {1e6, 1e7, 1e8, 3e8, 1e9, 2e9, 4e9, 6e9, 8e9, 1e10, 1.2e10, 1.4e10};
+
+	/**
+	 * Lower edges of the lookback time bins [yr].
+	 */
+	private final double[] timeBinLower;
+
+	/**
+	 * Upper edges of the lookback time bins [yr].
+	 */
+	private final double[] timeBinUpper;
+
+	/**
+	 * Centres of the magnitude bins.
+	 */
+	private final double[] magBinCentres;
+
+	/**
+	 * Widths of the magnitude bins.
+	 */
+	private final double[] magBinWidths;
+
+	/**
+	 * Number of simulation stars formed in each time bin.
+	 */
+	private final double[] nSimStars;
+
+	/**
+	 * Number of simulation stars formed in each time bin that are WDs at the present day, whether or not
+	 * they lie in one of the magnitude bins.
+	 */
+	private final double[] nWds;
+
+	/**
+	 * Number of simulation stars in each element, indexed by [magnitude bin * number of time bins + time bin].
+	 */
+	private final double[] count;
+
+	/**
+	 * Sum of the WD mass of the simulation stars in each element [M_{Solar}].
+	 */
+	private final double[] sumMass;
+
+	/**
+	 * Sum of the squared WD mass of the simulation stars in each element [M_{Solar}^2].
+	 */
+	private final double[] sumMass2;
+
+	/**
+	 * Sum of the total stellar age of the simulation stars in each element [yr].
+	 */
+	private final double[] sumAge;
+
+	/**
+	 * Sum of the squared total stellar age of the simulation stars in each element [yr^2].
+	 */
+	private final double[] sumAge2;
+
+	/**
+	 * Constructor from the columns of the table representation (see {@link #toTable()}).
+	 *
+	 * @param table
+	 * 	The table representation of the {@link ResponseMatrix}.
+	 */
+	private ResponseMatrix(double[][] table) {
+		timeBinLower = table[0];
+		timeBinUpper = table[1];
+		magBinCentres = table[2];
+		magBinWidths = table[3];
+		nSimStars = table[4];
+		nWds = table[5];
+		count = table[6];
+		sumMass = table[7];
+		sumMass2 = table[8];
+		sumAge = table[9];
+		sumAge2 = table[10];
+	}
+
+	/**
+	 * Get the table representation of the {@link ResponseMatrix}, for storage in the {@link TableCache}.
+	 *
+	 * @return
+	 * 	The table representation of the {@link ResponseMatrix}.
+	 */
+	private double[][] toTable() {
+		return new double[][]{timeBinLower, timeBinUpper, magBinCentres, magBinWidths, nSimStars, nWds,
+			count, sumMass, sumMass2, sumAge, sumAge2};
+	}
+
+	/**
+	 * Get the {@link ResponseMatrix} for the given modelling parameters and binning, from the cache if it has
+	 * been computed previously or else by simulation.
+	 *
+	 * @param params
+	 * 	The {@link WdlfModellingParameters}.
+	 * @param magBinCentres
+	 * 	Centres of the magnitude bins; must be in ascending order with non-overlapping bins.
+	 * @param magBinWidths
+	 * 	Widths of the magnitude bins.
+	 * @param timeBinCentres
+	 * 	Centres of the lookback time bins [yr]; must be in ascending order with non-overlapping bins.
+	 * @param timeBinWidths
+	 * 	Widths of the lookback time bins [yr].
+	 * @param nWdsPerTimeBin
+	 * 	The number of WDs to simulate in each lookback time bin.
+	 * @param seed
+	 * 	Seed for the random number generator.
+	 * @return
+	 * 	The {@link ResponseMatrix}.
+	 */
+	public static ResponseMatrix getResponseMatrix(final WdlfModellingParameters params, final double[] magBinCentres,
+			final double[] magBinWidths, final double[] timeBinCentres, final double[] timeBinWidths,
+			final int nWdsPerTimeBin, final long seed) {
+
+		if(timeBinCentres.length != timeBinWidths.length) {
+			throw new IllegalArgumentException("Number of time bin centres ("+timeBinCentres.length+") and time bin widths ("
+					+ timeBinWidths.length+") differ!");
+		}
+		if(nWdsPerTimeBin < 1) {
+			throw new IllegalArgumentException("Number of WDs per time bin must be positive! Found "+nWdsPerTimeBin);
+		}
+
+		// The cached kernel is identified by a checksum of all the inputs
+		StringBuilder inputs = new StringBuilder();
+		inputs.append("v").append(VERSION).append(' ');
+		inputs.append(params.toString());
+		inputs.append(String.format("models %08x ", getModelChecksum(params)));
+		inputs.append(Arrays.toString(magBinCentres)).append(Arrays.toString(magBinWidths));
+		inputs.append(Arrays.toString(timeBinCentres)).append(Arrays.toString(timeBinWidths));
+		inputs.append(nWdsPerTimeBin).append(' ').append(seed);
+		CRC32 crc = new CRC32();
+		crc.update(inputs.toString().getBytes(StandardCharsets.UTF_8));
+		long checksum = crc.getValue();
+
+		String key = String.format("wdlf-response-%08x", checksum);
+
+		try {
+			return new ResponseMatrix(TableCache.getTable(key, checksum,
+					() -> simulate(params, magBinCentres, magBinWidths, timeBinCentres, timeBinWidths, nWdsPerTimeBin, seed).toTable()));
+		}
+		catch (IOException e) {
+			// Not expected, as the simulation doesn't read any files
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Compute a checksum of the model data used to compute the kernel. The models are identified in the kernel
+	 * key by name only, so this detects changes to the tabulated models that the name doesn't reflect. The
+	 * pre-WD lifetime and final mass are evaluated at a grid of progenitor masses at the mean composition, and
+	 * the WD cooling models in the chosen filter are evaluated at a grid of cooling times at each of their mass
+	 * grid points, for each atmosphere type that is drawn. This requires the models to be loaded, but is cheap
+	 * compared to computing the kernel.
+	 *
+	 * @param params
+	 * 	The {@link WdlfModellingParameters}.
+	 * @return
+	 * 	The checksum of the model data.
+	 */
+	private static long getModelChecksum(WdlfModellingParameters params) {
+
+		double z = params.getMeanMetallicity();
+		double y = params.getMeanHeliumContent();
+
+		ByteBuffer buffer = ByteBuffer.allocate(Double.BYTES);
+		CRC32 crc = new CRC32();
+
+		for(int m=0; m<CHECKSUM_MASSES; m++) {
+			double mass = BaseImf.M_lower + m * (BaseImf.M_upper - BaseImf.M_lower) / (CHECKSUM_MASSES - 1);
+			update(crc, buffer, params.getPreWdLifetime().getPreWdLifetime(z, y, mass)[0]);
+			update(crc, buffer, params.getIFMR().getMf(mass));
+		}
+
+		WdCoolingModelSet wdCoolingModels = params.getBaseWdCoolingModels();
+		Filter filter = params.getFilter();
+		boolean[] extrapolated = new boolean[1];
+		for(WdAtmosphereType atm : WdAtmosphereType.values()) {
+			double fraction = (atm == WdAtmosphereType.H) ? params.getW_H() : 1.0 - params.getW_H();
+			if(fraction <= 0.0 || !wdCoolingModels.getWdAtmosphereTypes().contains(atm)) {
+				continue;
+			}
+			for(double mass : wdCoolingModels.getMassGridPoints(atm)) {
+				for(double tcool : CHECKSUM_TCOOL) {
+					update(crc, buffer, wdCoolingModels.quantity(tcool, mass, atm, filter, extrapolated));
+				}
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Add a value to a checksum.
+	 *
+	 * @param crc
+	 * 	The {@link CRC32}.
+	 * @param buffer
+	 * 	Buffer used to convert the value to bytes.
+	 * @param value
+	 * 	The value.
+	 */
+	private static void update(CRC32 crc, ByteBuffer buffer, double value) {
+		buffer.clear();
+		buffer.putDouble(value);
+		crc.update(buffer.array());
+	}
+
+	/**
+	 * Compute the {@link ResponseMatrix} by Monte Carlo simulation. The time bins are simulated in parallel,
+	 * each using its own stream of random numbers split from a master generator in a fixed order, so the
+	 * result is reproducible for a given seed.
+	 *
+	 * @param params
+	 * 	The {@link WdlfModellingParameters}.
+	 * @param magBinCentres
+	 * 	Centres of the magnitude bins.
+	 * @param magBinWidths
+	 * 	Widths of the magnitude bins.
+	 * @param timeBinCentres
+	 * 	Centres of the lookback time bins [yr].
+	 * @param timeBinWidths
+	 * 	Widths of the lookback time bins [yr].
+	 * @param nWdsPerTimeBin
+	 * 	The number of WDs to simulate in each lookback time bin.
+	 * @param seed
+	 * 	Seed for the random number generator.
+	 * @return
+	 * 	The {@link ResponseMatrix}.
+	 */
+	private static ResponseMatrix simulate(WdlfModellingParameters params, double[] magBinCentres, double[] magBinWidths,
+			double[] timeBinCentres, double[] timeBinWidths, int nWdsPerTimeBin, long seed) {
+
+		final int nT = timeBinCentres.length;
+		final int nM = magBinCentres.length;
+
+		logger.info("Simulating WDLF response matrix with "+nT+" time bins and "+nWdsPerTimeBin+" WDs per bin");
+
+		double[][] table = new double[11][];
+		table[0] = new double[nT];
+		table[1] = new double[nT];
+		for(int j=0; j<nT; j++) {
+			table[0][j] = timeBinCentres[j] - timeBinWidths[j]/2.0;
+			table[1][j] = timeBinCentres[j] + timeBinWidths[j]/2.0;
+		}
+		table[2] = magBinCentres.clone();
+		table[3] = magBinWidths.clone();
+		table[4] = new double[nT];
+		table[5] = new double[nT];
+		for(int k=6; k<11; k++) {
+			table[k] = new double[nM * nT];
+		}
+		final ResponseMatrix kernel = new ResponseMatrix(table);
+
+		// Seed for each time bin
+		SplittableRandom master = new SplittableRandom(seed);
+		final long[] seeds = new long[nT];
+		for(int j=0; j<nT; j++) {
+			seeds[j] = master.split().nextLong();
+		}
+
+		final WdCoolingModelSet wdCoolingModels = params.getBaseWdCoolingModels();
+		final Filter filter = params.getFilter();
+
+		// Used only to locate the magnitude bin of each star
+		final WdlfBinAccumulator bins = new WdlfBinAccumulator(magBinCentres, magBinWidths);
+
+		// Each time bin writes to its own elements of the kernel
+		IntStream.range(0, nT).parallel().forEach(j -> {
+
+			Random random = new Random(seeds[j]);
+			boolean[] extrapolated = new boolean[1];
+			long maxStars = (long)MAX_STARS_PER_WD * nWdsPerTimeBin;
+			long nSim = 0;
+			long nWd = 0;
+
+			while(nWd < nWdsPerTimeBin && nSim < maxStars) {
+
+				Star star = new Star(kernel.timeBinLower[j], kernel.timeBinUpper[j], params, random);
+				nSim++;
+
+				double coolingTimeWD = star.getTotalAge() - star.getPreWdLifetime();
+				if(coolingTimeWD > 0.0) {
+
+					nWd++;
+
+					double mag = wdCoolingModels.quantity(coolingTimeWD, star.getWhiteDwarfMass(), star.getWhiteDwarfAtmph(), filter, extrapolated);
+					mag += random.nextGaussian() * params.getSigM();
+
+					int i = bins.getBin(mag);
+					if(i >= 0) {
+						int el = i * nT + j;
+						double mass = star.getWhiteDwarfMass();
+						double age = star.getTotalAge();
+						kernel.count[el]++;
+						kernel.sumMass[el] += mass;
+						kernel.sumMass2[el] += mass * mass;
+						kernel.sumAge[el] += age;
+						kernel.sumAge2[el] += age * age;
+					}
+				}
+			}
+
+			kernel.nSimStars[j] = nSim;
+			kernel.nWds[j] = nWd;
+		});
+
+		return kernel;
+	}
+
+	/**
+	 * Determine if the magnitude bins of the {@link ResponseMatrix} are the same as those given.
+	 *
+	 * @param magBinCentres
+	 * 	Centres of the magnitude bins.
+	 * @param magBinWidths
+	 * 	Widths of the magnitude bins.
+	 * @return
+	 * 	True if the magnitude bins are the same as those given.
+	 */
+	public boolean hasMagBins(double[] magBinCentres, double[] magBinWidths) {
+		return Arrays.equals(this.magBinCentres, magBinCentres) && Arrays.equals(this.magBinWidths, magBinWidths);
+	}
+
+	/**
+	 * Determine if the lookback time bins of the {@link ResponseMatrix} are the same as those given.
+	 *
+	 * @param timeBinCentres
+	 * 	Centres of the lookback time bins [yr].
+	 * @param timeBinWidths
+	 * 	Widths of the lookback time bins [yr].
+	 * @return
+	 * 	True if the lookback time bins are the same as those given.
+	 */
+	public boolean hasTimeBins(double[] timeBinCentres, double[] timeBinWidths) {
+		if(timeBinCentres.length != timeBinLower.length || timeBinWidths.length != timeBinLower.length) {
+			return false;
+		}
+		// Compute the edges in the same way as when the kernel was simulated
+		double[] lower = new double[timeBinCentres.length];
+		double[] upper = new double[timeBinCentres.length];
+		for(int j=0; j<timeBinCentres.length; j++) {
+			lower[j] = timeBinCentres[j] - timeBinWidths[j]/2.0;
+			upper[j] = timeBinCentres[j] + timeBinWidths[j]/2.0;
+		}
+		return Arrays.equals(timeBinLower, lower) && Arrays.equals(timeBinUpper, upper);
+	}
+
+	/**
+	 * Get the number of lookback time bins.
+	 * @return
+	 * 	The number of lookback time bins.
+	 */
+	public int getNumberOfTimeBins() {
+		return timeBinLower.length;
+	}
+
+	/**
+	 * Get the number of magnitude bins.
+	 * @return
+	 * 	The number of magnitude bins.
+	 */
+	public int getNumberOfMagBins() {
+		return magBinCentres.length;
+	}
+
+	/**
+	 * Get the lower edge of the given lookback time bin.
+	 * @param j
+	 * 	The time bin index.
+	 * @return
+	 * 	The lower edge of the time bin [yr].
+	 */
+	public double getTimeBinLower(int j) {
+		return timeBinLower[j];
+	}
+
+	/**
+	 * Get the upper edge of the given lookback time bin.
+	 * @param j
+	 * 	The time bin index.
+	 * @return
+	 * 	The upper edge of the time bin [yr].
+	 */
+	public double getTimeBinUpper(int j) {
+		return timeBinUpper[j];
+	}
+
+	/**
+	 * Get the centre of the given magnitude bin.
+	 * @param i
+	 * 	The magnitude bin index.
+	 * @return
+	 * 	The centre of the magnitude bin.
+	 */
+	public double getMagBinCentre(int i) {
+		return magBinCentres[i];
+	}
+
+	/**
+	 * Get the width of the given magnitude bin.
+	 * @param i
+	 * 	The magnitude bin index.
+	 * @return
+	 * 	The width of the magnitude bin.
+	 */
+	public double getMagBinWidth(int i) {
+		return magBinWidths[i];
+	}
+
+	/**
+	 * Get the number of simulation stars formed in the given lookback time bin.
+	 * @param j
+	 * 	The time bin index.
+	 * @return
+	 * 	The number of simulation stars formed in the time bin.
+	 */
+	public double getNumberOfSimStars(int j) {
+		return nSimStars[j];
+	}
+
+	/**
+	 * Get the number of simulation stars formed in the given lookback time bin that are WDs at the present
+	 * day, whether or not they lie in one of the magnitude bins.
+	 * @param j
+	 * 	The time bin index.
+	 * @return
+	 * 	The number of simulated WDs formed in the time bin.
+	 */
+	public double getNumberOfWds(int j) {
+		return nWds[j];
+	}
+
+	/**
+	 * Get the number of simulation stars formed in the given lookback time bin that lie in the given magnitude bin.
+	 * @param i
+	 * 	The magnitude bin index.
+	 * @param j
+	 * 	The time bin index.
+	 * @return
+	 * 	The number of simulation stars in the element.
+	 */
+	public double getCount(int i, int j) {
+		return count[i * timeBinLower.length + j];
+	}
+
+	/**
+	 * Get the kernel element K_ij, i.e. the expected number of WDs in magnitude bin i per star formed
+	 * in lookback time bin j.
+	 * @param i
+	 * 	The magnitude bin index.
+	 * @param j
+	 * 	The time bin index.
+	 * @return
+	 * 	The kernel element.
+	 */
+	public double getKernel(int i, int j) {
+		return nSimStars[j] > 0 ? getCount(i, j) / nSimStars[j] : 0.0;
+	}
+
+	/**
+	 * Get the number of stars formed in each lookback time bin by the given star formation rate.
+	 *
+	 * @param sfr
+	 * 	The {@link BaseSfr}.
+	 * @return
+	 * 	The number of stars formed in each lookback time bin.
+	 */
+	public double[] getStarsFormed(BaseSfr sfr) {
+		double[] starsFormed = new double[timeBinLower.length];
+		for(int j=0; j<starsFormed.length; j++) {
+			starsFormed[j] = sfr.integrateSFR(timeBinLower[j], timeBinUpper[j])[0];
+		}
+		return starsFormed;
+	}
+
+	/**
+	 * Get the statistics of the WDs in each magnitude bin, given the number of stars formed in each lookback
+	 * time bin. This is equivalent to simulating the stars formed in each time bin and weighting each simulation
+	 * star by the number of real stars it represents, with a variance equal to the square of this.
+	 *
+	 * @param starsFormed
+	 * 	The number of stars formed in each lookback time bin.
+	 * @return
+	 * 	A {@link WdlfBinAccumulator} containing the statistics of the WDs in each magnitude bin.
+	 */
+	public WdlfBinAccumulator getWdlfBins(double[] starsFormed) {
+
+		int nT = timeBinLower.length;
+		if(starsFormed.length != nT) {
+			throw new IllegalArgumentException("Expected the number of stars formed in "+nT+" time bins, found "
+					+ starsFormed.length);
+		}
+
+		// Number of real stars represented by each simulation star in each time bin
+		double[] w = new double[nT];
+		for(int j=0; j<nT; j++) {
+			w[j] = nSimStars[j] > 0 ? starsFormed[j] / nSimStars[j] : 0.0;
+		}
+
+		WdlfBinAccumulator whiteDwarfs = new WdlfBinAccumulator(magBinCentres, magBinWidths);
+
+		for(int i=0; i<magBinCentres.length; i++) {
+			long n = 0;
+			double number = 0.0;
+			double sigma2Number = 0.0;
+			double mass = 0.0;
+			double mass2 = 0.0;
+			double age = 0.0;
+			double age2 = 0.0;
+			for(int j=0, el=i*nT; j<nT; j++, el++) {
+				if(count[el] == 0.0 || w[j] == 0.0) {
+					continue;
+				}
+				n += (long)count[el];
+				number += w[j] * count[el];
+				sigma2Number += w[j] * w[j] * count[el];
+				mass += w[j] * sumMass[el];
+				mass2 += w[j] * sumMass2[el];
+				age += w[j] * sumAge[el];
+				age2 += w[j] * sumAge2[el];
+			}
+			whiteDwarfs.add(i, n, number, sigma2Number, mass, mass2, age, age2);
+		}
+
+		return whiteDwarfs;
+	}
+
+	/**
+	 * Get the model WDLF for the given star formation rate, in per-magnitude units.
+	 *
+	 * @param sfr
+	 * 	The {@link BaseSfr}.
+	 * @return
+	 * 	The {@link ModelWDLF}.
+	 */
+	public ModelWDLF getWdlf(BaseSfr sfr) {
+		return ModelWdlfUtil.getLF(true, getWdlfBins(getStarsFormed(sfr)));
+	}
+}
@@ -0,0 +1,119 @@
+package wd.wdlf.modelling.infra;
+
+import wd.wdlf.algoimpl.ModelWDLF;
+
+/**
+ * Instances of this class calculate synthetic WDLFs from a {@link ResponseMatrix}, which is computed (or read
+ * from the cache) on the first call and whenever the modelling parameters or magnitude bins change. Subsequent
+ * WDLFs for different star formation rates are then a matrix-vector product, which makes this solver suitable
+ * for fitting star formation rate models where the WDLF must be computed many times.
+ *
+ * The lookback time bins of the kernel are fixed at construction, and should extend beyond the maximum lookback
+ * time of any star formation rate to be modelled. Stars are assumed to form uniformly within each time bin, so the
+ * WDLF resolves features of the star formation rate such as the edges of a burst only to the width of the time
+ * bins; when fitting, the time bins must be narrower than the finite difference steps in the time parameters, or
+ * the derivatives are those of the bin averaged response. Only volume limited surveys are supported.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class ResponseMatrixWDLFSolver extends WDLFSolver {
+
+	/**
+	 * Default seed for the random number generator used to compute the kernel.
+	 */
+	public static final long DEFAULT_SEED = 58315548397523634L;
+
+	/**
+	 * Centres of the lookback time bins [yr].
+	 */
+	private final double[] timeBinCentres;
+
+	/**
+	 * Widths of the lookback time bins [yr].
+	 */
+	private final double[] timeBinWidths;
+
+	/**
+	 * Number of WDs to simulate in each lookback time bin when computing the kernel.
+	 */
+	private final int nWdsPerTimeBin;
+
+	/**
+	 * The most recently used {@link ResponseMatrix}.
+	 */
+	private ResponseMatrix kernel;
+
+	/**
+	 * The modelling parameters that {@link #kernel} was computed for, in string form.
+	 */
+	private String kernelParams;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param t_max
+	 * 	The maximum lookback time [yr]; the kernel covers the range 0 -> t_max.
+	 * @param nTimeBins
+	 * 	The number of equal width lookback time bins.
+	 * @param nWdsPerTimeBin
+	 * 	The number of WDs to simulate in each lookback time bin when computing the kernel.
+	 */
+	public ResponseMatrixWDLFSolver(double t_max, int nTimeBins, int nWdsPerTimeBin) {
+		if(nTimeBins < 1) {
+			throw new IllegalArgumentException("Number of time bins must be positive! Found "+nTimeBins);
+		}
+		double width = t_max / nTimeBins;
+		timeBinCentres = new double[nTimeBins];
+		timeBinWidths = new double[nTimeBins];
+		for(int j=0; j<nTimeBins; j++) {
+			timeBinCentres[j] = (j + 0.5) * width;
+			timeBinWidths[j] = width;
+		}
+		this.nWdsPerTimeBin = nWdsPerTimeBin;
+	}
+
+	/**
+	 * Get the {@link ResponseMatrix} for the current modelling parameters and magnitude bins. This is
+	 * synchronized so that WDLFs for several star formation rates can be computed concurrently by one solver.
+	 *
+	 * @param modellingState
+	 * 	The {@link ModellingState}.
+	 * @return
+	 * 	The {@link ResponseMatrix}.
+	 */
+	public synchronized ResponseMatrix getResponseMatrix(ModellingState modellingState) {
+		String params = modellingState.params.toString();
+		if(kernel == null || !params.equals(kernelParams) ||
+				!kernel.hasMagBins(modellingState.wdlfBinCentres, modellingState.wdlfBinWidths)) {
+			kernel = ResponseMatrix.getResponseMatrix(modellingState.params, modellingState.wdlfBinCentres,
+					modellingState.wdlfBinWidths, timeBinCentres, timeBinWidths, nWdsPerTimeBin, DEFAULT_SEED);
+			kernelParams = params;
+		}
+		return kernel;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ModelWDLF calculateWDLF(ModellingState modellingState) {
+
+		if(modellingState.surveyType != ModellingState.SurveyType.VOLUME_LIMITED) {
+			throw new UnsupportedOperationException("Survey type "+modellingState.surveyType+" is not supported!");
+		}
+		double kernelMax = timeBinCentres[timeBinCentres.length-1] + timeBinWidths[timeBinWidths.length-1]/2.0;
+		if(modellingState.syntheticSFR.t_max > kernelMax) {
+			throw new IllegalArgumentException("Star formation rate extends beyond the kernel time bins: t_max = "
+					+ modellingState.syntheticSFR.t_max + " > " + kernelMax);
+		}
+
+		ModelWDLF modelWdlf = getResponseMatrix(modellingState).getWdlf(modellingState.syntheticSFR);
+		modelWdlf.setName("Simulated WDLF");
+		modelWdlf.setFilter(modellingState.params.getFilter());
+
+		setProgress(100);
+
+		return modelWdlf;
+	}
+}
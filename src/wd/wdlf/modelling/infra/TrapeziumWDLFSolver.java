@@ -1,282 +1,733 @@
+package wd.wdlf.modelling.infra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+
+import ifmr.algo.BaseIfmr;
+import imf.algo.BaseImf;
+import ms.lifetime.algo.PreWdLifetime;
+import photometry.Filter;
+import sfr.algo.BaseSfr;
+import wd.models.algo.WdCoolingModelSet;
+import wd.models.infra.WdAtmosphereType;
+import wd.wdlf.algoimpl.ModelWDLF;
+import wd.wdlf.dm.WdlfBinAccumulator;
+import wd.wdlf.dm.WdlfModellingParameters;
+import wd.wdlf.util.ModelWdlfUtil;
+
 /**
- * 
- * Name:
- *  TrapeziumWDLFSolver.java
- * 
- * Purpose:
- *  This class is not yet implemented.
- * 
- * Instances of this class are used to calculate synthetic WDLF using Romberg
- * numerical integration method.
- * 
- * Language:
- * Java
+ * Instances of this class are used to calculate synthetic WDLF by numerical integration over lookback time
+ * and progenitor mass, rather than by Monte Carlo simulation. The resulting WDLF is deterministic and free of
+ * sampling noise, so small changes to the model parameters produce smooth changes in the WDLF.
+ *
+ * The lookback time range of the star formation rate is divided into a number of equal slices that are
+ * integrated in parallel. Within each slice the WDLF is integrated over lookback time using the trapezium
+ * rule, with the number of stars formed in each step obtained from {@link BaseSfr#integrateSFR(double, double)}
+ * so that discontinuities in the star formation rate are handled exactly. Steps are bisected until the number
+ * of WDs converges to within the tolerance. At each lookback time the WDLF is integrated over progenitor mass
+ * from the main sequence turn-off mass up to {@link BaseImf#M_upper}; mass elements are bisected until the
+ * magnitude of the WDs changes by less than the maximum magnitude step across each element, and the stars in
+ * each element are spread uniformly over the magnitude range that it spans then convolved with the Gaussian
+ * magnitude error. The spread in metallicity and helium content is integrated with three point Gauss-Hermite
+ * quadrature. Non-positive metallicity and helium content aren't allowed; the Monte Carlo solvers redraw these,
+ * i.e. sample a normal distribution truncated at zero, whereas here any quadrature nodes that lie at or below
+ * zero are dropped and the weights of the remaining nodes renormalised. The two agree when the mean exceeds
+ * sqrt(3) standard deviations, so that all the nodes are positive, and otherwise differ slightly.
  *
- * Author:
- * Nicholas Rowell
- * 
+ * Only the volume limited survey is supported. The uncertainty on the WDLF is zero.
+ *
+ * @author nrowell
+ * @version $Id$
  */
-package wd.wdlf.modelling.infra;
+public class TrapeziumWDLFSolver extends WDLFSolver {
+
+	/**
+	 * Default number of lookback time slices.
+	 */
+	public static final int DEFAULT_TIME_SLICES = 64;
+
+	/**
+	 * Default maximum change in WD magnitude across a progenitor mass element [mag].
+	 */
+	public static final double DEFAULT_MAG_STEP = 0.1;
+
+	/**
+	 * Default tolerance on the lookback time integration, as a fraction of the total number of WDs.
+	 */
+	public static final double DEFAULT_TOLERANCE = 1e-3;
+
+	/**
+	 * Number of equal mass elements that the progenitor mass range is divided into before any bisection.
+	 */
+	private static final int INITIAL_MASS_STEPS = 32;
+
+	/**
+	 * Maximum number of times that a lookback time step or progenitor mass element may be bisected.
+	 */
+	private static final int MAX_DEPTH = 12;
+
+	/**
+	 * Nodes of the three point Gauss-Hermite rule for the standard normal distribution.
+	 */
+	private static final double[] GAUSS_HERMITE_NODES = {-Math.sqrt(3.0), 0.0, Math.sqrt(3.0)};
+
+	/**
+	 * Weights of the three point Gauss-Hermite rule for the standard normal distribution.
+	 */
+	private static final double[] GAUSS_HERMITE_WEIGHTS = {1.0/6.0, 2.0/3.0, 1.0/6.0};
+
+	/**
+	 * The WD atmosphere types.
+	 */
+	private static final WdAtmosphereType[] ATMOSPHERES = {WdAtmosphereType.H, WdAtmosphereType.He};
+
+	/**
+	 * The standard normal distribution.
+	 */
+	private static final NormalDistribution STANDARD_NORMAL = new NormalDistribution(0.0, 1.0);
+
+	/**
+	 * Number of lookback time slices.
+	 */
+	private final int nTimeSlices;
+
+	/**
+	 * Maximum change in WD magnitude across a progenitor mass element [mag].
+	 */
+	private final double magStep;
+
+	/**
+	 * Tolerance on the lookback time integration, as a fraction of the total number of WDs.
+	 */
+	private final double tolerance;
+
+	/**
+	 * Counts the number of lookback time slices completed, for progress reporting.
+	 */
+	private AtomicInteger sliceCounter;
+
+	/**
+	 * Default constructor.
+	 */
+	public TrapeziumWDLFSolver() {
+		this(DEFAULT_TIME_SLICES, DEFAULT_MAG_STEP, DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param nTimeSlices
+	 * 	Number of lookback time slices, which are integrated in parallel.
+	 * @param magStep
+	 * 	Maximum change in WD magnitude across a progenitor mass element [mag].
+	 * @param tolerance
+	 * 	Tolerance on the lookback time integration, as a fraction of the total number of WDs.
+	 */
+	public TrapeziumWDLFSolver(int nTimeSlices, double magStep, double tolerance) {
+		if(nTimeSlices < 1) {
+			throw new IllegalArgumentException("Number of time slices must be positive! Found "+nTimeSlices);
+		}
+		if(!(magStep > 0.0)) {
+			throw new IllegalArgumentException("Magnitude step must be positive! Found "+magStep);
+		}
+		if(!(tolerance > 0.0)) {
+			throw new IllegalArgumentException("Tolerance must be positive! Found "+tolerance);
+		}
+		this.nTimeSlices = nTimeSlices;
+		this.magStep = magStep;
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Trapezium LF integration code.
+	 */
+	@Override
+	public final ModelWDLF calculateWDLF(ModellingState modellingState) {
+
+		if(modellingState.surveyType != ModellingState.SurveyType.VOLUME_LIMITED) {
+			throw new UnsupportedOperationException("Survey type "+modellingState.surveyType+" is not supported!");
+		}
+
+		final Integrand integrand = new Integrand(modellingState);
+		final BaseSfr sfr = modellingState.syntheticSFR;
+
+		// Lookback time slice edges
+		final double[] edges = new double[nTimeSlices+1];
+		for(int s=0; s<=nTimeSlices; s++) {
+			edges[s] = sfr.t_min + s * (sfr.t_max - sfr.t_min) / nTimeSlices;
+		}
+
+		sliceCounter = new AtomicInteger(0);
+
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			// Evaluate the integrand at the slice edges
+			List<Callable<double[]>> nodes = new ArrayList<>(nTimeSlices+1);
+			for(int s=0; s<=nTimeSlices; s++) {
+				final double t = edges[s];
+				nodes.add(() -> integrand.evaluate(t));
+			}
+			final double[][] f = new double[nTimeSlices+1][];
+			int s = 0;
+			for(Future<double[]> future : pool.invokeAll(nodes)) {
+				f[s++] = future.get();
+			}
+
+			// The tolerance is set from a first estimate of the total number of WDs
+			double total = 0.0;
+			for(s=0; s<nTimeSlices; s++) {
+				total += sfr.integrateSFR(edges[s], edges[s+1])[0] * (integrand.getNumber(f[s]) + integrand.getNumber(f[s+1])) / 2.0;
+			}
+			if(!(total > 0.0)) {
+				// No WDs lie in the magnitude bins; set the tolerance from the number of stars formed instead
+				total = sfr.integrateSFR()[0];
+			}
+			final double sliceTolerance = tolerance * total / nTimeSlices;
+
+			// Integrate each slice
+			List<Callable<double[]>> slices = new ArrayList<>(nTimeSlices);
+			for(s=0; s<nTimeSlices; s++) {
+				final int slice = s;
+				slices.add(() -> {
+					double[] result = integrate(integrand, sfr, edges[slice], f[slice], edges[slice+1], f[slice+1], sliceTolerance, 0);
+					incrementProgress();
+					return result;
+				});
+			}
+
+			// Sum the slices in order, so the result doesn't depend on the scheduling of the threads
+			double[] sum = new double[integrand.size()];
+			for(Future<double[]> future : pool.invokeAll(slices)) {
+				double[] result = future.get();
+				for(int i=0; i<sum.length; i++) {
+					sum[i] += result[i];
+				}
+			}
+
+			WdlfBinAccumulator whiteDwarfs = integrand.getWhiteDwarfs(sum);
+
+			// Derive WDLF from integrated population, in per-mbol units.
+			ModelWDLF modelWdlf = ModelWdlfUtil.getLF(true, whiteDwarfs);
+			modelWdlf.setName("Simulated WDLF");
+			modelWdlf.setFilter(modellingState.params.getFilter());
+
+			return modelWdlf;
+		}
+		catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("WDLF integration failed!", e);
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Increment the count of completed lookback time slices, and update the progress.
+	 */
+	private synchronized void incrementProgress() {
+		setProgress(100 * sliceCounter.incrementAndGet() / nTimeSlices);
+	}
+
+	/**
+	 * Integrate the WDLF over the given range of lookback time using the trapezium rule, bisecting the range
+	 * until the estimate converges.
+	 *
+	 * @param integrand
+	 * 	The {@link Integrand}.
+	 * @param sfr
+	 * 	The {@link BaseSfr}.
+	 * @param t0
+	 * 	Lower limit on lookback time [yr].
+	 * @param f0
+	 * 	The integrand evaluated at t0.
+	 * @param t1
+	 * 	Upper limit on lookback time [yr].
+	 * @param f1
+	 * 	The integrand evaluated at t1.
+	 * @param tol
+	 * 	The maximum acceptable error on the number of WDs in this range.
+	 * @param depth
+	 * 	The number of bisections made so far.
+	 * @return
+	 * 	The integral of the WDLF over the range.
+	 */
+	private static double[] integrate(Integrand integrand, BaseSfr sfr, double t0, double[] f0, double t1, double[] f1,
+			double tol, int depth) {
+
+		double n = sfr.integrateSFR(t0, t1)[0];
+		double[] whole = new double[f0.length];
+		for(int i=0; i<whole.length; i++) {
+			whole[i] = n * (f0[i] + f1[i]) / 2.0;
+		}
+		if(n == 0.0 || depth == MAX_DEPTH) {
+			return whole;
+		}
+
+		double t = (t0 + t1) / 2.0;
+		double[] f = integrand.evaluate(t);
+		double n0 = sfr.integrateSFR(t0, t)[0];
+		double n1 = sfr.integrateSFR(t, t1)[0];
+		double[] halves = new double[f0.length];
+		for(int i=0; i<halves.length; i++) {
+			halves[i] = n0 * (f0[i] + f[i]) / 2.0 + n1 * (f[i] + f1[i]) / 2.0;
+		}
+
+		// The error on the trapezium rule with the finer step is approximately one third of the difference
+		if(integrand.getDifference(halves, whole) / 3.0 <= tol) {
+			return halves;
+		}
+
+		double[] lower = integrate(integrand, sfr, t0, f0, t, f, tol / 2.0, depth + 1);
+		double[] upper = integrate(integrand, sfr, t, f, t1, f1, tol / 2.0, depth + 1);
+		for(int i=0; i<lower.length; i++) {
+			lower[i] += upper[i];
+		}
+		return lower;
+	}
+
+	/**
+	 * Get the fraction of stars spread uniformly over the magnitude range m0 -> m1 that lie in the magnitude
+	 * range lower -> upper after adding Gaussian noise.
+	 *
+	 * @param m0
+	 * 	One end of the range of magnitude of the stars.
+	 * @param m1
+	 * 	The other end of the range of magnitude of the stars.
+	 * @param lower
+	 * 	Lower limit of the magnitude bin.
+	 * @param upper
+	 * 	Upper limit of the magnitude bin.
+	 * @param sigma
+	 * 	Standard deviation of the Gaussian noise on the magnitude.
+	 * @return
+	 * 	The fraction of stars that lie in the magnitude bin.
+	 */
+	static double getFraction(double m0, double m1, double lower, double upper, double sigma) {
+
+		if(sigma == 0.0) {
+			double min = Math.min(m0, m1);
+			double max = Math.max(m0, m1);
+			if(max == min) {
+				return (min >= lower && min < upper) ? 1.0 : 0.0;
+			}
+			return Math.max(Math.min(max, upper) - Math.max(min, lower), 0.0) / (max - min);
+		}
+
+		if(Math.abs(m1 - m0) < 1e-3 * sigma) {
+			// Narrow range: treat all the stars as lying at the midpoint
+			double m = (m0 + m1) / 2.0;
+			return STANDARD_NORMAL.cumulativeProbability((upper - m) / sigma) - STANDARD_NORMAL.cumulativeProbability((lower - m) / sigma);
+		}
+
+		// Average of the fraction over the magnitude range, using the integral of the cumulative distribution
+		return sigma * (getCdfIntegral((upper - m0) / sigma) - getCdfIntegral((upper - m1) / sigma)
+				- getCdfIntegral((lower - m0) / sigma) + getCdfIntegral((lower - m1) / sigma)) / (m1 - m0);
+	}
+
+	/**
+	 * Get the integral of the standard normal cumulative distribution function from minus infinity to x.
+	 *
+	 * @param x
+	 * 	The argument.
+	 * @return
+	 * 	The integral of the cumulative distribution function up to x.
+	 */
+	private static double getCdfIntegral(double x) {
+		return x * STANDARD_NORMAL.cumulativeProbability(x) + STANDARD_NORMAL.density(x);
+	}
+
+	/**
+	 * Evaluates the WDLF contributed by stars formed at a single lookback time, per star formed. The result
+	 * is packed into a single array containing, for each magnitude bin, the number of WDs and the number
+	 * weighted sums of the WD mass, the squared WD mass, the total age and the squared total age.
+	 */
+	private final class Integrand {
+
+		/**
+		 * The {@link BaseImf}.
+		 */
+		private final BaseImf imf;
+
+		/**
+		 * The {@link BaseIfmr}.
+		 */
+		private final BaseIfmr ifmr;
+
+		/**
+		 * The {@link PreWdLifetime}.
+		 */
+		private final PreWdLifetime preWdLifetime;
+
+		/**
+		 * The {@link WdCoolingModelSet}.
+		 */
+		private final WdCoolingModelSet wdCoolingModels;
+
+		/**
+		 * The {@link Filter}.
+		 */
+		private final Filter filter;
+
+		/**
+		 * Fraction of WDs with each of the {@link #ATMOSPHERES}.
+		 */
+		private final double[] atmWeights;
+
+		/**
+		 * Standard deviation of the magnitude error.
+		 */
+		private final double sigM;
+
+		/**
+		 * Metallicity at each quadrature node.
+		 */
+		private final double[] z;
+
+		/**
+		 * Helium content at each quadrature node.
+		 */
+		private final double[] y;
+
+		/**
+		 * Weight of each quadrature node.
+		 */
+		private final double[] zyWeights;
+
+		/**
+		 * Pre-WD lifetime of the heaviest star at each quadrature node [yr]; no stars formed more
+		 * recently than this have formed WDs.
+		 */
+		private final double[] tMinWd;
+
+		/**
+		 * Lower edges of the magnitude bins.
+		 */
+		private final double[] binLower;
+
+		/**
+		 * Upper edges of the magnitude bins.
+		 */
+		private final double[] binUpper;
+
+		/**
+		 * Centres of the magnitude bins.
+		 */
+		private final double[] binCentres;
+
+		/**
+		 * Widths of the magnitude bins.
+		 */
+		private final double[] binWidths;
+
+		/**
+		 * Magnitude brighter than which WDs make a negligible contribution to any bin.
+		 */
+		private final double magMin;
+
+		/**
+		 * Magnitude fainter than which WDs make a negligible contribution to any bin.
+		 */
+		private final double magMax;
+
+		/**
+		 * Main constructor.
+		 *
+		 * @param modellingState
+		 * 	The {@link ModellingState}.
+		 */
+		Integrand(ModellingState modellingState) {
+
+			WdlfModellingParameters params = modellingState.params;
+			imf = params.getIMF();
+			ifmr = params.getIFMR();
+			preWdLifetime = params.getPreWdLifetime();
+			wdCoolingModels = params.getBaseWdCoolingModels();
+			filter = params.getFilter();
+			atmWeights = new double[]{params.getW_H(), 1.0 - params.getW_H()};
+			sigM = params.getSigM();
+
+			binCentres = modellingState.wdlfBinCentres;
+			binWidths = modellingState.wdlfBinWidths;
+			binLower = new double[binCentres.length];
+			binUpper = new double[binCentres.length];
+			for(int bin=0; bin<binCentres.length; bin++) {
+				binLower[bin] = binCentres[bin] - binWidths[bin]/2.0;
+				binUpper[bin] = binCentres[bin] + binWidths[bin]/2.0;
+			}
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for(int bin=0; bin<binCentres.length; bin++) {
+				min = Math.min(min, binLower[bin]);
+				max = Math.max(max, binUpper[bin]);
+			}
+			magMin = min - 8.0 * sigM;
+			magMax = max + 8.0 * sigM;
+
+			// Quadrature nodes for the metallicity and helium content. Non-positive values are not allowed,
+			// so nodes that lie there are dropped and the remaining weights renormalised. This approximates
+			// the truncated normal distribution sampled by the Monte Carlo solvers.
+			double[] zNodes = getNodes(params.getMeanMetallicity(), params.getMetallicitySigma());
+			double[] zNodeWeights = getNodeWeights(params.getMetallicitySigma());
+			double[] yNodes = getNodes(params.getMeanHeliumContent(), params.getHeliumContentSigma());
+			double[] yNodeWeights = getNodeWeights(params.getHeliumContentSigma());
+
+			List<double[]> nodes = new ArrayList<>();
+			double sumWeights = 0.0;
+			for(int i=0; i<zNodes.length; i++) {
+				for(int j=0; j<yNodes.length; j++) {
+					if(zNodes[i] > 0.0 && yNodes[j] > 0.0) {
+						nodes.add(new double[]{zNodes[i], yNodes[j], zNodeWeights[i] * yNodeWeights[j]});
+						sumWeights += zNodeWeights[i] * yNodeWeights[j];
+					}
+				}
+			}
+			if(nodes.isEmpty()) {
+				throw new IllegalArgumentException("No positive metallicity and helium content values: Z = "
+						+ params.getMeanMetallicity() + ", Y = " + params.getMeanHeliumContent());
+			}
+			z = new double[nodes.size()];
+			y = new double[nodes.size()];
+			zyWeights = new double[nodes.size()];
+			for(int k=0; k<nodes.size(); k++) {
+				z[k] = nodes.get(k)[0];
+				y[k] = nodes.get(k)[1];
+				zyWeights[k] = nodes.get(k)[2] / sumWeights;
+			}
+			tMinWd = new double[z.length];
+			for(int k=0; k<z.length; k++) {
+				tMinWd[k] = preWdLifetime.getPreWdLifetime(z[k], y[k], BaseImf.M_upper)[0];
+			}
+		}
+
+		/**
+		 * Get the quadrature nodes for a normally distributed quantity.
+		 * @param mean
+		 * 	The mean.
+		 * @param sigma
+		 * 	The standard deviation.
+		 * @return
+		 * 	The quadrature nodes.
+		 */
+		private double[] getNodes(double mean, double sigma) {
+			if(sigma == 0.0) {
+				return new double[]{mean};
+			}
+			double[] nodes = new double[GAUSS_HERMITE_NODES.length];
+			for(int i=0; i<nodes.length; i++) {
+				nodes[i] = mean + GAUSS_HERMITE_NODES[i] * sigma;
+			}
+			return nodes;
+		}
+
+		/**
+		 * Get the quadrature weights for a normally distributed quantity.
+		 * @param sigma
+		 * 	The standard deviation.
+		 * @return
+		 * 	The quadrature weights.
+		 */
+		private double[] getNodeWeights(double sigma) {
+			return sigma == 0.0 ? new double[]{1.0} : GAUSS_HERMITE_WEIGHTS;
+		}
+
+		/**
+		 * Get the size of the arrays returned by {@link #evaluate(double)}.
+		 * @return
+		 * 	The size of the arrays returned by {@link #evaluate(double)}.
+		 */
+		int size() {
+			return 5 * binCentres.length;
+		}
+
+		/**
+		 * Get the total number of WDs in all magnitude bins.
+		 * @param f
+		 * 	An array returned by {@link #evaluate(double)}, or an integral of these.
+		 * @return
+		 * 	The total number of WDs in all magnitude bins.
+		 */
+		double getNumber(double[] f) {
+			double n = 0.0;
+			for(int bin=0; bin<binCentres.length; bin++) {
+				n += f[5*bin];
+			}
+			return n;
+		}
+
+		/**
+		 * Get the sum over the magnitude bins of the absolute difference in the number of WDs.
+		 * @param f0
+		 * 	An array returned by {@link #evaluate(double)}, or an integral of these.
+		 * @param f1
+		 * 	An array returned by {@link #evaluate(double)}, or an integral of these.
+		 * @return
+		 * 	The sum over the magnitude bins of the absolute difference in the number of WDs.
+		 */
+		double getDifference(double[] f0, double[] f1) {
+			double d = 0.0;
+			for(int bin=0; bin<binCentres.length; bin++) {
+				d += Math.abs(f0[5*bin] - f1[5*bin]);
+			}
+			return d;
+		}
+
+		/**
+		 * Pack the integrated WDLF into a {@link WdlfBinAccumulator}.
+		 * @param f
+		 * 	The integral of the arrays returned by {@link #evaluate(double)}.
+		 * @return
+		 * 	The {@link WdlfBinAccumulator}.
+		 */
+		WdlfBinAccumulator getWhiteDwarfs(double[] f) {
+			WdlfBinAccumulator whiteDwarfs = new WdlfBinAccumulator(binCentres, binWidths);
+			for(int bin=0; bin<binCentres.length; bin++) {
+				int k = 5*bin;
+				whiteDwarfs.addExpected(bin, f[k], f[k+1], f[k+2], f[k+3], f[k+4]);
+			}
+			return whiteDwarfs;
+		}
+
+		/**
+		 * Evaluate the WDLF contributed by stars formed at the given lookback time, per star formed.
+		 * @param t
+		 * 	The lookback time [yr].
+		 * @return
+		 * 	The WDLF contributed by stars formed at the given lookback time, per star formed.
+		 */
+		double[] evaluate(double t) {
+
+			double[] f = new double[size()];
+
+			for(int k=0; k<z.length; k++) {
+
+				// No stars formed at this time have formed WDs; the stellar mass lookup may not cover
+				// lifetimes this short.
+				if(!(t > tMinWd[k])) {
+					continue;
+				}
+
+				// Main sequence turn-off mass: all heavier stars formed at this time are now WDs
+				double mTurnOff = preWdLifetime.getStellarMass(z[k], y[k], t)[0];
+				if(!(mTurnOff < BaseImf.M_upper)) {
+					continue;
+				}
+				mTurnOff = Math.max(mTurnOff, BaseImf.M_lower);
+
+				double dm = (BaseImf.M_upper - mTurnOff) / INITIAL_MASS_STEPS;
+				double[] p0 = getPoint(mTurnOff, t, k);
+				for(int i=1; i<=INITIAL_MASS_STEPS; i++) {
+					double m = (i == INITIAL_MASS_STEPS) ? BaseImf.M_upper : mTurnOff + i * dm;
+					double[] p1 = getPoint(m, t, k);
+					integrate(p0, p1, t, k, zyWeights[k], 0, f);
+					p0 = p1;
+				}
+			}
+
+			return f;
+		}
+
+		/**
+		 * Compute the quantities required at one progenitor mass.
+		 * @param m
+		 * 	The progenitor mass [M_{Solar}]
+		 * @param t
+		 * 	The lookback time [yr].
+		 * @param k
+		 * 	Index of the metallicity and helium content quadrature node.
+		 * @return
+		 * 	Array containing the progenitor mass, the fraction of stars lighter than this, the WD mass and
+		 * the magnitude of the WD for each of the {@link #ATMOSPHERES}.
+		 */
+		private double[] getPoint(double m, double t, int k) {
+			double coolingTime = Math.max(t - preWdLifetime.getPreWdLifetime(z[k], y[k], m)[0], 0.0);
+			double mf = ifmr.getMf(m);
+			double[] p = new double[3 + ATMOSPHERES.length];
+			p[0] = m;
+			p[1] = imf.getIntegral(m);
+			p[2] = mf;
+			for(int a=0; a<ATMOSPHERES.length; a++) {
+				if(atmWeights[a] > 0.0) {
+					p[3+a] = wdCoolingModels.quantity(coolingTime, mf, ATMOSPHERES[a], filter);
+				}
+			}
+			return p;
+		}
+
+		/**
+		 * Integrate the WDLF over a progenitor mass element, bisecting it until the change in magnitude
+		 * across each part is less than the maximum magnitude step.
+		 * @param p0
+		 * 	The quantities at the lower end of the mass element.
+		 * @param p1
+		 * 	The quantities at the upper end of the mass element.
+		 * @param t
+		 * 	The lookback time [yr].
+		 * @param k
+		 * 	Index of the metallicity and helium content quadrature node.
+		 * @param weight
+		 * 	Weight of the metallicity and helium content quadrature node.
+		 * @param depth
+		 * 	The number of bisections made so far.
+		 * @param f
+		 * 	On exit, the WDLF contributed by the mass element has been added to this.
+		 */
+		private void integrate(double[] p0, double[] p1, double t, int k, double weight, int depth, double[] f) {
+
+			double span = 0.0;
+			boolean inRange = false;
+			for(int a=0; a<ATMOSPHERES.length; a++) {
+				if(atmWeights[a] > 0.0) {
+					span = Math.max(span, Math.abs(p1[3+a] - p0[3+a]));
+					inRange |= Math.max(p0[3+a], p1[3+a]) > magMin && Math.min(p0[3+a], p1[3+a]) < magMax;
+				}
+			}
+
+			if(!inRange) {
+				// WDs lie too far outside the magnitude bins to contribute
+				return;
+			}
+
+			if(span > magStep && depth < MAX_DEPTH) {
+				double[] p = getPoint((p0[0] + p1[0]) / 2.0, t, k);
+				integrate(p0, p, t, k, weight, depth + 1, f);
+				integrate(p, p1, t, k, weight, depth + 1, f);
+				return;
+			}
+
+			// Fraction of all stars formed that lie in this mass element
+			double n = weight * (p1[1] - p0[1]);
+			if(n <= 0.0) {
+				return;
+			}
+			double mass = (p0[2] + p1[2]) / 2.0;
+			double mass2 = (p0[2] * p0[2] + p1[2] * p1[2]) / 2.0;
 
-import javax.swing.SwingWorker;
-
-public class TrapeziumWDLFSolver 
-extends SwingWorker<Void,Void>
-{
-    
-    /** ModellingState object. */
-    ModellingState modellingState;
-    
-    /** Main constructor. */
-    public TrapeziumWDLFSolver(ModellingState modellingState)
-    {
-        this.modellingState = modellingState;
-    }
-    
-    /** Perform WDLF simulation in background thread. */
-    @Override
-    public Void doInBackground()
-    {
-        calculateWDLF();
-        return null;
-    }
-    
-    /** Trapezium LF integration code. */
-    public final void calculateWDLF()
-    {
-     
-        
-//        // Construct new ModelWDLF objects
-//        wdlf    = new ModelWDLF(magMin, magMax, dM);   // Total LF
-//        wdlf_H  = new ModelWDLF(magMin, magMax, dM);   // H WDLF
-//        wdlf_He = new ModelWDLF(magMin, magMax, dM);   // He WDLF
-//        
-//        // Loop over time since onset of star formation to present day. For
-//        // each time element, find MS turnoff mass. This sets a lower limit
-//        // on the mass of MS stars that have had time to contribute WDs to the
-//        // present-day population.
-//        //
-//        // Then, loop over MS mass higher than this and transform each mass
-//        // element to an element of the WDLF.
-//        for (t = 0; t <= sfr.getAge(); t += deltaT) {
-//
-//            // Lookback time to present integration step
-//            double T_LOOKBACK = sfr.getAge()-t;
-//            
-//            // Get total number of stars to form in this time element
-//            double N_STARS_T = sfr.getSFR(t+deltaT/2) * deltaT;
-//                        
-//            // Get MS turn off mass at this age. All stars heavier than this
-//            // that formed at T_LOOKBACK have since turned into WDs.
-//            double M_l = ms.getMass(T_LOOKBACK);
-//
-//            // Sanity check. This tests that main sequence masses that
-//            // contribute WDs to models lie within the range 0.6 -> 7M
-//            // over which the IMF is normalised.
-//            assert M_l > IMF.M_lower;
-//
-//            // Skip time element if no WDs have had time to form.
-//            if (M_l >= IMF.M_upper) continue;
-//
-//            // Size of mass element. This gets trimmed down on final
-//            // integration step, so refresh it here before starting next
-//            // integration.
-//            double dM2 = deltaM;
-//
-//            // Progenitor parameters used in LF calculation
-//            double t_MS_mid, t_MS_low, t_MS_high;
-//
-//            // WD parameters used in LF calculation
-//            
-//            // Leading, trailing & midpoint of wd mass element
-//            double m_wd_mid, m_wd_low, m_wd_high;
-//            
-//            // WD cooling times at leading, trailing & midpoint of mass element
-//            double t_cool_mid, t_cool_low, t_cool_high;
-//            
-//            // Bolometric magnitude of each type of WD after cooling
-//            double mbol_mid,  mbol_low,  mbol_high;
-//            
-//            // Bolometric magnitude sorted
-//            double mbol_min, mbol_max, dmbol;
-//
-//            // Number of stars to form in current time AND mass element
-//            double N_STARS_TM;
-//
-//            // Integer indicating if WD models were extrapolated to 
-//            // calculate a given cooling age/mass point. (0=no; 1=yes)
-//            int extrapolated;
-//
-//            // Loop over progenitor mass.
-//            for (double Mp = M_l; Mp < IMF.M_upper; Mp += dM2) {
-//
-//                // Avoid overshoot on final integration step
-//                if ((Mp + dM2) > IMF.M_upper) dM2 = IMF.M_upper - Mp;
-//                
-//
-//                // Scale number of stars formed in this time element by the
-//                // fraction that formed in the current mass element.
-//                // 
-//                // This is then split among the
-//                // M_{bol} bins that it spans in order to get stars-per-magnitude,
-//                // which is the desired quantity. The rest of the calculations
-//                // in this loop simply find out the range of M_{bol} that these
-//                // stars span and splits up the wdlf contribution accordingly.
-//                //
-//                // Note that 'd_wdlf_h' includes the dM_{bol} factor and gives
-//                // stars-per-M_{bol} centred at M_bol_mid. This is not very
-//                // useful because I really want models defined at the same
-//                // magnitude points.
-//
-//                N_STARS_TM = N_STARS_T * imf.getIMF(Mp + dM2 / 2) * dM2;
-//                
-//                //double d_wdlf_h = getIMF(Mp + (dM / 2.0)) * dM/dM_bol;   // stars-per-M_{bol}
-//
-//
-//                // Now figure out the range of mbol spanned by the current
-//                // element of progenitor mass, for each WD atmosphere type.
-//
-//                // What is the MS lifetime for progenitors of mass M, 
-//                // and at each end of dM bin?
-//                t_MS_mid = ms.getLifetime(Mp + dM2 / 2);
-//                t_MS_high = ms.getLifetime(Mp + dM2);
-//                t_MS_low = ms.getLifetime(Mp);
-//                // How long have WDs had to cool, at bin centre and each edge?
-//                t_cool_mid  = T_LOOKBACK - t_MS_mid;
-//                t_cool_high = T_LOOKBACK - t_MS_high;
-//                t_cool_low  = T_LOOKBACK - t_MS_low;
-//                // What mass WDs do these progenitors produce?
-//                m_wd_mid = ifmr.getMf(Mp + dM2 / 2);
-//                m_wd_high = ifmr.getMf(Mp + dM2);
-//                m_wd_low = ifmr.getMf(Mp);
-//
-//                // Now calculate quantities specific to each WD atmosphere type.
-//                // They cool at different rates, so will have reached different
-//                // bolometric magnitudes in the same time.
-//                //
-//                // In this loop, 0 = H and 1 = He atmosphere types
-//                for (int a = 0; a < 2; a++) {
-//
-//                    String atm = (a == 0) ? "H" : "He";
-//                    // Get atmosphere type weight factor
-//                    double atm_weight = (a == 0) ? AbstractModeller.getW_H() : 1.0 - AbstractModeller.getW_H();
-//                    
-//                    // What bolometric magnitude have WDs cooled to?
-//                    mbol_mid = wd.mbol(t_cool_mid, m_wd_mid, atm);
-//                    mbol_high = wd.mbol(t_cool_high, m_wd_high, atm);
-//                    mbol_low = wd.mbol(t_cool_low, m_wd_low, atm);
-//
-//                    // Over what bolometric magnitude range is dM spread?
-//                    mbol_min = Math.min(Math.min(mbol_mid, mbol_low), mbol_high);
-//                    mbol_max = Math.max(Math.max(mbol_mid, mbol_low), mbol_high);
-//
-//                    // Absolute range in bolometric magnitude
-//                    dmbol = Math.abs(mbol_max - mbol_min);
-//
-//                    // At central mass and cooling age, are WD models extrapolated?
-//                    extrapolated = (wd.isExtrapolated(t_cool_mid, m_wd_mid, atm)) ? 1 : 0;
-//
-//                    // Total time since formation (WD cooling plus progenitor
-//                    // lifetime).
-//                    double totalAge = t_cool_mid + t_MS_mid;
-//                    
-//                    // Loop over each M_bol bin and check if any of this falls in it
-//                    //
-//                    double fraction, M_low, M_high;
-//                    //
-//                        
-//                    // All ModelWDLFs have the same magnitude bins.
-//                    for(int m=0; m < wdlf.number.getN(); m++){    
-//
-//                        // Get magnitude of each bin edge
-//                        M_low  = wdlf.number.getBinLowerEdge(m);
-//                        M_high = wdlf.number.getBinUpperEdge(m);
-//
-//                        // Now passed beyond range of WDLF point
-//                        if (mbol_max < M_low) { break;} 
-//                        // Not yet found magnitude bins that WDLF contributes to
-//                        else if (mbol_min > M_high) { continue;} 
-//                        // Both limits fall in bin
-//                        else if ((mbol_min < M_high) && (mbol_max > M_low)
-//                                && (mbol_min < M_high) && (mbol_min > M_low)) {
-//                            
-//                            // Entire bolometric magnitude element falls in 
-//                            // this bin.
-//                            fraction = 1.0*atm_weight;
-//                            
-//                            // Add contribution to total WDLF
-//                            wdlf.add(m, N_STARS_TM*fraction, m_wd_mid, extrapolated, totalAge);
-//                            // Add contribution to each atmosphere type separately
-//                            if(atm.equals("H"))
-//                                wdlf_H.add(m, N_STARS_TM*fraction, m_wd_mid, extrapolated, totalAge);
-//                            else
-//                                wdlf_He.add(m, N_STARS_TM*fraction, m_wd_mid, extrapolated, totalAge);
-//                            
-//                        } 
-//                        // Only lower limit on bolometric magnitude range falls in LF bin, partial contribution
-//                        else if ((mbol_max > M_high) && (mbol_min < M_high) && (mbol_min > M_low)) {
-//                            
-//                            // Part of bolometric magnitude element falls in 
-//                            // this bin.
-//                            fraction = (M_high - mbol_min)*atm_weight / dmbol;
-//                                               
-//                            // Add contribution to total WDLF
-//                            wdlf.add(m, N_STARS_TM*fraction, m_wd_mid, extrapolated, totalAge);
-//                            // Add contribution to each atmosphere type separately
-//                            if(atm.equals("H"))
-//                                wdlf_H.add(m, N_STARS_TM*fraction, m_wd_mid, extrapolated, totalAge);
-//                            else
-//                                wdlf_He.add(m, N_STARS_TM*fraction, m_wd_mid, extrapolated, totalAge);    
-//                        } 
-//                        // Only upper limit on bolometric magnitude range falls in LF bin
-//                        else if ((mbol_max < M_high) && (mbol_max > M_low) && (mbol_min < M_low)) {
-//                            
-//                            // Part of bolometric magnitude element falls in 
-//                            // this bin.
-//                            fraction = (mbol_max - M_low)*atm_weight / dmbol;
-//                                                        
-//                            // Add contribution to total WDLF
-//                            wdlf.add(m, N_STARS_TM*fraction, m_wd_mid, extrapolated, totalAge);
-//                            // Add contribution to each atmosphere type separately
-//                            if(atm.equals("H"))
-//                                wdlf_H.add(m, N_STARS_TM*fraction, m_wd_mid, extrapolated, totalAge);
-//                            else
-//                                wdlf_He.add(m, N_STARS_TM*fraction, m_wd_mid, extrapolated, totalAge); 
-//                        } 
-//                        // Limits completely straddle bin
-//                        else if ((mbol_max > M_high) && (mbol_min < M_low)) {
-//                            
-//                            // Part of bolometric magnitude element falls in 
-//                            // this bin.
-//                            fraction = (M_high - M_low)*atm_weight / dmbol;
-//                            
-//                            // Add contribution to total WDLF
-//                            wdlf.add(m, N_STARS_TM*fraction, m_wd_mid, extrapolated, totalAge);
-//                            // Add contribution to each atmosphere type separately
-//                            if(atm.equals("H"))
-//                                wdlf_H.add(m, N_STARS_TM*fraction, m_wd_mid, extrapolated, totalAge);
-//                            else
-//                                wdlf_He.add(m, N_STARS_TM*fraction, m_wd_mid, extrapolated, totalAge);
-//                        } 
-//                        // Shouldn't reach this code under any circumstances
-//                        else { assert false;}
-//
-//                    }  // Close loop over LF bins
-//                }      // Close loop over atmosphere type
-//            }          // Close loop over progenitor mass element
-//        }              // Close loop over age
-//        
-//        // Now convolve all WDLFs with Gaussian kernel to simulate
-//        // measurement errors.
-//        
-//        // Get Gaussian convolution kernel for simulating observational errors
-//        double[] kernel = Statistics.getSymGausKernel(sigM, dM);
-//        
-//        // Convolve wdlfs with Gaussian kernel to simulate measurement error.
-//        wdlf.convolve(kernel);
-//        wdlf_H.convolve(kernel);
-//        wdlf_He.convolve(kernel);
-        
-    }
-    
+			for(int a=0; a<ATMOSPHERES.length; a++) {
+				if(atmWeights[a] == 0.0) {
+					continue;
+				}
+				double mMin = Math.min(p0[3+a], p1[3+a]) - 8.0 * sigM;
+				double mMax = Math.max(p0[3+a], p1[3+a]) + 8.0 * sigM;
+				for(int bin=0; bin<binCentres.length; bin++) {
+					if(binUpper[bin] < mMin || binLower[bin] > mMax) {
+						continue;
+					}
+					double number = n * atmWeights[a] * getFraction(p0[3+a], p1[3+a], binLower[bin], binUpper[bin], sigM);
+					int i = 5*bin;
+					f[i] += number;
+					f[i+1] += number * mass;
+					f[i+2] += number * mass2;
+					f[i+3] += number * t;
+					f[i+4] += number * t * t;
+				}
+			}
+		}
+	}
 }
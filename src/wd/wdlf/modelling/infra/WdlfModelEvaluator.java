@@ -0,0 +1,277 @@
+package wd.wdlf.modelling.infra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+
+import wd.wdlf.algoimpl.ModelWDLF;
+
+/**
+ * Class provides evaluations of the model WDLF and its Jacobian with respect to the parameters of the star
+ * formation rate model, for use in fitting star formation rate models to observed WDLFs.
+ *
+ * The Jacobian is computed by forward finite differences. The WDLFs at all the perturbed parameter sets are
+ * computed concurrently, each using its own copy of the {@link ModellingState} and star formation rate. The
+ * model at the base point is reused from the most recent evaluation when the parameters and the settings of
+ * the template {@link ModellingState} are unchanged, as when the Jacobian is computed at the current solution.
+ * Every WDLF is computed by a {@link WDLFSolver} obtained from the factory with the same seed, so Monte Carlo
+ * solvers use common random numbers at all parameter sets and most of the Monte Carlo noise cancels in the
+ * differences. Solvers that don't accept a seed (i.e. {@link MonteCarloWDLFSolver}) get no such benefit.
+ * Each concurrent evaluation has its own solver, so that the solvers' progress reporting, which isn't thread
+ * safe, is never called from several threads at once.
+ *
+ * The template {@link ModellingState} is read at each evaluation, so changes to its magnitude bins, number
+ * of WDs or survey type take effect on the next evaluation. The {@link wd.wdlf.dm.WdlfModellingParameters}
+ * are shared among the concurrent evaluations and must not be modified while any evaluation is in progress.
+ *
+ * @author nrowell
+ * @version $Id$
+ */
+public class WdlfModelEvaluator {
+
+	/**
+	 * The template {@link ModellingState}.
+	 */
+	private final ModellingState template;
+
+	/**
+	 * Factory for the {@link WDLFSolver}s, which is called with the seed.
+	 */
+	private final LongFunction<WDLFSolver> solverFactory;
+
+	/**
+	 * Seed passed to the solver factory.
+	 */
+	private final long seed;
+
+	/**
+	 * Number of threads used to evaluate the WDLFs concurrently.
+	 */
+	private final int nThreads;
+
+	/**
+	 * Copies of the template {@link ModellingState}, one for the base point and one for each parameter;
+	 * these are created on first use.
+	 */
+	private final List<ModellingState> workers = new ArrayList<>();
+
+	/**
+	 * The {@link WDLFSolver} used with each of the {@link #workers}.
+	 */
+	private final List<WDLFSolver> solvers = new ArrayList<>();
+
+	/**
+	 * The parameters of the cached base point model.
+	 */
+	private double[] baseParams;
+
+	/**
+	 * The cached base point model.
+	 */
+	private double[] baseModel;
+
+	/**
+	 * The settings of the template {@link ModellingState} that the cached base point model was computed with.
+	 */
+	private String baseSettings;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param template
+	 * 	The template {@link ModellingState}, containing the star formation rate model to be fitted.
+	 * @param solverFactory
+	 * 	Factory for the {@link WDLFSolver}s, which is called with the seed. Solvers are created once for each
+	 * concurrent evaluation and reused; the factory must return a new solver on each call.
+	 * @param seed
+	 * 	Seed passed to the solver factory.
+	 */
+	public WdlfModelEvaluator(ModellingState template, LongFunction<WDLFSolver> solverFactory, long seed) {
+		this(template, solverFactory, seed, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param template
+	 * 	The template {@link ModellingState}, containing the star formation rate model to be fitted.
+	 * @param solverFactory
+	 * 	Factory for the {@link WDLFSolver}s, which is called with the seed. Solvers are created once for each
+	 * concurrent evaluation and reused; the factory must return a new solver on each call.
+	 * @param seed
+	 * 	Seed passed to the solver factory.
+	 * @param nThreads
+	 * 	Number of threads used to evaluate the WDLFs concurrently.
+	 */
+	public WdlfModelEvaluator(ModellingState template, LongFunction<WDLFSolver> solverFactory, long seed, int nThreads) {
+		if(nThreads < 1) {
+			throw new IllegalArgumentException("Number of threads must be positive! Found "+nThreads);
+		}
+		this.template = template;
+		this.solverFactory = solverFactory;
+		this.seed = seed;
+		this.nThreads = nThreads;
+	}
+
+	/**
+	 * Get the model WDLF density in each magnitude bin for the given star formation rate parameters.
+	 *
+	 * @param params
+	 * 	The star formation rate parameters.
+	 * @return
+	 * 	The model WDLF density in each magnitude bin.
+	 */
+	public synchronized double[] getModel(double[] params) {
+		String settings = getSettings();
+		if(!Arrays.equals(params, baseParams) || !settings.equals(baseSettings)) {
+			baseModel = evaluate(Arrays.asList(params))[0];
+			baseParams = params.clone();
+			baseSettings = settings;
+		}
+		return baseModel.clone();
+	}
+
+	/**
+	 * Get the Jacobian of the model WDLF density with respect to the star formation rate parameters,
+	 * computed by forward finite differences.
+	 *
+	 * @param params
+	 * 	The star formation rate parameters.
+	 * @param steps
+	 * 	The finite difference step size for each parameter.
+	 * @return
+	 * 	The Jacobian; element [i][j] is the derivative of the density in magnitude bin i with respect to
+	 * parameter j.
+	 */
+	public synchronized double[][] getJacobian(double[] params, double[] steps) {
+
+		if(steps.length != params.length) {
+			throw new IllegalArgumentException("Number of step sizes ("+steps.length+") doesn't match "
+					+ "the number of parameters ("+params.length+")");
+		}
+
+		// Parameter sets to evaluate, starting with the base point if it isn't cached
+		String settings = getSettings();
+		boolean cached = Arrays.equals(params, baseParams) && settings.equals(baseSettings);
+		List<double[]> points = new ArrayList<>(params.length + 1);
+		if(!cached) {
+			points.add(params);
+		}
+		for(int j=0; j<params.length; j++) {
+			double[] point = params.clone();
+			point[j] += steps[j];
+			points.add(point);
+		}
+
+		double[][] models = evaluate(points);
+
+		if(!cached) {
+			baseModel = models[0];
+			baseParams = params.clone();
+			baseSettings = settings;
+		}
+
+		int offset = cached ? 0 : 1;
+		double[][] jacobian = new double[baseModel.length][params.length];
+		for(int j=0; j<params.length; j++) {
+			double[] model = models[j + offset];
+			for(int i=0; i<baseModel.length; i++) {
+				jacobian[i][j] = (model[i] - baseModel[i]) / steps[j];
+			}
+		}
+		return jacobian;
+	}
+
+	/**
+	 * Compute the model WDLF density for each of the given parameter sets concurrently.
+	 *
+	 * @param points
+	 * 	The parameter sets.
+	 * @return
+	 * 	The model WDLF density in each magnitude bin, for each parameter set.
+	 */
+	private double[][] evaluate(List<double[]> points) {
+
+		// Create any more copies of the ModellingState that are needed
+		while(workers.size() < points.size()) {
+			ModellingState worker = new ModellingState();
+			worker.syntheticSFR = template.syntheticSFR.copy();
+			WDLFSolver solver = solverFactory.apply(seed);
+			for(WDLFSolver other : solvers) {
+				if(other == solver) {
+					throw new IllegalArgumentException("The solver factory must return a new WDLFSolver on each call!");
+				}
+			}
+			workers.add(worker);
+			solvers.add(solver);
+		}
+
+		List<Callable<double[]>> tasks = new ArrayList<>(points.size());
+		for(int p=0; p<points.size(); p++) {
+			final ModellingState worker = workers.get(p);
+			final WDLFSolver solver = solvers.get(p);
+			final double[] point = points.get(p);
+			prepare(worker, point);
+			tasks.add(() -> {
+				ModelWDLF wdlf = solver.calculateWDLF(worker);
+				double[] model = new double[wdlf.density.size()];
+				for(int bin=0; bin<model.length; bin++) {
+					model[bin] = wdlf.density.getBinContents(bin);
+				}
+				return model;
+			});
+		}
+
+		double[][] models = new double[points.size()][];
+		ForkJoinPool pool = new ForkJoinPool(Math.min(nThreads, points.size()));
+		try {
+			int p = 0;
+			for(Future<double[]> future : pool.invokeAll(tasks)) {
+				models[p++] = future.get();
+			}
+		}
+		catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("WDLF model evaluation failed!", e);
+		}
+		finally {
+			pool.shutdown();
+		}
+		return models;
+	}
+
+	/**
+	 * Get the settings of the template {@link ModellingState} that affect the model, in string form.
+	 *
+	 * @return
+	 * 	The settings of the template {@link ModellingState} that affect the model.
+	 */
+	private String getSettings() {
+		return template.params.toString() + Arrays.toString(template.wdlfBinCentres) + Arrays.toString(template.wdlfBinWidths)
+				+ template.n_WDs + template.surveyType + template.apparentMagLimit;
+	}
+
+	/**
+	 * Copy the current settings from the template {@link ModellingState} to the given worker, and set the star
+	 * formation rate parameters.
+	 *
+	 * @param worker
+	 * 	The worker {@link ModellingState}.
+	 * @param params
+	 * 	The star formation rate parameters.
+	 */
+	private void prepare(ModellingState worker, double[] params) {
+		worker.params = template.params;
+		worker.wdlfBinCentres = template.wdlfBinCentres;
+		worker.wdlfBinWidths = template.wdlfBinWidths;
+		worker.n_WDs = template.n_WDs;
+		worker.surveyType = template.surveyType;
+		worker.surveyVolume = template.surveyVolume;
+		worker.apparentMagLimit = template.apparentMagLimit;
+		worker.syntheticSFR.setParams(params);
+	}
+}
@@ -4,6 +4,8 @@ import numeric.data.Range;
 import numeric.data.RangeMap;
 import wd.wdlf.algoimpl.ModelWDLF;
 import wd.wdlf.dm.Star;
+import wd.wdlf.dm.StarPopulation;
+import wd.wdlf.dm.WdlfBinAccumulator;
 
 /**
  * Utilities associated with the model WDLF.
@@ -78,6 +80,129 @@ public class ModelWdlfUtil {
         return new ModelWDLF(centres, widths, lf, lf_STD, mass, mass_STD, age, age_STD);
 	}
 	
+	/**
+	 * Gets the luminosity function for the {@link WdlfBinAccumulator}.
+	 * 
+	 * @param starsPerMag
+	 * 	If true, then the density units are scaled to per-magnitude (mag^{-1}). If false,
+	 * then the density units are per-bin-width.
+	 * @param stars
+	 * 	The {@link WdlfBinAccumulator} containing the statistics of the stars to process.
+	 * @return
+	 * 	The {@link ModelWDLF} derived from the given stellar population.
+	 */
+	public static ModelWDLF getLF(boolean starsPerMag, WdlfBinAccumulator stars) {
+		
+		int n = stars.size();
+		
+        double[] centres    = new double[n];
+        double[] widths     = new double[n];        
+        double[] lf         = new double[n];
+        double[] lf_STD     = new double[n];
+        double[] mass       = new double[n];
+        double[] mass_STD   = new double[n];
+        double[] age        = new double[n];
+        double[] age_STD    = new double[n];       
+        
+        // Loop over all magnitude bins
+        for(int bin=0; bin<n; bin++) {
+        	
+        	centres[bin] = stars.getBinCentre(bin);
+	        widths[bin] = stars.getBinWidth(bin);
+	        
+            if(stars.isEmpty(bin)) {
+            	// No simulated WDs. Density is zero and uncertainty is very large
+            	lf[bin] = 0.0;
+	            lf_STD[bin] = 1e9;
+	            mass[bin] = 0.0;
+	            mass_STD[bin] = 0.0;
+	            age[bin] = 0.0;
+	            age_STD[bin] = 0.0;
+            }
+            else {
+	            
+	            double[] lf_bin = getNumberDensity(stars, bin, starsPerMag);
+	            double[] mass_bin = stars.getMeanWdMass(bin);
+	            double[] age_bin = stars.getMeanAge(bin);
+	
+	            lf[bin] = lf_bin[0];
+	            lf_STD[bin] = lf_bin[1];
+	            mass[bin] = mass_bin[0];
+	            mass_STD[bin] = mass_bin[1];
+	            age[bin] = age_bin[0];
+	            age_STD[bin] = age_bin[1];
+            }
+        }
+        
+        return new ModelWDLF(centres, widths, lf, lf_STD, mass, mass_STD, age, age_STD);
+	}
+	
+	/**
+	 * Gets the luminosity function for the {@link StarPopulation}, binned on the magnitude bins of the
+	 * population. Only the observed stars (i.e. those that lie in one of the magnitude bins) contribute.
+	 * 
+	 * @param starsPerMag
+	 * 	If true, then the density units are scaled to per-magnitude (mag^{-1}). If false,
+	 * then the density units are per-bin-width.
+	 * @param stars
+	 * 	The {@link StarPopulation} containing the stars to process.
+	 * @return
+	 * 	The {@link ModelWDLF} derived from the given stellar population.
+	 */
+	public static ModelWDLF getLF(boolean starsPerMag, StarPopulation stars) {
+		
+		int n = stars.getNumberOfMagBins();
+		double[] centres = new double[n];
+		double[] widths = new double[n];
+		for(int bin=0; bin<n; bin++) {
+			centres[bin] = stars.getMagBinCentre(bin);
+			widths[bin] = stars.getMagBinWidth(bin);
+		}
+		
+		WdlfBinAccumulator whiteDwarfs = new WdlfBinAccumulator(centres, widths);
+		for(int i=0; i<stars.size(); i++) {
+			if(stars.getIsObserved(i)) {
+				whiteDwarfs.add(stars.getMag(i), stars.getNumber(i), stars.getSigma2Number(i),
+						stars.getWhiteDwarfMass(i), stars.getTotalAge(i));
+			}
+		}
+		
+		return getLF(starsPerMag, whiteDwarfs);
+	}
+	
+	/**
+	 * Gets the mean and standard error of the number density of stars in the given bin.
+	 * @param stars
+	 * 	The {@link WdlfBinAccumulator} containing the statistics of the stars to process.
+	 * @param bin
+	 * 	The index of the bin in the {@link WdlfBinAccumulator}.
+	 * @param starsPerUnit
+	 * 	If true, then the density units are scaled to the inverse of the units of the bin width. If false,
+	 * then the density units are per-bin-width.
+	 * @return
+	 * 	The number density in N-per-bin (if stars_per_unit=false) or N-per-unit (if stars_per_unit=true),
+	 * and the associated uncertainty (standard deviation).
+	 */
+	public static double[] getNumberDensity(WdlfBinAccumulator stars, int bin, boolean starsPerUnit) {
+		
+        // Check for no simulated stars in bin
+        if(stars.isEmpty(bin)) {
+        	return null;
+        }
+        
+        double width = stars.getBinWidth(bin);
+        double density = stars.getNumber(bin);
+        double sigma2_density = stars.getSigma2Number(bin);
+        
+        // Optionally convert this into units of stars-per-magnitude
+        if(starsPerUnit) {
+            density        /= width;
+            sigma2_density /= (width*width);            
+        }
+        
+        return new double[]{density, Math.sqrt(sigma2_density)};
+	}
+	
 	/**
 	 * Gets the mean and standard error of the number density of stars in the given bin.
 	 * @param stars